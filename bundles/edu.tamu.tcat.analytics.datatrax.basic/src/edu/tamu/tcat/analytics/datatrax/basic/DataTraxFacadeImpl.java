@@ -1,7 +1,10 @@
 package edu.tamu.tcat.analytics.datatrax.basic;
 
+import java.nio.file.Path;
+import java.nio.file.Paths;
 import java.util.Set;
 import java.util.UUID;
+import java.util.logging.Logger;
 
 import edu.tamu.tcat.osgi.config.ConfigurationProperties;
 import edu.tamu.tcat.analytics.datatrax.DataTraxFacade;
@@ -19,9 +22,58 @@ import edu.tamu.tcat.analytics.datatrax.config.WorkflowDescription;
  */
 public class DataTraxFacadeImpl implements DataTraxFacade
 {
+   private static final Logger logger = Logger.getLogger(DataTraxFacadeImpl.class.getName());
+
+   /**
+    * Configuration property for the maximum number of inputs each workflow will process 
+    * concurrently. See {@link WorkflowControllerSettings#maxInFlight}.
+    */
+   public static final String PROP_MAX_IN_FLIGHT = "datatrax.workflow.max_in_flight";
+   public static final String PROP_MAX_PENDING = "datatrax.workflow.max_pending";
+   public static final String PROP_ADMISSION_POLICY = "datatrax.workflow.admission_policy";
+   public static final String PROP_TASK_PARALLELISM = "datatrax.workflow.task_parallelism";
+   public static final String PROP_VIRTUAL_THREADS = "datatrax.workflow.virtual_threads";
+   public static final String PROP_COLLECT_METRICS = "datatrax.workflow.metrics";
+   public static final String PROP_REGISTER_MBEANS = "datatrax.workflow.jmx";
+
+   /**
+    * Configuration property for the maximum time, in milliseconds, allowed to process each
+    * input. See {@link WorkflowControllerSettings#inputTimeoutMillis}.
+    */
+   public static final String PROP_INPUT_TIMEOUT = "datatrax.workflow.input_timeout";
+
+   /**
+    * Configuration property for the minimum size, in bytes, of intermediate values to hold
+    * off-heap. Values are held on the heap if this is not set. See {@link OffHeapValueStore}.
+    */
+   public static final String PROP_OFFHEAP_THRESHOLD = "datatrax.workflow.offheap_threshold";
+
+   /**
+    * Configuration property for the directory in which to create memory-mapped files for
+    * values held off-heap. If not set, direct buffers are used.
+    */
+   public static final String PROP_OFFHEAP_DIRECTORY = "datatrax.workflow.offheap_directory";
+
+   /**
+    * Configuration properties for caching the outputs of workflows. See
+    * {@link WorkflowControllerSettings#resultCacheSize}.
+    */
+   public static final String PROP_RESULT_CACHE_SIZE = "datatrax.workflow.result_cache_size";
+   public static final String PROP_RESULT_CACHE_TTL = "datatrax.workflow.result_cache_ttl";
+   public static final String PROP_RESULT_CACHE_DIRECTORY = "datatrax.workflow.result_cache_directory";
+
+   /**
+    * Configuration property for the maximum number of transformer outputs to memoize. The
+    * cache is shared by all workflows created by this facade. Outputs are not memoized if
+    * this is not set. See {@link TransformerCache}.
+    */
+   public static final String PROP_TRANSFORMER_CACHE_SIZE = "datatrax.transformer_cache_size";
 
    private TransformerRegistry registry;
    private ConfigurationProperties props;
+   
+   // shared by all workflows created by this facade, null if outputs are not memoized
+   private TransformerCache transformerCache;
 
    public DataTraxFacadeImpl()
    {
@@ -39,12 +91,16 @@ public class DataTraxFacadeImpl implements DataTraxFacade
    
    public void activate()
    {
-      
+      int size = (props == null) ? 0 : props.getPropertyValue(PROP_TRANSFORMER_CACHE_SIZE, Integer.class, Integer.valueOf(0)).intValue();
+      transformerCache = (size > 0) ? new TransformerCache(size) : null;
    }
    
    public void deactivate()
    {
+      if (transformerCache != null)
+         transformerCache.clear();
       
+      transformerCache = null;
    }
    
 
@@ -101,13 +157,68 @@ public class DataTraxFacadeImpl implements DataTraxFacade
    {
       try 
       {
-         return WorkflowControllerImpl.create(config);
+         return WorkflowControllerImpl.create(config, getControllerSettings());
       } catch (Exception tce)
       {
          throw new WorkflowConfigurationException("Failed to instantatiate workflow for configuration '" + config.getTitle() + "' [" + config.getId() + "]", tce);
       }
    }
 
+   /**
+    * @return The settings to use for newly created workflow controllers based on the 
+    *       configuration properties supplied to this facade.
+    */
+   private WorkflowControllerSettings getControllerSettings()
+   {
+      WorkflowControllerSettings settings = new WorkflowControllerSettings();
+      if (props == null)
+         return settings;
+      
+      settings.maxInFlight = props.getPropertyValue(PROP_MAX_IN_FLIGHT, Integer.class, Integer.valueOf(settings.maxInFlight)).intValue();
+      settings.maxPending = props.getPropertyValue(PROP_MAX_PENDING, Integer.class, Integer.valueOf(settings.maxPending)).intValue();
+      settings.admissionPolicy = getAdmissionPolicy(settings.admissionPolicy);
+      settings.taskParallelism = props.getPropertyValue(PROP_TASK_PARALLELISM, Integer.class, Integer.valueOf(settings.taskParallelism)).intValue();
+      settings.useVirtualThreads = props.getPropertyValue(PROP_VIRTUAL_THREADS, Boolean.class, Boolean.valueOf(settings.useVirtualThreads)).booleanValue();
+      settings.collectMetrics = props.getPropertyValue(PROP_COLLECT_METRICS, Boolean.class, Boolean.valueOf(settings.collectMetrics)).booleanValue();
+      settings.registerMBeans = props.getPropertyValue(PROP_REGISTER_MBEANS, Boolean.class, Boolean.valueOf(settings.registerMBeans)).booleanValue();
+      settings.inputTimeoutMillis = props.getPropertyValue(PROP_INPUT_TIMEOUT, Long.class, Long.valueOf(settings.inputTimeoutMillis)).longValue();
+      settings.valueStore = getValueStore();
+      settings.resultCacheSize = props.getPropertyValue(PROP_RESULT_CACHE_SIZE, Integer.class, Integer.valueOf(settings.resultCacheSize)).intValue();
+      settings.resultCacheTtlMillis = props.getPropertyValue(PROP_RESULT_CACHE_TTL, Long.class, Long.valueOf(settings.resultCacheTtlMillis)).longValue();
+      settings.resultCacheDirectory = getPath(PROP_RESULT_CACHE_DIRECTORY);
+      settings.transformerCache = transformerCache;
+      return settings;
+   }
+
+   private ValueStore getValueStore()
+   {
+      long threshold = props.getPropertyValue(PROP_OFFHEAP_THRESHOLD, Long.class, Long.valueOf(0)).longValue();
+      if (threshold <= 0)
+         return null;
+
+      return new OffHeapValueStore(threshold, getPath(PROP_OFFHEAP_DIRECTORY));
+   }
+
+   private Path getPath(String prop)
+   {
+      String dir = props.getPropertyValue(prop, String.class, null);
+      return (dir == null || dir.trim().isEmpty()) ? null : Paths.get(dir.trim());
+   }
+
+   private WorkflowControllerSettings.AdmissionPolicy getAdmissionPolicy(WorkflowControllerSettings.AdmissionPolicy defaultPolicy)
+   {
+      String policy = props.getPropertyValue(PROP_ADMISSION_POLICY, String.class, defaultPolicy.name());
+      try
+      {
+         return WorkflowControllerSettings.AdmissionPolicy.valueOf(policy.trim().toUpperCase());
+      }
+      catch (IllegalArgumentException ex)
+      {
+         logger.warning("Invalid workflow admission policy [" + policy + "]. Using [" + defaultPolicy + "].");
+         return defaultPolicy;
+      }
+   }
+
    @Override
    public TransformerRegistry getTranformerRegistry()
    {
@@ -0,0 +1,134 @@
+package edu.tamu.tcat.analytics.datatrax.basic;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * A bounded, lock-free, multi-producer/single-consumer buffer of workflow lifecycle events.
+ * Entries are allocated up front and reused, so recording an event does not allocate.
+ *
+ * <p>
+ * Each entry carries a sequence number that indicates whether it may be written by a
+ * producer or read by the consumer. A producer claims a position by advancing the tail with
+ * a compare-and-set, writes the entry's fields and then publishes it by updating its sequence.
+ * If the buffer is full, the event is rejected rather than blocking the producer.
+ */
+final class EventRingBuffer
+{
+   private final Entry[] entries;
+   private final int mask;
+
+   private final AtomicLong tail = new AtomicLong(0);
+
+   // accessed only by the consumer
+   private long head = 0;
+
+   /**
+    * @param capacity The minimum number of events the buffer can hold. Will be rounded up to
+    *       a power of two.
+    */
+   EventRingBuffer(int capacity)
+   {
+      int size = Integer.highestOneBit(Math.max(2, capacity) - 1) << 1;
+      entries = new Entry[size];
+      mask = size - 1;
+      for (int i = 0; i < size; i++)
+      {
+         entries[i] = new Entry(i);
+      }
+   }
+
+   /**
+    * Records an event.
+    *
+    * @return {@code true} if the event was recorded, {@code false} if the buffer is full.
+    */
+   boolean offer(int action, long inputSeq, int node, long time, Throwable error)
+   {
+      long pos = tail.get();
+      while (true)
+      {
+         Entry entry = entries[(int)(pos & mask)];
+         long diff = entry.seq - pos;
+         if (diff == 0)
+         {
+            if (tail.compareAndSet(pos, pos + 1))
+            {
+               entry.action = action;
+               entry.inputSeq = inputSeq;
+               entry.node = node;
+               entry.time = time;
+               entry.error = error;
+               entry.seq = pos + 1;    // publish
+               return true;
+            }
+
+            pos = tail.get();
+         }
+         else if (diff < 0)
+         {
+            // the consumer has not yet read the entry from the previous lap
+            return false;
+         }
+         else
+         {
+            pos = tail.get();
+         }
+      }
+   }
+
+   /**
+    * Removes the next event and supplies it to the consumer. Must be called by a single
+    * thread only.
+    *
+    * @return {@code true} if an event was consumed, {@code false} if the buffer is empty.
+    */
+   boolean poll(EventConsumer consumer)
+   {
+      Entry entry = entries[(int)(head & mask)];
+      if (entry.seq != head + 1)
+         return false;
+
+      int action = entry.action;
+      long inputSeq = entry.inputSeq;
+      int node = entry.node;
+      long time = entry.time;
+      Throwable error = entry.error;
+
+      entry.error = null;
+      entry.seq = head + entries.length;    // release for the next lap
+      head++;
+
+      consumer.accept(action, inputSeq, node, time, error);
+      return true;
+   }
+
+   /**
+    * @return {@code true} if there is no event available to the consumer. Must be called by
+    *       the consumer thread only.
+    */
+   boolean isEmpty()
+   {
+      return entries[(int)(head & mask)].seq != head + 1;
+   }
+
+   interface EventConsumer
+   {
+      void accept(int action, long inputSeq, int node, long time, Throwable error);
+   }
+
+   private static final class Entry
+   {
+      volatile long seq;
+
+      int action;
+      long inputSeq;
+      int node;
+      long time;
+      Throwable error;
+
+      Entry(long seq)
+      {
+         this.seq = seq;
+      }
+   }
+}
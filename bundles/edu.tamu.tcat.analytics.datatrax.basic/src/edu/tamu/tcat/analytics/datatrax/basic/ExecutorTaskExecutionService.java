@@ -0,0 +1,58 @@
+package edu.tamu.tcat.analytics.datatrax.basic;
+
+import java.util.Objects;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Logger;
+
+import edu.tamu.tcat.analytics.datatrax.basic.WorkflowControllerImpl.TaskExecutionService;
+
+/**
+ * A {@link TaskExecutionService} that submits tasks to an {@link ExecutorService}. This
+ * is used to run transformer tasks on virtual threads, but may wrap any executor.
+ */
+public class ExecutorTaskExecutionService implements TaskExecutionService, AutoCloseable
+{
+   private static final Logger logger = Logger.getLogger(ExecutorTaskExecutionService.class.getName());
+
+   private final ExecutorService executor;
+
+   /**
+    * @param executor The executor to which tasks will be submitted. This executor will be
+    *       shut down when this service is closed.
+    */
+   public ExecutorTaskExecutionService(ExecutorService executor)
+   {
+      this.executor = Objects.requireNonNull(executor, "No executor supplied.");
+   }
+
+   @Override
+   public void execute(Runnable task)
+   {
+      executor.execute(task);
+   }
+
+   /**
+    * Shuts down the underlying executor, waiting for submitted tasks to complete. If the
+    * calling thread is interrupted while waiting, running tasks are interrupted and the
+    * thread's interrupt status is restored.
+    */
+   @Override
+   public void close()
+   {
+      executor.shutdown();
+      try
+      {
+         if (!executor.awaitTermination(10, TimeUnit.SECONDS))
+         {
+            logger.warning("Timed out waiting for transformer tasks to complete. Forcing shutdown now.");
+            executor.shutdownNow();
+         }
+      }
+      catch (InterruptedException ex)
+      {
+         executor.shutdownNow();
+         Thread.currentThread().interrupt();
+      }
+   }
+}
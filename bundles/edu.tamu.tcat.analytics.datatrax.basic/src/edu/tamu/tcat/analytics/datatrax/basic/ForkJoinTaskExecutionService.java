@@ -0,0 +1,85 @@
+package edu.tamu.tcat.analytics.datatrax.basic;
+
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import edu.tamu.tcat.analytics.datatrax.basic.WorkflowControllerImpl.TaskExecutionService;
+
+/**
+ * A {@link TaskExecutionService} backed by a work-stealing {@link ForkJoinPool} with a fixed
+ * maximum parallelism. This is the default service used by the {@link WorkflowControllerImpl}
+ * to execute transformer tasks.
+ *
+ * <p>
+ * Tasks that are submitted from a worker thread of this service (that is, transformers that
+ * became ready because a transformer running on this service produced their last input) are
+ * pushed onto that worker's local queue. The worker will run them as soon as its current task
+ * completes, while the data it just produced is likely to still be in cache. Idle workers will
+ * steal queued tasks so that the pool remains fully utilized.
+ *
+ * <p>
+ * Note that the pool does not add threads when tasks block. Transformers that perform
+ * significant blocking I/O should be executed using a service that is not limited to a
+ * small number of platform threads.
+ */
+public class ForkJoinTaskExecutionService implements TaskExecutionService, AutoCloseable
+{
+   private static final Logger logger = Logger.getLogger(ForkJoinTaskExecutionService.class.getName());
+
+   private final ForkJoinPool pool;
+
+   /**
+    * @param parallelism The maximum number of tasks that will be executed concurrently. Must
+    *       be greater than zero.
+    */
+   public ForkJoinTaskExecutionService(int parallelism)
+   {
+      // local queues are LIFO (asyncMode = false) so that a forked task runs next on its worker
+      pool = new ForkJoinPool(parallelism, ForkJoinPool.defaultForkJoinWorkerThreadFactory,
+            (thread, ex) -> logger.log(Level.SEVERE, "Uncaught error executing transformer task.", ex), false);
+   }
+
+   /**
+    * @return The maximum number of tasks that will be executed concurrently.
+    */
+   public int getParallelism()
+   {
+      return pool.getParallelism();
+   }
+
+   @Override
+   public void execute(Runnable task)
+   {
+      if (ForkJoinTask.getPool() == pool)
+         ForkJoinTask.adapt(task).fork();
+      else
+         pool.execute(task);
+   }
+
+   /**
+    * Shuts down this service, waiting for submitted tasks to complete. If the calling thread
+    * is interrupted while waiting, running tasks are interrupted and the thread's interrupt
+    * status is restored.
+    */
+   @Override
+   public void close()
+   {
+      pool.shutdown();
+      try
+      {
+         if (!pool.awaitTermination(10, TimeUnit.SECONDS))
+         {
+            logger.warning("Timed out waiting for transformer tasks to complete. Forcing shutdown now.");
+            pool.shutdownNow();
+         }
+      }
+      catch (InterruptedException ex)
+      {
+         pool.shutdownNow();
+         Thread.currentThread().interrupt();
+      }
+   }
+}
@@ -0,0 +1,340 @@
+package edu.tamu.tcat.analytics.datatrax.basic;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Objects;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.CompletionStage;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.function.Function;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import edu.tamu.tcat.analytics.datatrax.AsyncTransformer;
+import edu.tamu.tcat.analytics.datatrax.DataValueKey;
+import edu.tamu.tcat.analytics.datatrax.TransformerContext;
+import edu.tamu.tcat.analytics.datatrax.WorkflowEvaluation;
+import edu.tamu.tcat.analytics.datatrax.WorkflowException;
+import edu.tamu.tcat.analytics.datatrax.basic.WorkflowControllerImpl.TaskExecutionService;
+
+/**
+ * A {@link WorkflowEvaluation} of a compiled {@link WorkflowPlan}. Unlike a
+ * {@link PlanExecution}, which executes each transformer once its inputs have been supplied,
+ * this resolves requested slots backwards through the plan: the value of a slot is produced
+ * by executing its producing node once the values of the node's input slots have been resolved.
+ *
+ * <p>
+ * The value of each slot is memoized as a future that is created when the slot is first
+ * requested, either directly or as the input of another requested slot, so each transformer
+ * is executed at most once. Values are retained until the evaluation is closed. Transformers
+ * are executed using the controller's {@link TaskExecutionService}. The value produced by an
+ * {@link AsyncTransformer} is memoized once its stage completes, without blocking the task's
+ * thread.
+ *
+ * <p>
+ * Closing the evaluation prevents further transformers from starting. Values that are
+ * {@link AutoCloseable} are closed once the transformers that are already running, which may
+ * still be reading them, have finished.
+ */
+final class LazyPlanEvaluation<X> implements WorkflowEvaluation<X>
+{
+   private static final Logger logger = Logger.getLogger(LazyPlanEvaluation.class.getName());
+
+   private final WorkflowPlan plan;
+   private final TaskExecutionService exec;
+   private final X source;
+
+   // the value of each slot, created when the slot is first requested and guarded by this
+   private final AtomicReferenceArray<CompletableFuture<Object>> values;
+
+   // values that have been closed or are owned by the client, guarded by itself
+   private final Set<Object> closedValues = Collections.newSetFromMap(new IdentityHashMap<>());
+
+   private volatile boolean closed = false;
+
+   // the number of transformers that have started but not yet finished, guarded by this
+   private int running = 0;
+
+   /**
+    * @param plan The plan to evaluate.
+    * @param exec The service to use to execute transformers.
+    * @param source The input data.
+    */
+   LazyPlanEvaluation(WorkflowPlan plan, TaskExecutionService exec, X source)
+   {
+      this.plan = plan;
+      this.exec = exec;
+      this.source = source;
+
+      this.values = new AtomicReferenceArray<>(plan.size());
+      values.set(plan.inputSlot, CompletableFuture.completedFuture(source));
+
+      // the input is owned by the client, even if a transformer returns it as its result
+      closedValues.add(source);
+   }
+
+   @Override
+   public X getSource()
+   {
+      return source;
+   }
+
+   @Override
+   public CompletableFuture<Object> request(DataValueKey key)
+   {
+      Objects.requireNonNull(key, "No data value key supplied.");
+      int slot = plan.getSlot(key);
+      if (slot < 0)
+         throw new IllegalArgumentException("Requested value [" + key + "] is not produced by this workflow.");
+
+      // a dependent future, so that clients cannot complete or cancel the memoized value
+      return resolve(slot).thenApply(Function.identity());
+   }
+
+   /**
+    * @return The memoized value of a slot, scheduling the execution of the transformers
+    *       required to produce it if it has not previously been requested.
+    * @throws IllegalStateException If this evaluation has been closed.
+    */
+   private synchronized CompletableFuture<Object> resolve(int slot)
+   {
+      if (closed)
+         throw new IllegalStateException("This workflow evaluation has been closed.");
+
+      CompletableFuture<Object> value = values.get(slot);
+      if (value != null)
+         return value;
+
+      // create the values of the slot and of any unresolved slots it depends on before
+      // scheduling them, using a worklist rather than recursion so that long chains of
+      // transformers do not exhaust the stack
+      List<WorkflowPlan.Node> created = new ArrayList<>();
+      Deque<Integer> worklist = new ArrayDeque<>();
+      worklist.push(Integer.valueOf(slot));
+      while (!worklist.isEmpty())
+      {
+         int s = worklist.pop().intValue();
+         if (values.get(s) != null)
+            continue;
+
+         values.set(s, new CompletableFuture<>());
+         WorkflowPlan.Node node = plan.getProducer(s);
+         created.add(node);
+         for (int input : node.inputSlots)
+         {
+            worklist.push(Integer.valueOf(input));
+         }
+      }
+
+      for (WorkflowPlan.Node node : created)
+      {
+         schedule(node);
+      }
+
+      return values.get(slot);
+   }
+
+   /**
+    * Executes a node once the values of its input slots have been resolved.
+    */
+   private void schedule(WorkflowPlan.Node node)
+   {
+      CompletableFuture<Object> result = values.get(node.resultSlot);
+      CompletableFuture<?>[] inputs = new CompletableFuture<?>[node.inputSlots.length];
+      for (int i = 0; i < inputs.length; i++)
+      {
+         inputs[i] = values.get(node.inputSlots[i]);
+      }
+
+      CompletableFuture.allOf(inputs).whenComplete((v, ex) -> {
+         if (ex != null)
+         {
+            result.completeExceptionally((ex instanceof CompletionException && ex.getCause() != null) ? ex.getCause() : ex);
+            return;
+         }
+
+         try
+         {
+            exec.execute(() -> execute(node, result));
+         }
+         catch (Exception e)
+         {
+            result.completeExceptionally(e);
+         }
+      });
+   }
+
+   private void execute(WorkflowPlan.Node node, CompletableFuture<Object> result)
+   {
+      synchronized (this)
+      {
+         if (closed)
+         {
+            result.cancel(false);
+            return;
+         }
+
+         running++;
+      }
+
+      boolean pending = false;
+      try
+      {
+         if (node.transformer instanceof AsyncTransformer)
+         {
+            // complete once the stage completes rather than blocking this thread
+            Callable<? extends CompletionStage<?>> task = ((AsyncTransformer)node.transformer).createAsync(new Context(node));
+            CompletionStage<?> stage = task.call();
+            if (stage == null)
+               throw new IllegalStateException("Asynchronous transformer [" + node.transformer + "] did not return a completion stage.");
+
+            pending = true;
+            stage.whenComplete((value, ex) -> {
+               try
+               {
+                  if (ex != null)
+                     failed(node, result, (ex instanceof CompletionException && ex.getCause() != null) ? ex.getCause() : ex);
+                  else
+                     completed(node, result, value);
+               }
+               finally
+               {
+                  finished();
+               }
+            });
+         }
+         else
+         {
+            Callable<?> task = node.transformer.create(new Context(node));
+            completed(node, result, task.call());
+         }
+      }
+      catch (Throwable ex)
+      {
+         // errors are reported as failures so that the requested value always completes
+         failed(node, result, ex);
+      }
+      finally
+      {
+         if (!pending)
+            finished();
+      }
+   }
+
+   /**
+    * Called once a transformer will no longer read its inputs. Closes the values of a closed
+    * evaluation once no transformers are running.
+    */
+   private void finished()
+   {
+      synchronized (this)
+      {
+         if (--running > 0 || !closed)
+            return;
+      }
+
+      closeValues();
+   }
+
+   private void completed(WorkflowPlan.Node node, CompletableFuture<Object> result, Object value)
+   {
+      try
+      {
+         PlanExecution.checkValueType(plan.keys[node.resultSlot], value);
+      }
+      catch (IllegalArgumentException ex)
+      {
+         failed(node, result, ex);
+         return;
+      }
+
+      result.complete(value);
+   }
+
+   private void failed(WorkflowPlan.Node node, CompletableFuture<Object> result, Throwable ex)
+   {
+      logger.log(Level.WARNING, "Transformer execution failed for [" + node.transformer + "]", ex);
+      result.completeExceptionally(new WorkflowException("Transformer [" + node.transformer + "] (" + node.transformerId + ") failed to process the input.", ex));
+   }
+
+   @Override
+   public void close()
+   {
+      synchronized (this)
+      {
+         if (closed)
+            return;
+
+         closed = true;
+         if (running > 0)
+            return;
+      }
+
+      closeValues();
+   }
+
+   /**
+    * Closes the values that have been produced. Called once the evaluation has been closed
+    * and no transformers are running, so no further values will be produced.
+    */
+   private void closeValues()
+   {
+      for (int slot = 0; slot < values.length(); slot++)
+      {
+         CompletableFuture<Object> value = values.get(slot);
+         if (value != null && value.isDone() && !value.isCompletedExceptionally())
+            closeValue(slot, value.join());
+      }
+   }
+
+   private void closeValue(int slot, Object value)
+   {
+      if (!(value instanceof AutoCloseable))
+         return;
+
+      // a transformer may return one of its inputs as its result, so several slots may hold
+      // the same value. It is closed only once.
+      synchronized (closedValues)
+      {
+         if (!closedValues.add(value))
+            return;
+      }
+
+      try
+      {
+         ((AutoCloseable)value).close();
+      }
+      catch (Exception ex)
+      {
+         logger.log(Level.WARNING, "Failed to close value for key [" + plan.keys[slot] + "]", ex);
+      }
+   }
+
+   /**
+    * Supplies the resolved values of a node's input slots to its transformer.
+    */
+   private final class Context implements TransformerContext
+   {
+      private final WorkflowPlan.Node node;
+
+      Context(WorkflowPlan.Node node)
+      {
+         this.node = node;
+      }
+
+      @Override
+      public Object getValue(String label)
+      {
+         // inputs are resolved before the transformer is executed
+         int slot = node.getInputSlot(label);
+         return (slot < 0) ? null : values.get(slot).getNow(null);
+      }
+   }
+}
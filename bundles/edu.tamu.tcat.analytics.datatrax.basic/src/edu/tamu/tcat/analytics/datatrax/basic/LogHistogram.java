@@ -0,0 +1,132 @@
+package edu.tamu.tcat.analytics.datatrax.basic;
+
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
+
+import edu.tamu.tcat.analytics.datatrax.WorkflowMetrics.Histogram;
+
+/**
+ * A concurrent histogram of non-negative {@code long} values, in the style of HdrHistogram.
+ * Each power of two is divided into {@value #SUB_BUCKETS} linear sub-buckets, so that the
+ * bucket for a value identifies it to within 12.5%. Values less than {@value #SUB_BUCKETS}
+ * are recorded exactly.
+ *
+ * <p>
+ * Bucket counters are {@link LongAdder}s that are allocated the first time a value is
+ * recorded in the bucket, so that recording from many threads does not contend and a
+ * histogram whose values fall in a narrow range remains small.
+ */
+final class LogHistogram implements Histogram
+{
+   private static final int SUB_BITS = 3;
+   private static final int SUB_BUCKETS = 1 << SUB_BITS;
+
+   // exponents 3 through 62 each have SUB_BUCKETS buckets after the exact buckets for 0-7
+   private static final int NUM_BUCKETS = (63 - SUB_BITS + 1) * SUB_BUCKETS;
+
+   private final AtomicReferenceArray<LongAdder> buckets = new AtomicReferenceArray<>(NUM_BUCKETS);
+   private final LongAdder count = new LongAdder();
+   private final LongAdder sum = new LongAdder();
+   private final LongAccumulator max = new LongAccumulator(Math::max, 0);
+
+   /**
+    * Records a value. Negative values are recorded as 0.
+    */
+   void record(long value)
+   {
+      if (value < 0)
+         value = 0;
+
+      int ix = bucketIndex(value);
+      LongAdder bucket = buckets.get(ix);
+      if (bucket == null)
+      {
+         buckets.compareAndSet(ix, null, new LongAdder());
+         bucket = buckets.get(ix);
+      }
+
+      bucket.increment();
+      count.increment();
+      sum.add(value);
+      max.accumulate(value);
+   }
+
+   static int bucketIndex(long value)
+   {
+      if (value < SUB_BUCKETS)
+         return (int)value;
+
+      int exp = 63 - Long.numberOfLeadingZeros(value);
+      int sub = (int)(value >>> (exp - SUB_BITS)) & (SUB_BUCKETS - 1);
+      return (exp - SUB_BITS + 1) * SUB_BUCKETS + sub;
+   }
+
+   /**
+    * @return The largest value that is recorded in the bucket with the given index.
+    */
+   static long bucketUpperBound(int ix)
+   {
+      if (ix < SUB_BUCKETS)
+         return ix;
+
+      int exp = ix / SUB_BUCKETS + SUB_BITS - 1;
+      int sub = ix % SUB_BUCKETS;
+      long lower = (long)(SUB_BUCKETS + sub) << (exp - SUB_BITS);
+      return lower + (1L << (exp - SUB_BITS)) - 1;
+   }
+
+   @Override
+   public long getCount()
+   {
+      return count.sum();
+   }
+
+   @Override
+   public double getMean()
+   {
+      long n = count.sum();
+      return (n == 0) ? 0 : (double)sum.sum() / n;
+   }
+
+   @Override
+   public long getMax()
+   {
+      return max.get();
+   }
+
+   @Override
+   public long getValueAtPercentile(double percentile)
+   {
+      if (percentile < 0 || percentile > 100)
+         throw new IllegalArgumentException("Invalid percentile [" + percentile + "]. Must be between 0 and 100.");
+
+      long n = count.sum();
+      if (n == 0)
+         return 0;
+
+      long target = Math.max(1, (long)Math.ceil(percentile / 100 * n));
+      long seen = 0;
+      long maxValue = max.get();
+      for (int i = 0; i < NUM_BUCKETS; i++)
+      {
+         LongAdder bucket = buckets.get(i);
+         if (bucket == null)
+            continue;
+
+         seen += bucket.sum();
+         if (seen >= target)
+            return Math.min(bucketUpperBound(i), maxValue);
+      }
+
+      // values recorded concurrently with this computation
+      return maxValue;
+   }
+
+   @Override
+   public String toString()
+   {
+      return "count=" + getCount() + ", mean=" + (long)getMean() + ", p50=" + getValueAtPercentile(50)
+            + ", p99=" + getValueAtPercentile(99) + ", max=" + getMax();
+   }
+}
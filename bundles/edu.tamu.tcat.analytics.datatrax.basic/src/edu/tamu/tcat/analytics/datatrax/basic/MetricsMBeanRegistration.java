@@ -0,0 +1,221 @@
+package edu.tamu.tcat.analytics.datatrax.basic;
+
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+import javax.management.StandardMBean;
+
+import edu.tamu.tcat.analytics.datatrax.WorkflowMetrics.TransformerMetrics;
+
+/**
+ * Registers the metrics of a {@link WorkflowControllerImpl} with the platform MBean server.
+ * A {@link WorkflowMetricsMXBean} is registered for the workflow and a
+ * {@link TransformerMetricsMXBean} for each of its transformers. Since several controllers may
+ * be created for the same workflow, object names include a per-controller instance number.
+ * The MBeans are unregistered when this registration is closed.
+ */
+final class MetricsMBeanRegistration implements AutoCloseable
+{
+   private static final Logger logger = Logger.getLogger(MetricsMBeanRegistration.class.getName());
+
+   static final String DOMAIN = "edu.tamu.tcat.analytics.datatrax";
+
+   private static final AtomicInteger instances = new AtomicInteger();
+
+   private final MBeanServer server;
+   private final List<ObjectName> names = new ArrayList<>();
+
+   private MetricsMBeanRegistration(MBeanServer server)
+   {
+      this.server = server;
+   }
+
+   /**
+    * Registers the MBeans for a workflow. Failures are logged, but do not prevent the
+    * workflow from being executed.
+    *
+    * @param title The title of the workflow.
+    * @param metrics The workflow's metrics.
+    * @return The registration.
+    */
+   static MetricsMBeanRegistration register(String title, WorkflowMetricsImpl metrics)
+   {
+      MetricsMBeanRegistration registration = new MetricsMBeanRegistration(ManagementFactory.getPlatformMBeanServer());
+      String base = DOMAIN + ":workflow=" + ObjectName.quote(String.valueOf(title)) + ",instance=" + instances.incrementAndGet();
+      try
+      {
+         registration.register(base + ",type=Workflow", new WorkflowBean(title, metrics), WorkflowMetricsMXBean.class);
+         for (TransformerMetrics tm : metrics.getTransformerMetrics())
+         {
+            registration.register(base + ",type=Transformer,id=" + tm.getTransformerId(), new TransformerBean(tm), TransformerMetricsMXBean.class);
+         }
+      }
+      catch (Exception ex)
+      {
+         logger.log(Level.WARNING, "Failed to register JMX metrics for workflow '" + title + "'", ex);
+      }
+
+      return registration;
+   }
+
+   private <T> void register(String name, T bean, Class<T> type) throws Exception
+   {
+      ObjectName objName = new ObjectName(name);
+      server.registerMBean(new StandardMBean(bean, type, true), objName);
+      names.add(objName);
+   }
+
+   @Override
+   public void close()
+   {
+      for (ObjectName name : names)
+      {
+         try
+         {
+            server.unregisterMBean(name);
+         }
+         catch (Exception ex)
+         {
+            logger.log(Level.WARNING, "Failed to unregister JMX metrics [" + name + "]", ex);
+         }
+      }
+
+      names.clear();
+   }
+
+   private static final class WorkflowBean implements WorkflowMetricsMXBean
+   {
+      private final String title;
+      private final WorkflowMetricsImpl metrics;
+
+      WorkflowBean(String title, WorkflowMetricsImpl metrics)
+      {
+         this.title = title;
+         this.metrics = metrics;
+      }
+
+      @Override
+      public String getWorkflowTitle()
+      {
+         return title;
+      }
+
+      @Override
+      public long getInputsCompleted()
+      {
+         return metrics.getInputsCompleted();
+      }
+
+      @Override
+      public long getInputsFailed()
+      {
+         return metrics.getInputsFailed();
+      }
+
+      @Override
+      public double getLatencyMean()
+      {
+         return metrics.getLatency().getMean();
+      }
+
+      @Override
+      public long getLatencyMedian()
+      {
+         return metrics.getLatency().getValueAtPercentile(50);
+      }
+
+      @Override
+      public long getLatency99thPercentile()
+      {
+         return metrics.getLatency().getValueAtPercentile(99);
+      }
+
+      @Override
+      public long getLatencyMax()
+      {
+         return metrics.getLatency().getMax();
+      }
+   }
+
+   private static final class TransformerBean implements TransformerMetricsMXBean
+   {
+      private final TransformerMetrics metrics;
+
+      TransformerBean(TransformerMetrics metrics)
+      {
+         this.metrics = metrics;
+      }
+
+      @Override
+      public String getTransformerId()
+      {
+         return metrics.getTransformerId().toString();
+      }
+
+      @Override
+      public long getExecutions()
+      {
+         return metrics.getExecutions();
+      }
+
+      @Override
+      public long getErrors()
+      {
+         return metrics.getErrors();
+      }
+
+      @Override
+      public double getQueueWaitMean()
+      {
+         return metrics.getQueueWait().getMean();
+      }
+
+      @Override
+      public long getQueueWait99thPercentile()
+      {
+         return metrics.getQueueWait().getValueAtPercentile(99);
+      }
+
+      @Override
+      public double getCreateTimeMean()
+      {
+         return metrics.getCreateTime().getMean();
+      }
+
+      @Override
+      public double getCallTimeMean()
+      {
+         return metrics.getCallTime().getMean();
+      }
+
+      @Override
+      public long getCallTimeMedian()
+      {
+         return metrics.getCallTime().getValueAtPercentile(50);
+      }
+
+      @Override
+      public long getCallTime99thPercentile()
+      {
+         return metrics.getCallTime().getValueAtPercentile(99);
+      }
+
+      @Override
+      public long getCallTimeMax()
+      {
+         return metrics.getCallTime().getMax();
+      }
+
+      @Override
+      public double getOutputSizeMean()
+      {
+         return metrics.getOutputSize().getMean();
+      }
+   }
+}
@@ -0,0 +1,149 @@
+package edu.tamu.tcat.analytics.datatrax.basic;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import edu.tamu.tcat.analytics.datatrax.BufferExportable;
+import edu.tamu.tcat.analytics.datatrax.DataValueKey;
+
+/**
+ * A {@link ValueStore} that holds large {@link BufferExportable} values outside of the Java
+ * heap. Values whose export size is at least the configured threshold are written to a direct
+ * buffer or, if a directory is supplied, to a memory-mapped temporary file in that directory.
+ * Transformers that consume such a value receive a view created by the value's
+ * {@link BufferExportable.ViewFactory} over a read-only duplicate of the buffer, so the data
+ * is not copied back onto the heap. All other values are held on the heap.
+ *
+ * <p>
+ * Memory-mapped files are deleted once they have been mapped, so they do not outlive the
+ * process on platforms that allow open files to be deleted. The memory used by direct and
+ * mapped buffers is reclaimed once the buffer is no longer referenced. Note that the total
+ * size of direct buffers is limited by the JVM's {@code -XX:MaxDirectMemorySize} option.
+ */
+public class OffHeapValueStore implements ValueStore
+{
+   private static final Logger logger = Logger.getLogger(OffHeapValueStore.class.getName());
+
+   private final long threshold;
+   private final Path directory;
+
+   private final AtomicLong bytesStored = new AtomicLong();
+
+   /**
+    * Creates a store that holds large values in direct buffers.
+    *
+    * @param threshold The minimum export size, in bytes, of values to hold off-heap.
+    */
+   public OffHeapValueStore(long threshold)
+   {
+      this(threshold, null);
+   }
+
+   /**
+    * @param threshold The minimum export size, in bytes, of values to hold off-heap.
+    * @param directory The directory in which to create memory-mapped files or {@code null}
+    *       to use direct buffers.
+    */
+   public OffHeapValueStore(long threshold, Path directory)
+   {
+      if (threshold < 1)
+         throw new IllegalArgumentException("The off-heap threshold must be greater than zero [" + threshold + "]");
+
+      this.threshold = threshold;
+      this.directory = directory;
+   }
+
+   /**
+    * @return The number of bytes held off-heap by values that have not been released.
+    */
+   public long getBytesStored()
+   {
+      return bytesStored.get();
+   }
+
+   @Override
+   public Object store(DataValueKey key, Object value)
+   {
+      if (!(value instanceof BufferExportable) || value instanceof AutoCloseable)
+         return value;
+
+      BufferExportable exportable = (BufferExportable)value;
+      long size = exportable.getExportSize();
+      if (size < threshold || size > Integer.MAX_VALUE)
+         return value;
+
+      ByteBuffer buffer = allocate(key, (int)size);
+      if (buffer == null)
+         return value;
+
+      BufferExportable.ViewFactory factory = exportable.exportTo(buffer);
+      buffer.clear();
+
+      bytesStored.addAndGet(size);
+      return new StoredValue(buffer, factory);
+   }
+
+   @Override
+   public Object load(DataValueKey key, Object stored)
+   {
+      if (!(stored instanceof StoredValue))
+         return stored;
+
+      StoredValue sv = (StoredValue)stored;
+      return sv.factory.createView(sv.buffer.asReadOnlyBuffer());
+   }
+
+   @Override
+   public void release(DataValueKey key, Object stored)
+   {
+      if (stored instanceof StoredValue)
+         bytesStored.addAndGet(-((StoredValue)stored).buffer.capacity());
+   }
+
+   /**
+    * @return A buffer with the supplied capacity or {@code null} if the value should be held
+    *       on the heap.
+    */
+   private ByteBuffer allocate(DataValueKey key, int size)
+   {
+      if (directory == null)
+         return ByteBuffer.allocateDirect(size);
+
+      try
+      {
+         Path file = Files.createTempFile(directory, "datatrax-", ".value");
+         try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ, StandardOpenOption.WRITE, StandardOpenOption.DELETE_ON_CLOSE))
+         {
+            // the mapping remains valid after the channel is closed
+            return channel.map(FileChannel.MapMode.READ_WRITE, 0, size);
+         }
+      }
+      catch (IOException ex)
+      {
+         logger.log(Level.WARNING, "Failed to map a file for the value of [" + key + "] in [" + directory + "]. The value will be held on the heap.", ex);
+         return null;
+      }
+   }
+
+   /**
+    * The handle held in place of a value that has been moved off-heap.
+    */
+   private static final class StoredValue
+   {
+      private final ByteBuffer buffer;
+      private final BufferExportable.ViewFactory factory;
+
+      StoredValue(ByteBuffer buffer, BufferExportable.ViewFactory factory)
+      {
+         this.buffer = buffer;
+         this.factory = factory;
+      }
+   }
+}
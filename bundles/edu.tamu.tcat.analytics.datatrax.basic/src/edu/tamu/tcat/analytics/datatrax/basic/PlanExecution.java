@@ -0,0 +1,576 @@
+package edu.tamu.tcat.analytics.datatrax.basic;
+
+import java.text.MessageFormat;
+import java.util.Arrays;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import edu.tamu.tcat.analytics.datatrax.ContentDigest;
+import edu.tamu.tcat.analytics.datatrax.DataValueKey;
+import edu.tamu.tcat.analytics.datatrax.basic.WorkflowControllerImpl.TaskExecutionService;
+
+/**
+ * Holds the data values produced while processing a single input through a compiled
+ * {@link WorkflowPlan} and drives the execution of transformers as their inputs become
+ * available.
+ *
+ * <p>
+ * Values are stored in an array indexed by the plan's slots and each transformer has a
+ * counter of the inputs it is still waiting for. Supplying a value publishes it with a
+ * compare-and-set and decrements the counter of each consuming transformer. The thread
+ * that supplies a transformer's last input submits a {@link TransformerController} to run
+ * it. No locks are held and no keys are hashed on this path.
+ *
+ * <p>
+ * An execution may be recycled by a {@link PlanExecutionPool} so that processing an input
+ * does not require allocating new arrays. The execution counts references held by its owner
+ * and by each submitted transformer task. It is only reset and returned to the pool once
+ * the owner has {@link #close() closed} it and all submitted tasks have completed, so that
+ * a task that is still running cannot affect the processing of a subsequent input.
+ *
+ * <p>
+ * Lifecycle events for the transformers of the plan are recorded with the controller's
+ * {@link WorkflowEventDispatcher}, identified by a sequence number assigned to each input.
+ * If metrics are being collected, the time at which each transformer became ready to execute
+ * is recorded so that its queue wait can be measured.
+ *
+ * <p>
+ * Intermediate values and outputs are reference counted. Values whose
+ * {@link WorkflowPlan#releaseCounts release count} is non-zero are discarded as soon as every
+ * consuming transformer has completed and, for declared outputs, the value has been delivered
+ * to the output handler, rather than being retained until the execution is closed. This
+ * bounds the memory held by an input to the values that are still needed. Discarded values
+ * that are {@link AutoCloseable} are closed unless the same instance is still held by another
+ * slot.
+ *
+ * <p>
+ * An execution may be started with a {@link WorkflowPlan.Selection} so that only the
+ * transformers required to produce a subset of the declared outputs are run. Values are
+ * released on behalf of consumers that will not run and outputs that were not selected, so
+ * they are discarded as soon as the selected transformers no longer need them.
+ *
+ * <p>
+ * If a {@link ValueStore} is supplied, values that will be read by a transformer are held in
+ * the form returned by the store, and transformers receive the value that the store loads
+ * from it. Values that are only delivered as outputs are not passed to the store.
+ *
+ * <p>
+ * If a {@link TransformerCache} is supplied, the execution also tracks the key of each value:
+ * the content digest of the workflow input, the memoization key of a value produced (or
+ * reused) by a deterministic transformer or the {@link ContentDigest} of any other value.
+ * These are used to compute the memoization keys of deterministic transformers.
+ */
+final class PlanExecution
+{
+   private final static Logger logger = Logger.getLogger(PlanExecution.class.getName());
+
+   /** Marks a slot whose value has been supplied and subsequently discarded. */
+   private static final Object RELEASED = new Object();
+
+   private final WorkflowPlan plan;
+   private final TaskExecutionService exec;
+   private final WorkflowEventDispatcher events;
+   private final WorkflowMetricsImpl metrics;
+   private final ValueStore store;
+   private final TransformerCache transformerCache;
+   private final PlanExecutionPool pool;
+
+   private final AtomicReferenceArray<Object> values;
+   private final AtomicIntegerArray pending;
+
+   // the number of holders that have not yet released each slot's value
+   private final AtomicIntegerArray holders;
+
+   // the key identifying each slot's value, or null if outputs are not memoized
+   private final String[] valueKeys;
+
+   // the time at which each node was submitted, or null if metrics are not collected
+   private final long[] readyTimes;
+
+   // created on first use and reused when this execution is recycled
+   private final AtomicReferenceArray<TransformerController> controllers;
+
+   // references held by the owner and by submitted tasks
+   private final AtomicInteger refs = new AtomicInteger();
+
+   private OutputHandler outputHandler;
+   private long inputSeq;
+
+   // the outputs to produce and the nodes to execute, or null to execute the entire plan
+   private WorkflowPlan.Selection selection;
+   private volatile boolean canceled = false;
+
+   /**
+    * @param plan The plan to execute.
+    * @param exec The service to use to execute transformers.
+    * @param events The dispatcher with which to record lifecycle events.
+    * @param metrics The metrics to record or {@code null} if metrics are not collected.
+    * @param store The store in which to hold values or {@code null} to hold values on the heap.
+    * @param transformerCache The cache of memoized transformer outputs or {@code null} if
+    *       outputs are not memoized.
+    * @param pool The pool to which this execution should be returned once it has been
+    *       released. May be {@code null} if this execution should not be reused.
+    */
+   PlanExecution(WorkflowPlan plan, TaskExecutionService exec, WorkflowEventDispatcher events, WorkflowMetricsImpl metrics, ValueStore store, TransformerCache transformerCache, PlanExecutionPool pool)
+   {
+      this.plan = plan;
+      this.exec = exec;
+      this.events = events;
+      this.metrics = metrics;
+      this.store = store;
+      this.transformerCache = transformerCache;
+      this.pool = pool;
+
+      this.values = new AtomicReferenceArray<>(plan.size());
+      this.pending = new AtomicIntegerArray(plan.inputCounts);
+      this.holders = new AtomicIntegerArray(plan.releaseCounts);
+      this.controllers = new AtomicReferenceArray<>(plan.nodes.length);
+      this.readyTimes = (metrics == null) ? null : new long[plan.nodes.length];
+      this.valueKeys = (transformerCache == null) ? null : new String[plan.size()];
+   }
+
+   /**
+    * Prepares this execution to process an input. The caller holds a reference to this
+    * execution until it calls {@link #close()}.
+    *
+    * @param outputHandler Notified when the value of a declared output is supplied.
+    */
+   void activate(OutputHandler outputHandler)
+   {
+      this.outputHandler = outputHandler;
+      this.inputSeq = events.nextInputSeq();
+      this.canceled = false;
+      refs.set(1);
+   }
+
+   /**
+    * Supplies the workflow input. This returns once all transformers that depend only on
+    * the input have been submitted for execution.
+    *
+    * @param input The input data.
+    * @param digest The content digest of the input or {@code null} if it is not known.
+    * @param selection The outputs to produce or {@code null} to produce all declared outputs.
+    *       Transformers that are not required to produce the selected outputs are not run.
+    */
+   void start(Object input, String digest, WorkflowPlan.Selection selection)
+   {
+      this.selection = selection;
+
+      // a transformer may fail and cause the owner to close this execution before all
+      // transformers have been submitted, so hold a reference until submission is complete
+      refs.incrementAndGet();
+      try
+      {
+         put(plan.inputSlot, input, digest);
+         for (WorkflowPlan.Node node : plan.nodes)
+         {
+            if (node.inputSlots.length == 0 && isSelected(node.index))
+               submit(node);
+         }
+      }
+      finally
+      {
+         release();
+      }
+   }
+
+   /**
+    * @param slot The slot to retrieve.
+    * @return The value that has been supplied for the slot or {@code null} if no value has
+    *       been supplied or the value has been discarded.
+    */
+   Object get(int slot)
+   {
+      Object value = values.get(slot);
+      if (value == RELEASED)
+         return null;
+
+      return (store == null || value == null) ? value : store.load(plan.keys[slot], value);
+   }
+
+   /**
+    * Supplies the value for a slot. Duplicate values are ignored.
+    *
+    * @param slot The slot of the value.
+    * @param value The value. Must be an instance of the type of the slot's key.
+    * @param valueKey The key that identifies the value for memoization or {@code null} to use
+    *       the value's {@link ContentDigest}, if any.
+    * @throws IllegalArgumentException If the value is {@code null} or is not of the expected
+    *       type.
+    */
+   void put(int slot, Object value, String valueKey)
+   {
+      DataValueKey key = plan.keys[slot];
+      checkValueType(key, value);
+
+      Object stored = (store == null || plan.consumers[slot].length == 0) ? value : store.store(key, value);
+      if (!values.compareAndSet(slot, null, stored))
+      {
+         logger.warning("Attempt to supply duplicate value for key [" + key + "]. The supplied value [" + value + "] was ignored.");
+         return;
+      }
+
+      // published to consumers by the decrement of their pending counts
+      if (valueKeys != null)
+         valueKeys[slot] = (valueKey == null && value instanceof ContentDigest) ? ((ContentDigest)value).getContentDigest() : valueKey;
+
+      for (int ix : plan.consumers[slot])
+      {
+         if (!isSelected(ix))
+         {
+            // the consumer will not run, so it does not hold the value
+            releaseValue(slot);
+            continue;
+         }
+
+         events.emit(WorkflowEventDispatcher.DATA_AVAILABLE, inputSeq, ix, null);
+         if (pending.decrementAndGet(ix) == 0)
+            submit(plan.nodes[ix]);
+      }
+
+      if (plan.outputs[slot] && selection != null && !selection.outputs[slot])
+      {
+         releaseValue(slot);
+      }
+      else if (plan.outputs[slot])
+      {
+         try
+         {
+            outputHandler.outputAvailable(slot, key, value);
+         }
+         finally
+         {
+            releaseValue(slot);
+         }
+      }
+   }
+
+   private boolean isSelected(int node)
+   {
+      return selection == null || selection.nodes[node];
+   }
+
+   /**
+    * @param node A transformer's node.
+    * @return The key under which the transformer's output is memoized or {@code null} if the
+    *       output is not memoized, either because the transformer is not deterministic or
+    *       because one of its inputs has no key.
+    */
+   String getMemoKey(WorkflowPlan.Node node)
+   {
+      if (valueKeys == null || node.memoKey == null)
+         return null;
+
+      StableHash hash = new StableHash().add(node.memoKey);
+      for (int i = 0; i < node.labels.length; i++)
+      {
+         String inputKey = valueKeys[node.inputSlots[i]];
+         if (inputKey == null)
+            return null;
+
+         hash.add(node.labels[i]).add(inputKey);
+      }
+
+      return hash.finish();
+   }
+
+   /**
+    * @param memoKey A key returned by {@link #getMemoKey(WorkflowPlan.Node)}.
+    * @return The memoized output or {@code null} if no output has been memoized.
+    */
+   Object getMemoized(String memoKey)
+   {
+      return transformerCache.get(memoKey);
+   }
+
+   /**
+    * @param memoKey A key returned by {@link #getMemoKey(WorkflowPlan.Node)}.
+    * @param value The output of the transformer.
+    */
+   void memoize(String memoKey, Object value)
+   {
+      transformerCache.put(memoKey, value);
+   }
+
+   /**
+    * Called by a {@link TransformerController} once it will no longer read its inputs.
+    *
+    * @param node The transformer's node.
+    */
+   void inputsConsumed(WorkflowPlan.Node node)
+   {
+      for (int slot : node.inputSlots)
+      {
+         releaseValue(slot);
+      }
+   }
+
+   /**
+    * Releases one holder of a slot's value. The value is discarded once all holders have
+    * released it.
+    */
+   private void releaseValue(int slot)
+   {
+      if (plan.releaseCounts[slot] == 0 || holders.decrementAndGet(slot) != 0)
+         return;
+
+      clearValue(slot, RELEASED);
+   }
+
+   /**
+    * @return {@code true} if the value is held by another slot, for example because a
+    *       transformer returned one of its inputs as its result. Must be called while
+    *       synchronized on {@link #values}.
+    */
+   private boolean isRetained(Object value)
+   {
+      for (int i = 0; i < values.length(); i++)
+      {
+         if (values.get(i) == value)
+            return true;
+      }
+
+      return false;
+   }
+
+   private void submit(WorkflowPlan.Node node)
+   {
+      if (canceled)
+      {
+         // the transformer will not run, so it no longer holds its inputs
+         inputsConsumed(node);
+         return;
+      }
+
+      TransformerController controller = controllers.get(node.index);
+      if (controller == null)
+      {
+         controller = new TransformerController(node, this);
+         controllers.set(node.index, controller);
+      }
+
+      events.emit(WorkflowEventDispatcher.ACTIVATE, inputSeq, node.index, null);
+      if (readyTimes != null)
+         readyTimes[node.index] = System.nanoTime();
+
+      refs.incrementAndGet();
+      try
+      {
+         exec.execute(controller);
+      }
+      catch (Exception e)
+      {
+         logger.log(Level.SEVERE, "Transformer execution failed for [" + node.transformer + "]", e);
+         release();
+      }
+   }
+
+   /**
+    * Records a lifecycle event for a transformer of this execution.
+    *
+    * @param action One of the action constants defined by {@link WorkflowEventDispatcher}.
+    * @param node The transformer's node.
+    * @param error The error for failure events, otherwise {@code null}.
+    */
+   void emit(int action, WorkflowPlan.Node node, Throwable error)
+   {
+      events.emit(action, inputSeq, node.index, error);
+   }
+
+   /**
+    * @param node A transformer's node.
+    * @return The metrics for the transformer or {@code null} if metrics are not collected.
+    */
+   WorkflowMetricsImpl.TransformerMetricsImpl getMetrics(WorkflowPlan.Node node)
+   {
+      return (metrics == null) ? null : metrics.get(node.index);
+   }
+
+   /**
+    * @param node A transformer's node.
+    * @return The value of {@link System#nanoTime()} at which the transformer was submitted
+    *       for execution. Only available if metrics are collected.
+    */
+   long getReadyTime(WorkflowPlan.Node node)
+   {
+      return readyTimes[node.index];
+   }
+
+   /**
+    * Called by a {@link TransformerController} if its transformer fails. The transformer's
+    * output will never be supplied, so transformers that have not yet started are cancelled
+    * and the output handler is notified so that processing of the input can complete.
+    *
+    * @param node The transformer's node.
+    * @param ex The reason the transformer failed.
+    */
+   void failed(WorkflowPlan.Node node, Exception ex)
+   {
+      canceled = true;
+      outputHandler.transformerFailed(node, ex);
+   }
+
+   /**
+    * Called by a {@link TransformerController} once it has finished running.
+    */
+   void taskCompleted()
+   {
+      release();
+   }
+
+   private void release()
+   {
+      if (refs.decrementAndGet() != 0)
+         return;
+
+      closeValues();
+      outputHandler = null;
+      selection = null;
+      if (pool != null)
+      {
+         for (int i = 0; i < plan.inputCounts.length; i++)
+         {
+            pending.set(i, plan.inputCounts[i]);
+         }
+
+         for (int i = 0; i < plan.releaseCounts.length; i++)
+         {
+            holders.set(i, plan.releaseCounts[i]);
+         }
+
+         if (valueKeys != null)
+            Arrays.fill(valueKeys, null);
+
+         pool.recycle(this);
+      }
+   }
+
+   /**
+    * Checks a value produced by a transformer. Transformers must supply a value for their
+    * output, so {@code null} is rejected along with values of the wrong type.
+    *
+    * @throws IllegalArgumentException If the value is {@code null} or is not an instance of
+    *       the type of the key.
+    */
+   static void checkValueType(DataValueKey key, Object value)
+   {
+      if (value == null)
+      {
+         String msg = "Invalid value for [" + key + "]. No value was supplied.";
+         logger.warning(msg);
+         throw new IllegalArgumentException(msg);
+      }
+
+      if (!key.getType().isInstance(value))
+      {
+         String errMsg = "Invalid value for [{0}]. Value type [{1}] does not match expected type [{2}]";
+         String msg = MessageFormat.format(errMsg, key, value.getClass(), key.getType());
+
+         logger.warning(msg);
+         throw new IllegalArgumentException(msg);
+      }
+   }
+
+   /**
+    * Cancels this execution. Transformers that have not yet started will not be run.
+    */
+   void cancel()
+   {
+      canceled = true;
+   }
+
+   boolean isCanceled()
+   {
+      return canceled;
+   }
+
+   /**
+    * Cancels this execution and interrupts the threads of any transformers that are running.
+    * Must be called by the owner before it {@link #close() closes} this execution.
+    */
+   void interrupt()
+   {
+      canceled = true;
+      for (int i = 0; i < controllers.length(); i++)
+      {
+         TransformerController controller = controllers.get(i);
+         if (controller != null)
+            controller.interrupt();
+      }
+   }
+
+   /**
+    * Releases the owner's reference to this execution. Once all submitted transformer tasks
+    * have completed, any supplied values that are {@link AutoCloseable} will be closed and
+    * this execution will be returned to its pool.
+    */
+   void close()
+   {
+      release();
+   }
+
+   private void closeValues()
+   {
+      for (int i = 0; i < values.length(); i++)
+      {
+         clearValue(i, null);
+      }
+   }
+
+   /**
+    * Removes a slot's value, releases it from the store and closes it once no other slot
+    * holds it.
+    */
+   private void clearValue(int slot, Object marker)
+   {
+      Object value;
+      boolean retained = false;
+      if (values.get(slot) instanceof AutoCloseable)
+      {
+         // serialized so that only the last of several slots holding the same value closes it
+         synchronized (values)
+         {
+            value = values.getAndSet(slot, marker);
+            retained = isRetained(value);
+         }
+      }
+      else
+      {
+         value = values.getAndSet(slot, marker);
+      }
+
+      if (value == null || value == RELEASED)
+         return;
+
+      // values that are only delivered as outputs were not passed to the store
+      if (store != null && plan.consumers[slot].length > 0)
+         store.release(plan.keys[slot], value);
+
+      if (retained || !(value instanceof AutoCloseable))
+         return;
+
+      try
+      {
+         ((AutoCloseable)value).close();
+      }
+      catch (Exception ex)
+      {
+         logger.log(Level.WARNING, "Failed to close value for key [" + plan.keys[slot] + "]", ex);
+      }
+   }
+
+   /**
+    * Notified when the value of a declared workflow output is supplied or a transformer
+    * fails. The value may be discarded once {@link #outputAvailable(int, DataValueKey, Object)}
+    * returns.
+    */
+   interface OutputHandler
+   {
+      void outputAvailable(int slot, DataValueKey key, Object value);
+
+      void transformerFailed(WorkflowPlan.Node node, Exception ex);
+   }
+}
@@ -0,0 +1,65 @@
+package edu.tamu.tcat.analytics.datatrax.basic;
+
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+
+import edu.tamu.tcat.analytics.datatrax.basic.WorkflowControllerImpl.TaskExecutionService;
+
+/**
+ * Recycles the {@link PlanExecution}s used to process individual inputs to a workflow. Since
+ * a {@link WorkflowControllerImpl} limits the number of inputs that are in process at any time,
+ * a small pool is sufficient to avoid allocating per-input state in the steady state.
+ */
+final class PlanExecutionPool
+{
+   private final WorkflowPlan plan;
+   private final TaskExecutionService exec;
+   private final WorkflowEventDispatcher events;
+   private final WorkflowMetricsImpl metrics;
+   private final ValueStore store;
+   private final TransformerCache transformerCache;
+   private final BlockingQueue<PlanExecution> idle;
+
+   /**
+    * @param plan The plan to be executed.
+    * @param exec The service to use to execute transformers.
+    * @param events The dispatcher with which to record lifecycle events.
+    * @param metrics The metrics to record or {@code null} if metrics are not collected.
+    * @param store The store in which to hold values or {@code null} to hold values on the heap.
+    * @param transformerCache The cache of memoized transformer outputs or {@code null} if
+    *       outputs are not memoized.
+    * @param capacity The maximum number of idle executions to retain.
+    */
+   PlanExecutionPool(WorkflowPlan plan, TaskExecutionService exec, WorkflowEventDispatcher events, WorkflowMetricsImpl metrics, ValueStore store, TransformerCache transformerCache, int capacity)
+   {
+      this.plan = plan;
+      this.exec = exec;
+      this.events = events;
+      this.metrics = metrics;
+      this.store = store;
+      this.transformerCache = transformerCache;
+      this.idle = new ArrayBlockingQueue<>(capacity);
+   }
+
+   /**
+    * @param outputHandler Notified when the value of a declared output is supplied.
+    * @return An activated execution. This will be a recycled execution if one is available.
+    */
+   PlanExecution acquire(PlanExecution.OutputHandler outputHandler)
+   {
+      PlanExecution execution = idle.poll();
+      if (execution == null)
+         execution = new PlanExecution(plan, exec, events, metrics, store, transformerCache, this);
+
+      execution.activate(outputHandler);
+      return execution;
+   }
+
+   /**
+    * Returns a released execution to the pool. If the pool is full, the execution is discarded.
+    */
+   void recycle(PlanExecution execution)
+   {
+      idle.offer(execution);
+   }
+}
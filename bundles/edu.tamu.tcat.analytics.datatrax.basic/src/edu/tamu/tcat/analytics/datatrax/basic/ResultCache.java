@@ -0,0 +1,271 @@
+package edu.tamu.tcat.analytics.datatrax.basic;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.io.OutputStream;
+import java.io.Serializable;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.UUID;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import edu.tamu.tcat.analytics.datatrax.ContentDigest;
+import edu.tamu.tcat.analytics.datatrax.DataValueKey;
+import edu.tamu.tcat.analytics.datatrax.config.DataInputPin;
+import edu.tamu.tcat.analytics.datatrax.config.TransformerConfiguration;
+import edu.tamu.tcat.analytics.datatrax.config.WorkflowConfiguration;
+
+/**
+ * Caches the declared outputs produced by a workflow for inputs that supply a
+ * {@link ContentDigest}. Results are keyed by a hash of the workflow's configuration (its id
+ * and, for each transformer, the registration, parameters and connected inputs) and the digest
+ * of the input, so that changing the configuration of a workflow does not reuse results that
+ * were produced by the previous configuration.
+ *
+ * <p>
+ * Entries are held in memory in least-recently-used order up to a maximum number of entries
+ * and expire after an optional time to live. If a directory is supplied, entries whose values
+ * are all {@link Serializable} are also written to that directory and are read back when they
+ * are not found in memory. Entries on disk are removed once they are found to have expired.
+ * The directory may be shared by several workflows.
+ *
+ * <p>
+ * Outputs are keyed by the id of the transformer that produced them rather than by their slot
+ * in the {@link WorkflowPlan}, so that entries written by one controller (or process) can be
+ * read by any other controller for the same configuration.
+ */
+final class ResultCache
+{
+   private static final Logger logger = Logger.getLogger(ResultCache.class.getName());
+
+   private static final String FILE_SUFFIX = ".results";
+
+   private final String workflowKey;
+   private final int maxEntries;
+   private final long ttlMillis;
+   private final Path directory;
+
+   // guarded by this
+   private final LinkedHashMap<String, CachedResult> entries;
+
+   /**
+    * @param config The configuration of the workflow whose results are cached.
+    * @param maxEntries The maximum number of entries to hold in memory.
+    * @param ttlMillis The time to live of entries, in milliseconds, or zero if entries do
+    *       not expire.
+    * @param directory The directory in which to store entries or {@code null} if entries
+    *       should only be held in memory.
+    * @throws IllegalArgumentException If a transformer parameter does not have a canonical
+    *       form, so that the configuration cannot be reliably identified.
+    */
+   ResultCache(WorkflowConfiguration config, int maxEntries, long ttlMillis, Path directory)
+   {
+      this.workflowKey = computeWorkflowKey(config);
+      this.maxEntries = maxEntries;
+      this.ttlMillis = ttlMillis;
+      this.directory = directory;
+      this.entries = new LinkedHashMap<String, CachedResult>(16, 0.75f, true)
+      {
+         private static final long serialVersionUID = 1L;
+
+         @Override
+         protected boolean removeEldestEntry(Map.Entry<String, CachedResult> eldest)
+         {
+            return size() > ResultCache.this.maxEntries;
+         }
+      };
+   }
+
+   private static String computeWorkflowKey(WorkflowConfiguration config)
+   {
+      StableHash hash = new StableHash();
+      hash.add(String.valueOf(config.getId()));
+      config.getTransformers().stream()
+            .sorted(Comparator.comparing(TransformerConfiguration::getId))
+            .forEach(cfg -> {
+               hash.add(String.valueOf(cfg.getId()));
+               hash.add(cfg.getRegistration().getId());
+               cfg.getDefinedParameters().stream()
+                     .sorted()
+                     .forEach(param -> hash.add(param).addValue(cfg.getParameter(param)));
+               cfg.getDefinedInputs().stream()
+                     .sorted(Comparator.comparing((DataInputPin pin) -> pin.label))
+                     .forEach(pin -> hash.add(pin.label).add(String.valueOf(cfg.getDataSource(pin))));
+            });
+
+      config.getDeclaredOutputs().stream()
+            .map(DataValueKey::getSourceId)
+            .sorted()
+            .forEach(id -> hash.add(String.valueOf(id)));
+
+      return hash.finish();
+   }
+
+   /**
+    * @param digest The {@link ContentDigest} of an input.
+    * @return The cache key for the input.
+    */
+   String keyFor(String digest)
+   {
+      return new StableHash().add(workflowKey).add(digest).finish();
+   }
+
+   /**
+    * @param key A key returned by {@link #keyFor(String)}.
+    * @return The values of the cached outputs, keyed by the id of the transformer that
+    *       produced them, or {@code null} if no unexpired entry is cached.
+    */
+   Map<UUID, Object> get(String key)
+   {
+      long now = System.currentTimeMillis();
+      synchronized (this)
+      {
+         CachedResult entry = entries.get(key);
+         if (entry != null)
+         {
+            if (!isExpired(entry.created, now))
+               return entry.values;
+
+            entries.remove(key);
+         }
+      }
+
+      if (directory == null)
+         return null;
+
+      CachedResult entry = read(key, now);
+      if (entry == null)
+         return null;
+
+      synchronized (this)
+      {
+         entries.put(key, entry);
+      }
+
+      return entry.values;
+   }
+
+   /**
+    * Caches the outputs produced for an input.
+    *
+    * @param key A key returned by {@link #keyFor(String)}.
+    * @param values The values of the outputs, keyed by the id of the transformer that
+    *       produced them.
+    */
+   void put(String key, Map<UUID, Object> values)
+   {
+      CachedResult entry = new CachedResult(values, System.currentTimeMillis());
+      synchronized (this)
+      {
+         entries.put(key, entry);
+      }
+
+      if (directory != null && isSerializable(values))
+         write(key, values);
+   }
+
+   private boolean isExpired(long created, long now)
+   {
+      return ttlMillis > 0 && now - created > ttlMillis;
+   }
+
+   private static boolean isSerializable(Map<UUID, Object> values)
+   {
+      for (Object value : values.values())
+      {
+         if (value != null && !(value instanceof Serializable))
+            return false;
+      }
+
+      return true;
+   }
+
+   private CachedResult read(String key, long now)
+   {
+      Path file = directory.resolve(key + FILE_SUFFIX);
+      try
+      {
+         long created = Files.getLastModifiedTime(file).toMillis();
+         if (isExpired(created, now))
+         {
+            Files.deleteIfExists(file);
+            return null;
+         }
+
+         try (InputStream in = Files.newInputStream(file);
+              ObjectInputStream ois = new ObjectInputStream(in))
+         {
+            @SuppressWarnings("unchecked") // written by #write
+            Map<UUID, Object> values = (Map<UUID, Object>)ois.readObject();
+            return new CachedResult(values, created);
+         }
+      }
+      catch (NoSuchFileException ex)
+      {
+         return null;
+      }
+      catch (IOException | ClassNotFoundException | ClassCastException ex)
+      {
+         logger.log(Level.WARNING, "Failed to read cached workflow results [" + file + "].", ex);
+         return null;
+      }
+   }
+
+   private void write(String key, Map<UUID, Object> values)
+   {
+      Path file = directory.resolve(key + FILE_SUFFIX);
+      Path tmp = null;
+      try
+      {
+         // write to a temporary file so that readers never see a partial entry
+         tmp = Files.createTempFile(directory, key, ".tmp");
+         try (OutputStream out = Files.newOutputStream(tmp);
+              ObjectOutputStream oos = new ObjectOutputStream(out))
+         {
+            oos.writeObject(values);
+         }
+
+         Files.move(tmp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+      }
+      catch (IOException ex)
+      {
+         logger.log(Level.WARNING, "Failed to write cached workflow results [" + file + "].", ex);
+         deleteQuietly(tmp);
+      }
+   }
+
+   private static void deleteQuietly(Path file)
+   {
+      if (file == null)
+         return;
+
+      try
+      {
+         Files.deleteIfExists(file);
+      }
+      catch (IOException ex)
+      {
+         logger.log(Level.FINE, "Failed to delete temporary file [" + file + "].", ex);
+      }
+   }
+
+   private static final class CachedResult
+   {
+      private final Map<UUID, Object> values;
+      private final long created;
+
+      CachedResult(Map<UUID, Object> values, long created)
+      {
+         this.values = values;
+         this.created = created;
+      }
+   }
+}
@@ -0,0 +1,245 @@
+package edu.tamu.tcat.analytics.datatrax.basic;
+
+import java.io.ByteArrayOutputStream;
+import java.lang.reflect.Array;
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
+
+/**
+ * Computes a SHA-256 hash of a sequence of values that is stable across JVM instances, so that
+ * it may be used to identify cached results.
+ *
+ * <p>
+ * Values are hashed using a canonical binary encoding. Each value is written with a tag that
+ * identifies its kind, strings are prefixed with their length and collections with their size,
+ * so no two distinct sequences of values share an encoding. The entries of maps and the
+ * elements of sets are sorted by their encoding; lists and arrays are encoded in order.
+ * Only strings, primitive wrappers, {@link BigInteger}, {@link BigDecimal}, {@link UUID},
+ * enum constants, classes and maps, lists, sets and arrays of these have a canonical form.
+ * Other values are rejected rather than represented by their {@link Object#toString()}, which
+ * need not distinguish between values that are not equal.
+ */
+final class StableHash
+{
+   private static final char[] HEX = "0123456789abcdef".toCharArray();
+
+   private static final byte NULL = 0;
+   private static final byte STRING = 1;
+   private static final byte SCALAR = 2;
+   private static final byte ENUM = 3;
+   private static final byte CLASS = 4;
+   private static final byte MAP = 5;
+   private static final byte LIST = 6;
+   private static final byte SET = 7;
+   private static final byte ARRAY = 8;
+
+   private final MessageDigest digest;
+
+   StableHash()
+   {
+      try
+      {
+         digest = MessageDigest.getInstance("SHA-256");
+      }
+      catch (NoSuchAlgorithmException e)
+      {
+         // all Java platforms are required to support SHA-256
+         throw new IllegalStateException("SHA-256 is not supported.", e);
+      }
+   }
+
+   /**
+    * Adds a string to the hash. Strings are prefixed with their length so that adjacent
+    * values cannot be confused with a single value.
+    */
+   StableHash add(String value)
+   {
+      Encoder encoder = new Encoder();
+      encoder.writeString(String.valueOf(value));
+      encoder.writeTo(digest);
+      return this;
+   }
+
+   /**
+    * Adds the canonical form of a value to the hash.
+    *
+    * @throws IllegalArgumentException If the value, or a value that it contains, does not have
+    *       a canonical form. The hash must not be used once this has been thrown.
+    */
+   StableHash addValue(Object value) throws IllegalArgumentException
+   {
+      Encoder encoder = new Encoder();
+      encoder.writeValue(value);
+      encoder.writeTo(digest);
+      return this;
+   }
+
+   /**
+    * @return The hexadecimal representation of the hash. No further values may be added.
+    */
+   String finish()
+   {
+      byte[] bytes = digest.digest();
+      char[] chars = new char[bytes.length * 2];
+      for (int i = 0; i < bytes.length; i++)
+      {
+         chars[i * 2] = HEX[(bytes[i] >> 4) & 0xF];
+         chars[i * 2 + 1] = HEX[bytes[i] & 0xF];
+      }
+
+      return new String(chars);
+   }
+
+   /**
+    * @return {@code true} if values of the supplied type are encoded by their type and
+    *       {@link Object#toString()}, which is well-defined for these types.
+    */
+   private static boolean isScalar(Object value)
+   {
+      return value instanceof Boolean || value instanceof Character
+            || value instanceof Byte || value instanceof Short || value instanceof Integer || value instanceof Long
+            || value instanceof Float || value instanceof Double
+            || value instanceof BigInteger || value instanceof BigDecimal
+            || value instanceof UUID;
+   }
+
+   /**
+    * Compares encodings as unsigned byte sequences.
+    */
+   private static int compare(byte[] a, byte[] b)
+   {
+      int length = Math.min(a.length, b.length);
+      for (int i = 0; i < length; i++)
+      {
+         int diff = (a[i] & 0xFF) - (b[i] & 0xFF);
+         if (diff != 0)
+            return diff;
+      }
+
+      return a.length - b.length;
+   }
+
+   private static final class Encoder extends ByteArrayOutputStream
+   {
+      void writeTo(MessageDigest digest)
+      {
+         digest.update(buf, 0, count);
+      }
+
+      void writeInt(int value)
+      {
+         write(value >>> 24);
+         write(value >>> 16);
+         write(value >>> 8);
+         write(value);
+      }
+
+      void writeString(String value)
+      {
+         byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+         writeInt(bytes.length);
+         write(bytes, 0, bytes.length);
+      }
+
+      void writeValue(Object value)
+      {
+         if (value == null)
+         {
+            write(NULL);
+         }
+         else if (value instanceof String)
+         {
+            write(STRING);
+            writeString((String)value);
+         }
+         else if (isScalar(value))
+         {
+            write(SCALAR);
+            writeString(value.getClass().getName());
+            writeString(value.toString());
+         }
+         else if (value instanceof Enum)
+         {
+            write(ENUM);
+            writeString(((Enum<?>)value).getDeclaringClass().getName());
+            writeString(((Enum<?>)value).name());
+         }
+         else if (value instanceof Class)
+         {
+            write(CLASS);
+            writeString(((Class<?>)value).getName());
+         }
+         else if (value instanceof Map)
+         {
+            List<byte[]> entries = new ArrayList<>();
+            for (Map.Entry<?, ?> entry : ((Map<?, ?>)value).entrySet())
+            {
+               Encoder encoder = new Encoder();
+               encoder.writeValue(entry.getKey());
+               encoder.writeValue(entry.getValue());
+               entries.add(encoder.toByteArray());
+            }
+
+            write(MAP);
+            writeSorted(entries);
+         }
+         else if (value instanceof List)
+         {
+            List<?> list = (List<?>)value;
+            write(LIST);
+            writeInt(list.size());
+            for (Object element : list)
+            {
+               writeValue(element);
+            }
+         }
+         else if (value instanceof Set)
+         {
+            List<byte[]> elements = new ArrayList<>();
+            for (Object element : (Collection<?>)value)
+            {
+               Encoder encoder = new Encoder();
+               encoder.writeValue(element);
+               elements.add(encoder.toByteArray());
+            }
+
+            write(SET);
+            writeSorted(elements);
+         }
+         else if (value.getClass().isArray())
+         {
+            int length = Array.getLength(value);
+            write(ARRAY);
+            writeString(value.getClass().getComponentType().getName());
+            writeInt(length);
+            for (int i = 0; i < length; i++)
+            {
+               writeValue(Array.get(value, i));
+            }
+         }
+         else
+         {
+            throw new IllegalArgumentException("Values of type [" + value.getClass().getName() + "] do not have a canonical form.");
+         }
+      }
+
+      private void writeSorted(List<byte[]> encodings)
+      {
+         encodings.sort(StableHash::compare);
+         writeInt(encodings.size());
+         for (byte[] encoding : encodings)
+         {
+            write(encoding, 0, encoding.length);
+         }
+      }
+   }
+}
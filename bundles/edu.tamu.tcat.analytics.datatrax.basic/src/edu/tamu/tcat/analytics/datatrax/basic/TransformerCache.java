@@ -0,0 +1,100 @@
+package edu.tamu.tcat.analytics.datatrax.basic;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import edu.tamu.tcat.analytics.datatrax.ContentDigest;
+import edu.tamu.tcat.analytics.datatrax.TransformerRegistration;
+
+/**
+ * Memoizes the outputs of {@link TransformerRegistration#isDeterministic() deterministic}
+ * transformers so that workflows that apply the same transformer, with the same configuration,
+ * to the same inputs can reuse its output rather than executing it again. A cache may be
+ * shared by several {@link WorkflowControllerImpl}s using
+ * {@link WorkflowControllerSettings#transformerCache}, so that workflows with a common prefix
+ * reuse each other's intermediate results.
+ *
+ * <p>
+ * Outputs are keyed by the transformer's registration id, its
+ * {@link edu.tamu.tcat.analytics.datatrax.Transformer#getConfiguration() configuration} and
+ * the keys of its input values. The key of a workflow input is its {@link ContentDigest}. The
+ * key of a value produced by a memoized transformer is the key under which it was memoized,
+ * and the key of any other value is its {@code ContentDigest}, if it implements that interface.
+ * Transformers with an input that has no key are executed normally.
+ *
+ * <p>
+ * Cached outputs are supplied to every transformer and results collector that receives them,
+ * so they must not be modified. Outputs that are {@link AutoCloseable} are not cached. Entries
+ * are evicted in least-recently-used order once the cache holds its maximum number of entries.
+ */
+public class TransformerCache
+{
+   private final int maxEntries;
+
+   // guarded by this
+   private final LinkedHashMap<String, Object> entries;
+
+   /**
+    * @param maxEntries The maximum number of outputs to cache. Must be greater than zero.
+    */
+   public TransformerCache(int maxEntries)
+   {
+      if (maxEntries < 1)
+         throw new IllegalArgumentException("The maximum number of cached outputs must be greater than zero [" + maxEntries + "]");
+
+      this.maxEntries = maxEntries;
+      this.entries = new LinkedHashMap<String, Object>(16, 0.75f, true)
+      {
+         private static final long serialVersionUID = 1L;
+
+         @Override
+         protected boolean removeEldestEntry(Map.Entry<String, Object> eldest)
+         {
+            return size() > TransformerCache.this.maxEntries;
+         }
+      };
+   }
+
+   /**
+    * @return The number of outputs that are currently cached.
+    */
+   public synchronized int size()
+   {
+      return entries.size();
+   }
+
+   /**
+    * Removes all cached outputs.
+    */
+   public synchronized void clear()
+   {
+      entries.clear();
+   }
+
+   /**
+    * @param key The key computed for a transformer's execution.
+    * @return The cached output or {@code null} if no output is cached.
+    */
+   synchronized Object get(String key)
+   {
+      return entries.get(key);
+   }
+
+   /**
+    * Caches the output of a transformer's execution. Outputs that are {@link AutoCloseable}
+    * are ignored.
+    *
+    * @param key The key computed for a transformer's execution.
+    * @param value The output of the transformer.
+    */
+   void put(String key, Object value)
+   {
+      if (value == null || value instanceof AutoCloseable)
+         return;
+
+      synchronized (this)
+      {
+         entries.put(key, value);
+      }
+   }
+}
@@ -1,283 +1,346 @@
 package edu.tamu.tcat.analytics.datatrax.basic;
 
-import java.util.HashMap;
-import java.util.Map;
-import java.util.Objects;
-import java.util.Set;
-import java.util.UUID;
 import java.util.concurrent.Callable;
-import java.util.concurrent.ConcurrentHashMap;
-import java.util.concurrent.atomic.AtomicBoolean;
-import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.CompletionStage;
+import java.util.concurrent.ExecutionException;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 
-import edu.tamu.tcat.analytics.datatrax.DataValueKey;
+import edu.tamu.tcat.analytics.datatrax.AsyncTransformer;
 import edu.tamu.tcat.analytics.datatrax.Transformer;
 import edu.tamu.tcat.analytics.datatrax.TransformerContext;
-import edu.tamu.tcat.analytics.datatrax.basic.WorkflowExecutionContext.DataAvailableEvent;
 import edu.tamu.tcat.analytics.datatrax.basic.WorkflowControllerImpl.TaskExecutionService;
-import edu.tamu.tcat.analytics.datatrax.config.DataInputPin;
-import edu.tamu.tcat.analytics.datatrax.config.TransformerConfiguration;
 
 /**
- * Manages the execution lifecycle of an individual {@link Transformer}. This controller is 
- * notified when new data values become available (via {@link #dataAvailable(DataValueKey, Object)}.
- * Once all data input values that have been stitched to input pins of the managed 
- * {@code Transformer} have been supplied, it will submit a {@link Runnable} to the 
- * {@link TaskExecutionService} for execution. Upon completion, it will provide the results
- * of the data transformation to the supplied {@link WorkflowExecutionContext}. 
- * 
+ * Manages the execution of an individual {@link Transformer} for a single workflow input.
+ * A {@link PlanExecution} creates a {@code TransformerController} once all data inputs that
+ * have been stitched to input pins of the managed {@code Transformer} have been supplied and
+ * submits it to the {@link TaskExecutionService} for execution. Upon completion, the
+ * controller provides the result of the data transformation to the {@code PlanExecution}.
+ * Controllers are reused when the {@code PlanExecution} that owns them is recycled.
+ *
  * <p>
- * The {@code TransformerController} is intended only for internal use by the DataTrax 
- * framework implementation. Specifically, the {@link WorkflowExecutor} creates a 
- * {@code TransformerController} for each configured {@code Transformer} and 
- * registers them as listeners on the {@code ExecutionContext}.
+ * The controller also serves as the {@link TransformerContext} for the transformer. Input
+ * values are read directly from the execution's slots using the indices that were resolved
+ * when the {@link WorkflowPlan} was compiled.
+ *
+ * <p>
+ * If the transformer is an {@link AsyncTransformer}, the task thread is released once the
+ * transformer's task has returned its {@link CompletionStage}. The result is supplied to the
+ * {@code PlanExecution} by the thread that completes the stage, and the transformer's inputs
+ * are held until then.
+ *
+ * <p>
+ * The {@code TransformerController} is intended only for internal use by the DataTrax
+ * framework implementation.
  */
-public class TransformerController 
+public class TransformerController implements Runnable, TransformerContext
 {
-   // NOTE: Lifecycle events to notify on: 
-   //          activate, dataAvailable, beforeExecution, completion, error
-   
+   // NOTE: Lifecycle events are recorded with the execution: activate and dataAvailable
+   //       when inputs are supplied, beforeExecution, completion and error here.
+
    private static final Logger logger = Logger.getLogger(TransformerController.class.getName());
-   
-   private DataInputMap inputs = new DataInputMap();
 
-   private final UUID id;
-   
-   private final Transformer transformer;
-   private final TaskExecutionService exec;
-   private final WorkflowExecutionContext context;
-   
-   /* The task to be run. Will be set to null after submission to executor */ 
-   private TransformerExecutionTask task = new TransformerExecutionTask();
+   private final WorkflowPlan.Node node;
+   private final PlanExecution execution;
+   private final WorkflowMetricsImpl.TransformerMetricsImpl metrics;
+
+   // the thread running the transformer and whether it has been interrupted, guarded by this
+   private Thread runner;
+   private boolean interrupted;
 
-   private final SimpleDataValueKey resultKey;
-   private AutoCloseable listenerRegistration;
+   // the stage returned by an asynchronous transformer that has not yet completed, guarded by this
+   private CompletionStage<?> pendingStage;
 
-   private final AtomicBoolean canceled = new AtomicBoolean(false);
-   private final AtomicInteger ct;
+   // the time at which an asynchronous transformer's task was called, once it had been
+   // created. Written before the stage is awaited and read once it has completed.
+   private long callStarted;
+
+   TransformerController(WorkflowPlan.Node node, PlanExecution execution)
+   {
+      this.node = node;
+      this.execution = execution;
+      this.metrics = execution.getMetrics(node);
+   }
 
-   public TransformerController(Transformer transformer, TransformerConfiguration cfg, TaskExecutionService exec, WorkflowExecutionContext context)
+   @Override
+   public void run()
    {
-      this.id = UUID.randomUUID();
-      this.transformer = transformer;
-      this.exec = exec;
-      this.context = context;
-      
-      for (DataInputPin pin : cfg.getDefinedInputs())
+      // register before checking for cancellation so that a concurrent interrupt is not missed
+      synchronized (this)
       {
-         UUID dataSource = cfg.getDataSource(pin);
-         if (dataSource == null) {
-            if (pin.required)
-               throw new NullPointerException("Undefined data input pin [" + pin + "]");
-            
-            continue;
+         runner = Thread.currentThread();
+      }
+
+      String memoKey = null;
+      CompletionStage<?> stage = null;
+      try
+      {
+         if (execution.isCanceled())
+            return;
+
+         if (Thread.currentThread().isInterrupted())
+            throw new InterruptedException();
+
+         memoKey = execution.getMemoKey(node);
+         Object result = (memoKey == null) ? null : execution.getMemoized(memoKey);
+         if (result == null)
+         {
+            execution.emit(WorkflowEventDispatcher.BEFORE_EXECUTION, node, null);
+            if (node.transformer instanceof AsyncTransformer)
+            {
+               stage = (metrics == null) ? executeAsync() : executeAsyncMeasured();
+            }
+            else
+            {
+               result = (metrics == null) ? execute() : executeMeasured();
+            }
          }
-         
-         SimpleDataValueKey key = new SimpleDataValueKey(dataSource, pin.type);
-         inputs.define(key, pin.label);
+
+         if (stage == null)
+            complete(result, memoKey);
+      }
+      catch (Throwable ex)
+      {
+         // errors must also fail the input, otherwise it would never complete
+         handleError((ex instanceof Exception) ? (Exception)ex : new ExecutionException(ex));
       }
-      
-      resultKey = new SimpleDataValueKey(cfg.getId(), cfg.getOutputType());
-      ct = new AtomicInteger(inputs.size());
+      finally
+      {
+         clearRunner();
+         if (stage == null)
+            finish();
+      }
+
+      if (stage != null)
+         awaitStage(stage, memoKey);
    }
-   
+
    /**
-    * @return The unique identifier for this transformer controller.
+    * Supplies the result of the transformer to the execution.
     */
-   public UUID getId()
-   {
-      return id;
-   }
-   
-   // HACK: need a better way to do this - highly coupled. Better to listen to this transformer
-   //       and close the listener reg externally once it is finished.
-   public void setListenerRegistration(AutoCloseable listenerRegistration)
+   private void complete(Object result, String memoKey)
    {
-      this.listenerRegistration = listenerRegistration;
+      if (memoKey != null)
+         execution.memoize(memoKey, result);
+
+      execution.put(node.resultSlot, result, memoKey);
+      execution.emit(WorkflowEventDispatcher.COMPLETION, node, null);
    }
 
    /**
-    * @return The input keys for the required inputs to this transformer.
+    * Releases the transformer's inputs and the task's reference to the execution. This must
+    * be the last action of the controller for an input, since the execution (and this
+    * controller) may then be recycled.
     */
-   public Set<DataValueKey> getKeys()
+   private void finish()
    {
-      return inputs.labels.keySet();
+      execution.inputsConsumed(node);
+      execution.taskCompleted();
    }
-   
-   /**
-    * Called when new input data becomes available.
-    * 
-    * @param e An event with the data that has become available.
-    */
-   public void dataAvailable(DataAvailableEvent e)
+
+   private void awaitStage(CompletionStage<?> stage, String memoKey)
    {
-      DataValueKey key = e.getKey();
-      Object value = e.getValue();
-      
-      if (!inputs.isDefined(key))
-         return;
-      
-      if (inputs.isSet(key))
-         throw new IllegalStateException("A value has already ben set for [" + key + "]");
-      
-      inputs.setValue(key, value);
-      
-      if (0 == ct.decrementAndGet())
+      synchronized (this)
       {
-         stopListening();
-         execute();
+         pendingStage = stage;
       }
+
+      // the input may have been cancelled before the stage was registered. This must be
+      // checked first, since the execution may be recycled once the stage has completed.
+      if (execution.isCanceled())
+         cancelStage();
+
+      stage.whenComplete((result, error) -> stageCompleted(result, error, memoKey));
    }
-   
-   /**
-    * Activates the controller. This will cause the associated {@link Transformer} to be 
-    * executed once all configured input data is available. 
-    */
-   public void execute()
+
+   private void stageCompleted(Object result, Throwable error, String memoKey)
    {
-      if (canceled.get())
-         return;
+      synchronized (this)
+      {
+         pendingStage = null;
+      }
+
+      // recorded whether or not the stage failed, as for synchronous transformers
+      if (metrics != null)
+         metrics.callTime.record(System.nanoTime() - callStarted);
 
-      Objects.requireNonNull(task, "Execution task has already been submitted.");
       try
       {
-         exec.execute(task);
-         task = null;
+         if (error != null)
+            throw toException(error);
+
+         if (metrics != null)
+            metrics.recordOutput(result);
+
+         complete(result, memoKey);
       }
-      catch (Exception e)
+      catch (Throwable ex)
       {
-         logger.log(Level.SEVERE, "Transformer execution failed for [" + transformer + "]", e);
-      }     
+         handleError(toException(ex));
+      }
+      finally
+      {
+         finish();
+      }
    }
-   
-   private void handleError(Exception ex)
+
+   /**
+    * @return The supplied error as an exception, unwrapping the cause of a failed stage and
+    *       wrapping anything that is not an {@link Exception}.
+    */
+   private static Exception toException(Throwable error)
    {
-      logger.log(Level.SEVERE, "Transformer execution failed for [" + transformer + "]", ex);
-      // TODO fire notification
+      if ((error instanceof CompletionException || error instanceof ExecutionException) && error.getCause() != null)
+         error = error.getCause();
+
+      return (error instanceof Exception) ? (Exception)error : new ExecutionException(error);
    }
 
-   public void cancel()
+   private void cancelStage()
    {
-      canceled.set(true);
-      stopListening();
-      
-      // TODO notify cancellation
+      CompletionStage<?> stage;
+      synchronized (this)
+      {
+         stage = pendingStage;
+      }
+
+      if (stage == null)
+         return;
+
+      try
+      {
+         stage.toCompletableFuture().cancel(true);
+      }
+      catch (UnsupportedOperationException ex)
+      {
+         // the stage cannot be cancelled, so its result will be discarded when it completes
+         logger.log(Level.FINE, "Unable to cancel asynchronous transformer [" + node.transformer + "].", ex);
+      }
    }
 
    /**
-    * Remove all data input listeners
+    * Interrupts the thread running the transformer, if it is running, or cancels the stage
+    * returned by an asynchronous transformer that has not yet completed. Transformers are
+    * expected to check the interrupted status of their thread during lengthy computations.
     */
-   private void stopListening() 
+   void interrupt()
    {
-      try 
+      synchronized (this)
       {
-      if (this.listenerRegistration != null)
-         this.listenerRegistration.close();
-      }
-      catch (Exception ex)
-      {
-         logger.log(Level.WARNING, "Failed to unregister data input listeners", ex);
+         if (runner != null && !interrupted)
+         {
+            interrupted = true;
+            runner.interrupt();
+         }
       }
+
+      cancelStage();
    }
-   
-   // ensure that we do not ever make more than one
-   private class TransformerExecutionTask implements Runnable
+
+   private void clearRunner()
    {
-      @Override
-      public void run() 
+      synchronized (this)
       {
-         try 
-         {
-            if (canceled.get())
-               return;
-            
-            if (Thread.currentThread().isInterrupted())
-               throw new InterruptedException();
-            
-            // TODO notify about to execute
-            Callable<?> task = transformer.create(inputs);
-            Object result = task.call();
-            
-            // TODO ensure type safety
-            // TODO notify execution complete
-            context.put(resultKey, result);
-         } 
-         catch (Exception ex)
+         runner = null;
+
+         // do not leave the thread interrupted for the next task it executes
+         if (interrupted)
          {
-            handleError(ex);
+            interrupted = false;
+            Thread.interrupted();
          }
       }
    }
-   
-   /**
-    * Maps input data keys and data values to the corresponding input pin labels on the 
-    * transformer. This is used to collect data objects as they are made available via the 
-    * {@link WorkflowExecutionContext} and in turn supply them to a transformer via the 
-    * {@link TransformerContext} API. 
-    */
-   private static class DataInputMap implements TransformerContext
+
+   private Object execute() throws Exception
    {
-      // maps data keys to the input pins of a transformer
-      private Map<DataValueKey, String> labels = new HashMap<>();    // effectively immutable after construction
-      private Map<String, Object> values = new ConcurrentHashMap<>();
-      
-      public void define(DataValueKey key, String label)
+      Callable<?> task = node.transformer.create(this);
+      return task.call();
+   }
+
+   private CompletionStage<?> executeAsync() throws Exception
+   {
+      Callable<? extends CompletionStage<?>> task = ((AsyncTransformer)node.transformer).createAsync(this);
+      return checkStage(task.call());
+   }
+
+   private CompletionStage<?> executeAsyncMeasured() throws Exception
+   {
+      long started = System.nanoTime();
+      metrics.executions.increment();
+      metrics.queueWait.record(started - execution.getReadyTime(node));
+
+      Callable<? extends CompletionStage<?>> task = ((AsyncTransformer)node.transformer).createAsync(this);
+      callStarted = System.nanoTime();
+      metrics.createTime.record(callStarted - started);
+      try
       {
-         labels.put(key, label);
+         return checkStage(task.call());
       }
-      
-      public int size()
+      catch (Exception ex)
       {
-         return labels.size();
+         // otherwise timed once the stage completes
+         metrics.callTime.record(System.nanoTime() - callStarted);
+         throw ex;
       }
-      
-      /**
-       * If the supplied key is defined is defined as an input to the associated transformer.
-       * 
-       * @param key The data input key to check.
-       * @return
-       */
-      public boolean isDefined(DataValueKey key)
+   }
+
+   private CompletionStage<?> checkStage(CompletionStage<?> stage)
+   {
+      if (stage == null)
+         throw new IllegalStateException("Asynchronous transformer [" + node.transformer + "] did not return a completion stage.");
+
+      return stage;
+   }
+
+   private Object executeMeasured() throws Exception
+   {
+      long started = System.nanoTime();
+      metrics.executions.increment();
+      metrics.queueWait.record(started - execution.getReadyTime(node));
+
+      Callable<?> task = node.transformer.create(this);
+      long created = System.nanoTime();
+      metrics.createTime.record(created - started);
+
+      Object result;
+      try
       {
-         return labels.containsKey(key);
+         result = task.call();
       }
-      
-      public String getLabel(DataValueKey key)
+      finally
       {
-         return labels.get(key);
+         metrics.callTime.record(System.nanoTime() - created);
       }
-      
-      /**
-       * Indicates whether a value has been set for the specified key.
-       * 
-       * @param key The data input key to check.
-       * @return True if a value has been supplied fot the label associated with this key.
-       */
-      public boolean isSet(DataValueKey key)
-      {
-         if (!isDefined(key))
-            return false;
 
-         String label = getLabel(key);
-         return values.containsKey(label);
-      }
-      
-      void setValue(DataValueKey key, Object value)
-      {
-         String label = labels.get(key);
-         if (label == null)
-            throw new IllegalArgumentException("Invalid input value [" + key + "]. Value does not mapt to a defined input for this transformer.");
-       
-         values.put(label, value);
-      }
-      
-      @Override
-      public Object getValue(String label)
+      metrics.recordOutput(result);
+      return result;
+   }
+
+   @Override
+   public Object getValue(String label)
+   {
+      // TODO check to ensure that the label is defined and that a value has been supplied.
+      int slot = node.getInputSlot(label);
+      return (slot < 0) ? null : execution.get(slot);
+   }
+
+   private void handleError(Exception ex)
+   {
+      if (execution.isCanceled())
       {
-         // TODO check to ensure that the label is defined and that a value has been supplied.
-         return values.get(label);
+         // typically interrupted because the input was cancelled or its deadline expired
+         logger.log(Level.FINE, "Transformer [" + node.transformer + "] stopped after processing of the input was cancelled.", ex);
+         return;
       }
+
+      logger.log(Level.SEVERE, "Transformer execution failed for [" + node.transformer + "]", ex);
+      if (metrics != null)
+         metrics.errors.increment();
+
+      execution.emit(WorkflowEventDispatcher.ERROR, node, ex);
+      execution.failed(node, ex);
    }
-}
\ No newline at end of file
+}
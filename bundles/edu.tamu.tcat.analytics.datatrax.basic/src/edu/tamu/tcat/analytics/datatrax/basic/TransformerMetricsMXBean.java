@@ -0,0 +1,31 @@
+package edu.tamu.tcat.analytics.datatrax.basic;
+
+/**
+ * Exposes the metrics of a single transformer of a workflow controller through JMX.
+ * Registered if {@link WorkflowControllerSettings#registerMBeans} is set. All times are in
+ * nanoseconds.
+ */
+public interface TransformerMetricsMXBean
+{
+   String getTransformerId();
+
+   long getExecutions();
+
+   long getErrors();
+
+   double getQueueWaitMean();
+
+   long getQueueWait99thPercentile();
+
+   double getCreateTimeMean();
+
+   double getCallTimeMean();
+
+   long getCallTimeMedian();
+
+   long getCallTime99thPercentile();
+
+   long getCallTimeMax();
+
+   double getOutputSizeMean();
+}
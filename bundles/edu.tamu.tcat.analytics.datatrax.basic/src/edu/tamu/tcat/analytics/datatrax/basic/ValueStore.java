@@ -0,0 +1,45 @@
+package edu.tamu.tcat.analytics.datatrax.basic;
+
+import edu.tamu.tcat.analytics.datatrax.DataValueKey;
+
+/**
+ * Determines how the intermediate values produced while processing an input are held until
+ * the transformers that consume them have run. A store may replace a value with a handle,
+ * for example to a buffer outside of the Java heap, and must then supply an equivalent value
+ * for the handle when it is read.
+ *
+ * <p>
+ * Stores are shared by all inputs that a workflow processes and must be thread safe.
+ *
+ * @see WorkflowControllerSettings#valueStore
+ * @see OffHeapValueStore
+ */
+public interface ValueStore
+{
+   /**
+    * Called when a value that will be read by another transformer is supplied.
+    *
+    * @param key The key of the value.
+    * @param value The value.
+    * @return The object to hold in place of the value. Return the value itself to hold it
+    *       on the heap.
+    */
+   Object store(DataValueKey key, Object value);
+
+   /**
+    * @param key The key of the value.
+    * @param stored An object returned by {@link #store(DataValueKey, Object)}.
+    * @return The value to be supplied to a transformer. This must be an instance of the
+    *       type of the key.
+    */
+   Object load(DataValueKey key, Object stored);
+
+   /**
+    * Called once a stored value will no longer be read, that is, once all transformers that
+    * consume it have completed or processing of the input has finished.
+    *
+    * @param key The key of the value.
+    * @param stored An object returned by {@link #store(DataValueKey, Object)}.
+    */
+   void release(DataValueKey key, Object stored);
+}
@@ -0,0 +1,67 @@
+package edu.tamu.tcat.analytics.datatrax.basic;
+
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Provides access to virtual-thread executors on JVMs that support them. DataTrax is compiled
+ * for Java 8, so the virtual-thread API is located reflectively at runtime.
+ */
+final class VirtualThreads
+{
+   private static final Logger logger = Logger.getLogger(VirtualThreads.class.getName());
+
+   private static final Method factory = findFactory();
+
+   private VirtualThreads()
+   {
+   }
+
+   private static Method findFactory()
+   {
+      try
+      {
+         return Executors.class.getMethod("newVirtualThreadPerTaskExecutor");
+      }
+      catch (NoSuchMethodException | SecurityException ex)
+      {
+         return null;
+      }
+   }
+
+   /**
+    * @return {@code true} if this JVM declares the virtual-thread API. Note that a JVM that
+    *       provides virtual threads as a preview feature may still fail to create an executor.
+    */
+   public static boolean isSupported()
+   {
+      return factory != null;
+   }
+
+   /**
+    * Creates an executor that starts a new virtual thread for each task.
+    *
+    * @return The created executor or {@code null} if virtual threads are not available on
+    *       this JVM.
+    */
+   public static ExecutorService newExecutor()
+   {
+      if (factory == null)
+         return null;
+
+      try
+      {
+         return (ExecutorService)factory.invoke(null);
+      }
+      catch (IllegalAccessException | InvocationTargetException ex)
+      {
+         // for example, preview features are not enabled.
+         logger.log(Level.FINE, "Virtual threads are not available on this JVM.", ex);
+         return null;
+      }
+   }
+}
@@ -1,18 +1,36 @@
 package edu.tamu.tcat.analytics.datatrax.basic;
 
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collection;
+import java.util.Deque;
+import java.util.HashMap;
 import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
 import java.util.Objects;
 import java.util.Set;
 import java.util.UUID;
-import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutionException;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicIntegerArray;
 import java.util.function.Supplier;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 
+import edu.tamu.tcat.analytics.datatrax.ContentDigest;
+import edu.tamu.tcat.analytics.datatrax.DataFlow;
 import edu.tamu.tcat.analytics.datatrax.DataValueKey;
 import edu.tamu.tcat.analytics.datatrax.ResultsCollector;
 import edu.tamu.tcat.analytics.datatrax.ResultsCollector.TranformationResult;
@@ -21,8 +39,11 @@ import edu.tamu.tcat.analytics.datatrax.Transformer;
 import edu.tamu.tcat.analytics.datatrax.TransformerConfigurationException;
 import edu.tamu.tcat.analytics.datatrax.TransformerRegistration;
 import edu.tamu.tcat.analytics.datatrax.WorkflowController;
+import edu.tamu.tcat.analytics.datatrax.WorkflowEvaluation;
+import edu.tamu.tcat.analytics.datatrax.WorkflowException;
+import edu.tamu.tcat.analytics.datatrax.WorkflowMetrics;
 import edu.tamu.tcat.analytics.datatrax.WorkflowObserver;
-import edu.tamu.tcat.analytics.datatrax.basic.WorkflowExecutionContext.DataAvailableEvent;
+import edu.tamu.tcat.analytics.datatrax.config.DataInputPin;
 import edu.tamu.tcat.analytics.datatrax.config.TransformerConfiguration;
 import edu.tamu.tcat.analytics.datatrax.config.WorkflowConfiguration;
 
@@ -59,51 +80,229 @@ public class WorkflowControllerImpl implements WorkflowController
    // TODO ensure that this implementation satisifies the above description
    private final static Logger logger = Logger.getLogger(WorkflowControllerImpl.class.getName());
 
-   
    // executor for tasks submitted by individual workflows
-   private ExecutorService taskExector;
+   private final TaskExecutionService taskExector;
+   private final boolean ownsTaskExecutor;
    
-   // executor for running the workflow over a single input data
+   // executor for starting the workflow over a single input data
    private ExecutorService workflowExectorService;
    
-   private final DataValueKey inputKey;
+   // limits the number of inputs that are processed concurrently
+   private final WorkflowScheduler scheduler;
+   
    private final WorkflowConfiguration config;
-   private final Set<ConfiguredTransformer> transformers;
+   private final WorkflowControllerSettings settings;
+   private final WorkflowPlan plan;
+   private final PlanExecutionPool executionPool;
+   private final WorkflowEventDispatcher events;
+   private final WorkflowMetricsImpl metrics;
+   private final MetricsMBeanRegistration mbeans;
+   
+   // for each slot, the time in nanoseconds allowed to produce the output or 0 for no deadline
+   private final long[] outputDeadlines;
+   private final boolean hasOutputDeadlines;
+   
+   // created when first needed
+   private volatile ScheduledThreadPoolExecutor deadlineTimer;
+   
+   // null if results are not cached
+   private final ResultCache resultCache;
 
    private volatile boolean closed = false;
    
-   private WorkflowControllerImpl(WorkflowConfiguration config, Set<ConfiguredTransformer> transformers)
+   private WorkflowControllerImpl(WorkflowConfiguration config, WorkflowControllerSettings settings, WorkflowPlan plan)
    {
       this.config = config;
-      this.transformers = transformers;
-      this.inputKey = config.getInputKey();
+      this.settings = settings;
+      this.plan = plan;
+      
+      boolean virtual = settings.useVirtualThreads && VirtualThreads.isSupported();
+      if (settings.useVirtualThreads && !virtual)
+         logger.info("Virtual threads are not supported by this JVM. Workflow '" + config.getTitle() + "' will use platform threads.");
+      
+      ownsTaskExecutor = (settings.taskExecutor == null);
+      taskExector = ownsTaskExecutor ? createTaskExecutor(virtual) : settings.taskExecutor;
+      workflowExectorService = createWorkflowExecutor(virtual);
+      scheduler = new WorkflowScheduler(workflowExectorService, settings.maxInFlight, settings.maxPending);
+      
+      events = new WorkflowEventDispatcher(plan, config.getTitle());
+      metrics = new WorkflowMetricsImpl(plan);
+      mbeans = (settings.collectMetrics && settings.registerMBeans) 
+            ? MetricsMBeanRegistration.register(config.getTitle(), metrics) 
+            : null;
+      
+      executionPool = settings.recycleExecutionState 
+            ? new PlanExecutionPool(plan, taskExector, events, getRecordedMetrics(), settings.valueStore, settings.transformerCache, settings.maxInFlight) 
+            : null;
+      
+      outputDeadlines = computeOutputDeadlines();
+      hasOutputDeadlines = Arrays.stream(outputDeadlines).anyMatch(t -> t > 0);
+      resultCache = (settings.resultCacheSize > 0) ? createResultCache() : null;
+   }
+   
+   private ResultCache createResultCache()
+   {
+      try
+      {
+         return new ResultCache(config, settings.resultCacheSize, settings.resultCacheTtlMillis, settings.resultCacheDirectory);
+      }
+      catch (IllegalArgumentException ex)
+      {
+         // results cannot be cached without a key that identifies the configuration
+         logger.log(Level.WARNING, "The outputs of workflow '" + config.getTitle() + "' will not be cached. " + ex.getMessage());
+         return null;
+      }
+   }
+   
+   private long[] computeOutputDeadlines()
+   {
+      long[] deadlines = new long[plan.size()];
+      for (int slot = 0; slot < deadlines.length; slot++)
+      {
+         if (!plan.outputs[slot])
+            continue;
+         
+         Long millis = settings.outputTimeouts.get(plan.keys[slot].getSourceId());
+         long timeout = (millis != null) ? millis.longValue() : settings.outputTimeoutMillis;
+         deadlines[slot] = (timeout > 0) ? TimeUnit.MILLISECONDS.toNanos(timeout) : 0;
+      }
+      
+      return deadlines;
+   }
+   
+   private ScheduledThreadPoolExecutor getDeadlineTimer()
+   {
+      ScheduledThreadPoolExecutor timer = deadlineTimer;
+      if (timer != null)
+         return timer;
       
-//      taskExector = Executors.newCachedThreadPool(new ThreadFactoryBuilder().setNameFormat("Task {0}").build());
-//      workflowExectorService = Executors.newFixedThreadPool(1, new ThreadFactoryBuilder().setNameFormat("Data Processor {0}").build()); // HACK.newCachedThreadPool();
-      taskExector = Executors.newCachedThreadPool();
-      workflowExectorService = Executors.newFixedThreadPool(1); // HACK.newCachedThreadPool();
+      synchronized (this)
+      {
+         if (deadlineTimer == null)
+            deadlineTimer = createDeadlineTimer();
+         
+         return deadlineTimer;
+      }
+   }
+   
+   private ScheduledThreadPoolExecutor createDeadlineTimer()
+   {
+      ScheduledThreadPoolExecutor timer = new ScheduledThreadPoolExecutor(1, r -> {
+         Thread thread = new Thread(r, "datatrax-deadlines-" + config.getTitle());
+         thread.setDaemon(true);
+         return thread;
+      });
+      
+      // most deadlines are cancelled because the output arrived in time
+      timer.setRemoveOnCancelPolicy(true);
+      return timer;
+   }
+   
+   /**
+    * @return The metrics to be recorded by executions or {@code null} if metrics are not 
+    *       being collected.
+    */
+   private WorkflowMetricsImpl getRecordedMetrics()
+   {
+      return settings.collectMetrics ? metrics : null;
+   }
+   
+   private TaskExecutionService createTaskExecutor(boolean virtual)
+   {
+      ExecutorService executor = virtual ? VirtualThreads.newExecutor() : null;
+      return (executor != null) 
+            ? new ExecutorTaskExecutionService(executor) 
+            : new ForkJoinTaskExecutionService(settings.taskParallelism);
+   }
+   
+   private ExecutorService createWorkflowExecutor(boolean virtual)
+   {
+      ExecutorService executor = virtual ? VirtualThreads.newExecutor() : null;
+      if (executor != null)
+         return executor;
+      
+      // Workflow threads are only used to retrieve input data and start the workflow. They do 
+      // not wait for the workflow to complete, so one thread per in-flight input is sufficient.
+      return Executors.newFixedThreadPool(settings.maxInFlight);
    }
    
    public static WorkflowControllerImpl create(WorkflowConfiguration config) throws TransformerConfigurationException
    {
-      // TODO probably need to tune these to prevent poor thread usage. Need to investigate work-stealing 
+      return create(config, new WorkflowControllerSettings());
+   }
+   
+   /**
+    * Creates a new {@link WorkflowControllerImpl}.
+    * 
+    * @param config The configuration of the workflow to execute.
+    * @param settings Tuning parameters for the controller. The supplied settings will be 
+    *       copied, so subsequent changes will not affect the returned controller.
+    * @return The new controller.
+    * @throws TransformerConfigurationException If the configured transformers could not be
+    *       instantiated. 
+    */
+   public static WorkflowControllerImpl create(WorkflowConfiguration config, WorkflowControllerSettings settings) throws TransformerConfigurationException
+   {
+      Objects.requireNonNull(settings, "No workflow controller settings supplied.");
+      
       // TODO need to supply better exception
-      Set<ConfiguredTransformer> transformers = new HashSet<>();
+      List<ConfiguredTransformer> transformers = new ArrayList<>();
       Collection<TransformerConfiguration> tConfigs = config.getTransformers();
+      Set<UUID> required = findRequiredTransformers(config);
       for (TransformerConfiguration cfg : tConfigs)
       {
+         if (!required.contains(cfg.getId()))
+         {
+            logger.fine("Transformer [" + cfg.getId() + "] does not contribute to a declared output of workflow '" + config.getTitle() + "' and will not be executed.");
+            continue;
+         }
+         
          TransformerRegistration registration = cfg.getRegistration();
          Transformer transformer = registration.instantiate(cfg);
          
          transformers.add(new ConfiguredTransformer(cfg, transformer));
       }
       
-      return new WorkflowControllerImpl(config, transformers);
+      // resolve keys and input pins to array indices once rather than for every input
+      WorkflowPlan plan = WorkflowPlan.compile(config, transformers);
+      return new WorkflowControllerImpl(config, WorkflowControllerSettings.create(settings), plan);
    }
    
-   private void execute(Runnable task)
+   /**
+    * @return The ids of the transformers whose outputs are declared outputs of the workflow 
+    *       or are required, directly or indirectly, by the transformers that produce them. 
+    */
+   private static Set<UUID> findRequiredTransformers(WorkflowConfiguration config)
    {
-      taskExector.submit(task);
+      Map<UUID, TransformerConfiguration> configs = new HashMap<>();
+      for (TransformerConfiguration cfg : config.getTransformers())
+      {
+         configs.put(cfg.getId(), cfg);
+      }
+      
+      Set<UUID> required = new HashSet<>();
+      Deque<UUID> queue = new ArrayDeque<>();
+      for (DataValueKey key : config.getDeclaredOutputs())
+      {
+         queue.add(key.getSourceId());
+      }
+      
+      while (!queue.isEmpty())
+      {
+         UUID id = queue.remove();
+         TransformerConfiguration cfg = configs.get(id);
+         if (cfg == null || !required.add(id))
+            continue;
+         
+         for (DataInputPin pin : cfg.getDefinedInputs())
+         {
+            UUID source = cfg.getDataSource(pin);
+            if (source != null)
+               queue.add(source);
+         }
+      }
+      
+      return required;
    }
    
    @Override
@@ -113,14 +312,17 @@ public class WorkflowControllerImpl implements WorkflowController
       
       try 
       {
-         taskExector.awaitTermination(10, TimeUnit.SECONDS);
-         workflowExectorService.awaitTermination(10, TimeUnit.SECONDS);
+         if (!scheduler.awaitIdle(10, TimeUnit.SECONDS))
+            logger.warning("Workflow controller closed before all inputs were processed.");
+         
+         workflowExectorService.shutdown();
+         if (!workflowExectorService.awaitTermination(10, TimeUnit.SECONDS))
+            throw new IllegalStateException("Timed out waiting for executors to terminate.");
       }
       catch (Exception ex) 
       {
          logger.log(Level.WARNING, "Failed to cleanly shutdown workflow controller. Forcing shutdown now.", ex);
          try {
-            taskExector.shutdownNow();
             workflowExectorService.shutdownNow();
          }
          catch (Exception e)
@@ -130,8 +332,31 @@ public class WorkflowControllerImpl implements WorkflowController
       }
       finally
       {
-         taskExector = null;
          workflowExectorService = null;
+         closeTaskExecutor();
+         events.close();
+         synchronized (this)
+         {
+            if (deadlineTimer != null)
+               deadlineTimer.shutdownNow();
+         }
+         if (mbeans != null)
+            mbeans.close();
+      }
+   }
+   
+   private void closeTaskExecutor()
+   {
+      if (!ownsTaskExecutor || !(taskExector instanceof AutoCloseable))
+         return;
+      
+      try 
+      {
+         ((AutoCloseable)taskExector).close();
+      }
+      catch (Exception ex)
+      {
+         logger.log(Level.SEVERE, "Error attempting to shutdown transformer task executor.", ex);
       }
    }
 
@@ -160,32 +385,201 @@ public class WorkflowControllerImpl implements WorkflowController
       }
    }
    
+   private static Exception toException(Throwable t)
+   {
+      if (t instanceof CompletionException && t.getCause() != null)
+         t = t.getCause();
+      
+      return (t instanceof Exception) ? (Exception)t : new ExecutionException(t);
+   }
+   
+   /**
+    * @return The {@link ContentDigest} supplied by the input's supplier or, if it does not 
+    *       supply one, by the input itself. {@code null} if neither supplies a digest.
+    */
+   private static String getContentDigest(Supplier<?> sourceData, Object data)
+   {
+      String digest = null;
+      if (sourceData instanceof ContentDigest)
+         digest = ((ContentDigest)sourceData).getContentDigest();
+      if (digest == null && data instanceof ContentDigest)
+         digest = ((ContentDigest)data).getContentDigest();
+      
+      return digest;
+   }
+   
+   /**
+    * Supplies the cached outputs for an input to the collector, if they are available.
+    * 
+    * @param selection The outputs to supply or {@code null} to supply all declared outputs.
+    * @return {@code true} if the cached outputs were supplied and the collector has been 
+    *       notified that processing is finished.
+    */
+   private <X> boolean deliverCached(String cacheKey, X data, ResultsCollector<X> collector, WorkflowPlan.Selection selection)
+   {
+      long start = System.nanoTime();
+      Map<UUID, Object> values = resultCache.get(cacheKey);
+      if (values == null)
+         return false;
+      
+      boolean[] outputs = (selection == null) ? plan.outputs : selection.outputs;
+      for (int slot = 0; slot < outputs.length; slot++)
+      {
+         // an entry that does not supply every output cannot be used
+         if (outputs[slot] && !values.containsKey(plan.keys[slot].getSourceId()))
+         {
+            logger.fine("Cached results [" + cacheKey + "] do not include output [" + plan.keys[slot] + "].");
+            return false;
+         }
+      }
+      
+      for (int slot = 0; slot < outputs.length; slot++)
+      {
+         if (!outputs[slot])
+            continue;
+         
+         DataValueKey key = plan.keys[slot];
+         try
+         {
+            collector.handleResult(new TransResultImpl<>(key, values.get(key.getSourceId()), data));
+         }
+         catch (Exception ex)
+         {
+            logger.log(Level.WARNING, "Notification of results collector of data available failed [" + key + "]. ", ex);
+         }
+      }
+      
+      if (settings.collectMetrics)
+         metrics.inputCompleted(System.nanoTime() - start, true);
+      
+      notifyFinished(collector);
+      return true;
+   }
+   
+   private static void notifyFinished(ResultsCollector<?> collector)
+   {
+      try 
+      {
+         collector.finished();
+      }
+      catch (Exception ex)
+      {
+         logger.log(Level.WARNING, "Notification of results collector of workflow completion failed.", ex);
+      }
+   }
+   
+   @Override
+   public <X> CompletableFuture<Void> process(Supplier<X> sourceData, ResultsCollector<X> collector)
+   {
+      return process(sourceData, collector, settings.inputTimeoutMillis, TimeUnit.MILLISECONDS);
+   }
+   
    @Override
-   public <X> void process(Supplier<X> sourceData, ResultsCollector<X> collector)
+   public <X> CompletableFuture<Void> process(Supplier<X> sourceData, ResultsCollector<X> collector, long timeout, TimeUnit units)
+   {
+      return process(sourceData, collector, null, timeout, units);
+   }
+   
+   @Override
+   public <X> CompletableFuture<Void> process(Supplier<X> sourceData, ResultsCollector<X> collector, Collection<? extends DataValueKey> outputs)
+   {
+      return process(sourceData, collector, outputs, settings.inputTimeoutMillis, TimeUnit.MILLISECONDS);
+   }
+   
+   @Override
+   public <X> CompletableFuture<Void> process(Supplier<X> sourceData, ResultsCollector<X> collector, Collection<? extends DataValueKey> outputs, long timeout, TimeUnit units)
    {
       // TODO Question: supply just one value? 
       
       Objects.requireNonNull(sourceData, "Null source data input");
+      Objects.requireNonNull(collector, "No results collector supplied.");
+      Objects.requireNonNull(units, "No timeout units supplied.");
       if (closed)
          throw new IllegalStateException("This workflow controller has been closed");
       
-      workflowExectorService.submit(() ->
+      WorkflowPlan.Selection selection = (outputs == null) ? null : plan.select(outputs);
+      WorkflowInput<X> input = new WorkflowInput<>(sourceData, collector, selection, units.toNanos(timeout), null);
+      admit(input);
+      return input.result;
+   }
+   
+   /**
+    * Submits an input to the scheduler according to the configured admission policy.
+    */
+   private void admit(WorkflowInput<?> input)
+   {
+      switch (settings.admissionPolicy)
       {
-         try 
-         {
-            if (closed)
-               throw new IllegalStateException("This workflow controller has been closed");
+         case BLOCK:
+            try
+            {
+               scheduler.submitWhenAdmitted(input);
+            }
+            catch (InterruptedException e)
+            {
+               Thread.currentThread().interrupt();
+               throw new RejectedExecutionException("Interrupted while waiting for the workflow to admit an input.", e);
+            }
+            break;
             
-            // pull the data from supplier once the executor has begun processing
-            WorkflowExecutor<X> workflow = createExecutor(); 
-            workflow.process(sourceData.get(), collector);
-         }
-         catch (Exception ex)
-         {
-            logger.log(Level.SEVERE, "Failed to execute workflow.", ex);
-            handleError(collector, ex);
-         }
-      });
+         case REJECT:
+            if (!scheduler.trySubmit(input))
+               throw new RejectedExecutionException("Workflow '" + config.getTitle() + "' has reached its limit of pending inputs [" + settings.maxPending + "].");
+            break;
+            
+         case QUEUE:
+         default:
+            scheduler.submit(input);
+      }
+   }
+   
+   @Override
+   public <X> WorkflowEvaluation<X> evaluate(Supplier<X> sourceData)
+   {
+      Objects.requireNonNull(sourceData, "Null source data input");
+      if (closed)
+         throw new IllegalStateException("This workflow controller has been closed");
+      
+      X data = sourceData.get();
+      Objects.requireNonNull(data, "Input data must not be null.");
+      return new LazyPlanEvaluation<>(plan, taskExector, data);
+   }
+   
+   @Override
+   public <X> DataFlow.Processor<X, TranformationResult<X>> createProcessor()
+   {
+      // request enough inputs to keep the workflow busy without exceeding the admission limit
+      int window = (int)Math.min(Integer.MAX_VALUE, (long)settings.maxInFlight + settings.maxPending);
+      return new WorkflowProcessor<>(this, window, null);
+   }
+   
+   @Override
+   public CompletableFuture<Void> whenReady()
+   {
+      return scheduler.whenReady();
+   }
+   
+   @Override
+   public <X> CompletableFuture<Void> processAll(Iterator<? extends Supplier<X>> sourceData, ResultsCollector<X> collector)
+   {
+      Objects.requireNonNull(sourceData, "Null source data input");
+      Objects.requireNonNull(collector, "No results collector supplied.");
+      if (closed)
+         throw new IllegalStateException("This workflow controller has been closed");
+      
+      BatchProcessor<X> batch = new BatchProcessor<>(sourceData, collector);
+      scheduler.retain();
+      try
+      {
+         workflowExectorService.execute(batch::start);
+      }
+      catch (Exception ex)
+      {
+         scheduler.release();
+         throw ex;
+      }
+      
+      return batch.result;
    }
    
    @Override
@@ -193,8 +587,7 @@ public class WorkflowControllerImpl implements WorkflowController
    {
       try
       {
-         workflowExectorService.shutdown();
-         workflowExectorService.awaitTermination(time, units);
+         scheduler.awaitIdle(time, units);
       }
       catch (InterruptedException e)
       {
@@ -205,32 +598,35 @@ public class WorkflowControllerImpl implements WorkflowController
    @Override
    public AutoCloseable addListener(WorkflowObserver ears)
    {
-      throw new UnsupportedOperationException();
+      if (closed)
+         throw new IllegalStateException("This workflow controller has been closed");
+      
+      return events.addObserver(ears);
+   }
+   
+   @Override
+   public WorkflowMetrics getMetrics()
+   {
+      return metrics;
    }
    
    private <X> WorkflowExecutor<X> createExecutor() {
-      WorkflowExecutionContext context = new WorkflowExecutionContext();
-      
-      Set<TransformerController> controllers = new HashSet<>();
-      transformers.forEach((cfgTransformer) -> 
-            controllers.add(buildTransformerController(context, cfgTransformer)));
-      
-      return new WorkflowExecutor<>(context, inputKey, controllers);
+      return new WorkflowExecutor<>();
    }
-
-   private TransformerController buildTransformerController(WorkflowExecutionContext context, ConfiguredTransformer cfgTransformer)
+   
+   private PlanExecution createExecution(PlanExecution.OutputHandler outputHandler)
    {
-      TransformerConfiguration cfg = cfgTransformer.cfg;
-      Transformer transformer = cfgTransformer.transformer;
-      
-      TransformerController controller = new TransformerController(transformer, cfg, this::execute, context);
+      if (executionPool != null)
+         return executionPool.acquire(outputHandler);
       
-      AutoCloseable registration = context.registerListener(controller.getKeys(), controller::dataAvailable);
-      controller.setListenerRegistration(registration);
-      
-      return controller;
+      PlanExecution execution = new PlanExecution(plan, taskExector, events, getRecordedMetrics(), settings.valueStore, settings.transformerCache, null);
+      execution.activate(outputHandler);
+      return execution;
    }
 
+   /**
+    * A transformer that has been instantiated for use in this workflow. 
+    */
    public static class ConfiguredTransformer
    {
       public final TransformerConfiguration cfg;
@@ -243,107 +639,601 @@ public class WorkflowControllerImpl implements WorkflowController
       }
    }
 
+   /**
+    * A single input submitted to the {@link WorkflowScheduler}. Once started, this retrieves 
+    * the input data from the supplier and starts a {@link WorkflowExecutor} to process it.  
+    */
+   private final class WorkflowInput<X> implements WorkflowScheduler.ScheduledInput
+   {
+      private final Supplier<X> sourceData;
+      private final ResultsCollector<X> collector;
+      private final WorkflowPlan.Selection selection;
+      private final long timeoutNanos;
+      private final Runnable afterCompletion;
+      
+      /** The handle returned to the client. Completes once the workflow execution has shut down. */
+      private final CompletableFuture<Void> result = new CompletableFuture<>();
 
+      /**
+       * @param selection The outputs to produce or {@code null} to produce all declared outputs.
+       * @param timeoutNanos The time allowed to process this input once processing has 
+       *       started, or zero or less if processing is not subject to a deadline.
+       * @param afterCompletion An optional callback to be invoked after processing of this 
+       *       input has completed. This is invoked before the input's slot in the scheduler 
+       *       is released. May be {@code null}.
+       */
+      WorkflowInput(Supplier<X> sourceData, ResultsCollector<X> collector, WorkflowPlan.Selection selection, long timeoutNanos, Runnable afterCompletion)
+      {
+         this.sourceData = sourceData;
+         this.collector = collector;
+         this.selection = selection;
+         this.timeoutNanos = timeoutNanos;
+         this.afterCompletion = afterCompletion;
+      }
+      
+      @Override
+      public void start(Runnable onComplete)
+      {
+         Runnable done = (afterCompletion == null) ? onComplete : () -> {
+            try
+            {
+               afterCompletion.run();
+            }
+            finally
+            {
+               onComplete.run();
+            }
+         };
+         
+         // cancelled by the client before processing started
+         if (result.isDone())
+         {
+            notifyFinished(collector);
+            done.run();
+            return;
+         }
+         
+         try 
+         {
+            if (closed)
+               throw new IllegalStateException("This workflow controller has been closed");
+            
+            // pull the data from supplier once the executor has begun processing
+            X data = sourceData.get();
+            String digest = getContentDigest(sourceData, data);
+            String cacheKey = (resultCache == null || digest == null) ? null : resultCache.keyFor(digest);
+            if (cacheKey != null && deliverCached(cacheKey, data, collector, selection))
+            {
+               done.run();
+               result.complete(null);
+               return;
+            }
+            
+            // the outputs for a subset of the declared outputs are incomplete, so are not cached
+            WorkflowExecutor<X> workflow = createExecutor(); 
+            CompletableFuture<Void> execution = workflow.start(data, collector, digest, (selection == null) ? cacheKey : null, selection, timeoutNanos);
+            
+            result.whenComplete((v, ex) -> {
+               if (result.isCancelled())
+                  workflow.cancel();
+            });
+            
+            execution.whenComplete((v, ex) -> {
+               done.run();
+               if (ex != null)
+                  result.completeExceptionally(ex);
+               else 
+                  result.complete(null);
+            });
+         }
+         catch (Exception ex)
+         {
+            logger.log(Level.SEVERE, "Failed to execute workflow.", ex);
+            handleError(collector, ex);
+            notifyFinished(collector);
+            done.run();
+            result.completeExceptionally(ex);
+         }
+      }
+      
+      @Override
+      public void reject(Exception ex)
+      {
+         handleError(collector, ex);
+         notifyFinished(collector);
+         if (afterCompletion != null)
+            afterCompletion.run();
+         
+         result.completeExceptionally(ex);
+      }
+   }
+   
+   /**
+    * Feeds the inputs supplied to {@link WorkflowControllerImpl#processAll(Iterator, ResultsCollector)}
+    * to the {@link WorkflowScheduler}. This keeps at most one input per scheduler slot pending
+    * or in process, pulling the next input from the iterator as each input completes, so that
+    * the batch does not buffer inputs that the workflow is not yet ready to accept. 
+    * 
+    * <p>
+    * Inputs are pulled from the iterator by the controller's workflow threads. An input 
+    * completes on the thread that ran its last transformer or on the deadline timer, so the 
+    * next input is not pulled on that thread, where a slow source would delay other 
+    * transformers or deadlines.
+    */
+   private final class BatchProcessor<X>
+   {
+      private final Iterator<? extends Supplier<X>> sourceData;
+      private final ResultsCollector<X> collector;
+      private final ResultsCollector<X> itemCollector;
+      
+      /** The handle returned to the client. Completes once the collector has been notified. */
+      private final CompletableFuture<Void> result = new CompletableFuture<>();
+      
+      // guarded by this
+      private int active = 0;
+      private boolean exhausted = false;
+      private boolean finished = false;
+
+      BatchProcessor(Iterator<? extends Supplier<X>> sourceData, ResultsCollector<X> collector)
+      {
+         this.sourceData = sourceData;
+         this.collector = collector;
+         this.itemCollector = new BatchItemCollector<>(collector);
+      }
+      
+      void start()
+      {
+         for (int i = 0; i < scheduler.getMaxInFlight(); i++)
+         {
+            if (!submitNext())
+               break;
+         }
+      }
+      
+      /**
+       * Pulls the next input from the iterator and submits it for processing.
+       * 
+       * @return {@code true} if an input was submitted, {@code false} if there are no 
+       *       more inputs to process.
+       */
+      private boolean submitNext()
+      {
+         Supplier<X> next = null;
+         synchronized (this)
+         {
+            try 
+            {
+               if (!exhausted && !closed && !result.isDone() && sourceData.hasNext())
+               {
+                  next = sourceData.next();
+                  active++;
+               }
+               else
+               {
+                  exhausted = true;
+               }
+            }
+            catch (Exception ex)
+            {
+               // errors from the iterator itself terminate the batch
+               exhausted = true;
+               logger.log(Level.SEVERE, "Failed to retrieve workflow input.", ex);
+               handleError(collector, ex);
+            }
+         }
+         
+         if (next == null)
+         {
+            checkFinished();
+            return false;
+         }
+         
+         long timeoutNanos = TimeUnit.MILLISECONDS.toNanos(settings.inputTimeoutMillis);
+         scheduler.submit(new WorkflowInput<>(next, itemCollector, null, timeoutNanos, this::itemCompleted));
+         return true;
+      }
+      
+      private void itemCompleted()
+      {
+         synchronized (this)
+         {
+            active--;
+         }
+         
+         ExecutorService executor = workflowExectorService;
+         try
+         {
+            if (executor == null)
+               throw new RejectedExecutionException("This workflow controller has been closed");
+            
+            executor.execute(this::submitNext);
+         }
+         catch (RejectedExecutionException ex)
+         {
+            // the controller has been closed, so no further inputs are pulled, as in submitNext
+            logger.log(Level.FINE, "Workflow controller closed before the batch was exhausted.", ex);
+            synchronized (this)
+            {
+               exhausted = true;
+            }
+            
+            checkFinished();
+         }
+      }
+      
+      private void checkFinished()
+      {
+         synchronized (this)
+         {
+            if (finished || !exhausted || active > 0)
+               return;
+            
+            finished = true;
+         }
+         
+         notifyFinished(collector);
+         scheduler.release();
+         result.complete(null);
+      }
+   }
+
+   private static final int OUTPUT_PENDING = 0;
+   private static final int OUTPUT_DELIVERED = 1;
+   private static final int OUTPUT_TIMED_OUT = 2;
+   
    /**
     * Responsible for processing a single data instance through the workflow that has been 
     * instantiated by the {@link WorkflowControllerImpl} and for exporting the final data results 
     * defined in the {@code WorkflowConfiguration}.
     * 
-    *  Upon instantiation, the WorkflowExecutor will create a single ExecutionContext that 
-    *  will be used to store the in-process results of different data transformations, along 
-    *  with a TransformerExecutionController corresponding to each 
-    *  Transformer declared in the WorkflowConfiguration. The data transformation process will 
-    *  be initiated by setting the initial source data instance into the ExecutionContext, 
-    *  thereby causing the TransformerExecutionControllers that rely only on this source 
-    *  data instance to activate.
+    *  Upon instantiation, the WorkflowExecutor will obtain a single (possibly recycled) 
+    *  {@link PlanExecution} that will be used to store the in-process results of different data transformations 
+    *  in the slots defined by the controller's compiled {@link WorkflowPlan}. The data 
+    *  transformation process will be initiated by supplying the initial source data instance 
+    *  to the PlanExecution, thereby causing the transformers that rely only on this source 
+    *  data instance to be executed.
+    *  
+    *  The transformers are executed using the {@link TaskExecutionService} of the 
+    *  WorkflowController.
+    *  
+    *  <p>
+    *  Note that the WorkflowExecutor does not wait for its outputs to become available. 
+    *  Instead, the thread that supplies the last declared output completes a future. Notification
+    *  of the results collector and disposal of the execution context are chained to that future.
+    *  Each output is delivered to the collector as soon as it is supplied, after which the 
+    *  execution may discard it. 
+    *  
+    *  <p>
+    *  If deadlines have been configured for the declared outputs, a timer resolves each output 
+    *  that has not been supplied by its deadline by reporting a {@link TimeoutException} to the
+    *  collector. An output is resolved only once, either by delivery or by timing out, so 
+    *  values supplied after their deadline are discarded. Once all outputs are resolved, any 
+    *  transformers that have not yet started are cancelled and those that are running are
+    *  interrupted.
+    *  
+    *  <p>
+    *  If the input has a deadline, a timer completes the execution with a 
+    *  {@link TimeoutException} once it expires. This, like cancellation by the client, stops 
+    *  transformers that have not yet started, reports the error to the collector and then 
+    *  interrupts the transformers that are running. Intermediate values are discarded once the 
+    *  interrupted transformers have returned.
+    *  
+    *  <p>
+    *  Notifications of the collector are serialized with the completion of the execution. 
+    *  Once the execution has completed, no further outputs are delivered, and the collector 
+    *  is notified that processing is finished only after any deliveries that are already in 
+    *  progress have returned. Running transformers are interrupted only after that 
+    *  notification, so the collector is never notified on an interrupted thread.
+    *  
+    *  <p>
+    *  If a transformer fails, its dependents can never run and the outputs they contribute 
+    *  to will never be supplied. The execution is completed immediately: transformers that 
+    *  have not yet started are cancelled, their inputs are released and the failure is 
+    *  reported to the collector, followed by notification that processing is finished. 
+    *  
+    *  <p>
+    *  If only a subset of the declared outputs was requested, transformers that are not 
+    *  required to produce them are not run and the execution completes once the requested 
+    *  outputs have been supplied.
     *  
-    *  The WorkflowExecutor is supplied with a Java ExecutorService by the 
-    *  WorkflowController to be used when executing TransformerTasks.
+    *  <p>
+    *  If the input has a cache key, the delivered outputs are retained and added to the 
+    *  controller's {@link ResultCache} once all outputs have been delivered without error. 
+    *  Outputs that are {@link AutoCloseable} are not cached, since they are closed once 
+    *  they have been delivered.
     */
-   private class WorkflowExecutor<T>
+   private class WorkflowExecutor<T> implements PlanExecution.OutputHandler
    {
-      private final UUID id;
-      private final DataValueKey inputKey;
-      private final WorkflowExecutionContext context;
-      private final Collection<TransformerController> controllers;
+      private final PlanExecution execution;
       
       private T inputData;
       private ResultsCollector<T> collector;
-      private CountDownLatch outputDataLatch;
+      private AtomicInteger remainingOutputs;
+      private long startTime;
+      
+      // the outputs to produce or null to produce all declared outputs
+      private WorkflowPlan.Selection selection;
+      
+      // the resolution of each output slot, only used if outputs have deadlines
+      private AtomicIntegerArray outputStates;
+      private volatile List<ScheduledFuture<?>> deadlines;
+      private volatile boolean timedOut = false;
+      
+      // the delivered outputs indexed by slot, only used if results are cached
+      private String cacheKey;
+      private Object[] cachedOutputs;
+      private volatile boolean cacheable;
+      
+      /** Completes once all declared outputs have been supplied to the collector. */ 
+      private final CompletableFuture<Void> outputsReady = new CompletableFuture<>();
+      
+      /** Completes once the collector has been notified that processing is finished. */ 
+      private final CompletableFuture<Void> finished = new CompletableFuture<>();
+      
+      // the number of notifications of the collector in progress and the completion to 
+      // perform once they have returned, guarded by deliveryLock
+      private final Object deliveryLock = new Object();
+      private int deliveries = 0;
+      private Runnable pendingFinish;
 
-      private WorkflowExecutor(WorkflowExecutionContext context, DataValueKey inputKey, Set<TransformerController> controllers)
+      private WorkflowExecutor()
       {
-         this.id = UUID.randomUUID();
-         this.context = context;
-         this.inputKey = inputKey;
-         this.controllers = controllers;     // unneeded
+         this.execution = createExecution(this);
       }
       
-      private void shutdown()
+      private void shutdown(Throwable error)
       {
-         try 
+         List<ScheduledFuture<?>> scheduled = deadlines;
+         if (scheduled != null)
+            scheduled.forEach(deadline -> deadline.cancel(false));
+         
+         // stop any transformers that have not yet been executed. Those that are running are
+         // interrupted once the collector has been notified.
+         if (error != null || timedOut)
+            execution.cancel();
+         
+         synchronized (deliveryLock)
          {
-            collector.finished();
+            if (deliveries > 0)
+            {
+               // completed by the last delivery in progress
+               pendingFinish = () -> finish(error);
+               return;
+            }
          }
-         catch (Exception ex)
+         
+         finish(error);
+      }
+      
+      private void finish(Throwable error)
+      {
+         try
+         {
+            if (error != null)
+               handleError(collector, toException(error));
+            
+            if (settings.collectMetrics)
+               metrics.inputCompleted(System.nanoTime() - startTime, error == null && !timedOut);
+            
+            if (cacheKey != null && cacheable && error == null && !timedOut)
+               resultCache.put(cacheKey, getCachedOutputs());
+            
+            notifyFinished(collector);
+            
+            // the outputs these transformers would contribute to are no longer needed
+            if (error != null || timedOut)
+               execution.interrupt();
+            
+            execution.close();
+         }
+         finally
+         {
+            if (error != null)
+               finished.completeExceptionally(error);
+            else
+               finished.complete(null);
+         }
+      }
+      
+      /**
+       * Begins a notification of the collector about an output, unless the execution has 
+       * completed or the output has already been resolved.
+       * 
+       * @return {@code true} if the collector should be notified, in which case 
+       *       {@link #endDelivery()} must be called once it has been.
+       */
+      private boolean beginDelivery(int slot, int state)
+      {
+         synchronized (deliveryLock)
          {
-            logger.log(Level.WARNING, "Notification of results collector of workflow completion failed.", ex);
+            if (outputsReady.isDone() || !resolve(slot, state))
+               return false;
+            
+            deliveries++;
+            return true;
+         }
+      }
+      
+      private void endDelivery()
+      {
+         Runnable finish;
+         synchronized (deliveryLock)
+         {
+            if (--deliveries > 0 || pendingFinish == null)
+               return;
+            
+            finish = pendingFinish;
+            pendingFinish = null;
          }
          
-         context.close();
+         finish.run();
       }
       
-      void process(T data, ResultsCollector<T> collector)
+      /**
+       * @return The delivered outputs keyed by the id of the transformer that produced them. 
+       *       Slots are assigned when the plan is compiled, so they are not used to identify 
+       *       cached outputs that may be read by other controllers.
+       */
+      private Map<UUID, Object> getCachedOutputs()
+      {
+         Map<UUID, Object> outputs = new HashMap<>();
+         for (int slot = 0; slot < cachedOutputs.length; slot++)
+         {
+            if (plan.outputs[slot])
+               outputs.put(plan.keys[slot].getSourceId(), cachedOutputs[slot]);
+         }
+         
+         return outputs;
+      }
+      
+      /**
+       * Supplies the input data to the workflow. This returns once all transformers that 
+       * depend only on the input have been scheduled for execution. 
+       * 
+       * @param digest The content digest of the input or {@code null} if it is not known.
+       * @param cacheKey The key under which to cache the outputs or {@code null} if the 
+       *       outputs should not be cached.
+       * @param selection The outputs to produce or {@code null} to produce all declared 
+       *       outputs.
+       * @param timeoutNanos The time allowed to process the input or zero or less if 
+       *       processing is not subject to a deadline.
+       * @return A future that completes once all declared outputs have been supplied to the 
+       *       results collector and it has been notified that processing is finished.
+       */
+      CompletableFuture<Void> start(T data, ResultsCollector<T> collector, String digest, String cacheKey, WorkflowPlan.Selection selection, long timeoutNanos)
       {
          Objects.requireNonNull(data, "Input data must not be null.");
          Objects.requireNonNull(collector, "No results collector supplied.");
          
          this.inputData = data;
          this.collector = collector;
+         this.startTime = System.nanoTime();
+         this.cacheKey = cacheKey;
+         this.selection = selection;
+         if (cacheKey != null)
+         {
+            this.cachedOutputs = new Object[plan.size()];
+            this.cacheable = true;
+         }
          
-         // register handlers for data to export
-         Set<DataValueKey> outputs = config.getDeclaredOutputs();
-         outputDataLatch = new CountDownLatch(outputs.size());
-         context.registerListener(outputs, this::onDataAvailable);
-         
-         // stitch together error handling and execution completion
+         outputsReady.whenComplete((v, ex) -> shutdown(ex));
+         int outputCount = (selection == null) ? plan.outputCount : selection.outputCount;
+         remainingOutputs = new AtomicInteger(outputCount);
+         if (hasOutputDeadlines || timeoutNanos > 0)
+            scheduleDeadlines(timeoutNanos);
          
          // TODO add validation to ensure that this will wake up something
-         context.put(inputKey, data);
+         execution.start(data, digest, selection);
+         
+         if (outputCount == 0)
+            outputsReady.complete(null);
          
-         awaitCompletion();
-         shutdown();
+         return finished;
       }
-
-      private void awaitCompletion()
+      
+      /**
+       * Cancels this execution. Transformers that have not yet been executed will not be run.
+       */
+      void cancel()
       {
-         try 
+         outputsReady.cancel(false);
+      }
+      
+      private void scheduleDeadlines(long timeoutNanos)
+      {
+         ScheduledThreadPoolExecutor timer = getDeadlineTimer();
+         List<ScheduledFuture<?>> scheduled = new ArrayList<>();
+         if (hasOutputDeadlines)
          {
-            // TODO provide timeout, support cancellation
-            outputDataLatch.await();       
+            outputStates = new AtomicIntegerArray(plan.size());
+            for (int slot = 0; slot < outputDeadlines.length; slot++)
+            {
+               if (outputDeadlines[slot] <= 0 || (selection != null && !selection.outputs[slot]))
+                  continue;
+               
+               int s = slot;
+               scheduled.add(timer.schedule(() -> outputTimedOut(s), outputDeadlines[slot], TimeUnit.NANOSECONDS));
+            }
          }
-         catch (Exception ex)
+         
+         if (timeoutNanos > 0)
+            scheduled.add(timer.schedule(() -> inputTimedOut(timeoutNanos), timeoutNanos, TimeUnit.NANOSECONDS));
+         
+         deadlines = scheduled;
+      }
+      
+      private void inputTimedOut(long timeoutNanos)
+      {
+         long millis = TimeUnit.NANOSECONDS.toMillis(timeoutNanos);
+         outputsReady.completeExceptionally(new TimeoutException("Input was not processed within " + millis + " ms."));
+      }
+      
+      /**
+       * Marks an output as resolved.
+       * 
+       * @return {@code true} if the output had not already been resolved.
+       */
+      private boolean resolve(int slot, int state)
+      {
+         return outputStates == null || outputStates.compareAndSet(slot, OUTPUT_PENDING, state);
+      }
+      
+      private void outputTimedOut(int slot)
+      {
+         if (!beginDelivery(slot, OUTPUT_TIMED_OUT))
+            return;
+         
+         try
          {
-            // handle exceptions from the supplied collector.
-            logger.log(Level.SEVERE, "Failed to complete.", ex);
+            timedOut = true;
+            long millis = TimeUnit.NANOSECONDS.toMillis(outputDeadlines[slot]);
+            handleError(collector, new TimeoutException("Output [" + plan.keys[slot] + "] was not supplied within " + millis + " ms."));
+         }
+         finally
+         {
+            endDelivery();
          }
+         
+         if (remainingOutputs.decrementAndGet() == 0)
+            outputsReady.complete(null);
+      }
+      
+      @Override
+      public void transformerFailed(WorkflowPlan.Node node, Exception ex)
+      {
+         outputsReady.completeExceptionally(new WorkflowException("Transformer [" + node.transformer + "] (" + node.transformerId + ") failed to process the input.", ex));
       }
       
-      private void onDataAvailable(DataAvailableEvent evt)
+      @Override
+      public void outputAvailable(int slot, DataValueKey key, Object value)
       {
-         DataValueKey key = evt.getKey();
-         TranformationResult<T> result = new TransResultImpl<>(key, evt.getValue(), inputData);
+         // execution has been cancelled or the output was supplied after its deadline
+         if (!beginDelivery(slot, OUTPUT_DELIVERED))
+            return;
+         
          try
          {
-            collector.handleResult(result);
+            if (cachedOutputs != null)
+            {
+               cachedOutputs[slot] = value;
+               if (value instanceof AutoCloseable)
+                  cacheable = false;
+            }
+            
+            collector.handleResult(new TransResultImpl<>(key, value, inputData));
          }
          catch (Exception ex)
          {
             // handle exceptions from the supplied collector.
             logger.log(Level.WARNING, "Notification of results collector of data available failed [" + key + "]. ", ex);
          }
+         finally
+         {
+            endDelivery();
+         }
          
-         outputDataLatch.countDown();
+         if (remainingOutputs.decrementAndGet() == 0)
+            outputsReady.complete(null);
       }
    }
    
@@ -379,6 +1269,45 @@ public class WorkflowControllerImpl implements WorkflowController
       }
    }
    
+   /**
+    * Wraps the collector supplied to {@link WorkflowControllerImpl#processAll(Iterator, ResultsCollector)}
+    * so that it is notified only once, after all inputs have been processed, rather than once 
+    * per input.
+    */
+   private static final class BatchItemCollector<SourceType> implements ResultsCollector<SourceType>
+   {
+      private final ResultsCollector<SourceType> delegate;
+
+      BatchItemCollector(ResultsCollector<SourceType> delegate)
+      {
+         this.delegate = delegate;
+      }
+      
+      @Override
+      public void handleResult(TranformationResult<SourceType> result)
+      {
+         delegate.handleResult(result);
+      }
+
+      @Override
+      public void handleError(TransformationError error)
+      {
+         delegate.handleError(error);
+      }
+
+      @Override
+      public void finished()
+      {
+         // no-op: the batch notifies the delegate once all inputs are complete
+      }
+   }
+   
+   /**
+    * Executes the tasks that run individual transformers. Implementations may be supplied to
+    * a {@link WorkflowControllerImpl} using {@link WorkflowControllerSettings#taskExecutor}.
+    * If an implementation owned by the controller is also {@link AutoCloseable}, it will be 
+    * closed when the controller is closed. 
+    */
    public static interface TaskExecutionService
    {
       void execute(Runnable task);
@@ -0,0 +1,212 @@
+package edu.tamu.tcat.analytics.datatrax.basic;
+
+import java.nio.file.Path;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.UUID;
+
+import edu.tamu.tcat.analytics.datatrax.basic.WorkflowControllerImpl.TaskExecutionService;
+
+/**
+ * A data vehicle for the tuning parameters used by a {@link WorkflowControllerImpl}. These
+ * control how the controller schedules work rather than what work it performs (which is
+ * defined by the {@code WorkflowConfiguration}). The default values are suitable for most
+ * workflows.
+ */
+public class WorkflowControllerSettings
+{
+   /**
+    * The maximum number of input data instances that will be processed by the workflow at
+    * the same time. Inputs supplied while this many inputs are in process will be queued
+    * until an in-process input has completed. Must be greater than zero.
+    */
+   public int maxInFlight = Runtime.getRuntime().availableProcessors();
+
+   /**
+    * The maximum number of inputs that may be waiting to start in addition to the
+    * {@link #maxInFlight} inputs that are in process. Once this many inputs are waiting, the
+    * controller applies its {@link #admissionPolicy} to additional inputs. Must not be
+    * negative.
+    */
+   public int maxPending = Runtime.getRuntime().availableProcessors();
+
+   /**
+    * Determines how {@code WorkflowController#process} handles inputs that are submitted
+    * while {@link #maxPending} inputs are already waiting to start.
+    */
+   public AdmissionPolicy admissionPolicy = AdmissionPolicy.QUEUE;
+
+   /**
+    * The maximum number of transformer tasks that will be executed concurrently by the
+    * default task execution service. Ignored if a {@link #taskExecutor} is supplied. Must
+    * be greater than zero.
+    */
+   public int taskParallelism = Runtime.getRuntime().availableProcessors();
+
+   /**
+    * The service to be used to execute transformer tasks. If {@code null}, the controller will
+    * create a {@link ForkJoinTaskExecutionService} with {@link #taskParallelism} threads and
+    * will shut it down when the controller is closed. A supplied service may be shared by
+    * several controllers and will not be shut down by the controller.
+    */
+   public TaskExecutionService taskExecutor;
+
+   /**
+    * Indicates that transformer tasks and workflow executions should run on virtual threads
+    * rather than on pools of platform threads. This is appropriate for workflows whose
+    * transformers spend much of their time blocked on I/O, and allows {@link #maxInFlight}
+    * to be set much higher than the number of available platform threads. If the JVM does
+    * not support virtual threads, the controller falls back to its default thread pools.
+    * Transformer tasks will use a supplied {@link #taskExecutor} if one is provided.
+    */
+   public boolean useVirtualThreads = false;
+
+   /**
+    * Indicates that the state used to process an individual input should be recycled once
+    * processing is complete rather than being allocated for each input. Disabling this is
+    * primarily useful when diagnosing problems with the controller.
+    */
+   public boolean recycleExecutionState = true;
+
+   /**
+    * Indicates that timing and throughput metrics should be recorded for each transformer
+    * and input. If disabled, the controller's {@code WorkflowMetrics} will remain empty.
+    */
+   public boolean collectMetrics = true;
+
+   /**
+    * Indicates that the controller's metrics should be registered with the platform MBean
+    * server. See {@link WorkflowMetricsMXBean} and {@link TransformerMetricsMXBean}. Ignored
+    * if {@link #collectMetrics} is disabled.
+    */
+   public boolean registerMBeans = false;
+
+   /**
+    * The maximum time, in milliseconds, to wait for each declared output of an input after
+    * processing of the input has started. Outputs that are not supplied in time are reported
+    * to the results collector as a {@link java.util.concurrent.TimeoutException} so that
+    * processing of the input can complete with the outputs that are available. A value of
+    * zero or less disables the deadline. May be overridden for individual outputs using
+    * {@link #outputTimeouts}.
+    */
+   public long outputTimeoutMillis = 0;
+
+   /**
+    * Deadlines, in milliseconds, for individual declared outputs, keyed by the id of the
+    * transformer that produces the output. These take precedence over
+    * {@link #outputTimeoutMillis}. A value of zero or less disables the deadline for the
+    * output.
+    */
+   public Map<UUID, Long> outputTimeouts = new HashMap<>();
+
+   /**
+    * The maximum time, in milliseconds, allowed to process each input after processing of
+    * the input has started. Inputs that are not processed in time are abandoned: running
+    * transformers are interrupted, transformers that have not started are not executed and a
+    * {@link java.util.concurrent.TimeoutException} is reported to the results collector. A
+    * value of zero or less disables the deadline. Applies to all inputs other than those
+    * supplied with an explicit timeout.
+    */
+   public long inputTimeoutMillis = 0;
+
+   /**
+    * The store used to hold intermediate values until the transformers that consume them
+    * have run. If {@code null}, values are held on the heap. An {@link OffHeapValueStore} may
+    * be used to reduce garbage collection overhead for workflows that produce large values.
+    * A store may be shared by several controllers.
+    */
+   public ValueStore valueStore;
+
+   /**
+    * The maximum number of inputs whose outputs are cached in memory. If greater than zero,
+    * the declared outputs produced for inputs that supply a
+    * {@link edu.tamu.tcat.analytics.datatrax.ContentDigest} are cached, and inputs with the
+    * same digest are supplied the cached outputs without running any transformers. Cached
+    * outputs are supplied to every collector that receives them, so they must not be
+    * modified. Outputs that are {@link AutoCloseable} are not cached.
+    */
+   public int resultCacheSize = 0;
+
+   /**
+    * The time, in milliseconds, after which cached outputs expire. A value of zero or less
+    * indicates that cached outputs do not expire.
+    */
+   public long resultCacheTtlMillis = 0;
+
+   /**
+    * A directory in which to store cached outputs that are {@link java.io.Serializable} so
+    * that they may be reused once they have been evicted from memory or by other processes.
+    * If {@code null}, outputs are only cached in memory. Ignored if {@link #resultCacheSize}
+    * is zero.
+    */
+   public Path resultCacheDirectory;
+
+   /**
+    * The cache used to memoize the outputs of deterministic transformers. If {@code null},
+    * transformer outputs are not memoized. The same cache should be supplied to all
+    * controllers whose workflows may share transformers, so that a transformer applied to the
+    * same inputs with the same configuration by different workflows is executed only once.
+    */
+   public TransformerCache transformerCache;
+
+   public WorkflowControllerSettings()
+   {
+
+   }
+
+   /**
+    * Creates a {@code WorkflowControllerSettings} data vehicle as a copy of an existing
+    * data vehicle.
+    *
+    * @param settings The settings to be copied.
+    */
+   public static WorkflowControllerSettings create(WorkflowControllerSettings settings)
+   {
+      WorkflowControllerSettings result = new WorkflowControllerSettings();
+      result.maxInFlight = settings.maxInFlight;
+      result.maxPending = settings.maxPending;
+      result.admissionPolicy = settings.admissionPolicy;
+      result.taskParallelism = settings.taskParallelism;
+      result.taskExecutor = settings.taskExecutor;
+      result.useVirtualThreads = settings.useVirtualThreads;
+      result.recycleExecutionState = settings.recycleExecutionState;
+      result.collectMetrics = settings.collectMetrics;
+      result.registerMBeans = settings.registerMBeans;
+      result.outputTimeoutMillis = settings.outputTimeoutMillis;
+      result.outputTimeouts = new HashMap<>(settings.outputTimeouts);
+      result.inputTimeoutMillis = settings.inputTimeoutMillis;
+      result.valueStore = settings.valueStore;
+      result.resultCacheSize = settings.resultCacheSize;
+      result.resultCacheTtlMillis = settings.resultCacheTtlMillis;
+      result.resultCacheDirectory = settings.resultCacheDirectory;
+      result.transformerCache = settings.transformerCache;
+
+      return result;
+   }
+
+   /**
+    * The policies that may be applied to inputs submitted to a workflow controller that has
+    * reached its admission limit. Inputs supplied to {@code WorkflowController#processAll} are
+    * pulled from their source only as the controller is able to process them and are not
+    * subject to these policies, although they do count towards the limit.
+    */
+   public enum AdmissionPolicy
+   {
+      /**
+       * Inputs are queued without limit. Clients that need to bound the memory used by
+       * queued inputs should wait for {@code WorkflowController#whenReady()} before submitting
+       * additional inputs.
+       */
+      QUEUE,
+
+      /**
+       * The submitting thread blocks until the input can be admitted.
+       */
+      BLOCK,
+
+      /**
+       * The input is rejected with a {@link java.util.concurrent.RejectedExecutionException}.
+       */
+      REJECT
+   }
+}
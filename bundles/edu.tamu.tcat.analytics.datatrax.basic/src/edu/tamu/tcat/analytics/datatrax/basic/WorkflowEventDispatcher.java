@@ -0,0 +1,317 @@
+package edu.tamu.tcat.analytics.datatrax.basic;
+
+import java.util.Objects;
+import java.util.UUID;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.LockSupport;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import edu.tamu.tcat.analytics.datatrax.WorkflowObserver;
+import edu.tamu.tcat.analytics.datatrax.WorkflowObserver.ProcessingEvent;
+
+/**
+ * Delivers the lifecycle events of the transformers executed by a {@link WorkflowControllerImpl}
+ * to the {@link WorkflowObserver}s registered with it.
+ *
+ * <p>
+ * Threads that execute transformers record events as primitive values in an
+ * {@link EventRingBuffer}. A single dispatch thread drains the buffer, creates the
+ * {@link ProcessingEvent} instances and notifies the observers. Recording an event never
+ * blocks. If the buffer is full the event is dropped and the number of dropped events is
+ * periodically logged. When no observer is registered, recording an event costs a single
+ * volatile read and the dispatch thread is not running.
+ *
+ * <p>
+ * Once it has drained the buffer, the dispatch thread parks until a producer records an
+ * event or the dispatcher is deactivated. The thread publishes itself before checking for
+ * events a final time, so that a producer that records an event after this check will see
+ * it and unpark it. Producers only unpark the dispatch thread while it is idle.
+ *
+ * <p>
+ * Data and task ids are derived from a per-dispatcher random prefix and a sequence number
+ * assigned to each input so that they do not need to be generated on the hot path.
+ */
+final class WorkflowEventDispatcher implements AutoCloseable
+{
+   private static final Logger logger = Logger.getLogger(WorkflowEventDispatcher.class.getName());
+
+   static final int ACTIVATE = 0;
+   static final int DATA_AVAILABLE = 1;
+   static final int BEFORE_EXECUTION = 2;
+   static final int COMPLETION = 3;
+   static final int ERROR = 4;
+
+   private static final String[] ACTIONS = {
+         ProcessingEvent.ACTIVATE,
+         ProcessingEvent.DATA_AVAILABLE,
+         ProcessingEvent.BEFORE_EXECUTION,
+         ProcessingEvent.COMPLETION,
+         ProcessingEvent.ERROR
+   };
+
+   private static final int DEFAULT_CAPACITY = 1 << 14;
+
+   private final WorkflowPlan plan;
+   private final String name;
+   private final long idPrefix = UUID.randomUUID().getMostSignificantBits();
+   private final AtomicLong inputSeq = new AtomicLong();
+
+   private final EventRingBuffer buffer = new EventRingBuffer(DEFAULT_CAPACITY);
+   private final LongAdder dropped = new LongAdder();
+
+   // the dispatch thread while it is parked waiting for events, otherwise null
+   private final AtomicReference<Thread> idle = new AtomicReference<>();
+
+   private final CopyOnWriteArrayList<WorkflowObserver> observers = new CopyOnWriteArrayList<>();
+   private volatile boolean active = false;
+
+   // guarded by this
+   private Thread dispatchThread;
+   private boolean closed = false;
+
+   /**
+    * @param plan The plan whose transformers will be reported on.
+    * @param name A name for the workflow used to identify the dispatch thread.
+    */
+   WorkflowEventDispatcher(WorkflowPlan plan, String name)
+   {
+      this.plan = plan;
+      this.name = name;
+   }
+
+   /**
+    * @return A sequence number identifying a newly submitted input.
+    */
+   long nextInputSeq()
+   {
+      return inputSeq.incrementAndGet();
+   }
+
+   /**
+    * Records an event. Returns immediately if no observers are registered.
+    *
+    * @param action One of the action constants defined by this class.
+    * @param inputSeq The sequence number of the input being processed.
+    * @param node The index of the node within the plan.
+    * @param error The error for {@link #ERROR} events, otherwise {@code null}.
+    */
+   void emit(int action, long inputSeq, int node, Throwable error)
+   {
+      if (!active)
+         return;
+
+      if (buffer.offer(action, inputSeq, node, System.nanoTime(), error))
+         signal();
+      else
+         dropped.increment();
+   }
+
+   /**
+    * Unparks the dispatch thread if it is waiting for events.
+    */
+   private void signal()
+   {
+      Thread thread = idle.get();
+      if (thread != null && idle.compareAndSet(thread, null))
+         LockSupport.unpark(thread);
+   }
+
+   /**
+    * Registers an observer.
+    *
+    * @return A registration that will remove the observer when closed.
+    */
+   synchronized AutoCloseable addObserver(WorkflowObserver observer)
+   {
+      Objects.requireNonNull(observer, "No observer supplied.");
+      if (closed)
+         throw new IllegalStateException("This workflow controller has been closed");
+
+      observers.add(observer);
+      active = true;
+      if (dispatchThread == null)
+      {
+         dispatchThread = new Thread(this::dispatch, "datatrax-events-" + name);
+         dispatchThread.setDaemon(true);
+         dispatchThread.start();
+      }
+
+      return () -> removeObserver(observer);
+   }
+
+   private synchronized void removeObserver(WorkflowObserver observer)
+   {
+      observers.remove(observer);
+      if (observers.isEmpty())
+      {
+         active = false;
+         signal();
+      }
+   }
+
+   /**
+    * Removes all observers and stops the dispatch thread once any recorded events have been
+    * delivered.
+    */
+   @Override
+   public void close()
+   {
+      Thread thread;
+      synchronized (this)
+      {
+         closed = true;
+         active = false;
+         thread = dispatchThread;
+      }
+
+      if (thread == null || thread == Thread.currentThread())
+         return;
+
+      LockSupport.unpark(thread);
+      try
+      {
+         thread.join(TimeUnit.SECONDS.toMillis(10));
+      }
+      catch (InterruptedException e)
+      {
+         Thread.currentThread().interrupt();
+      }
+      finally
+      {
+         observers.clear();
+      }
+   }
+
+   private void dispatch()
+   {
+      EventRingBuffer.EventConsumer consumer = this::deliver;
+      while (true)
+      {
+         if (buffer.poll(consumer))
+            continue;
+
+         logDropped();
+         if (!active)
+         {
+            // exit once deactivated unless an observer was registered while draining
+            synchronized (this)
+            {
+               if (!active)
+               {
+                  while (buffer.poll(consumer)) { /* drain events recorded before deactivation */ }
+                  dispatchThread = null;
+                  return;
+               }
+            }
+         }
+
+         awaitEvents();
+      }
+   }
+
+   /**
+    * Parks the dispatch thread until a producer records an event or the dispatcher is
+    * deactivated. May return spuriously.
+    */
+   private void awaitEvents()
+   {
+      Thread current = Thread.currentThread();
+      idle.set(current);
+      if (buffer.isEmpty() && active)
+         LockSupport.park(this);
+
+      idle.compareAndSet(current, null);
+   }
+
+   private void logDropped()
+   {
+      long count = dropped.sumThenReset();
+      if (count > 0)
+         logger.warning("Dropped [" + count + "] workflow events for workflow '" + name + "'. Observers are not keeping up.");
+   }
+
+   private void deliver(int action, long seq, int node, long time, Throwable error)
+   {
+      ProcessingEvent evt = new ProcessingEventImpl(ACTIONS[action], plan.nodes[node].transformerId,
+            new UUID(idPrefix, seq), new UUID(idPrefix + node + 1, seq), time, error);
+
+      for (WorkflowObserver observer : observers)
+      {
+         try
+         {
+            observer.handleEvent(evt);
+         }
+         catch (Exception ex)
+         {
+            logger.log(Level.WARNING, "Workflow observer failed to handle event [" + evt + "]", ex);
+         }
+      }
+   }
+
+   private static final class ProcessingEventImpl implements ProcessingEvent
+   {
+      private final String action;
+      private final UUID transformerId;
+      private final UUID dataId;
+      private final UUID taskId;
+      private final long time;
+      private final Throwable error;
+
+      ProcessingEventImpl(String action, UUID transformerId, UUID dataId, UUID taskId, long time, Throwable error)
+      {
+         this.action = action;
+         this.transformerId = transformerId;
+         this.dataId = dataId;
+         this.taskId = taskId;
+         this.time = time;
+         this.error = error;
+      }
+
+      @Override
+      public String getAction()
+      {
+         return action;
+      }
+
+      @Override
+      public String getTransformerId()
+      {
+         return transformerId.toString();
+      }
+
+      @Override
+      public UUID getDataId()
+      {
+         return dataId;
+      }
+
+      @Override
+      public UUID getTransformationTaskId()
+      {
+         return taskId;
+      }
+
+      @Override
+      public long getTime()
+      {
+         return time;
+      }
+
+      @Override
+      public Throwable getError()
+      {
+         return error;
+      }
+
+      @Override
+      public String toString()
+      {
+         return action + " [" + transformerId + "] task [" + taskId + "]";
+      }
+   }
+}
@@ -1,12 +1,12 @@
 package edu.tamu.tcat.analytics.datatrax.basic;
 
 import java.text.MessageFormat;
+import java.util.Arrays;
 import java.util.HashSet;
-import java.util.List;
 import java.util.Map;
 import java.util.Set;
 import java.util.concurrent.ConcurrentHashMap;
-import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicReference;
 import java.util.function.Consumer;
 import java.util.logging.Level;
 import java.util.logging.Logger;
@@ -15,17 +15,25 @@ import edu.tamu.tcat.analytics.datatrax.DataValueKey;
 import edu.tamu.tcat.analytics.datatrax.WorkflowController;
 
 /**
- *  Used by the {@link WorkflowController} to store the results of data transformation 
- *  operations. The notification system implemented by the {@link WorkflowExecutionContext} drives 
- *  the execution of new tasks. 
+ *  A store for the results of data transformation operations, keyed by {@link DataValueKey}. 
+ *  The notification system implemented by the {@link WorkflowExecutionContext} can be used to 
+ *  drive the execution of new tasks. Note that the {@link WorkflowController} implementation 
+ *  uses the index-based {@link PlanExecution} rather than this class when processing inputs.
+ *  
+ *  <p>
+ *  The context does not use a global lock. Each key is associated with a {@link Slot} that 
+ *  atomically transitions from holding a list of waiting listeners to holding the key's value.
+ *  Values are published and listeners are notified without holding any lock, so transformers 
+ *  that complete at the same time do not contend with one another unless they supply the 
+ *  same key. Each listener is notified exactly once for each key it is registered for, either 
+ *  when the value is supplied or, if the value is already present, when it is registered.
  */
 public class WorkflowExecutionContext
 {
    private final static Logger contextLogger = Logger.getLogger("edu.tamu.tcat.datatrax.ex_context");
    
-   private final Map<DataValueKey, Object> values = new ConcurrentHashMap<>();
    // TODO need JavaType for this thing.
-   private final Map<DataValueKey, List<Consumer<DataAvailableEvent>>> listeners = new ConcurrentHashMap<>();
+   private final Map<DataValueKey, Slot> slots = new ConcurrentHashMap<>();
    
    public WorkflowExecutionContext()
    {
@@ -46,7 +54,8 @@ public class WorkflowExecutionContext
    
    /**
     * Registers a listener that will be notified whenever data become available for any of the 
-    * supplied keys.
+    * supplied keys. If a value is already available for a key, the listener will be notified
+    * immediately on the calling thread.
     * 
     * @param keys The keys that identify data values to listen for.
     * @param ears The listener for data events.
@@ -54,90 +63,79 @@ public class WorkflowExecutionContext
     */
    public AutoCloseable registerListener(final Set<DataValueKey> keys, final Consumer<DataAvailableEvent> ears)
    {
-      synchronized (this)
+      for (DataValueKey key : keys)
       {
-         for (DataValueKey key : keys)
-         {
-            addListener(key, ears);
-         }
+         addListener(key, ears);
       }
       
       return () -> removeListener(keys, ears);
    }
    
+   private Slot getSlot(DataValueKey key)
+   {
+      Slot slot = slots.get(key);
+      return (slot != null) ? slot : slots.computeIfAbsent(key, k -> new Slot());
+   }
+   
    private void removeListener(Set<DataValueKey> keys, Consumer<DataAvailableEvent> ears)
    {
-      synchronized (this)
+      for (DataValueKey key : keys)
       {
-         for (DataValueKey key : keys)
-         {
-            List<Consumer<DataAvailableEvent>> list = listeners.get(key);
-            if (list != null && list.contains(ears))
-            {
-               list.remove(ears);
-            }
-         } 
-      }
+         Slot slot = slots.get(key);
+         if (slot != null)
+            slot.removeListener(ears);
+      } 
    }
    
    private void addListener(DataValueKey key, Consumer<DataAvailableEvent> ears)
    {
-      // if already present, fire immediately. otherwise, add to all defined keys
-      if (values.containsKey(key))
+      // if already present, fire immediately. otherwise, wait for the value to be supplied
+      Slot slot = getSlot(key);
+      if (!slot.addListener(ears))
       {
-         DataAvailableEvent event = new DataAvailableEvent(key, values.get(key));
-         ears.accept(event);
-         return;
+         DataAvailableEvent event = new DataAvailableEvent(key, slot.getValue());
+         notify(ears, event);
       }
-      
-      List<Consumer<DataAvailableEvent>> pending = listeners.get(key);
-      if (pending == null)
-      {
-         pending = new CopyOnWriteArrayList<>();
-         listeners.put(key, pending);
-      }
-      
-      pending.add(ears);
    }
       
 
    public void put(DataValueKey key, Object value)
    {
-      synchronized (this)
-      {
-         checkValueType(key, value);
-         
-         if (values.putIfAbsent(key, value) != null)
-         {
-            contextLogger.warning("Attempt to supply duplicate value for key [" + key + "]. The supplied value [" + value + "] was ignored.");
-            return;
-         }
+      checkValueType(key, value);
       
-         notifyDataAvailable(key, value);
+      Consumer<DataAvailableEvent>[] waiting = getSlot(key).setValue(value);
+      if (waiting == null)
+      {
+         contextLogger.warning("Attempt to supply duplicate value for key [" + key + "]. The supplied value [" + value + "] was ignored.");
+         return;
       }
+      
+      notifyDataAvailable(key, value, waiting);
    }
 
-   private void notifyDataAvailable(DataValueKey key, Object value)
+   private void notifyDataAvailable(DataValueKey key, Object value, Consumer<DataAvailableEvent>[] ears)
    {
-      if (!listeners.containsKey(key))
+      if (ears.length == 0)
          return;
       
       // TODO notify in own thread
       DataAvailableEvent e = new DataAvailableEvent(key, value);
-      List<Consumer<DataAvailableEvent>> ears = listeners.get(key);
       for (Consumer<DataAvailableEvent> ear : ears)
       {
-         try 
-         {
-            ear.accept(e);
-         }
-         catch (Exception ex)
-         {
-            contextLogger.log(Level.WARNING, "Error attempting to notify listener of new data available for [" + key + "]", ex);
-         }
+         notify(ear, e);
+      }
+   }
+   
+   private static void notify(Consumer<DataAvailableEvent> ear, DataAvailableEvent e)
+   {
+      try 
+      {
+         ear.accept(e);
+      }
+      catch (Exception ex)
+      {
+         contextLogger.log(Level.WARNING, "Error attempting to notify listener of new data available for [" + e.getKey() + "]", ex);
       }
-      
-      ears.clear();
    }
 
    private void checkValueType(DataValueKey key, Object value)
@@ -154,34 +152,126 @@ public class WorkflowExecutionContext
    
    public Object get(DataValueKey key)
    {
-      synchronized (this)
-      {
-         return values.get(key);
-      }
+      Slot slot = slots.get(key);
+      return (slot != null) ? slot.getValue() : null;
    }
    
    public void close()
    {
-      synchronized (this)
+      for (Map.Entry<DataValueKey, Slot> entry : slots.entrySet())
       {
-         for (DataValueKey key : values.keySet())
+         Object o = entry.getValue().getValue();
+         if (o instanceof AutoCloseable)
          {
-            Object o = values.get(key);
-            if (o instanceof AutoCloseable)
+            try 
+            {
+               ((AutoCloseable)o).close();
+            }
+            catch (Exception ex) 
             {
-               try 
-               {
-                  ((AutoCloseable)o).close();
-               }
-               catch (Exception ex) 
-               {
-                  contextLogger.log(Level.WARNING, "Failed to close value for key [" + key + "]", ex);
-               }
+               contextLogger.log(Level.WARNING, "Failed to close value for key [" + entry.getKey() + "]", ex);
             }
          }
       }
    }
    
+   /**
+    * Holds the state associated with a single key. The state is either an array of the 
+    * listeners waiting for a value or, once a value has been supplied, a {@link Value} 
+    * that wraps it. The state is updated using compare-and-set, so a listener is either 
+    * captured by the thread that supplies the value or observes the value when it is 
+    * registered, but never both.
+    */
+   private static final class Slot
+   {
+      // generic arrays cannot be created directly, but an empty array never holds an element
+      // of the wrong type
+      @SuppressWarnings("unchecked")
+      private static final Consumer<DataAvailableEvent>[] NO_LISTENERS = (Consumer<DataAvailableEvent>[])new Consumer<?>[0];
+      
+      private final AtomicReference<Object> state = new AtomicReference<>(NO_LISTENERS);
+      
+      /**
+       * @return The value of this slot or {@code null} if no value has been supplied.
+       */
+      Object getValue()
+      {
+         Object current = state.get();
+         return (current instanceof Value) ? ((Value)current).value : null;
+      }
+      
+      /**
+       * @return {@code true} if the listener was added, {@code false} if a value is already 
+       *       present.
+       */
+      @SuppressWarnings("unchecked")
+      boolean addListener(Consumer<DataAvailableEvent> ears)
+      {
+         while (true)
+         {
+            Object current = state.get();
+            if (current instanceof Value)
+               return false;
+            
+            Consumer<DataAvailableEvent>[] waiting = (Consumer<DataAvailableEvent>[])current;
+            Consumer<DataAvailableEvent>[] updated = Arrays.copyOf(waiting, waiting.length + 1);
+            updated[waiting.length] = ears;
+            if (state.compareAndSet(current, updated))
+               return true;
+         }
+      }
+      
+      @SuppressWarnings("unchecked")
+      void removeListener(Consumer<DataAvailableEvent> ears)
+      {
+         while (true)
+         {
+            Object current = state.get();
+            if (current instanceof Value)
+               return;
+            
+            Consumer<DataAvailableEvent>[] waiting = (Consumer<DataAvailableEvent>[])current;
+            int ix = Arrays.asList(waiting).indexOf(ears);
+            if (ix < 0)
+               return;
+            
+            Consumer<DataAvailableEvent>[] updated = Arrays.copyOf(waiting, waiting.length - 1);
+            System.arraycopy(waiting, ix + 1, updated, ix, waiting.length - ix - 1);
+            if (state.compareAndSet(current, updated))
+               return;
+         }
+      }
+      
+      /**
+       * @return The listeners that were waiting for this value or {@code null} if a value 
+       *       has already been supplied.
+       */
+      @SuppressWarnings("unchecked")
+      Consumer<DataAvailableEvent>[] setValue(Object value)
+      {
+         Value v = new Value(value);
+         while (true)
+         {
+            Object current = state.get();
+            if (current instanceof Value)
+               return null;
+            
+            if (state.compareAndSet(current, v))
+               return (Consumer<DataAvailableEvent>[])current;
+         }
+      }
+   }
+   
+   private static final class Value
+   {
+      private final Object value;
+      
+      Value(Object value)
+      {
+         this.value = value;
+      }
+   }
+   
    /**
     *  @deprecated To be replaced once {@link WorkflowExecutionContext#registerListener(DataValueListener)}
     *       is no longer used. 
@@ -0,0 +1,167 @@
+package edu.tamu.tcat.analytics.datatrax.basic;
+
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.atomic.LongAdder;
+
+import edu.tamu.tcat.analytics.datatrax.Sized;
+import edu.tamu.tcat.analytics.datatrax.WorkflowMetrics;
+
+/**
+ * The {@link WorkflowMetrics} of a {@link WorkflowControllerImpl}. Metrics for each
+ * transformer are indexed by the node index of the {@link WorkflowPlan}, so that recording a
+ * measurement does not require a map lookup.
+ */
+final class WorkflowMetricsImpl implements WorkflowMetrics
+{
+   private final TransformerMetricsImpl[] transformers;
+   private final Map<UUID, TransformerMetrics> byId;
+
+   private final LogHistogram latency = new LogHistogram();
+   private final LongAdder completed = new LongAdder();
+   private final LongAdder failed = new LongAdder();
+
+   WorkflowMetricsImpl(WorkflowPlan plan)
+   {
+      transformers = new TransformerMetricsImpl[plan.nodes.length];
+      Map<UUID, TransformerMetrics> map = new HashMap<>();
+      for (WorkflowPlan.Node node : plan.nodes)
+      {
+         TransformerMetricsImpl m = new TransformerMetricsImpl(node.transformerId);
+         transformers[node.index] = m;
+         map.put(node.transformerId, m);
+      }
+
+      byId = Collections.unmodifiableMap(map);
+   }
+
+   /**
+    * @param node The index of a node of the plan.
+    * @return The metrics for the node's transformer.
+    */
+   TransformerMetricsImpl get(int node)
+   {
+      return transformers[node];
+   }
+
+   /**
+    * Records the completion of processing for an input.
+    *
+    * @param elapsed The time taken to process the input.
+    * @param success {@code false} if processing failed or was cancelled.
+    */
+   void inputCompleted(long elapsed, boolean success)
+   {
+      if (success)
+      {
+         completed.increment();
+         latency.record(elapsed);
+      }
+      else
+      {
+         failed.increment();
+      }
+   }
+
+   @Override
+   public long getInputsCompleted()
+   {
+      return completed.sum();
+   }
+
+   @Override
+   public long getInputsFailed()
+   {
+      return failed.sum();
+   }
+
+   @Override
+   public Histogram getLatency()
+   {
+      return latency;
+   }
+
+   @Override
+   public Collection<TransformerMetrics> getTransformerMetrics()
+   {
+      return Collections.unmodifiableList(Arrays.asList(transformers));
+   }
+
+   @Override
+   public TransformerMetrics getTransformerMetrics(UUID transformerId)
+   {
+      return byId.get(transformerId);
+   }
+
+   static final class TransformerMetricsImpl implements TransformerMetrics
+   {
+      private final UUID id;
+
+      final LogHistogram queueWait = new LogHistogram();
+      final LogHistogram createTime = new LogHistogram();
+      final LogHistogram callTime = new LogHistogram();
+      final LogHistogram outputSize = new LogHistogram();
+      final LongAdder executions = new LongAdder();
+      final LongAdder errors = new LongAdder();
+
+      TransformerMetricsImpl(UUID id)
+      {
+         this.id = id;
+      }
+
+      /**
+       * Records the size of a transformer's output if it is {@link Sized}.
+       */
+      void recordOutput(Object value)
+      {
+         if (value instanceof Sized)
+            outputSize.record(((Sized)value).getSize());
+      }
+
+      @Override
+      public UUID getTransformerId()
+      {
+         return id;
+      }
+
+      @Override
+      public long getExecutions()
+      {
+         return executions.sum();
+      }
+
+      @Override
+      public long getErrors()
+      {
+         return errors.sum();
+      }
+
+      @Override
+      public Histogram getQueueWait()
+      {
+         return queueWait;
+      }
+
+      @Override
+      public Histogram getCreateTime()
+      {
+         return createTime;
+      }
+
+      @Override
+      public Histogram getCallTime()
+      {
+         return callTime;
+      }
+
+      @Override
+      public Histogram getOutputSize()
+      {
+         return outputSize;
+      }
+   }
+}
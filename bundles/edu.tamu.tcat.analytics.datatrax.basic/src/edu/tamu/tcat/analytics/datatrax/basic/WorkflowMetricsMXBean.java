@@ -0,0 +1,23 @@
+package edu.tamu.tcat.analytics.datatrax.basic;
+
+/**
+ * Exposes the {@link edu.tamu.tcat.analytics.datatrax.WorkflowMetrics} of a workflow
+ * controller through JMX. Registered if {@link WorkflowControllerSettings#registerMBeans}
+ * is set. All times are in nanoseconds.
+ */
+public interface WorkflowMetricsMXBean
+{
+   String getWorkflowTitle();
+
+   long getInputsCompleted();
+
+   long getInputsFailed();
+
+   double getLatencyMean();
+
+   long getLatencyMedian();
+
+   long getLatency99thPercentile();
+
+   long getLatencyMax();
+}
@@ -0,0 +1,395 @@
+package edu.tamu.tcat.analytics.datatrax.basic;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import edu.tamu.tcat.analytics.datatrax.DataValueKey;
+import edu.tamu.tcat.analytics.datatrax.Transformer;
+import edu.tamu.tcat.analytics.datatrax.TransformerConfigurationException;
+import edu.tamu.tcat.analytics.datatrax.TransformerRegistration;
+import edu.tamu.tcat.analytics.datatrax.config.DataInputPin;
+import edu.tamu.tcat.analytics.datatrax.config.TransformerConfiguration;
+import edu.tamu.tcat.analytics.datatrax.config.WorkflowConfiguration;
+
+/**
+ * An immutable, index-based representation of a {@link WorkflowConfiguration} that is compiled
+ * once when a {@link WorkflowControllerImpl} is created and shared by all executions of the
+ * workflow.
+ *
+ * <p>
+ * Each data value produced during an execution (the workflow input and the output of each
+ * transformer) is assigned a dense integer slot and each transformer is assigned a dense
+ * integer index. Input pins are resolved to the slot of their data source. This allows a
+ * {@link PlanExecution} to track the data for a single input using flat arrays rather than
+ * maps keyed by {@link DataValueKey}.
+ *
+ * <p>
+ * A plan may be executed for a subset of its declared outputs. A {@link Selection} identifies
+ * the transformers required to produce the selected outputs so that the remaining
+ * transformers are not executed.
+ */
+final class WorkflowPlan
+{
+   private static final Logger logger = Logger.getLogger(WorkflowPlan.class.getName());
+
+   /** The slot that holds the workflow's input data. */
+   final int inputSlot;
+
+   /** The key of the data value stored in each slot. */
+   final DataValueKey[] keys;
+
+   /** The transformer nodes of this workflow, indexed by {@link Node#index}. */
+   final Node[] nodes;
+
+   /**
+    * For each slot, the indices of the nodes that consume its value. A node that has more
+    * than one input pin stitched to the same slot is listed once for each pin.
+    */
+   final int[][] consumers;
+
+   /** For each node, the number of input values it requires before it can be executed. */
+   final int[] inputCounts;
+
+   /** For each slot, whether its value is a declared output of the workflow. */
+   final boolean[] outputs;
+
+   /** The number of declared outputs. */
+   final int outputCount;
+
+   /**
+    * For each slot, the number of holders that must release its value before the value can
+    * be discarded: one for each consuming input pin plus one for delivery to the results
+    * collector if the value is a declared output. A count of zero indicates that the value
+    * is retained until the execution is closed. This is the case for the workflow input,
+    * which is supplied to the results collector as the source of each result, and for values
+    * that are neither consumed nor declared as outputs.
+    */
+   final int[] releaseCounts;
+
+   private WorkflowPlan(int inputSlot, DataValueKey[] keys, Node[] nodes, int[][] consumers, boolean[] outputs, int outputCount)
+   {
+      this.inputSlot = inputSlot;
+      this.keys = keys;
+      this.nodes = nodes;
+      this.consumers = consumers;
+      this.inputCounts = new int[nodes.length];
+      for (Node node : nodes)
+      {
+         inputCounts[node.index] = node.inputSlots.length;
+      }
+      this.outputs = outputs;
+      this.outputCount = outputCount;
+
+      this.releaseCounts = new int[keys.length];
+      for (int slot = 0; slot < keys.length; slot++)
+      {
+         if (slot != inputSlot)
+            releaseCounts[slot] = consumers[slot].length + (outputs[slot] ? 1 : 0);
+      }
+   }
+
+   /**
+    * @return The number of data value slots in this plan.
+    */
+   int size()
+   {
+      return keys.length;
+   }
+
+   /**
+    * @param key The key of a data value.
+    * @return The slot that holds the identified value or -1 if the value is not produced by
+    *       this plan.
+    */
+   int getSlot(DataValueKey key)
+   {
+      for (int slot = 0; slot < keys.length; slot++)
+      {
+         if (keys[slot].getSourceId().equals(key.getSourceId()))
+            return slot;
+      }
+
+      return -1;
+   }
+
+   /**
+    * Computes the transformers required to produce a subset of the declared outputs.
+    *
+    * @param requested The keys of the outputs to produce. Each must be a declared output.
+    * @return The selected outputs and the transformers required to produce them.
+    * @throws IllegalArgumentException If a requested key is not a declared output.
+    */
+   Selection select(Collection<? extends DataValueKey> requested)
+   {
+      boolean[] selectedOutputs = new boolean[keys.length];
+      int count = 0;
+      for (DataValueKey key : requested)
+      {
+         int slot = getSlot(key);
+         if (slot < 0 || !outputs[slot])
+            throw new IllegalArgumentException("Requested output [" + key + "] is not a declared output of this workflow.");
+
+         if (!selectedOutputs[slot])
+         {
+            selectedOutputs[slot] = true;
+            count++;
+         }
+      }
+
+      return new Selection(selectedOutputs, count, findRequiredNodes(selectedOutputs));
+   }
+
+   /**
+    * @param slots For each slot, whether its value is required.
+    * @return For each node, whether it must be executed to produce the required values.
+    */
+   private boolean[] findRequiredNodes(boolean[] slots)
+   {
+      boolean[] required = new boolean[nodes.length];
+      Deque<Node> queue = new ArrayDeque<>();
+      for (Node node : nodes)
+      {
+         if (slots[node.resultSlot])
+         {
+            required[node.index] = true;
+            queue.add(node);
+         }
+      }
+
+      while (!queue.isEmpty())
+      {
+         Node node = queue.remove();
+         for (int slot : node.inputSlots)
+         {
+            Node producer = getProducer(slot);
+            if (producer != null && !required[producer.index])
+            {
+               required[producer.index] = true;
+               queue.add(producer);
+            }
+         }
+      }
+
+      return required;
+   }
+
+   /**
+    * @return The node whose output is stored in a slot or {@code null} for the input slot.
+    */
+   Node getProducer(int slot)
+   {
+      // slot 0 holds the workflow input, slot i + 1 holds the output of node i
+      return (slot == inputSlot) ? null : nodes[slot - 1];
+   }
+
+   /**
+    * Compiles a workflow configuration into an execution plan.
+    *
+    * @param config The workflow configuration.
+    * @param transformers The instantiated transformers for all transformers that contribute
+    *       to the declared outputs of the configuration.
+    * @return The compiled plan.
+    * @throws TransformerConfigurationException If a transformer input or a declared output
+    *       refers to a data source that is not defined by the workflow.
+    */
+   static WorkflowPlan compile(WorkflowConfiguration config, Collection<WorkflowControllerImpl.ConfiguredTransformer> transformers) throws TransformerConfigurationException
+   {
+      // slot 0 holds the workflow input, slot i + 1 holds the output of node i
+      int numSlots = transformers.size() + 1;
+      DataValueKey[] keys = new DataValueKey[numSlots];
+      Map<UUID, Integer> slotIds = new HashMap<>();
+
+      int inputSlot = 0;
+      keys[inputSlot] = config.getInputKey();
+      slotIds.put(keys[inputSlot].getSourceId(), Integer.valueOf(inputSlot));
+
+      // order nodes by transformer id so that every controller for a configuration assigns
+      // the same slots, regardless of the iteration order of the supplied collection
+      List<WorkflowControllerImpl.ConfiguredTransformer> ordered = new ArrayList<>(transformers);
+      ordered.sort(Comparator.comparing((WorkflowControllerImpl.ConfiguredTransformer configured) -> configured.cfg.getId()));
+      for (int i = 0; i < ordered.size(); i++)
+      {
+         TransformerConfiguration cfg = ordered.get(i).cfg;
+         keys[i + 1] = new SimpleDataValueKey(cfg.getId(), cfg.getOutputType());
+         slotIds.put(cfg.getId(), Integer.valueOf(i + 1));
+      }
+
+      Node[] nodes = new Node[ordered.size()];
+      List<List<Integer>> consumerLists = new ArrayList<>();
+      for (int i = 0; i < numSlots; i++)
+      {
+         consumerLists.add(new ArrayList<>());
+      }
+
+      for (int i = 0; i < nodes.length; i++)
+      {
+         WorkflowControllerImpl.ConfiguredTransformer configured = ordered.get(i);
+         nodes[i] = compileNode(i, configured, slotIds);
+         for (int slot : nodes[i].inputSlots)
+         {
+            consumerLists.get(slot).add(Integer.valueOf(i));
+         }
+      }
+
+      int[][] consumers = new int[numSlots][];
+      for (int i = 0; i < numSlots; i++)
+      {
+         consumers[i] = consumerLists.get(i).stream().mapToInt(Integer::intValue).toArray();
+      }
+
+      boolean[] outputs = new boolean[numSlots];
+      int outputCount = 0;
+      for (DataValueKey key : config.getDeclaredOutputs())
+      {
+         Integer slot = slotIds.get(key.getSourceId());
+         if (slot == null)
+            throw new TransformerConfigurationException("Declared output [" + key + "] is not produced by this workflow.");
+
+         if (!outputs[slot.intValue()])
+         {
+            outputs[slot.intValue()] = true;
+            outputCount++;
+         }
+      }
+
+      return new WorkflowPlan(inputSlot, keys, nodes, consumers, outputs, outputCount);
+   }
+
+   private static Node compileNode(int index, WorkflowControllerImpl.ConfiguredTransformer configured, Map<UUID, Integer> slotIds) throws TransformerConfigurationException
+   {
+      TransformerConfiguration cfg = configured.cfg;
+      List<String> labels = new ArrayList<>();
+      List<Integer> slots = new ArrayList<>();
+      for (DataInputPin pin : cfg.getDefinedInputs())
+      {
+         UUID dataSource = cfg.getDataSource(pin);
+         if (dataSource == null)
+         {
+            if (pin.required)
+               throw new TransformerConfigurationException("Undefined data input pin [" + pin + "] for transformer [" + cfg.getId() + "]");
+
+            continue;
+         }
+
+         Integer slot = slotIds.get(dataSource);
+         if (slot == null)
+            throw new TransformerConfigurationException("The data source [" + dataSource + "] for input pin [" + pin + "] of transformer [" + cfg.getId() + "] is not defined by this workflow.");
+
+         labels.add(pin.label);
+         slots.add(slot);
+      }
+
+      return new Node(index, cfg.getId(), configured.transformer, computeMemoKey(configured), 
+            labels.toArray(new String[labels.size()]), slots.stream().mapToInt(Integer::intValue).toArray(), index + 1);
+   }
+
+   /**
+    * @return A hash of the transformer's registration and configuration or {@code null} if
+    *       the transformer is not deterministic or its configuration cannot be hashed.
+    */
+   private static String computeMemoKey(WorkflowControllerImpl.ConfiguredTransformer configured)
+   {
+      TransformerRegistration registration = configured.cfg.getRegistration();
+      if (!registration.isDeterministic())
+         return null;
+
+      try
+      {
+         return new StableHash()
+               .add(registration.getId())
+               .addValue(configured.transformer.getConfiguration())
+               .finish();
+      }
+      catch (IllegalArgumentException ex)
+      {
+         // outputs cannot be memoized without a key that identifies the configuration
+         logger.log(Level.INFO, "The outputs of transformer [" + configured.cfg.getId() + "] will not be memoized. " + ex.getMessage());
+         return null;
+      }
+   }
+
+   /**
+    * A subset of the declared outputs of a plan along with the nodes required to produce them.
+    */
+   static final class Selection
+   {
+      /** For each slot, whether its value is a selected output. */
+      final boolean[] outputs;
+
+      /** The number of selected outputs. */
+      final int outputCount;
+
+      /** For each node, whether it must be executed to produce the selected outputs. */
+      final boolean[] nodes;
+
+      Selection(boolean[] outputs, int outputCount, boolean[] nodes)
+      {
+         this.outputs = outputs;
+         this.outputCount = outputCount;
+         this.nodes = nodes;
+      }
+   }
+
+   /**
+    * A transformer within a compiled plan along with the slots of its inputs and output.
+    */
+   static final class Node
+   {
+      final int index;
+
+      /** The id of the {@link TransformerConfiguration} of this node. */
+      final UUID transformerId;
+      final Transformer transformer;
+
+      /**
+       * Identifies the transformer's registration and configuration for use by a
+       * {@link TransformerCache}. {@code null} if the transformer is not deterministic.
+       */
+      final String memoKey;
+
+      /** The labels of the input pins that have been stitched to a data source. */
+      final String[] labels;
+
+      /** The slot supplying each input pin, parallel to {@link #labels}. */
+      final int[] inputSlots;
+
+      /** The slot to which the output of the transformer is written. */
+      final int resultSlot;
+
+      Node(int index, UUID transformerId, Transformer transformer, String memoKey, String[] labels, int[] inputSlots, int resultSlot)
+      {
+         this.index = index;
+         this.transformerId = transformerId;
+         this.transformer = transformer;
+         this.memoKey = memoKey;
+         this.labels = labels;
+         this.inputSlots = inputSlots;
+         this.resultSlot = resultSlot;
+      }
+
+      /**
+       * @param label The label of an input pin.
+       * @return The slot that supplies the identified pin or -1 if the pin is not defined.
+       */
+      int getInputSlot(String label)
+      {
+         // transformers have few inputs, so a linear scan is cheaper than hashing
+         for (int i = 0; i < labels.length; i++)
+         {
+            if (labels[i].equals(label))
+               return inputSlots[i];
+         }
+
+         return -1;
+      }
+   }
+}
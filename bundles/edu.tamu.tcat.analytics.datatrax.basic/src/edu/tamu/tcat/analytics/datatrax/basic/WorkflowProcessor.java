@@ -0,0 +1,422 @@
+package edu.tamu.tcat.analytics.datatrax.basic;
+
+import java.util.Objects;
+import java.util.Queue;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.Consumer;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import edu.tamu.tcat.analytics.datatrax.DataFlow;
+import edu.tamu.tcat.analytics.datatrax.ResultsCollector;
+import edu.tamu.tcat.analytics.datatrax.ResultsCollector.TranformationResult;
+import edu.tamu.tcat.analytics.datatrax.ResultsCollector.TransformationError;
+import edu.tamu.tcat.analytics.datatrax.WorkflowController;
+
+/**
+ * Adapts a {@link WorkflowController} to a {@link DataFlow.Processor} that receives input
+ * data from an upstream publisher and publishes the declared outputs of the workflow for
+ * each input to a single downstream subscriber.
+ *
+ * <p>
+ * Demand flows from the subscriber to the publisher. Each input is assumed to produce at
+ * least one result, so the processor requests at most as many inputs from upstream as the
+ * subscriber has requested results that are not already buffered, and never more than
+ * {@code maxInputsInFlight} at a time. Results produced beyond the subscriber's demand
+ * are buffered until they are requested, so the buffer is bounded by the number of inputs in
+ * process multiplied by the number of declared outputs.
+ *
+ * <p>
+ * Inputs are processed using {@link WorkflowController#process(java.util.function.Supplier, ResultsCollector)},
+ * so results for different inputs may be interleaved. Errors encountered while processing
+ * an individual input are supplied to the error handler, if one is provided. Otherwise, they
+ * terminate the stream: the upstream subscription and any inputs in process are cancelled
+ * and the subscriber is notified through {@link DataFlow.Subscriber#onError(Throwable)}.
+ *
+ * <p>
+ * Buffered results are delivered after the workflow has released their values, and values
+ * that are {@link AutoCloseable} are closed at that time (see
+ * {@link ResultsCollector#handleResult(TranformationResult)}). Such values are therefore not
+ * supported: they are rejected as an error for the input that produced them rather than
+ * being delivered to the subscriber after they have been closed.
+ *
+ * <p>
+ * Signals to the subscriber are serialized using a non-blocking drain loop, so the
+ * subscriber may be invoked from the thread that supplied an input, the thread that requested
+ * results or a thread that processed a transformer.
+ *
+ * @param <X> The type of input data.
+ */
+public class WorkflowProcessor<X> implements DataFlow.Processor<X, TranformationResult<X>>
+{
+   private static final Logger logger = Logger.getLogger(WorkflowProcessor.class.getName());
+
+   private static final DataFlow.Subscription EMPTY = new DataFlow.Subscription()
+   {
+      @Override
+      public void request(long n)
+      {
+         // no-op
+      }
+
+      @Override
+      public void cancel()
+      {
+         // no-op
+      }
+   };
+
+   private final WorkflowController controller;
+   private final int maxInputsInFlight;
+   private final Consumer<TransformationError> errorHandler;
+
+   private final AtomicReference<DataFlow.Subscription> upstream = new AtomicReference<>();
+   private final AtomicReference<DataFlow.Subscriber<? super TranformationResult<X>>> downstream = new AtomicReference<>();
+
+   // set once the subscriber's onSubscribe method has returned
+   private volatile DataFlow.Subscriber<? super TranformationResult<X>> subscriber;
+
+   private final Queue<TranformationResult<X>> buffer = new ConcurrentLinkedQueue<>();
+   private final AtomicInteger buffered = new AtomicInteger();
+   private final AtomicLong requested = new AtomicLong();
+
+   // inputs requested from upstream that have not yet been received
+   private final AtomicLong inputsRequested = new AtomicLong();
+   private final AtomicInteger inFlight = new AtomicInteger();
+   private final Set<CompletableFuture<Void>> executions = ConcurrentHashMap.newKeySet();
+
+   private final AtomicReference<Throwable> error = new AtomicReference<>();
+   private volatile boolean upstreamDone = false;
+   private volatile boolean cancelled = false;
+
+   private final AtomicInteger wip = new AtomicInteger();
+
+   // accessed only within the drain loop
+   private boolean terminated = false;
+
+   /**
+    * @param controller The workflow controller used to process inputs.
+    * @param maxInputsInFlight The maximum number of inputs to request from upstream that
+    *       have not finished processing. Must be greater than zero.
+    * @param errorHandler Notified of errors that occur while processing individual inputs.
+    *       If {@code null}, such errors terminate the stream.
+    */
+   public WorkflowProcessor(WorkflowController controller, int maxInputsInFlight, Consumer<TransformationError> errorHandler)
+   {
+      Objects.requireNonNull(controller, "No workflow controller supplied.");
+      if (maxInputsInFlight < 1)
+         throw new IllegalArgumentException("The maximum number of in-flight inputs must be greater than zero [" + maxInputsInFlight + "]");
+
+      this.controller = controller;
+      this.maxInputsInFlight = maxInputsInFlight;
+      this.errorHandler = errorHandler;
+   }
+
+   @Override
+   public void subscribe(DataFlow.Subscriber<? super TranformationResult<X>> s)
+   {
+      Objects.requireNonNull(s, "No subscriber supplied.");
+      if (!downstream.compareAndSet(null, s))
+      {
+         s.onSubscribe(EMPTY);
+         s.onError(new IllegalStateException("A workflow processor supports only a single subscriber."));
+         return;
+      }
+
+      s.onSubscribe(new ResultsSubscription());
+      subscriber = s;
+      drain();
+   }
+
+   @Override
+   public void onSubscribe(DataFlow.Subscription s)
+   {
+      Objects.requireNonNull(s, "No subscription supplied.");
+      if (!upstream.compareAndSet(null, s))
+      {
+         // only a single upstream subscription is supported
+         s.cancel();
+         return;
+      }
+
+      if (cancelled || error.get() != null)
+         s.cancel();
+      else
+         drain();
+   }
+
+   @Override
+   public void onNext(X item)
+   {
+      Objects.requireNonNull(item, "Null input data.");
+      if (cancelled || error.get() != null)
+         return;
+
+      // increment before decrementing the outstanding request so that the credit computed
+      // by a concurrent drain is never overstated
+      inFlight.incrementAndGet();
+      inputsRequested.decrementAndGet();
+      try
+      {
+         CompletableFuture<Void> execution = controller.process(() -> item, new InputCollector());
+         executions.add(execution);
+         execution.whenComplete((v, ex) -> executions.remove(execution));
+      }
+      catch (RuntimeException ex)
+      {
+         inFlight.decrementAndGet();
+         handleInputError(() -> ex);
+         drain();
+      }
+   }
+
+   @Override
+   public void onError(Throwable throwable)
+   {
+      Objects.requireNonNull(throwable, "Null error.");
+
+      // record the error first so that a concurrent drain does not complete normally
+      error.compareAndSet(null, throwable);
+      upstreamDone = true;
+      cancelExecutions();
+      drain();
+   }
+
+   @Override
+   public void onComplete()
+   {
+      upstreamDone = true;
+      drain();
+   }
+
+   private void handleInputError(TransformationError err)
+   {
+      if (errorHandler == null)
+      {
+         fail(err.getException());
+         return;
+      }
+
+      try
+      {
+         errorHandler.accept(err);
+      }
+      catch (Exception ex)
+      {
+         logger.log(Level.WARNING, "Workflow processor error handler failed.", ex);
+      }
+   }
+
+   private void fail(Throwable t)
+   {
+      if (!error.compareAndSet(null, t))
+         return;
+
+      upstreamDone = true;
+      cancelUpstream();
+      cancelExecutions();
+      drain();
+   }
+
+   private void cancelUpstream()
+   {
+      DataFlow.Subscription s = upstream.get();
+      if (s != null)
+         s.cancel();
+   }
+
+   private void cancelExecutions()
+   {
+      for (CompletableFuture<Void> execution : executions)
+      {
+         execution.cancel(false);
+      }
+   }
+
+   /**
+    * Delivers buffered results, terminal signals and upstream requests. Only one thread
+    * executes the loop at a time; threads that call this while the loop is executing cause it
+    * to run again rather than waiting.
+    */
+   private void drain()
+   {
+      if (wip.getAndIncrement() != 0)
+         return;
+
+      int missed = 1;
+      do
+      {
+         drainOnce();
+         missed = wip.addAndGet(-missed);
+      }
+      while (missed != 0);
+   }
+
+   private void drainOnce()
+   {
+      if (terminated)
+         return;
+
+      if (cancelled)
+      {
+         clearBuffer();
+         return;
+      }
+
+      DataFlow.Subscriber<? super TranformationResult<X>> s = subscriber;
+      if (s == null)
+         return;
+
+      Throwable err = error.get();
+      if (err != null)
+      {
+         terminated = true;
+         clearBuffer();
+         s.onError(err);
+         return;
+      }
+
+      long r = requested.get();
+      long emitted = 0;
+      while (emitted != r)
+      {
+         TranformationResult<X> result = buffer.poll();
+         if (result == null)
+            break;
+
+         buffered.decrementAndGet();
+         s.onNext(result);
+         emitted++;
+
+         if (cancelled)
+         {
+            clearBuffer();
+            return;
+         }
+      }
+
+      if (emitted > 0 && r != Long.MAX_VALUE)
+         requested.addAndGet(-emitted);
+
+      if (upstreamDone && inFlight.get() == 0 && buffer.isEmpty())
+      {
+         // an error may have been recorded since it was checked above
+         terminated = true;
+         err = error.get();
+         if (err != null)
+            s.onError(err);
+         else
+            s.onComplete();
+         return;
+      }
+
+      requestInputs();
+   }
+
+   private void requestInputs()
+   {
+      DataFlow.Subscription s = upstream.get();
+      if (s == null || upstreamDone)
+         return;
+
+      long demand = Math.min(requested.get() - buffered.get(), maxInputsInFlight);
+      long credit = demand - inFlight.get() - inputsRequested.get();
+      if (credit > 0)
+      {
+         inputsRequested.addAndGet(credit);
+         s.request(credit);
+      }
+   }
+
+   private void clearBuffer()
+   {
+      buffer.clear();
+      buffered.set(0);
+   }
+
+   /**
+    * The subscription supplied to the downstream subscriber.
+    */
+   private final class ResultsSubscription implements DataFlow.Subscription
+   {
+      @Override
+      public void request(long n)
+      {
+         if (n <= 0)
+         {
+            fail(new IllegalArgumentException("The number of requested results must be greater than zero [" + n + "]"));
+            return;
+         }
+
+         long current;
+         long next;
+         do
+         {
+            current = requested.get();
+            if (current == Long.MAX_VALUE)
+               return;
+
+            next = current + n;
+            if (next < 0)
+               next = Long.MAX_VALUE;
+         }
+         while (!requested.compareAndSet(current, next));
+
+         drain();
+      }
+
+      @Override
+      public void cancel()
+      {
+         cancelled = true;
+         upstreamDone = true;
+         cancelUpstream();
+         cancelExecutions();
+         drain();
+      }
+   }
+
+   /**
+    * Collects the results of processing a single input.
+    */
+   private final class InputCollector implements ResultsCollector<X>
+   {
+      @Override
+      public void handleResult(TranformationResult<X> result)
+      {
+         if (cancelled)
+            return;
+
+         if (result.getValue() instanceof AutoCloseable)
+         {
+            IllegalStateException ex = new IllegalStateException("Workflow output [" + result.getKey() + "] is AutoCloseable and "
+                  + "would be closed before it is delivered. Workflow processors do not support closeable outputs.");
+            handleInputError(() -> ex);
+            return;
+         }
+
+         buffer.add(result);
+         buffered.incrementAndGet();
+         drain();
+      }
+
+      @Override
+      public void handleError(TransformationError err)
+      {
+         handleInputError(err);
+      }
+
+      @Override
+      public void finished()
+      {
+         inFlight.decrementAndGet();
+         drain();
+      }
+   }
+}
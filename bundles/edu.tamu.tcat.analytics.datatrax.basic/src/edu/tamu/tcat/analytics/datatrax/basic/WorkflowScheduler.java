@@ -0,0 +1,351 @@
+package edu.tamu.tcat.analytics.datatrax.basic;
+
+import java.util.Queue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Executor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Limits the number of input data instances that a {@link WorkflowControllerImpl} processes
+ * at the same time. Inputs are submitted as {@link ScheduledInput}s. Up to a fixed number of
+ * inputs will be started on the supplied {@link Executor}; any additional inputs are queued
+ * until an in-process input reports that it has completed.
+ *
+ * <p>
+ * Note that the scheduler does not block while an input is in process. An input occupies one
+ * of the available slots from the time it is started until it invokes the completion callback
+ * it was supplied, but it holds a thread only while its {@link ScheduledInput#start(Runnable)}
+ * method is executing.
+ *
+ * <p>
+ * The scheduler also provides admission control. Inputs that have been submitted but have
+ * not yet completed are counted against a limit of {@code maxInFlight + maxPending}. Inputs
+ * may be submitted unconditionally, only if they fit within the limit, or by blocking until
+ * they fit. Clients may also register to be notified when the limit is no longer reached.
+ */
+class WorkflowScheduler
+{
+   private static final Logger logger = Logger.getLogger(WorkflowScheduler.class.getName());
+
+   private final Executor executor;
+   private final int maxInFlight;
+   private final int maxAdmitted;
+
+   private final Queue<ScheduledInput> pending = new ConcurrentLinkedQueue<>();
+   private final AtomicInteger inFlight = new AtomicInteger(0);
+
+   // number of submitted inputs that have not yet completed (both pending and in-flight)
+   private final AtomicInteger admitted = new AtomicInteger(0);
+
+   // threads blocked waiting for admission, guarded by admissionMonitor for writes
+   private volatile int blocked = 0;
+   private final Object admissionMonitor = new Object();
+   private final Queue<CompletableFuture<Void>> readyWaiters = new ConcurrentLinkedQueue<>();
+
+   // number of submitted inputs and retained work that has not yet completed
+   private final AtomicInteger outstanding = new AtomicInteger(0);
+   private final Object idleMonitor = new Object();
+
+   /**
+    * @param executor The executor used to start inputs.
+    * @param maxInFlight The maximum number of inputs to process at the same time.
+    * @param maxPending The maximum number of inputs waiting to be started that will be
+    *       admitted by {@link #trySubmit(ScheduledInput)} and
+    *       {@link #submitWhenAdmitted(ScheduledInput)}.
+    */
+   WorkflowScheduler(Executor executor, int maxInFlight, int maxPending)
+   {
+      if (maxInFlight < 1)
+         throw new IllegalArgumentException("The maximum number of in-flight inputs must be greater than zero [" + maxInFlight + "]");
+
+      if (maxPending < 0)
+         throw new IllegalArgumentException("The maximum number of pending inputs must not be negative [" + maxPending + "]");
+
+      this.executor = executor;
+      this.maxInFlight = maxInFlight;
+      this.maxAdmitted = (int)Math.min(Integer.MAX_VALUE, (long)maxInFlight + maxPending);
+   }
+
+   /**
+    * @return The maximum number of inputs that will be in process at any time.
+    */
+   public int getMaxInFlight()
+   {
+      return maxInFlight;
+   }
+
+   /**
+    * @return The number of inputs that have been submitted but not yet completed.
+    */
+   public int getOutstanding()
+   {
+      return outstanding.get();
+   }
+
+   /**
+    * Submits an input to be processed once a slot is available. The input is accepted even
+    * if the admission limit has been reached.
+    *
+    * @param input The input to process.
+    */
+   public void submit(ScheduledInput input)
+   {
+      admitted.incrementAndGet();
+      enqueue(input);
+   }
+
+   /**
+    * Submits an input only if it can be admitted without exceeding the admission limit.
+    *
+    * @param input The input to process.
+    * @return {@code true} if the input was submitted.
+    */
+   public boolean trySubmit(ScheduledInput input)
+   {
+      if (!tryAdmit())
+         return false;
+
+      enqueue(input);
+      return true;
+   }
+
+   /**
+    * Submits an input, blocking until it can be admitted without exceeding the admission
+    * limit.
+    *
+    * @param input The input to process.
+    * @throws InterruptedException If interrupted while waiting for admission. The input
+    *       will not have been submitted.
+    */
+   public void submitWhenAdmitted(ScheduledInput input) throws InterruptedException
+   {
+      while (!tryAdmit())
+      {
+         synchronized (admissionMonitor)
+         {
+            blocked++;
+            try
+            {
+               // re-check after publishing the waiter so that a completion cannot be missed
+               if (!hasCapacity())
+                  admissionMonitor.wait();
+            }
+            finally
+            {
+               blocked--;
+            }
+         }
+      }
+
+      enqueue(input);
+   }
+
+   /**
+    * @return A future that completes once the admission limit is no longer reached. Note that
+    *       capacity is not reserved for the caller, so a subsequent submission may still need
+    *       to wait or be rejected.
+    */
+   public CompletableFuture<Void> whenReady()
+   {
+      if (hasCapacity())
+         return CompletableFuture.completedFuture(null);
+
+      CompletableFuture<Void> ready = new CompletableFuture<>();
+      readyWaiters.add(ready);
+      if (hasCapacity())
+         notifyReady();
+
+      return ready;
+   }
+
+   private boolean hasCapacity()
+   {
+      return admitted.get() < maxAdmitted;
+   }
+
+   private boolean tryAdmit()
+   {
+      while (true)
+      {
+         int ct = admitted.get();
+         if (ct >= maxAdmitted)
+            return false;
+
+         if (admitted.compareAndSet(ct, ct + 1))
+            return true;
+      }
+   }
+
+   private void enqueue(ScheduledInput input)
+   {
+      outstanding.incrementAndGet();
+      pending.add(input);
+      dispatch();
+   }
+
+   private void notifyReady()
+   {
+      if (blocked > 0)
+      {
+         synchronized (admissionMonitor)
+         {
+            admissionMonitor.notifyAll();
+         }
+      }
+
+      CompletableFuture<Void> ready;
+      while (hasCapacity() && (ready = readyWaiters.poll()) != null)
+      {
+         ready.complete(null);
+      }
+   }
+
+   /**
+    * Starts pending inputs while there are both pending inputs and available slots.
+    */
+   private void dispatch()
+   {
+      while (!pending.isEmpty())
+      {
+         int ct = inFlight.get();
+         if (ct >= maxInFlight)
+            return;
+
+         if (!inFlight.compareAndSet(ct, ct + 1))
+            continue;
+
+         ScheduledInput input = pending.poll();
+         if (input == null)
+         {
+            // another thread claimed the last pending input. Release the slot and re-check
+            inFlight.decrementAndGet();
+            continue;
+         }
+
+         start(input);
+      }
+   }
+
+   private void start(ScheduledInput input)
+   {
+      Runnable onComplete = new CompletionCallback();
+      try
+      {
+         executor.execute(() -> input.start(onComplete));
+      }
+      catch (Exception ex)
+      {
+         logger.log(Level.WARNING, "Failed to start workflow input.", ex);
+         try
+         {
+            input.reject(ex);
+         }
+         finally
+         {
+            onComplete.run();
+         }
+      }
+   }
+
+   /**
+    * Records work that is outstanding but has not (yet) been submitted as an input, for 
+    * example, a batch of inputs that will be submitted incrementally. The scheduler will 
+    * not be considered idle until a matching call to {@link #release()} is made.
+    */
+   public void retain()
+   {
+      outstanding.incrementAndGet();
+   }
+
+   /**
+    * Releases work that was previously recorded using {@link #retain()}.
+    */
+   public void release()
+   {
+      if (outstanding.decrementAndGet() == 0)
+      {
+         synchronized (idleMonitor)
+         {
+            idleMonitor.notifyAll();
+         }
+      }
+   }
+
+   private void completed()
+   {
+      inFlight.decrementAndGet();
+      admitted.decrementAndGet();
+      release();
+      dispatch();
+      notifyReady();
+   }
+
+   /**
+    * Blocks until all submitted inputs have completed or the supplied time has elapsed.
+    *
+    * @param time The maximum time to wait.
+    * @param units The units of the time argument.
+    * @return {@code true} if all submitted inputs completed, {@code false} if the time
+    *       elapsed first.
+    * @throws InterruptedException If interrupted while waiting.
+    */
+   public boolean awaitIdle(long time, TimeUnit units) throws InterruptedException
+   {
+      long deadline = System.nanoTime() + units.toNanos(time);
+      synchronized (idleMonitor)
+      {
+         while (outstanding.get() > 0)
+         {
+            long remaining = deadline - System.nanoTime();
+            if (remaining <= 0)
+               return false;
+
+            TimeUnit.NANOSECONDS.timedWait(idleMonitor, remaining);
+         }
+      }
+
+      return true;
+   }
+
+   /**
+    * Ensures that each input releases its slot exactly once.
+    */
+   private final class CompletionCallback implements Runnable
+   {
+      private final AtomicBoolean done = new AtomicBoolean(false);
+
+      @Override
+      public void run()
+      {
+         if (done.compareAndSet(false, true))
+            completed();
+      }
+   }
+
+   /**
+    * An input data instance to be processed by the workflow.
+    */
+   interface ScheduledInput
+   {
+      /**
+       * Starts processing this input. Implementations must invoke the supplied callback
+       * exactly once when processing has completed (whether or not it was successful). Note
+       * that this may occur after this method returns.
+       *
+       * @param onComplete The callback to invoke once processing is complete.
+       */
+      void start(Runnable onComplete);
+
+      /**
+       * Called if this input could not be started.
+       *
+       * @param ex The reason the input could not be started.
+       */
+      void reject(Exception ex);
+   }
+}
@@ -1,9 +1,13 @@
 package edu.tamu.tcat.analytics.datatrax.basic.factorymeta;
 
+import java.io.Serializable;
+import java.lang.reflect.Array;
 import java.util.ArrayList;
 import java.util.Collection;
 import java.util.Collections;
 import java.util.HashSet;
+import java.util.LinkedHashSet;
+import java.util.Set;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ConcurrentMap;
 
@@ -17,18 +21,43 @@ import org.eclipse.core.runtime.Platform;
 import edu.tamu.tcat.analytics.datatrax.FactoryUnavailableException;
 import edu.tamu.tcat.analytics.datatrax.Transformer;
 import edu.tamu.tcat.analytics.datatrax.TransformerRegistry;
+import edu.tamu.tcat.analytics.datatrax.config.DataInputPin;
 
 /**
- *  
+ * A {@link TransformerRegistry} backed by the extensions of the DataTrax Transformers extension
+ * point.
  *
+ * <p>
+ * Registrations are indexed by type so that type-based lookups do not need to test every
+ * registration. Each registration is indexed under the types of its input pins and under its
+ * output type and all of that type's supertypes and interfaces. Finding the registrations that
+ * accept a type therefore requires a lookup for each supertype of that type. Finding the
+ * registrations that produce a type requires a single lookup. The indices are updated as
+ * extensions are added and removed.
  */
 public class ExtPointTranformerFactoryRegistry implements TransformerRegistry
 {
 
    public static final String EXT_POINT_ID = "edu.tamu.tcat.analytics.datatrax.transformer";
 
+   /** The supertypes of a type, including the type itself. Cached per type. */
+   private static final ClassValue<Class<?>[]> SUPERTYPES = new ClassValue<Class<?>[]>()
+   {
+      @Override
+      protected Class<?>[] computeValue(Class<?> type)
+      {
+         return findSupertypes(type);
+      }
+   };
+
    private final ConcurrentMap<String, ExtTransformerFactoryDefinition> factoryDefinitions = new ConcurrentHashMap<>();
 
+   // the ids of registrations with an input pin of each type
+   private final ConcurrentMap<Class<?>, Set<String>> acceptingIndex = new ConcurrentHashMap<>();
+
+   // the ids of registrations whose output type is each type or one of its subtypes
+   private final ConcurrentMap<Class<?>, Set<String>> producingIndex = new ConcurrentHashMap<>();
+
    private RegistryEventListener ears;
    
    public ExtPointTranformerFactoryRegistry()
@@ -56,6 +85,8 @@ public class ExtPointTranformerFactoryRegistry implements TransformerRegistry
       
       // clear all loaded factory definitions
       factoryDefinitions.clear();
+      acceptingIndex.clear();
+      producingIndex.clear();
    }
    
    /**
@@ -109,11 +140,13 @@ public class ExtPointTranformerFactoryRegistry implements TransformerRegistry
    @Override
    public <X> Collection<String> getCompatibleRegistrations(Class<X> sourceType)
    {
+      // a registration accepts the type if it has a pin for the type or one of its supertypes
       Collection<String> matches = new HashSet<>();
-      for (ExtTransformerFactoryDefinition defn : factoryDefinitions.values())
+      for (Class<?> type : SUPERTYPES.get(sourceType))
       {
-         if (defn.canAccept(sourceType))
-            matches.add(defn.getId());
+         Set<String> ids = acceptingIndex.get(type);
+         if (ids != null)
+            matches.addAll(ids);
       }
       
       return Collections.unmodifiableCollection(matches);
@@ -122,14 +155,98 @@ public class ExtPointTranformerFactoryRegistry implements TransformerRegistry
    @Override
    public <X> Collection<String> getProducingRegistrations(Class<X> outputType)
    {
-      Collection<String> matches = new HashSet<>();
-      for (ExtTransformerFactoryDefinition defn : factoryDefinitions.values())
+      Set<String> ids = producingIndex.get(outputType);
+      Collection<String> matches = (ids == null) ? new HashSet<>() : new HashSet<>(ids);
+      return Collections.unmodifiableCollection(matches);
+   }
+   
+   private void index(ExtTransformerFactoryDefinition defn)
+   {
+      String id = defn.getId();
+      for (DataInputPin pin : defn.getDeclaredInputs())
       {
-         if (defn.canProduce(outputType))
-            matches.add(defn.getId());
+         addToIndex(acceptingIndex, pin.type, id);
       }
       
-      return Collections.unmodifiableCollection(matches);
+      for (Class<?> type : SUPERTYPES.get(defn.getDeclaredOutputType()))
+      {
+         addToIndex(producingIndex, type, id);
+      }
+   }
+   
+   private void unindex(ExtTransformerFactoryDefinition defn)
+   {
+      String id = defn.getId();
+      for (DataInputPin pin : defn.getDeclaredInputs())
+      {
+         removeFromIndex(acceptingIndex, pin.type, id);
+      }
+      
+      for (Class<?> type : SUPERTYPES.get(defn.getDeclaredOutputType()))
+      {
+         removeFromIndex(producingIndex, type, id);
+      }
+   }
+   
+   private static void addToIndex(ConcurrentMap<Class<?>, Set<String>> index, Class<?> type, String id)
+   {
+      // updates are performed atomically per type so that an empty set is never re-used 
+      // after it has been removed
+      index.compute(type, (k, ids) -> {
+         Set<String> result = (ids == null) ? ConcurrentHashMap.newKeySet() : ids;
+         result.add(id);
+         return result;
+      });
+   }
+   
+   private static void removeFromIndex(ConcurrentMap<Class<?>, Set<String>> index, Class<?> type, String id)
+   {
+      index.computeIfPresent(type, (k, ids) -> {
+         ids.remove(id);
+         return ids.isEmpty() ? null : ids;
+      });
+   }
+   
+   /**
+    * @return The supplied type and all of the classes and interfaces it extends or 
+    *       implements, directly or indirectly. Array types include the array types of their 
+    *       component's supertypes along with the supertypes common to all arrays.
+    */
+   private static Class<?>[] findSupertypes(Class<?> type)
+   {
+      Set<Class<?>> supertypes = new LinkedHashSet<>();
+      if (type.isArray())
+      {
+         supertypes.add(type);
+         for (Class<?> component : SUPERTYPES.get(type.getComponentType()))
+         {
+            supertypes.add(Array.newInstance(component, 0).getClass());
+         }
+         
+         supertypes.add(Object.class);
+         supertypes.add(Cloneable.class);
+         supertypes.add(Serializable.class);
+      }
+      else
+      {
+         collectSupertypes(type, supertypes);
+         if (type.isInterface())
+            supertypes.add(Object.class);
+      }
+      
+      return supertypes.toArray(new Class<?>[supertypes.size()]);
+   }
+   
+   private static void collectSupertypes(Class<?> type, Set<Class<?>> supertypes)
+   {
+      if (type == null || !supertypes.add(type))
+         return;
+      
+      collectSupertypes(type.getSuperclass(), supertypes);
+      for (Class<?> iface : type.getInterfaces())
+      {
+         collectSupertypes(iface, supertypes);
+      }
    }
    
    private class RegistryEventListener implements IRegistryEventListener
@@ -151,7 +268,8 @@ public class ExtPointTranformerFactoryRegistry implements TransformerRegistry
          for (IConfigurationElement e : elements)
          {
             ExtTransformerFactoryDefinition configuration = new ExtTransformerFactoryDefinition(e);
-            factoryDefinitions.putIfAbsent(configuration.getId(), configuration);
+            if (factoryDefinitions.putIfAbsent(configuration.getId(), configuration) == null)
+               index(configuration);
             
             // TODO log duplicate registration
          }
@@ -167,7 +285,9 @@ public class ExtPointTranformerFactoryRegistry implements TransformerRegistry
             for (IConfigurationElement e : elements)
             {
                String id = e.getAttribute("id");
-               factoryDefinitions.remove(id);
+               ExtTransformerFactoryDefinition defn = factoryDefinitions.remove(id);
+               if (defn != null)
+                  unindex(defn);
             }
          }
       }
@@ -1,13 +1,18 @@
 package edu.tamu.tcat.analytics.datatrax.basic.factorymeta;
 
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
 import java.util.Collections;
+import java.util.HashMap;
 import java.util.HashSet;
+import java.util.Map;
 import java.util.Set;
-import java.util.stream.Collectors;
 
 import org.eclipse.core.runtime.CoreException;
 import org.eclipse.core.runtime.IConfigurationElement;
 import org.eclipse.core.runtime.IContributor;
+import org.eclipse.core.runtime.IExecutableExtension;
 import org.eclipse.core.runtime.Platform;
 import org.osgi.framework.Bundle;
 
@@ -32,8 +37,13 @@ public class ExtTransformerFactoryDefinition implements TransformerRegistration
    private final String description;
    private final Set<DataInputPin> inputPins;
    private final Class<?> outputType;
+   private final boolean deterministic;
    
    private final IConfigurationElement config;
+   
+   // resolved when the first transformer is created, null if the registry must be used
+   private volatile MethodHandle constructor;
+   private volatile boolean constructorResolved = false;
 
    /**
     * 
@@ -52,6 +62,7 @@ public class ExtTransformerFactoryDefinition implements TransformerRegistration
       
       String outType = config.getAttribute("output_type");
       outputType = loadClass(config, outType);
+      deterministic = Boolean.parseBoolean(config.getAttribute("deterministic"));
    }
    
    @Override
@@ -97,6 +108,12 @@ public class ExtTransformerFactoryDefinition implements TransformerRegistration
       return outputType;
    }
    
+   @Override
+   public boolean isDeterministic()
+   {
+      return deterministic;
+   }
+   
    /**
     * Indicates whether the defined transformer factory can accept input values of 
     * the supplied type. Specifically, this determines if the declared source data type 
@@ -145,9 +162,14 @@ public class ExtTransformerFactoryDefinition implements TransformerRegistration
    {
       try
       {
-         Transformer factory = (Transformer)config.createExecutableExtension("class");
-         factory.configure(cfg.getDefinedParameters().parallelStream()
-               .collect(Collectors.toMap(key -> key, key -> cfg.getParameter(key))));
+         Transformer factory = createTransformer();
+         Map<String, Object> params = new HashMap<>();
+         for (String key : cfg.getDefinedParameters())
+         {
+            params.put(key, cfg.getParameter(key));
+         }
+         
+         factory.configure(params);
          return factory;
       }
       catch (CoreException e)
@@ -162,6 +184,64 @@ public class ExtTransformerFactoryDefinition implements TransformerRegistration
       }
    }
    
+   /**
+    * Creates a new, unconfigured instance of the transformer. The first instance is created 
+    * through the extension registry. If that instance is of the declared class and is created 
+    * without initialization data, its no-argument constructor is cached so that subsequent 
+    * instances are created without consulting the registry or reflecting on the class.
+    */
+   private Transformer createTransformer() throws CoreException
+   {
+      MethodHandle ctor = constructor;
+      if (ctor != null)
+      {
+         try
+         {
+            return (Transformer)ctor.invoke();
+         }
+         catch (RuntimeException | Error e)
+         {
+            throw e;
+         }
+         catch (Throwable t)
+         {
+            throw new IllegalStateException("Failed to construct an instance of transformer [" + config.getAttribute("class") + "].", t);
+         }
+      }
+      
+      Transformer transformer = (Transformer)config.createExecutableExtension("class");
+      if (!constructorResolved)
+      {
+         constructor = resolveConstructor(transformer);
+         constructorResolved = true;
+      }
+      
+      return transformer;
+   }
+   
+   /**
+    * @return The no-argument constructor of the supplied transformer's class or {@code null} 
+    *       if instances must be created through the extension registry. This is the case if 
+    *       the declared class is an extension factory or if the instance is initialized by the 
+    *       registry.
+    */
+   private MethodHandle resolveConstructor(Transformer transformer)
+   {
+      String className = config.getAttribute("class");
+      Class<?> type = transformer.getClass();
+      if (!type.getName().equals(className) || transformer instanceof IExecutableExtension)
+         return null;
+      
+      try
+      {
+         return MethodHandles.publicLookup().findConstructor(type, MethodType.methodType(void.class));
+      }
+      catch (NoSuchMethodException | IllegalAccessException e)
+      {
+         return null;
+      }
+   }
+   
    @Override
    public String toString()
    {
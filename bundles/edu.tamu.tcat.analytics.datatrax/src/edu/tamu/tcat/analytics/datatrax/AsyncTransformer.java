@@ -0,0 +1,53 @@
+package edu.tamu.tcat.analytics.datatrax;
+
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletionStage;
+import java.util.concurrent.ExecutionException;
+
+/**
+ * A {@link Transformer} whose processing completes asynchronously. Transformers that wait on
+ * I/O or on a callback from a native library should implement this interface rather than
+ * blocking the thread that executes them. The {@link WorkflowController} executes the task
+ * returned by {@link #createAsync(TransformerContext)} and supplies the value of the returned
+ * {@link CompletionStage} to dependent transformers once the stage completes, without holding
+ * a thread while the transformer waits.
+ *
+ * <p>
+ * The values supplied by the {@link TransformerContext} remain available until the returned
+ * stage completes. If processing of the input is cancelled while the stage is pending, the
+ * controller will attempt to cancel the stage.
+ */
+public interface AsyncTransformer extends Transformer
+{
+   /**
+    * Returns a task that starts processing the input data supplied by the context and returns
+    * a {@link CompletionStage} that completes with the transformer's output. The task itself
+    * should return promptly. Otherwise, the requirements of {@link #create(TransformerContext)}
+    * apply.
+    *
+    * @param ctx A data context object for use in retrieving any supplied source data.
+    * @return A task that will be scheduled to run by the {@link WorkflowController}.
+    */
+   Callable<? extends CompletionStage<?>> createAsync(TransformerContext ctx);
+
+   /**
+    * Returns a task that waits for the stage returned by {@link #createAsync(TransformerContext)}
+    * to complete, for use by clients that execute transformers synchronously.
+    */
+   @Override
+   default Callable<?> create(TransformerContext ctx)
+   {
+      Callable<? extends CompletionStage<?>> task = createAsync(ctx);
+      return () -> {
+         try
+         {
+            return task.call().toCompletableFuture().get();
+         }
+         catch (ExecutionException ex)
+         {
+            Throwable cause = ex.getCause();
+            throw (cause instanceof Exception) ? (Exception)cause : ex;
+         }
+      };
+   }
+}
@@ -0,0 +1,51 @@
+package edu.tamu.tcat.analytics.datatrax;
+
+import java.nio.ByteBuffer;
+
+/**
+ * May be implemented by large values produced by a {@link Transformer} in order to allow a
+ * workflow to hold them outside of the Java heap while they are waiting to be consumed by
+ * other transformers. A value that is moved off-heap writes its contents to a buffer supplied
+ * by the workflow. Transformers that consume the value then receive a view that is backed
+ * directly by that buffer rather than the original object.
+ *
+ * <p>
+ * Whether values are moved off-heap is determined by the configuration of the workflow.
+ * Values that are also {@link AutoCloseable} are never moved, since the workflow would no
+ * longer be able to close them.
+ */
+public interface BufferExportable
+{
+   /**
+    * @return The number of bytes required to export this value.
+    */
+   long getExportSize();
+
+   /**
+    * Writes the contents of this value to the supplied buffer.
+    *
+    * @param target A buffer whose position is zero and whose remaining capacity is
+    *       {@link #getExportSize()} bytes.
+    * @return A factory that creates views of this value from the exported data. The factory
+    *       must not retain a reference to this value, although it may retain small amounts
+    *       of metadata (for example, the dimensions of a raster).
+    */
+   ViewFactory exportTo(ByteBuffer target);
+
+   /**
+    * Creates views of an exported value.
+    */
+   @FunctionalInterface
+   interface ViewFactory
+   {
+      /**
+       * @param source A read-only buffer containing the exported data, positioned at zero.
+       *       The buffer uses the default (big-endian) byte order. Views should read from
+       *       the buffer rather than copying it. The buffer remains valid for as long as it
+       *       is referenced.
+       * @return A view of the exported value. This must be an instance of the type of
+       *       the data value that was exported.
+       */
+      Object createView(ByteBuffer source);
+   }
+}
@@ -0,0 +1,23 @@
+package edu.tamu.tcat.analytics.datatrax;
+
+import java.util.function.Supplier;
+
+/**
+ * Identifies the content of a workflow input so that the results of processing it may be
+ * cached and reused when the same content is processed again. This may be implemented either
+ * by the {@link Supplier} passed to {@link WorkflowController#process(Supplier, ResultsCollector)}
+ * or by the input data itself. If both implement it, the supplier's digest is used.
+ *
+ * <p>
+ * Inputs that have the same digest are assumed to produce the same outputs. A cryptographic
+ * hash of the input's serialized form (for example, SHA-256 of a document's bytes) is
+ * typically appropriate.
+ */
+public interface ContentDigest
+{
+   /**
+    * @return A digest that identifies the content of the input or {@code null} if results
+    *       for the input should not be cached.
+    */
+   String getContentDigest();
+}
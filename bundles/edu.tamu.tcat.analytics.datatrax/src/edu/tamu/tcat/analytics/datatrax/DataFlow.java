@@ -0,0 +1,92 @@
+package edu.tamu.tcat.analytics.datatrax;
+
+/**
+ * Interfaces for demand-driven (reactive) streams of data. These mirror the interfaces defined
+ * by {@code java.util.concurrent.Flow} and the Reactive Streams specification, which are not
+ * available on the Java 8 platform targeted by DataTrax. Implementations follow the rules of
+ * the Reactive Streams specification, so adapting between these interfaces and either of those
+ * APIs requires only forwarding each method to its counterpart.
+ *
+ * @see WorkflowController#createProcessor()
+ */
+public final class DataFlow
+{
+   private DataFlow()
+   {
+      // not instantiable
+   }
+
+   /**
+    * A producer of items that are received by {@link Subscriber}s on demand.
+    *
+    * @param <T> The type of item published.
+    */
+   public interface Publisher<T>
+   {
+      /**
+       * Adds the supplied subscriber. The subscriber will be supplied a {@link Subscription}
+       * through {@link Subscriber#onSubscribe(Subscription)}. If the subscriber cannot be
+       * added, it will be notified through {@link Subscriber#onError(Throwable)}.
+       *
+       * @param subscriber The subscriber to add.
+       */
+      void subscribe(Subscriber<? super T> subscriber);
+   }
+
+   /**
+    * A receiver of items. Methods are invoked in strict sequence for each subscription.
+    *
+    * @param <T> The type of item received.
+    */
+   public interface Subscriber<T>
+   {
+      /**
+       * Called before any other method for a new subscription. No items are received until
+       * they are requested using {@link Subscription#request(long)}.
+       */
+      void onSubscribe(Subscription subscription);
+
+      /**
+       * Called with the next item of the subscription.
+       */
+      void onNext(T item);
+
+      /**
+       * Called upon an unrecoverable error. No further methods will be invoked.
+       */
+      void onError(Throwable throwable);
+
+      /**
+       * Called when no further items will be supplied. No further methods will be invoked.
+       */
+      void onComplete();
+   }
+
+   /**
+    * Links a {@link Publisher} and a {@link Subscriber}.
+    */
+   public interface Subscription
+   {
+      /**
+       * Adds the given number of items to the unfulfilled demand of this subscription.
+       *
+       * @param n The number of items requested. Must be greater than zero.
+       */
+      void request(long n);
+
+      /**
+       * Causes the subscriber to (eventually) stop receiving items.
+       */
+      void cancel();
+   }
+
+   /**
+    * A component that acts as both a subscriber and a publisher.
+    *
+    * @param <T> The type of item received.
+    * @param <R> The type of item published.
+    */
+   public interface Processor<T, R> extends Subscriber<T>, Publisher<R>
+   {
+   }
+}
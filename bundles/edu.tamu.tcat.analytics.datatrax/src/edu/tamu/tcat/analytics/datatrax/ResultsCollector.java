@@ -15,8 +15,14 @@ public interface ResultsCollector<T>
    /**
     * Called to supply an object generated by executing the transformation workflow. This will
     * be notified whenever the workflow execution produces a data value that has been 
-    * configured to be a final output of the workflow. 
-    * 
+    * configured to be a final output of the workflow.
+    *
+    * <p>
+    * Results are supplied as soon as they are produced. The workflow releases its reference
+    * to a result's value once this method returns and no other transformer requires it. Values
+    * that are {@link AutoCloseable} are closed at that time, so implementations must copy
+    * any data they need from such values before returning.
+    *
     * @param key An object containing details of the transformation result including 
     *       information about the transformer that produced it, the original object being 
     *       processed and the result itself.
@@ -0,0 +1,15 @@
+package edu.tamu.tcat.analytics.datatrax;
+
+/**
+ * May be implemented by the values produced by a {@link Transformer} in order to report their
+ * size. The sizes of values that implement this interface are recorded by the
+ * {@link WorkflowMetrics} of the workflow that produced them.
+ */
+public interface Sized
+{
+   /**
+    * @return The size of this value. The unit is defined by the value (typically bytes), but
+    *       should be consistent for all values produced by a given transformer.
+    */
+   long getSize();
+}
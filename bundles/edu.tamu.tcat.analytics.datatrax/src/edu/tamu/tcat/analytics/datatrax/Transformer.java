@@ -82,6 +82,10 @@ public interface Transformer
     * (for example, on configuration parameters) or other external data sources only if all
     * required invariants are stable over time.  
     * 
+    * <p>
+    * Transformers that would block while waiting for I/O or for a callback should implement
+    * {@link AsyncTransformer} instead.
+    * 
     * @param ctx A data context object for use in retrieving any supplied source data. 
     * @return A data processor that will be scheduled to run by the {@link WorkflowController}.
     */
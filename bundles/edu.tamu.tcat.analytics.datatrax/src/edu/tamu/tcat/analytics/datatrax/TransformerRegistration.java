@@ -97,4 +97,18 @@ public interface TransformerRegistration
     */
    Transformer instantiate(TransformerConfiguration cfg) throws FactoryConfigurationException;
 
+   /**
+    * Indicates that the registered {@link Transformer} is deterministic: given the same
+    * configuration and the same input values, it always produces an equivalent output and has
+    * no side effects. The outputs of deterministic transformers may be cached and reused by
+    * workflows that apply the same transformer to the same inputs.
+    * 
+    * @return {@code true} if the registered transformer is deterministic. Defaults to
+    *       {@code false}.
+    */
+   default boolean isDeterministic()
+   {
+      return false;
+   }
+
 }
@@ -1,7 +1,12 @@
 package edu.tamu.tcat.analytics.datatrax;
 
+import java.util.Collection;
+import java.util.Iterator;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.RejectedExecutionException;
 import java.util.concurrent.TimeUnit;
 import java.util.function.Supplier;
+import java.util.stream.Stream;
 
 import edu.tamu.tcat.analytics.datatrax.config.WorkflowConfiguration;
 
@@ -36,6 +41,10 @@ import edu.tamu.tcat.analytics.datatrax.config.WorkflowConfiguration;
  *  as the data sources they require becomes available.
  *  
  *  <p>
+ *  Transformers whose outputs do not contribute, directly or indirectly, to a declared 
+ *  output of the workflow are not instantiated or executed. 
+ *  
+ *  <p>
  *  The WorkflowController will provide hooks for clients to receive notifications about 
  *  the execution of individual Transformers in order to support auditing, performance 
  *  monitoring and other features that need to receive detailed notification of the 
@@ -46,16 +55,184 @@ public interface WorkflowController extends AutoCloseable
    /**
     * Executes this workflow for a given input object and supply all results to the
     * provided {@link ResultsCollector}. This method executes asynchronously. Typically it 
-    * will return immediately, but it may block if there are no available resources to accept
-    * the supplied data. 
+    * will return immediately, but, depending on the controller's admission policy, it may 
+    * block or reject the input if there are no available resources to accept the supplied 
+    * data. Clients that submit inputs faster than they can be processed may use 
+    * {@link #whenReady()} to wait until the controller is able to accept more input.
+    * 
+    * <p>
+    * The returned future completes once all declared outputs have been supplied to the 
+    * collector and the collector has been notified that processing is 
+    * {@link ResultsCollector#finished() finished}. It completes exceptionally if the workflow 
+    * could not be executed for the supplied input. Cancelling the returned future cancels 
+    * processing of the input: transformers that have not yet started will not be executed 
+    * and the collector will be notified that processing has finished. Transformers that are
+    * running are interrupted.
     * 
     * @param sourceData The input data instance to be processed by this workflow. Must be thread 
     *       safe.
     * @param collector The {@link ResultsCollector} to be used to accumlulate the outputs
     *       of this workflow.
+    * @return A future that completes when processing of the supplied input is complete.
+    * @throws RejectedExecutionException If the controller is not able to accept the input.
+    */
+   <X> CompletableFuture<Void> process(Supplier<X> sourceData, ResultsCollector<X> collector);
+
+   /**
+    * Executes this workflow for a given input object with a deadline. This behaves as
+    * {@link #process(Supplier, ResultsCollector)}, except that processing of the input is
+    * abandoned if it has not completed within the supplied time after processing has started.
+    * When the deadline expires, or the returned future is cancelled, transformers that have
+    * not yet started will not be executed, transformers that are running are interrupted and
+    * any intermediate values are discarded. On expiry, a {@link java.util.concurrent.TimeoutException}
+    * is reported to the collector and the returned future completes exceptionally with that
+    * exception.
+    *
+    * <p>
+    * Interruption is cooperative. Transformers that perform lengthy computations should
+    * check {@link Thread#isInterrupted()} periodically and abandon their work once the thread
+    * has been interrupted.
+    *
+    * @param sourceData The input data instance to be processed by this workflow. Must be thread
+    *       safe.
+    * @param collector The {@link ResultsCollector} to be used to accumlulate the outputs
+    *       of this workflow.
+    * @param timeout The maximum time allowed to process the input. A value of zero or less
+    *       indicates that processing is not subject to a deadline.
+    * @param units The units of the timeout.
+    * @return A future that completes when processing of the supplied input is complete.
+    * @throws RejectedExecutionException If the controller is not able to accept the input.
+    */
+   <X> CompletableFuture<Void> process(Supplier<X> sourceData, ResultsCollector<X> collector, long timeout, TimeUnit units);
+
+   /**
+    * Executes this workflow for a given input object, producing only a subset of the
+    * workflow's declared outputs. Only the transformers required to produce the requested
+    * outputs are executed. This allows clients to run a cheaper subset of a large workflow.
+    * Otherwise this behaves as {@link #process(Supplier, ResultsCollector)}.
+    *
+    * @param sourceData The input data instance to be processed by this workflow. Must be thread
+    *       safe.
+    * @param collector The {@link ResultsCollector} to be used to accumlulate the outputs
+    *       of this workflow.
+    * @param outputs The keys of the declared outputs to produce.
+    * @return A future that completes when the requested outputs have been supplied to the
+    *       collector.
+    * @throws IllegalArgumentException If a requested key is not a declared output of this
+    *       workflow.
+    * @throws RejectedExecutionException If the controller is not able to accept the input.
     */
-   <X> void process(Supplier<X> sourceData, ResultsCollector<X> collector);
-   
+   <X> CompletableFuture<Void> process(Supplier<X> sourceData, ResultsCollector<X> collector, Collection<? extends DataValueKey> outputs);
+
+   /**
+    * Executes this workflow for a given input object with a deadline, producing only a subset
+    * of the workflow's declared outputs. See {@link #process(Supplier, ResultsCollector, Collection)}
+    * and {@link #process(Supplier, ResultsCollector, long, TimeUnit)}.
+    *
+    * @param sourceData The input data instance to be processed by this workflow. Must be thread
+    *       safe.
+    * @param collector The {@link ResultsCollector} to be used to accumlulate the outputs
+    *       of this workflow.
+    * @param outputs The keys of the declared outputs to produce or {@code null} to produce
+    *       all declared outputs.
+    * @param timeout The maximum time allowed to process the input. A value of zero or less
+    *       indicates that processing is not subject to a deadline.
+    * @param units The units of the timeout.
+    * @return A future that completes when the requested outputs have been supplied to the
+    *       collector.
+    * @throws IllegalArgumentException If a requested key is not a declared output of this
+    *       workflow.
+    * @throws RejectedExecutionException If the controller is not able to accept the input.
+    */
+   <X> CompletableFuture<Void> process(Supplier<X> sourceData, ResultsCollector<X> collector, Collection<? extends DataValueKey> outputs, long timeout, TimeUnit units);
+
+   /**
+    * Executes this workflow for each input object supplied by the given iterator and supplies
+    * all results to the provided {@link ResultsCollector}. This method executes asynchronously.
+    * Inputs are pulled from the iterator as the workflow is able to accept them and multiple
+    * inputs may be in process at the same time, so results for different inputs may be
+    * interleaved. Clients should use {@link ResultsCollector.TranformationResult#getSource()}
+    * to associate a result with the input that produced it.
+    *
+    * <p>
+    * Unlike {@link #process(Supplier, ResultsCollector)}, the collector's
+    * {@link ResultsCollector#finished()} method will be called only once, after all inputs
+    * supplied by the iterator have been processed. Errors encountered while processing an
+    * individual input are reported to the collector and do not stop processing of the
+    * remaining inputs.
+    * 
+    * <p>
+    * The returned future completes once all inputs have been processed and the collector
+    * has been notified that processing is finished. Cancelling the returned future stops 
+    * further inputs from being pulled from the iterator; inputs that are already in process
+    * will be allowed to complete.
+    *
+    * @param sourceData The input data instances to be processed by this workflow. The iterator
+    *       will not be accessed concurrently, but may be accessed from threads other than 
+    *       the calling thread. Suppliers must be thread safe.
+    * @param collector The {@link ResultsCollector} to be used to accumlulate the outputs
+    *       of this workflow for all inputs.
+    * @return A future that completes when all inputs have been processed.
+    */
+   <X> CompletableFuture<Void> processAll(Iterator<? extends Supplier<X>> sourceData, ResultsCollector<X> collector);
+
+   /**
+    * Executes this workflow for each input object supplied by the given stream. The stream is
+    * consumed lazily and asynchronously. See {@link #processAll(Iterator, ResultsCollector)}
+    * for details.
+    *
+    * @param sourceData The input data instances to be processed by this workflow.
+    * @param collector The {@link ResultsCollector} to be used to accumlulate the outputs
+    *       of this workflow for all inputs.
+    * @return A future that completes when all inputs have been processed.
+    */
+   default <X> CompletableFuture<Void> processAll(Stream<? extends Supplier<X>> sourceData, ResultsCollector<X> collector)
+   {
+      return processAll(sourceData.iterator(), collector);
+   }
+
+   /**
+    * Creates a lazy, pull-based evaluation of this workflow for a given input object. No
+    * transformers are executed until a value is requested from the returned evaluation, and
+    * then only those required to produce the requested value. See {@link WorkflowEvaluation}.
+    *
+    * <p>
+    * The input data is retrieved from the supplier on the calling thread. Evaluations are not
+    * subject to the controller's admission limits and are not reported to the controller's
+    * observers or metrics.
+    *
+    * @param sourceData The input data instance to be evaluated. Must be thread safe.
+    * @return A new evaluation. Must be closed once it is no longer needed.
+    */
+   <X> WorkflowEvaluation<X> evaluate(Supplier<X> sourceData);
+
+   /**
+    * Creates a {@link DataFlow.Processor} that processes each item received from an upstream
+    * {@link DataFlow.Publisher} using this workflow and publishes the declared outputs for each 
+    * input to a single downstream subscriber. Inputs are requested from upstream only as the 
+    * subscriber requests results, so that backpressure is applied from the subscriber to the 
+    * source of the data. Errors that occur while processing an input terminate the stream.
+    *
+    * @return A new processor.
+    */
+   <X> DataFlow.Processor<X, ResultsCollector.TranformationResult<X>> createProcessor();
+
+   /**
+    * Returns a future that completes once this controller is able to accept another input
+    * without exceeding its limit on the number of inputs waiting to be processed. This
+    * allows clients to apply backpressure to the source of their data, submitting inputs to
+    * {@link #process(Supplier, ResultsCollector)} only as the workflow is able to process them.
+    *
+    * <p>
+    * Capacity is not reserved for the caller. If several clients are waiting, all may be
+    * notified when capacity becomes available. The returned future may be completed by a
+    * thread that is used to process data, so dependent actions that may block should be
+    * executed asynchronously.
+    *
+    * @return A future that completes once the controller is able to accept another input.
+    */
+   CompletableFuture<Void> whenReady();
+
    /**
     * Registers an observer to be notified of various events during the workflow lifecycle.
     * 
@@ -67,6 +244,11 @@ public interface WorkflowController extends AutoCloseable
    AutoCloseable addListener(WorkflowObserver ears);
    // TODO consider adding more specific methods
 
+   /**
+    * @return The timing and throughput metrics collected by this workflow controller.
+    */
+   WorkflowMetrics getMetrics();
+
    /**
     * Blocks current thread until execution of this workflow has completed.
     */
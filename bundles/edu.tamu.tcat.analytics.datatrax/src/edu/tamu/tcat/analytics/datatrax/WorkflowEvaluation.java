@@ -0,0 +1,54 @@
+package edu.tamu.tcat.analytics.datatrax;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.function.Supplier;
+
+/**
+ * Evaluates a workflow lazily for a single input. Rather than executing every transformer of
+ * the workflow as its inputs become available, a {@code WorkflowEvaluation} executes only the
+ * transformers required to produce the values that are {@link #request(DataValueKey) requested}.
+ * Values are retained until the evaluation is closed, so each transformer is executed at most
+ * once, however many requested values depend on it. This allows interactive tools to retrieve
+ * a single intermediate value of a large workflow without paying for the entire workflow.
+ *
+ * <p>
+ * Evaluations are obtained from {@link WorkflowController#evaluate(Supplier)} and must be
+ * closed once they are no longer needed so that any values that are {@link AutoCloseable}
+ * can be closed.
+ *
+ * @param <X> The type of the input data.
+ */
+public interface WorkflowEvaluation<X> extends AutoCloseable
+{
+   /**
+    * @return The input data being evaluated.
+    */
+   X getSource();
+
+   /**
+    * Requests a data value produced by the workflow for this evaluation's input. Transformers
+    * required to produce the value that have not already been executed by this evaluation are
+    * executed asynchronously.
+    *
+    * <p>
+    * The returned future completes exceptionally with a {@link WorkflowException} if a
+    * transformer required to produce the value fails. Cancelling the returned future does not
+    * affect the evaluation or other requests for the same value.
+    *
+    * @param key The key of the data value to produce. This may identify the workflow's input,
+    *       the output of any transformer that contributes to a declared output or a declared
+    *       output.
+    * @return A future that completes with the requested value.
+    * @throws IllegalArgumentException If the identified value is not produced by the workflow.
+    * @throws IllegalStateException If this evaluation has been closed.
+    */
+   CompletableFuture<Object> request(DataValueKey key);
+
+   /**
+    * Closes this evaluation. Transformers that have not yet started will not be executed and
+    * retained values that are {@link AutoCloseable} will be closed, once any transformers that
+    * are running have completed.
+    */
+   @Override
+   void close();
+}
@@ -0,0 +1,119 @@
+package edu.tamu.tcat.analytics.datatrax;
+
+import java.util.Collection;
+import java.util.UUID;
+
+/**
+ * Timing and throughput metrics collected by a {@link WorkflowController}. Metrics are
+ * collected for the lifetime of the controller and are updated as data is processed, so
+ * values read from this registry reflect the state of the workflow at the time they are
+ * read.
+ *
+ * <p>
+ * All times are reported in nanoseconds.
+ */
+public interface WorkflowMetrics
+{
+   /**
+    * @return The number of inputs that have been processed successfully.
+    */
+   long getInputsCompleted();
+
+   /**
+    * @return The number of inputs whose processing failed or was cancelled.
+    */
+   long getInputsFailed();
+
+   /**
+    * @return The time taken to process individual inputs, from the time processing of the
+    *       input started until all declared outputs were supplied to the results collector.
+    */
+   Histogram getLatency();
+
+   /**
+    * @return The metrics of all transformers in the workflow.
+    */
+   Collection<TransformerMetrics> getTransformerMetrics();
+
+   /**
+    * @param transformerId The id of a transformer configuration.
+    * @return The metrics of the identified transformer or {@code null} if the transformer is
+    *       not part of the workflow.
+    */
+   TransformerMetrics getTransformerMetrics(UUID transformerId);
+
+   /**
+    * Metrics for the executions of a single configured transformer.
+    */
+   public interface TransformerMetrics
+   {
+      /**
+       * @return The id of the transformer configuration.
+       */
+      UUID getTransformerId();
+
+      /**
+       * @return The number of times the transformer has been executed, including failed
+       *       executions.
+       */
+      long getExecutions();
+
+      /**
+       * @return The number of executions of the transformer that failed.
+       */
+      long getErrors();
+
+      /**
+       * @return The time between all inputs of the transformer being supplied and the
+       *       transformer starting to execute.
+       */
+      Histogram getQueueWait();
+
+      /**
+       * @return The time taken by {@link Transformer#create(TransformerContext)}.
+       */
+      Histogram getCreateTime();
+
+      /**
+       * @return The time taken by the {@code call()} method of the task returned by
+       *       {@link Transformer#create(TransformerContext)}.
+       */
+      Histogram getCallTime();
+
+      /**
+       * @return The sizes of the values produced by the transformer that implement
+       *       {@link Sized}.
+       */
+      Histogram getOutputSize();
+   }
+
+   /**
+    * The distribution of a recorded value. Values are recorded in logarithmically spaced
+    * buckets, so percentiles are approximate (to within about 12.5%), while the count, mean
+    * and maximum are exact.
+    */
+   public interface Histogram
+   {
+      /**
+       * @return The number of recorded values.
+       */
+      long getCount();
+
+      /**
+       * @return The mean of the recorded values or 0 if no values have been recorded.
+       */
+      double getMean();
+
+      /**
+       * @return The largest recorded value or 0 if no values have been recorded.
+       */
+      long getMax();
+
+      /**
+       * @param percentile The percentile to compute, between 0 and 100.
+       * @return An upper bound of the recorded values at the given percentile, or 0 if no
+       *       values have been recorded.
+       */
+      long getValueAtPercentile(double percentile);
+   }
+}
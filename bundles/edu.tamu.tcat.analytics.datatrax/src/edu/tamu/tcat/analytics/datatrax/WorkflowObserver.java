@@ -4,41 +4,73 @@ import java.util.UUID;
 
 
 /**
- * WIP: Stub API for listening to various events within the lifecycle of a {@link WorkflowController}. 
- * This will be developed more fully as the initial version of the system is implemented, but 
- * currently serves as a placeholder to hang that functionality.
- * 
- * Called in response to various event within the execution of a {@link WorkflowController}.
- * Note that these events are 
+ * Called in response to various events within the lifecycle of the transformers executed by
+ * a {@link WorkflowController}. Observers are registered using
+ * {@link WorkflowController#addListener(WorkflowObserver)}.
  *
+ * <p>
+ * Events are recorded by the threads that execute transformers but are delivered
+ * asynchronously on a single dispatch thread, so that observers do not delay the processing
+ * of data. Events recorded by a given thread are delivered in the order in which they occurred.
+ * If observers are unable to keep up with the rate at which events are produced, events may be
+ * dropped.
  */
 public interface WorkflowObserver
 {
    void handleEvent(ProcessingEvent evt);
-   
+
    /**
-    * WIP: Stub interface to be developed. 
-    *
+    * Describes an event in the lifecycle of a single transformer execution.
     */
    public interface ProcessingEvent
    {
+      /** All inputs of the transformer have been supplied and it has been scheduled for execution. */
+      String ACTIVATE = "activate";
+
+      /** A value required by one of the transformer's input pins has been supplied. */
+      String DATA_AVAILABLE = "dataAvailable";
+
+      /** The transformer is about to be executed. */
+      String BEFORE_EXECUTION = "beforeExecution";
+
+      /** The transformer has completed and its result has been supplied to the workflow. */
+      String COMPLETION = "completion";
+
+      /** The transformer failed. See {@link #getError()}. */
+      String ERROR = "error";
+
       /**
-       * @return The action or event that is being reported.
+       * @return The action or event that is being reported. One of the action constants
+       *       defined by this interface.
        */
       String getAction();
-      
+
       /**
        * @return The id of the transformer associated with this event.
        */
       String getTransformerId();
-      
-      
+
+      /**
+       * @return The unique identifier of the source data being processed.
+       */
       UUID getDataId();
-      
+
       /**
-       * @return The unique identifier associated with a the execution of a transformer within 
-       *    the context of processing a single source data. 
+       * @return The unique identifier associated with a the execution of a transformer within
+       *    the context of processing a single source data.
        */
       UUID getTransformationTaskId();
+
+      /**
+       * @return The value of {@link System#nanoTime()} at which the event occurred. This may be
+       *       used to compute the elapsed time between events for the same task.
+       */
+      long getTime();
+
+      /**
+       * @return The error that caused the transformer to fail for {@link #ERROR} events,
+       *       {@code null} for all other events.
+       */
+      Throwable getError();
    }
-}
\ No newline at end of file
+}
@@ -0,0 +1,98 @@
+package edu.tamu.tcat.analytics.datatrax.benchmarks;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import edu.tamu.tcat.analytics.datatrax.DataValueKey;
+import edu.tamu.tcat.analytics.datatrax.basic.SimpleDataValueKey;
+
+/**
+ * Measures the cost of hashing {@link SimpleDataValueKey}s and of looking up values by key, 
+ * compared with indexing an array. Lookups use keys that are equal to, but not the same 
+ * instances as, the stored keys, since that is how keys are typically constructed.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class DataValueKeyBenchmark
+{
+   @Param({"8", "64"})
+   public int numKeys;
+   
+   private DataValueKey[] probes;
+   private Map<DataValueKey, Object> hashMap;
+   private Map<DataValueKey, Object> concurrentMap;
+   private Object[] values;
+   private int ix = 0;
+   
+   @Setup
+   public void setup()
+   {
+      probes = new DataValueKey[numKeys];
+      values = new Object[numKeys];
+      hashMap = new HashMap<>();
+      concurrentMap = new ConcurrentHashMap<>();
+      for (int i = 0; i < numKeys; i++)
+      {
+         UUID id = UUID.randomUUID();
+         DataValueKey key = new SimpleDataValueKey(id, String.class);
+         Object value = "value " + i;
+         
+         hashMap.put(key, value);
+         concurrentMap.put(key, value);
+         values[i] = value;
+         probes[i] = new SimpleDataValueKey(new UUID(id.getMostSignificantBits(), id.getLeastSignificantBits()), String.class);
+      }
+   }
+   
+   private int next()
+   {
+      ix = (ix + 1 == numKeys) ? 0 : ix + 1;
+      return ix;
+   }
+   
+   @Benchmark
+   public int hashCodeOnly()
+   {
+      return probes[next()].hashCode();
+   }
+   
+   @Benchmark
+   public Object hashMapGet()
+   {
+      return hashMap.get(probes[next()]);
+   }
+   
+   @Benchmark
+   public Object concurrentMapGet()
+   {
+      return concurrentMap.get(probes[next()]);
+   }
+   
+   /**
+    * The cost of the index-based lookup used by the compiled workflow plan.
+    */
+   @Benchmark
+   public Object arrayGet()
+   {
+      return values[next()];
+   }
+}
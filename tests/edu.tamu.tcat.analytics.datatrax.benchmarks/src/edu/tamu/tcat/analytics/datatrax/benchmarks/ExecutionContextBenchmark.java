@@ -0,0 +1,105 @@
+package edu.tamu.tcat.analytics.datatrax.benchmarks;
+
+import java.util.Collections;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Consumer;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+import edu.tamu.tcat.analytics.datatrax.DataValueKey;
+import edu.tamu.tcat.analytics.datatrax.basic.SimpleDataValueKey;
+import edu.tamu.tcat.analytics.datatrax.basic.WorkflowExecutionContext;
+import edu.tamu.tcat.analytics.datatrax.basic.WorkflowExecutionContext.DataAvailableEvent;
+
+/**
+ * Measures contention on a {@link WorkflowExecutionContext} that is shared by several threads,
+ * as when many transformers of a wide workflow complete at the same time. Each operation 
+ * uses a new key so that every {@code put} publishes a value and notifies a listener. Run 
+ * with {@code -t} to vary the number of threads.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Threads(4)
+@Fork(1)
+public class ExecutionContextBenchmark
+{
+   private static final String VALUE = "value";
+   
+   private WorkflowExecutionContext context;
+   private final LongAdder notifications = new LongAdder();
+   private final Consumer<DataAvailableEvent> listener = evt -> notifications.increment();
+   
+   // replace the context each iteration so that it does not grow without bound
+   @Setup(Level.Iteration)
+   public void setup()
+   {
+      context = new WorkflowExecutionContext();
+   }
+   
+   @State(Scope.Thread)
+   public static class Keys
+   {
+      private static final AtomicInteger threads = new AtomicInteger();
+      
+      private final long threadId = threads.incrementAndGet();
+      private long ct = 0;
+      
+      Set<DataValueKey> next()
+      {
+         // avoid UUID.randomUUID(), which would dominate the measurement
+         return Collections.singleton(new SimpleDataValueKey(new UUID(threadId, ct++), String.class));
+      }
+   }
+   
+   /**
+    * A listener is registered and then notified when the value is supplied. 
+    */
+   @Benchmark
+   public void registerThenPut(Keys keys)
+   {
+      Set<DataValueKey> key = keys.next();
+      context.registerListener(key, listener);
+      context.put(key.iterator().next(), VALUE);
+   }
+   
+   /**
+    * The value is supplied before the listener is registered, so the listener is notified
+    * immediately.
+    */
+   @Benchmark
+   public void putThenRegister(Keys keys)
+   {
+      Set<DataValueKey> key = keys.next();
+      context.put(key.iterator().next(), VALUE);
+      context.registerListener(key, listener);
+   }
+   
+   /**
+    * Reads a value that is present. 
+    */
+   @Benchmark
+   public Object putThenGet(Keys keys)
+   {
+      DataValueKey key = keys.next().iterator().next();
+      context.put(key, VALUE);
+      return context.get(key);
+   }
+}
@@ -0,0 +1,48 @@
+package edu.tamu.tcat.analytics.datatrax.benchmarks;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.Callable;
+
+import edu.tamu.tcat.analytics.datatrax.Transformer;
+import edu.tamu.tcat.analytics.datatrax.TransformerConfigurationException;
+import edu.tamu.tcat.analytics.datatrax.TransformerContext;
+
+/**
+ * A transformer that reads each of its inputs and returns a constant value. This isolates
+ * the overhead of the workflow engine from the cost of the transformations themselves.
+ */
+public class NoOpTransformer implements Transformer
+{
+   public static final String RESULT = "result";
+   
+   private final String[] labels;
+
+   public NoOpTransformer(String[] labels)
+   {
+      this.labels = labels;
+   }
+
+   @Override
+   public void configure(Map<String, Object> data) throws TransformerConfigurationException
+   {
+   }
+
+   @Override
+   public Map<String, Object> getConfiguration()
+   {
+      return new HashMap<String, Object>();
+   }
+
+   @Override
+   public Callable<?> create(TransformerContext ctx)
+   {
+      for (String label : labels)
+      {
+         if (ctx.getValue(label) == null)
+            throw new IllegalStateException("No value supplied for input [" + label + "]");
+      }
+      
+      return () -> RESULT;
+   }
+}
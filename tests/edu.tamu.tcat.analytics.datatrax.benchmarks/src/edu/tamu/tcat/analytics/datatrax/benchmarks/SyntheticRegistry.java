@@ -0,0 +1,154 @@
+package edu.tamu.tcat.analytics.datatrax.benchmarks;
+
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+import edu.tamu.tcat.analytics.datatrax.FactoryUnavailableException;
+import edu.tamu.tcat.analytics.datatrax.Transformer;
+import edu.tamu.tcat.analytics.datatrax.TransformerRegistration;
+import edu.tamu.tcat.analytics.datatrax.TransformerRegistry;
+import edu.tamu.tcat.analytics.datatrax.config.DataInputPin;
+import edu.tamu.tcat.analytics.datatrax.config.TransformerConfiguration;
+
+/**
+ * A {@link TransformerRegistry} that supplies {@link NoOpTransformer} registrations without
+ * requiring the Eclipse extension registry. The registration with id {@code noop.N} declares 
+ * N required inputs labeled {@code in0} to {@code in(N-1)}, each accepting any object, and 
+ * produces a {@link String}.
+ */
+public class SyntheticRegistry implements TransformerRegistry
+{
+   private static final String PREFIX = "noop.";
+   
+   private final Map<String, NoOpRegistration> registrations = new ConcurrentHashMap<>();
+   
+   /**
+    * @param arity The number of inputs.
+    * @return The registration for a no-op transformer with the supplied number of inputs.
+    */
+   public TransformerRegistration getNoOp(int arity)
+   {
+      return registrations.computeIfAbsent(PREFIX + arity, id -> new NoOpRegistration(id, arity));
+   }
+
+   @Override
+   public Collection<String> getRegistrations()
+   {
+      return Collections.unmodifiableSet(registrations.keySet());
+   }
+
+   @Override
+   public boolean isRegistered(String id)
+   {
+      return registrations.containsKey(id);
+   }
+
+   @Override
+   public TransformerRegistration getRegistration(String id) throws FactoryUnavailableException
+   {
+      TransformerRegistration reg = registrations.get(id);
+      if (reg == null)
+         throw new FactoryUnavailableException("No transformer registered for id [" + id + "]");
+      
+      return reg;
+   }
+
+   @Override
+   public <X> Collection<String> getCompatibleRegistrations(Class<X> sourceType)
+   {
+      return getRegistrations();
+   }
+
+   @Override
+   public <X> Collection<String> getProducingRegistrations(Class<X> outputType)
+   {
+      return outputType.isAssignableFrom(String.class) ? getRegistrations() : Collections.<String>emptySet();
+   }
+   
+   private static class NoOpRegistration implements TransformerRegistration
+   {
+      private final String id;
+      private final String[] labels;
+      private final Set<DataInputPin> pins = new HashSet<>();
+      
+      NoOpRegistration(String id, int arity)
+      {
+         this.id = id;
+         this.labels = new String[arity];
+         for (int i = 0; i < arity; i++)
+         {
+            DataInputPin pin = new DataInputPin();
+            pin.label = "in" + i;
+            pin.description = "Input " + i;
+            pin.type = Object.class;
+            
+            labels[i] = pin.label;
+            pins.add(pin);
+         }
+      }
+      
+      @Override
+      public String getId()
+      {
+         return id;
+      }
+
+      @Override
+      public String getTitle()
+      {
+         return "No-op Transformer (" + labels.length + " inputs)";
+      }
+
+      @Override
+      public String getDescription()
+      {
+         return "Reads its inputs and returns a constant value.";
+      }
+
+      @Override
+      public Set<DataInputPin> getDeclaredInputs()
+      {
+         return Collections.unmodifiableSet(pins);
+      }
+
+      @Override
+      public DataInputPin getDeclaredInput(String label) throws IllegalArgumentException
+      {
+         for (DataInputPin pin : pins)
+         {
+            if (pin.label.equals(label))
+               return pin;
+         }
+         
+         throw new IllegalArgumentException("Undefined input pin [" + label + "]");
+      }
+
+      @Override
+      public Class<?> getDeclaredOutputType()
+      {
+         return String.class;
+      }
+
+      @Override
+      public boolean canAccept(Class<?> type)
+      {
+         return true;
+      }
+
+      @Override
+      public boolean canProduce(Class<?> type)
+      {
+         return type.isAssignableFrom(String.class);
+      }
+
+      @Override
+      public Transformer instantiate(TransformerConfiguration cfg)
+      {
+         return new NoOpTransformer(labels);
+      }
+   }
+}
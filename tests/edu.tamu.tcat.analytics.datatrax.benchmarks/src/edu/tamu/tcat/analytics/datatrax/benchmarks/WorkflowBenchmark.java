@@ -0,0 +1,135 @@
+package edu.tamu.tcat.analytics.datatrax.benchmarks;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Supplier;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import edu.tamu.tcat.analytics.datatrax.ResultsCollector;
+import edu.tamu.tcat.analytics.datatrax.basic.WorkflowControllerImpl;
+import edu.tamu.tcat.analytics.datatrax.basic.WorkflowControllerSettings;
+import edu.tamu.tcat.analytics.datatrax.config.WorkflowConfiguration;
+
+/**
+ * Measures the overhead of the workflow engine when executing synthetic workflows of 
+ * {@link NoOpTransformer}s. Since the transformers do no work, the results reflect the cost 
+ * of scheduling transformers and handing data between them.
+ * 
+ * <p>
+ * {@link #batch()} reports the throughput of inputs supplied using 
+ * {@link WorkflowControllerImpl#processAll(java.util.Iterator, ResultsCollector)}. 
+ * {@link #single()} reports the latency of processing a single input from submission until 
+ * its future completes.
+ */
+@State(Scope.Benchmark)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class WorkflowBenchmark
+{
+   private static final int BATCH_SIZE = 1000;
+   
+   @Param({"CHAIN", "FAN", "DIAMOND"})
+   public WorkflowShape shape;
+   
+   @Param({"4", "16"})
+   public int size;
+   
+   @Param({"true", "false"})
+   public boolean recycle;
+   
+   @Param({"false"})
+   public boolean virtualThreads;
+   
+   private WorkflowControllerImpl controller;
+   private CountingCollector collector;
+   private List<Supplier<String>> inputs;
+   
+   @Setup(Level.Trial)
+   public void setup() throws Exception
+   {
+      WorkflowConfiguration config = shape.create(new SyntheticRegistry(), size);
+      
+      WorkflowControllerSettings settings = new WorkflowControllerSettings();
+      settings.recycleExecutionState = recycle;
+      settings.useVirtualThreads = virtualThreads;
+      
+      controller = WorkflowControllerImpl.create(config, settings);
+      collector = new CountingCollector();
+      
+      inputs = new ArrayList<>(BATCH_SIZE);
+      for (int i = 0; i < BATCH_SIZE; i++)
+      {
+         String input = "input " + i;
+         inputs.add(() -> input);
+      }
+   }
+   
+   @TearDown(Level.Trial)
+   public void teardown() throws Exception
+   {
+      controller.close();
+      if (collector.errors.sum() > 0)
+         throw new IllegalStateException("Workflow execution reported [" + collector.errors.sum() + "] errors.");
+   }
+   
+   @Benchmark
+   @BenchmarkMode(Mode.Throughput)
+   @OutputTimeUnit(TimeUnit.SECONDS)
+   @OperationsPerInvocation(BATCH_SIZE)
+   public void batch()
+   {
+      controller.processAll(inputs.iterator(), collector).join();
+   }
+   
+   @Benchmark
+   @BenchmarkMode(Mode.SampleTime)
+   @OutputTimeUnit(TimeUnit.MICROSECONDS)
+   public void single()
+   {
+      controller.process(inputs.get(0), collector).join();
+   }
+   
+   /**
+    * Counts results. Results are delivered on worker threads, so a {@code Blackhole} cannot 
+    * be used here.
+    */
+   private static class CountingCollector implements ResultsCollector<String>
+   {
+      final LongAdder results = new LongAdder();
+      final LongAdder errors = new LongAdder();
+      
+      @Override
+      public void handleResult(TranformationResult<String> result)
+      {
+         results.increment();
+      }
+
+      @Override
+      public void handleError(TransformationError error)
+      {
+         errors.increment();
+      }
+
+      @Override
+      public void finished()
+      {
+      }
+   }
+}
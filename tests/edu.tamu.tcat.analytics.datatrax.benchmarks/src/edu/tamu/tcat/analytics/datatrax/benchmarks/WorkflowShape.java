@@ -0,0 +1,128 @@
+package edu.tamu.tcat.analytics.datatrax.benchmarks;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import edu.tamu.tcat.analytics.datatrax.TransformerConfigurationException;
+import edu.tamu.tcat.analytics.datatrax.TransformerRegistration;
+import edu.tamu.tcat.analytics.datatrax.basic.WorkflowConfigBuilderImpl;
+import edu.tamu.tcat.analytics.datatrax.config.TransformerConfigEditor;
+import edu.tamu.tcat.analytics.datatrax.config.TransformerConfiguration;
+import edu.tamu.tcat.analytics.datatrax.config.WorkflowConfiguration;
+import edu.tamu.tcat.analytics.datatrax.config.WorkflowConfigurationException;
+
+/**
+ * Synthetic workflow topologies built from {@link NoOpTransformer}s. Each workflow accepts
+ * a {@link String} input and declares a single output.
+ */
+public enum WorkflowShape
+{
+   /** A linear sequence of {@code size} transformers, each consuming the previous output. */
+   CHAIN
+   {
+      @Override
+      TransformerConfiguration build(Builder builder, int size) throws Exception
+      {
+         TransformerConfiguration prev = null;
+         for (int i = 0; i < size; i++)
+         {
+            prev = builder.add(1, prev);
+         }
+         
+         return prev;
+      }
+   },
+   
+   /** {@code size} transformers that consume the input, joined by a single transformer. */
+   FAN
+   {
+      @Override
+      TransformerConfiguration build(Builder builder, int size) throws Exception
+      {
+         List<TransformerConfiguration> branches = new ArrayList<>();
+         for (int i = 0; i < size; i++)
+         {
+            branches.add(builder.add(1, (TransformerConfiguration)null));
+         }
+         
+         return builder.add(size, branches.toArray(new TransformerConfiguration[size]));
+      }
+   },
+   
+   /** A sequence of {@code size} diamonds. Each diamond splits into two branches and joins them. */
+   DIAMOND
+   {
+      @Override
+      TransformerConfiguration build(Builder builder, int size) throws Exception
+      {
+         TransformerConfiguration prev = null;
+         for (int i = 0; i < size; i++)
+         {
+            TransformerConfiguration left = builder.add(1, prev);
+            TransformerConfiguration right = builder.add(1, prev);
+            prev = builder.add(2, left, right);
+         }
+         
+         return prev;
+      }
+   };
+   
+   /**
+    * @return The output of the constructed topology.
+    */
+   abstract TransformerConfiguration build(Builder builder, int size) throws Exception;
+   
+   /**
+    * Creates a workflow with this shape.
+    * 
+    * @param registry The registry that supplies the no-op transformers.
+    * @param size The size of the workflow. See the individual shapes for details.
+    * @return The workflow configuration.
+    */
+   public WorkflowConfiguration create(SyntheticRegistry registry, int size) throws Exception
+   {
+      Builder builder = new Builder(registry, name() + " (" + size + ")");
+      TransformerConfiguration output = build(builder, size);
+      return builder.build(output);
+   }
+   
+   static final class Builder
+   {
+      private final SyntheticRegistry registry;
+      private final WorkflowConfigBuilderImpl builder;
+      
+      Builder(SyntheticRegistry registry, String title)
+      {
+         this.registry = registry;
+         this.builder = new WorkflowConfigBuilderImpl(registry);
+         builder.setTitle(title);
+         builder.setInputType(String.class);
+      }
+      
+      /**
+       * Adds a transformer whose inputs are stitched to the supplied sources. A {@code null} 
+       * source refers to the workflow input.
+       */
+      TransformerConfiguration add(int arity, TransformerConfiguration... sources) throws WorkflowConfigurationException, TransformerConfigurationException
+      {
+         TransformerRegistration reg = registry.getNoOp(arity);
+         TransformerConfigEditor editor = builder.createTransformer(reg);
+         for (int i = 0; i < arity; i++)
+         {
+            TransformerConfiguration source = sources[i];
+            if (source == null)
+               editor.setDataSource(reg.getDeclaredInput("in" + i), builder.getInputKey());
+            else
+               editor.setDataSource(reg.getDeclaredInput("in" + i), source);
+         }
+         
+         return editor.getConfiguration();
+      }
+      
+      WorkflowConfiguration build(TransformerConfiguration output) throws WorkflowConfigurationException
+      {
+         builder.registerOutput(output.getId());
+         return builder.build();
+      }
+   }
+}
@@ -0,0 +1,351 @@
+package edu.tamu.tcat.analytics.datatrax.tests;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionStage;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.function.Function;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import edu.tamu.tcat.analytics.datatrax.AsyncTransformer;
+import edu.tamu.tcat.analytics.datatrax.DataValueKey;
+import edu.tamu.tcat.analytics.datatrax.TransformerConfigurationException;
+import edu.tamu.tcat.analytics.datatrax.TransformerContext;
+import edu.tamu.tcat.analytics.datatrax.WorkflowException;
+import edu.tamu.tcat.analytics.datatrax.WorkflowMetrics;
+import edu.tamu.tcat.analytics.datatrax.basic.SimpleDataValueKey;
+import edu.tamu.tcat.analytics.datatrax.basic.WorkflowConfigBuilderImpl;
+import edu.tamu.tcat.analytics.datatrax.basic.WorkflowControllerImpl;
+import edu.tamu.tcat.analytics.datatrax.basic.WorkflowControllerSettings;
+import edu.tamu.tcat.analytics.datatrax.config.TransformerConfigEditor;
+import edu.tamu.tcat.analytics.datatrax.config.TransformerConfiguration;
+import edu.tamu.tcat.analytics.datatrax.tests.MockTransformerRegistry.MockRegistration;
+
+/**
+ * Tests the execution of {@link AsyncTransformer}s, whose output is supplied once the
+ * {@link CompletionStage} they return completes.
+ */
+public class AsyncTransformerTests
+{
+   private static final long DELAY_MILLIS = 100;
+
+   private final MockTransformerRegistry registry = new MockTransformerRegistry();
+   private final List<CompletableFuture<Object>> stages = new CopyOnWriteArrayList<>();
+   private ScheduledExecutorService timer;
+
+   private final MockRegistration delayed = registerAsync("delayed", ctx -> later(() -> ((String)ctx.getValue("text")).toUpperCase()));
+   private final MockRegistration failing = registerAsync("failing", ctx -> later(() -> { throw new IllegalStateException("Expected failure"); }));
+   private final MockRegistration pending = registerAsync("pending", ctx -> track(new CompletableFuture<>()));
+   private final MockRegistration slowCreate = registry.registerTransformer("slowCreate", String.class,
+         () -> new StageTransformer(ctx -> CompletableFuture.completedFuture(ctx.getValue("text")), DELAY_MILLIS), "text");
+
+   @Before
+   public void setup()
+   {
+      timer = Executors.newSingleThreadScheduledExecutor();
+   }
+
+   @After
+   public void teardown()
+   {
+      timer.shutdownNow();
+   }
+
+   private MockRegistration registerAsync(String id, Function<TransformerContext, CompletionStage<?>> fn)
+   {
+      return registry.registerTransformer(id, String.class, () -> new StageTransformer(fn, 0), "text");
+   }
+
+   /**
+    * @return A stage that completes with the result of the supplied task after a delay.
+    */
+   private CompletionStage<?> later(Callable<Object> task)
+   {
+      CompletableFuture<Object> stage = track(new CompletableFuture<>());
+      timer.schedule(() -> {
+         try
+         {
+            stage.complete(task.call());
+         }
+         catch (Exception ex)
+         {
+            stage.completeExceptionally(ex);
+         }
+      }, DELAY_MILLIS, TimeUnit.MILLISECONDS);
+
+      return stage;
+   }
+
+   private CompletableFuture<Object> track(CompletableFuture<Object> stage)
+   {
+      stages.add(stage);
+      return stage;
+   }
+
+   /**
+    * Pending stages are cancelled once the collector has been notified that processing is
+    * finished, so may not yet be cancelled when the notification is received.
+    */
+   private static boolean awaitCancelled(CompletableFuture<?> stage) throws InterruptedException
+   {
+      long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(10);
+      while (!stage.isCancelled() && System.nanoTime() < deadline)
+      {
+         Thread.sleep(10);
+      }
+
+      return stage.isCancelled();
+   }
+
+   private TransformerConfiguration buildTransformer(WorkflowConfigBuilderImpl builder, MockRegistration reg) throws Exception
+   {
+      TransformerConfigEditor editor = builder.createTransformer(reg);
+      editor.setDataSource(reg.getDeclaredInput("text"), builder.getInputKey());
+      TransformerConfiguration cfg = editor.getConfiguration();
+      builder.registerOutput(cfg.getId());
+      return cfg;
+   }
+
+   private WorkflowConfigBuilderImpl createBuilder()
+   {
+      WorkflowConfigBuilderImpl builder = new WorkflowConfigBuilderImpl(registry);
+      builder.setTitle("Async Test");
+      builder.setInputType(String.class);
+      return builder;
+   }
+
+   private static DataValueKey keyOf(TransformerConfiguration cfg)
+   {
+      return new SimpleDataValueKey(cfg.getId(), cfg.getOutputType());
+   }
+
+   /**
+    * Stages do not occupy a worker while they are pending, so a single worker processes
+    * several inputs concurrently.
+    */
+   @Test
+   public void testStageSuppliesOutput() throws Exception
+   {
+      WorkflowConfigBuilderImpl builder = createBuilder();
+      TransformerConfiguration cfg = buildTransformer(builder, delayed);
+
+      WorkflowControllerSettings settings = new WorkflowControllerSettings();
+      settings.taskParallelism = 1;
+      settings.maxInFlight = 10;
+      WorkflowControllerImpl workflow = WorkflowControllerImpl.create(builder.build(), settings);
+      try
+      {
+         long start = System.nanoTime();
+         List<RecordingResultsCollector<String>> collectors = new CopyOnWriteArrayList<>();
+         for (int i = 0; i < 10; i++)
+         {
+            RecordingResultsCollector<String> collector = new RecordingResultsCollector<>();
+            collectors.add(collector);
+            workflow.process(() -> "input", collector);
+         }
+
+         for (RecordingResultsCollector<String> collector : collectors)
+         {
+            assertTrue("Processing did not finish", collector.await(10, TimeUnit.SECONDS));
+            assertTrue("Unexpected errors " + collector.errors, collector.errors.isEmpty());
+            assertEquals("INPUT", collector.get(keyOf(cfg)));
+         }
+
+         long elapsed = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+         assertTrue("Pending stages blocked the worker [" + elapsed + "ms]", elapsed < 10 * DELAY_MILLIS);
+
+         WorkflowMetrics.TransformerMetrics metrics = workflow.getMetrics().getTransformerMetrics(cfg.getId());
+         assertEquals(10, metrics.getExecutions());
+         assertEquals(10, metrics.getCallTime().getCount());
+         assertTrue(metrics.getCallTime().getMax() >= TimeUnit.MILLISECONDS.toNanos(DELAY_MILLIS) / 2);
+      }
+      finally
+      {
+         workflow.close();
+      }
+   }
+
+   @Test
+   public void testFailedStageReportsError() throws Exception
+   {
+      WorkflowConfigBuilderImpl builder = createBuilder();
+      TransformerConfiguration cfg = buildTransformer(builder, failing);
+
+      WorkflowControllerImpl workflow = WorkflowControllerImpl.create(builder.build());
+      try
+      {
+         RecordingResultsCollector<String> collector = new RecordingResultsCollector<>();
+         CompletableFuture<Void> result = workflow.process(() -> "input", collector);
+         try
+         {
+            result.get(10, TimeUnit.SECONDS);
+            fail("Expected processing to fail");
+         }
+         catch (ExecutionException ex)
+         {
+            // expected
+         }
+
+         assertTrue("Processing did not finish", collector.await(10, TimeUnit.SECONDS));
+         assertTrue(collector.results.isEmpty());
+         assertEquals(1, collector.errors.size());
+         assertTrue(collector.errors.get(0) instanceof WorkflowException);
+         assertTrue(collector.errors.get(0).getCause() instanceof IllegalStateException);
+
+         // failed stages are timed, as are failed synchronous transformers
+         WorkflowMetrics.TransformerMetrics metrics = workflow.getMetrics().getTransformerMetrics(cfg.getId());
+         assertEquals(1, metrics.getErrors());
+         assertEquals(1, metrics.getCallTime().getCount());
+      }
+      finally
+      {
+         workflow.close();
+      }
+   }
+
+   /**
+    * As for synchronous transformers, the call time of a stage excludes the time taken to
+    * create the transformer's task, which is recorded separately.
+    */
+   @Test
+   public void testCallTimeExcludesCreateTime() throws Exception
+   {
+      WorkflowConfigBuilderImpl builder = createBuilder();
+      TransformerConfiguration cfg = buildTransformer(builder, slowCreate);
+
+      WorkflowControllerImpl workflow = WorkflowControllerImpl.create(builder.build());
+      try
+      {
+         RecordingResultsCollector<String> collector = new RecordingResultsCollector<>();
+         workflow.process(() -> "input", collector).get(10, TimeUnit.SECONDS);
+         assertEquals("input", collector.get(keyOf(cfg)));
+
+         long delay = TimeUnit.MILLISECONDS.toNanos(DELAY_MILLIS);
+         WorkflowMetrics.TransformerMetrics metrics = workflow.getMetrics().getTransformerMetrics(cfg.getId());
+         assertEquals(1, metrics.getCreateTime().getCount());
+         assertTrue(metrics.getCreateTime().getMax() >= delay);
+         assertEquals(1, metrics.getCallTime().getCount());
+         assertTrue("Call time included create time", metrics.getCallTime().getMax() < delay);
+      }
+      finally
+      {
+         workflow.close();
+      }
+   }
+
+   @Test
+   public void testPendingStageCancelledOnDeadline() throws Exception
+   {
+      WorkflowConfigBuilderImpl builder = createBuilder();
+      buildTransformer(builder, pending);
+
+      WorkflowControllerImpl workflow = WorkflowControllerImpl.create(builder.build());
+      try
+      {
+         RecordingResultsCollector<String> collector = new RecordingResultsCollector<>();
+         workflow.process(() -> "input", collector, DELAY_MILLIS, TimeUnit.MILLISECONDS);
+         assertTrue("Processing did not finish", collector.await(10, TimeUnit.SECONDS));
+         assertEquals(1, collector.errors.size());
+         assertTrue(collector.errors.get(0) instanceof TimeoutException);
+
+         assertEquals(1, stages.size());
+         assertTrue("Pending stage was not cancelled", awaitCancelled(stages.get(0)));
+      }
+      finally
+      {
+         workflow.close();
+      }
+   }
+
+   /**
+    * Cancelling the processing of an input cancels its pending stages.
+    */
+   @Test
+   public void testPendingStageCancelledWithInput() throws Exception
+   {
+      WorkflowConfigBuilderImpl builder = createBuilder();
+      buildTransformer(builder, pending);
+
+      WorkflowControllerImpl workflow = WorkflowControllerImpl.create(builder.build());
+      try
+      {
+         RecordingResultsCollector<String> collector = new RecordingResultsCollector<>();
+         CompletableFuture<Void> result = workflow.process(() -> "input", collector);
+
+         long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(10);
+         while (stages.isEmpty() && System.nanoTime() < deadline)
+         {
+            Thread.sleep(10);
+         }
+
+         assertEquals(1, stages.size());
+         result.cancel(true);
+         assertTrue("Processing did not finish", collector.await(10, TimeUnit.SECONDS));
+         assertTrue("Pending stage was not cancelled", awaitCancelled(stages.get(0)));
+      }
+      finally
+      {
+         workflow.close();
+      }
+   }
+
+   /**
+    * An asynchronous transformer whose task returns the stage computed by a function.
+    */
+   private static final class StageTransformer implements AsyncTransformer
+   {
+      private final Function<TransformerContext, CompletionStage<?>> fn;
+      private final long createDelayMillis;
+
+      /**
+       * @param createDelayMillis The time taken to create the transformer's task.
+       */
+      StageTransformer(Function<TransformerContext, CompletionStage<?>> fn, long createDelayMillis)
+      {
+         this.fn = fn;
+         this.createDelayMillis = createDelayMillis;
+      }
+
+      @Override
+      public void configure(Map<String, Object> data) throws TransformerConfigurationException
+      {
+         // no configuration
+      }
+
+      @Override
+      public Map<String, Object> getConfiguration()
+      {
+         return new HashMap<>();
+      }
+
+      @Override
+      public Callable<? extends CompletionStage<?>> createAsync(TransformerContext ctx)
+      {
+         try
+         {
+            Thread.sleep(createDelayMillis);
+         }
+         catch (InterruptedException ex)
+         {
+            Thread.currentThread().interrupt();
+         }
+
+         return () -> fn.apply(ctx);
+      }
+   }
+}
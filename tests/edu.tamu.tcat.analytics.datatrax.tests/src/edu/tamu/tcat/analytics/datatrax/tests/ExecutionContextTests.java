@@ -2,12 +2,14 @@ package edu.tamu.tcat.analytics.datatrax.tests;
 
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
 
 import java.util.HashSet;
 import java.util.Set;
 import java.util.UUID;
 import java.util.concurrent.CountDownLatch;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
 import java.util.concurrent.atomic.AtomicReference;
 
 import org.junit.AfterClass;
@@ -189,5 +191,38 @@ public class ExecutionContextTests
       assertEquals("Unexpected value found in context", testValue, (String)context.get(testKey));
    }
    
-   
+   /**
+    * Tests that listeners registered concurrently with the value being supplied are each 
+    * notified exactly once, whether they are registered before or after the value arrives.
+    */
+   @Test
+   public void testConcurrentRegistration() throws InterruptedException
+   {
+      int numListeners = 1000;
+      String testValue = "Hello World";
+      DataValueKey testKey = new SimpleDataValueKey(UUID.randomUUID(), String.class);
+      
+      WorkflowExecutionContext context = new WorkflowExecutionContext();
+      Set<DataValueKey> keys = new HashSet<>();
+      keys.add(testKey);
+      
+      AtomicInteger notifications = new AtomicInteger();
+      CountDownLatch latch = new CountDownLatch(numListeners);
+      Thread registrar = new Thread(() -> {
+         for (int i = 0; i < numListeners; i++)
+         {
+            context.registerListener(keys, evt -> {
+               notifications.incrementAndGet();
+               latch.countDown();
+            });
+         }
+      });
+      
+      registrar.start();
+      context.put(testKey, testValue);
+      registrar.join();
+      
+      assertTrue("Not all listeners were notified", latch.await(2, TimeUnit.SECONDS));
+      assertEquals("Listeners notified more than once", numListeners, notifications.get());
+   }
 }
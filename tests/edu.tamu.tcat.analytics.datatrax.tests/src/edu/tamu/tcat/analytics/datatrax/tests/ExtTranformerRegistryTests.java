@@ -5,7 +5,11 @@ import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertNotNull;
 import static org.junit.Assert.assertTrue;
 
+import java.util.Arrays;
 import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
+import java.util.Set;
 import java.util.UUID;
 import java.util.concurrent.Callable;
 
@@ -47,6 +51,51 @@ public class ExtTranformerRegistryTests
       }
    }
    
+   /**
+    * The indexed type lookups must return the same registrations as testing each
+    * registration with {@link TransformerRegistration#canAccept(Class)} and
+    * {@link TransformerRegistration#canProduce(Class)}.
+    */
+   @Test
+   public void testTypeLookupsMatchRegistrations() throws FactoryUnavailableException
+   {
+      // TODO should test without appeal to OSGi
+      try (ServiceHelper helper = new ServiceHelper(Activator.getDefault().getContext()))
+      {
+         TransformerRegistry registry = helper.waitForService(TransformerRegistry.class, 10_000);
+
+         // the declared types, along with their super- and subtypes and array types
+         Set<Class<?>> types = new LinkedHashSet<>(Arrays.asList(Object.class, CharSequence.class, String.class,
+               Integer.class, Number.class, Object[].class, String[].class, CharSequence[].class, int[].class));
+         for (String id : registry.getRegistrations())
+         {
+            TransformerRegistration reg = registry.getRegistration(id);
+            types.add(reg.getDeclaredOutputType());
+            for (DataInputPin pin : reg.getDeclaredInputs())
+            {
+               types.add(pin.type);
+            }
+         }
+
+         for (Class<?> type : types)
+         {
+            Set<String> accepting = new HashSet<>();
+            Set<String> producing = new HashSet<>();
+            for (String id : registry.getRegistrations())
+            {
+               TransformerRegistration reg = registry.getRegistration(id);
+               if (reg.canAccept(type))
+                  accepting.add(id);
+               if (reg.canProduce(type))
+                  producing.add(id);
+            }
+
+            assertEquals("Registrations accepting " + type.getName(), accepting, new HashSet<>(registry.getCompatibleRegistrations(type)));
+            assertEquals("Registrations producing " + type.getName(), producing, new HashSet<>(registry.getProducingRegistrations(type)));
+         }
+      }
+   }
+   
    public static SimpleTransformerConfig buildConfig(TransformerRegistration registration) throws FactoryUnavailableException
    {
       TransformerConfigData data = new TransformerConfigData();
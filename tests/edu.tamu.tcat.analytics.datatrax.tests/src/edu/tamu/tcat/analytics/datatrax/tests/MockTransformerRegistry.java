@@ -0,0 +1,317 @@
+package edu.tamu.tcat.analytics.datatrax.tests;
+
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletionStage;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Function;
+import java.util.function.Supplier;
+
+import edu.tamu.tcat.analytics.datatrax.AsyncTransformer;
+import edu.tamu.tcat.analytics.datatrax.FactoryUnavailableException;
+import edu.tamu.tcat.analytics.datatrax.Transformer;
+import edu.tamu.tcat.analytics.datatrax.TransformerConfigurationException;
+import edu.tamu.tcat.analytics.datatrax.TransformerContext;
+import edu.tamu.tcat.analytics.datatrax.TransformerRegistration;
+import edu.tamu.tcat.analytics.datatrax.TransformerRegistry;
+import edu.tamu.tcat.analytics.datatrax.config.DataInputPin;
+import edu.tamu.tcat.analytics.datatrax.config.FactoryConfigurationException;
+import edu.tamu.tcat.analytics.datatrax.config.TransformerConfiguration;
+
+/**
+ * A {@link TransformerRegistry} that holds registrations created by tests, so that workflows
+ * can be built and executed without the Eclipse extension registry. Each registration counts
+ * the number of times its transformers have been executed.
+ */
+public class MockTransformerRegistry implements TransformerRegistry
+{
+   private final Map<String, MockRegistration> registrations = new ConcurrentHashMap<>();
+
+   /**
+    * Registers a transformer whose task applies the supplied function to its context.
+    *
+    * @param id The id of the registration.
+    * @param outputType The type of the transformer's output.
+    * @param fn Computes the output of the transformer from its inputs.
+    * @param inputs The labels of the transformer's input pins.
+    * @return The new registration.
+    */
+   public MockRegistration register(String id, Class<?> outputType, Function<TransformerContext, ?> fn, String... inputs)
+   {
+      return registerTransformer(id, outputType, () -> new FunctionTransformer(fn), inputs);
+   }
+
+   /**
+    * Registers a transformer that is instantiated using the supplied factory.
+    *
+    * @param id The id of the registration.
+    * @param outputType The type of the transformer's output.
+    * @param factory Creates a new instance of the transformer.
+    * @param inputs The labels of the transformer's input pins.
+    * @return The new registration.
+    */
+   public MockRegistration registerTransformer(String id, Class<?> outputType, Supplier<? extends Transformer> factory, String... inputs)
+   {
+      MockRegistration registration = new MockRegistration(id, outputType, factory, inputs);
+      registrations.put(id, registration);
+      return registration;
+   }
+
+   @Override
+   public Collection<String> getRegistrations()
+   {
+      return Collections.unmodifiableCollection(registrations.keySet());
+   }
+
+   @Override
+   @Deprecated
+   public boolean isRegistered(String id)
+   {
+      return registrations.containsKey(id);
+   }
+
+   @Override
+   public MockRegistration getRegistration(String id) throws FactoryUnavailableException
+   {
+      MockRegistration registration = registrations.get(id);
+      if (registration == null)
+         throw new FactoryUnavailableException("No transformer is registered for id [" + id + "]");
+
+      return registration;
+   }
+
+   @Override
+   public <X> Collection<String> getCompatibleRegistrations(Class<X> sourceType)
+   {
+      Set<String> matches = new HashSet<>();
+      registrations.values().stream()
+            .filter(reg -> reg.canAccept(sourceType))
+            .forEach(reg -> matches.add(reg.getId()));
+      return matches;
+   }
+
+   @Override
+   public <X> Collection<String> getProducingRegistrations(Class<X> outputType)
+   {
+      Set<String> matches = new HashSet<>();
+      registrations.values().stream()
+            .filter(reg -> reg.canProduce(outputType))
+            .forEach(reg -> matches.add(reg.getId()));
+      return matches;
+   }
+
+   public static class MockRegistration implements TransformerRegistration
+   {
+      private final String id;
+      private final Class<?> outputType;
+      private final Supplier<? extends Transformer> factory;
+      private final Set<DataInputPin> inputs = new HashSet<>();
+      private final AtomicInteger executions = new AtomicInteger();
+      private volatile boolean deterministic = false;
+
+      MockRegistration(String id, Class<?> outputType, Supplier<? extends Transformer> factory, String... labels)
+      {
+         this.id = id;
+         this.outputType = outputType;
+         this.factory = factory;
+         for (String label : labels)
+         {
+            DataInputPin pin = new DataInputPin();
+            pin.label = label;
+            pin.description = label;
+            pin.type = Object.class;
+            inputs.add(pin);
+         }
+      }
+
+      /**
+       * Marks the registered transformer as deterministic, so that its outputs may be memoized.
+       */
+      public MockRegistration setDeterministic(boolean deterministic)
+      {
+         this.deterministic = deterministic;
+         return this;
+      }
+
+      /**
+       * @return The number of tasks that have been created by this registration's transformers.
+       */
+      public int getExecutions()
+      {
+         return executions.get();
+      }
+
+      @Override
+      public String getId()
+      {
+         return id;
+      }
+
+      @Override
+      public String getTitle()
+      {
+         return id;
+      }
+
+      @Override
+      public String getDescription()
+      {
+         return "A mock transformer for use in testing";
+      }
+
+      @Override
+      public Set<DataInputPin> getDeclaredInputs()
+      {
+         return Collections.unmodifiableSet(inputs);
+      }
+
+      @Override
+      public DataInputPin getDeclaredInput(String label) throws IllegalArgumentException
+      {
+         for (DataInputPin pin : inputs)
+         {
+            if (pin.label.equals(label))
+               return pin;
+         }
+
+         throw new IllegalArgumentException("Undefined input pin [" + label + "]");
+      }
+
+      @Override
+      public Class<?> getDeclaredOutputType()
+      {
+         return outputType;
+      }
+
+      @Override
+      public boolean canAccept(Class<?> type)
+      {
+         return inputs.stream().anyMatch(pin -> pin.type.isAssignableFrom(type));
+      }
+
+      @Override
+      public boolean canProduce(Class<?> type)
+      {
+         return type.isAssignableFrom(outputType);
+      }
+
+      @Override
+      public Transformer instantiate(TransformerConfiguration cfg) throws FactoryConfigurationException
+      {
+         Map<String, Object> params = new HashMap<>();
+         for (String key : cfg.getDefinedParameters())
+         {
+            params.put(key, cfg.getParameter(key));
+         }
+
+         Transformer transformer = factory.get();
+         try
+         {
+            transformer.configure(params);
+         }
+         catch (TransformerConfigurationException e)
+         {
+            throw new FactoryConfigurationException("Failed to configure transformer [" + id + "]. Invalid configuration data.", e);
+         }
+
+         return (transformer instanceof AsyncTransformer)
+               ? new CountingAsyncTransformer((AsyncTransformer)transformer, executions)
+               : new CountingTransformer(transformer, executions);
+      }
+
+      @Override
+      public boolean isDeterministic()
+      {
+         return deterministic;
+      }
+   }
+
+   /**
+    * Counts the tasks created by a transformer.
+    */
+   private static class CountingTransformer implements Transformer
+   {
+      private final Transformer delegate;
+      private final AtomicInteger executions;
+
+      CountingTransformer(Transformer delegate, AtomicInteger executions)
+      {
+         this.delegate = delegate;
+         this.executions = executions;
+      }
+
+      @Override
+      public void configure(Map<String, Object> data) throws TransformerConfigurationException
+      {
+         delegate.configure(data);
+      }
+
+      @Override
+      public Map<String, Object> getConfiguration()
+      {
+         return delegate.getConfiguration();
+      }
+
+      @Override
+      public Callable<?> create(TransformerContext ctx)
+      {
+         executions.incrementAndGet();
+         return delegate.create(ctx);
+      }
+   }
+
+   private static class CountingAsyncTransformer extends CountingTransformer implements AsyncTransformer
+   {
+      private final AsyncTransformer delegate;
+      private final AtomicInteger executions;
+
+      CountingAsyncTransformer(AsyncTransformer delegate, AtomicInteger executions)
+      {
+         super(delegate, executions);
+         this.delegate = delegate;
+         this.executions = executions;
+      }
+
+      @Override
+      public Callable<? extends CompletionStage<?>> createAsync(TransformerContext ctx)
+      {
+         executions.incrementAndGet();
+         return delegate.createAsync(ctx);
+      }
+   }
+
+   private static class FunctionTransformer implements Transformer
+   {
+      private final Function<TransformerContext, ?> fn;
+      private Map<String, Object> config = new HashMap<>();
+
+      FunctionTransformer(Function<TransformerContext, ?> fn)
+      {
+         this.fn = fn;
+      }
+
+      @Override
+      public void configure(Map<String, Object> data) throws TransformerConfigurationException
+      {
+         config = new HashMap<>(data);
+      }
+
+      @Override
+      public Map<String, Object> getConfiguration()
+      {
+         return new HashMap<>(config);
+      }
+
+      @Override
+      public Callable<?> create(TransformerContext ctx)
+      {
+         return () -> fn.apply(ctx);
+      }
+   }
+}
@@ -0,0 +1,75 @@
+package edu.tamu.tcat.analytics.datatrax.tests;
+
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import edu.tamu.tcat.analytics.datatrax.DataValueKey;
+import edu.tamu.tcat.analytics.datatrax.ResultsCollector;
+
+/**
+ * A {@link ResultsCollector} for a single input that records the results and errors it
+ * receives so that tests can inspect them once processing has finished.
+ */
+public class RecordingResultsCollector<X> implements ResultsCollector<X>
+{
+   public final Map<DataValueKey, Object> results = new ConcurrentHashMap<>();
+   public final List<Exception> errors = new CopyOnWriteArrayList<>();
+   public final AtomicInteger finished = new AtomicInteger();
+
+   /** The number of notifications received on a thread that had been interrupted. */
+   public final AtomicInteger interruptedCallbacks = new AtomicInteger();
+
+   private final CountDownLatch latch = new CountDownLatch(1);
+
+   /**
+    * @return The value supplied for the output produced by the identified transformer or
+    *       {@code null} if no value has been supplied.
+    */
+   public Object get(DataValueKey key)
+   {
+      return results.get(key);
+   }
+
+   /**
+    * Waits for the collector to be notified that processing is finished.
+    *
+    * @return {@code true} if processing finished before the timeout elapsed.
+    */
+   public boolean await(long timeout, TimeUnit units) throws InterruptedException
+   {
+      return latch.await(timeout, units);
+   }
+
+   @Override
+   public void handleResult(TranformationResult<X> result)
+   {
+      checkInterrupted();
+      results.put(result.getKey(), result.getValue());
+   }
+
+   @Override
+   public void handleError(TransformationError error)
+   {
+      checkInterrupted();
+      errors.add(error.getException());
+   }
+
+   @Override
+   public void finished()
+   {
+      checkInterrupted();
+      finished.incrementAndGet();
+      latch.countDown();
+   }
+
+   private void checkInterrupted()
+   {
+      if (Thread.currentThread().isInterrupted())
+         interruptedCallbacks.incrementAndGet();
+   }
+}
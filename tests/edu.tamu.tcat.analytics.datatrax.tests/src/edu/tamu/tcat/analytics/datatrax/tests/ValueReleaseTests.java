@@ -0,0 +1,272 @@
+package edu.tamu.tcat.analytics.datatrax.tests;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.Test;
+
+import edu.tamu.tcat.analytics.datatrax.DataValueKey;
+import edu.tamu.tcat.analytics.datatrax.basic.SimpleDataValueKey;
+import edu.tamu.tcat.analytics.datatrax.basic.ValueStore;
+import edu.tamu.tcat.analytics.datatrax.basic.WorkflowConfigBuilderImpl;
+import edu.tamu.tcat.analytics.datatrax.basic.WorkflowControllerImpl;
+import edu.tamu.tcat.analytics.datatrax.basic.WorkflowControllerSettings;
+import edu.tamu.tcat.analytics.datatrax.config.TransformerConfigEditor;
+import edu.tamu.tcat.analytics.datatrax.config.TransformerConfiguration;
+import edu.tamu.tcat.analytics.datatrax.tests.MockTransformerRegistry.MockRegistration;
+
+/**
+ * Tests the release of the values produced while processing an input once they are no
+ * longer needed.
+ */
+public class ValueReleaseTests
+{
+   private final List<CountingResource> resources = new CopyOnWriteArrayList<>();
+   private final CountDownLatch passedThrough = new CountDownLatch(1);
+
+   private final MockTransformerRegistry registry = new MockTransformerRegistry();
+   private final MockRegistration open = registry.register("open", CountingResource.class, ctx -> newResource(), "text");
+   private final MockRegistration identity = registry.register("identity", CountingResource.class, ctx -> passThrough(ctx.getValue("value")), "value");
+   private final MockRegistration fail = registry.register("fail", String.class, ctx -> failAfterPassThrough(), "text");
+   private final MockRegistration join = registry.register("join", String.class, ctx -> "joined", "a", "b", "c");
+   private final MockRegistration upper = registry.register("upper", String.class, ctx -> ((String)ctx.getValue("text")).toUpperCase(), "text");
+   private final MockRegistration length = registry.register("length", Integer.class, ctx -> Integer.valueOf(((String)ctx.getValue("text")).length()), "text");
+
+   private CountingResource newResource()
+   {
+      CountingResource resource = new CountingResource();
+      resources.add(resource);
+      return resource;
+   }
+
+   private Object passThrough(Object value)
+   {
+      passedThrough.countDown();
+      return value;
+   }
+
+   /**
+    * Fails once the value has been passed through, so that the failure does not prevent the
+    * pass-through transformer from running.
+    */
+   private String failAfterPassThrough()
+   {
+      try
+      {
+         passedThrough.await(10, TimeUnit.SECONDS);
+      }
+      catch (InterruptedException ex)
+      {
+         Thread.currentThread().interrupt();
+      }
+
+      throw new IllegalStateException("Expected failure");
+   }
+
+   private static TransformerConfiguration createTransformer(WorkflowConfigBuilderImpl builder, MockRegistration reg, Object... sources) throws Exception
+   {
+      TransformerConfigEditor editor = builder.createTransformer(reg);
+      for (int i = 0; i < sources.length; i += 2)
+      {
+         editor.setDataSource(reg.getDeclaredInput((String)sources[i]), (DataValueKey)sources[i + 1]);
+      }
+
+      return editor.getConfiguration();
+   }
+
+   private static DataValueKey keyOf(TransformerConfiguration cfg)
+   {
+      return new SimpleDataValueKey(cfg.getId(), cfg.getOutputType());
+   }
+
+   private static WorkflowConfigBuilderImpl createBuilder(MockTransformerRegistry registry)
+   {
+      WorkflowConfigBuilderImpl builder = new WorkflowConfigBuilderImpl(registry);
+      builder.setTitle("Release Test");
+      builder.setInputType(String.class);
+      return builder;
+   }
+
+   private static RecordingResultsCollector<String> process(WorkflowControllerImpl workflow, String text) throws Exception
+   {
+      RecordingResultsCollector<String> collector = new RecordingResultsCollector<>();
+      workflow.process(() -> text, collector);
+      assertTrue("Processing did not finish", collector.await(10, TimeUnit.SECONDS));
+      return collector;
+   }
+
+   /**
+    * A value that a transformer passes through to another slot is held by both slots. When
+    * neither is released before processing finishes it must still be closed only once.
+    */
+   @Test
+   public void testPassThroughValueClosedOnce() throws Exception
+   {
+      WorkflowConfigBuilderImpl builder = createBuilder(registry);
+      DataValueKey input = builder.getInputKey();
+      TransformerConfiguration opened = createTransformer(builder, open, "text", input);
+      TransformerConfiguration passed = createTransformer(builder, identity, "value", keyOf(opened));
+      TransformerConfiguration failed = createTransformer(builder, fail, "text", input);
+
+      // never runs, so neither the opened nor the passed value is released before processing finishes
+      TransformerConfiguration joined = createTransformer(builder, join,
+            "a", keyOf(opened), "b", keyOf(passed), "c", keyOf(failed));
+      builder.registerOutput(joined.getId());
+
+      // the failing transformer blocks its thread until the value has been passed through
+      WorkflowControllerSettings settings = new WorkflowControllerSettings();
+      settings.taskParallelism = 2;
+      WorkflowControllerImpl workflow = WorkflowControllerImpl.create(builder.build(), settings);
+      try
+      {
+         RecordingResultsCollector<String> collector = process(workflow, "input");
+         assertEquals(1, collector.errors.size());
+
+         CountingResource resource = awaitResource();
+         assertEquals(1, identity.getExecutions());
+         assertEquals("Pass-through value was not closed exactly once", 1, resource.awaitClosed());
+      }
+      finally
+      {
+         workflow.close();
+      }
+   }
+
+   private CountingResource awaitResource() throws InterruptedException
+   {
+      long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(10);
+      while (resources.isEmpty() && System.nanoTime() < deadline)
+      {
+         Thread.sleep(10);
+      }
+
+      assertEquals(1, resources.size());
+      return resources.get(0);
+   }
+
+   /**
+    * Only values returned by the store are released to it, each exactly once.
+    */
+   @Test
+   public void testStoreReleasesOnlyStoredValues() throws Exception
+   {
+      WorkflowConfigBuilderImpl builder = createBuilder(registry);
+      DataValueKey input = builder.getInputKey();
+      TransformerConfiguration uppercased = createTransformer(builder, upper, "text", input);
+      TransformerConfiguration counted = createTransformer(builder, length, "text", keyOf(uppercased));
+      builder.registerOutput(uppercased.getId());
+      builder.registerOutput(counted.getId());
+
+      RecordingValueStore store = new RecordingValueStore();
+      WorkflowControllerSettings settings = new WorkflowControllerSettings();
+      settings.valueStore = store;
+
+      WorkflowControllerImpl workflow = WorkflowControllerImpl.create(builder.build(), settings);
+      try
+      {
+         for (int i = 0; i < 5; i++)
+         {
+            RecordingResultsCollector<String> collector = process(workflow, "input" + i);
+            assertTrue("Unexpected errors " + collector.errors, collector.errors.isEmpty());
+            assertEquals(Integer.valueOf(6), collector.get(keyOf(counted)));
+         }
+
+         // the input and the output of the first transformer are read by transformers
+         assertEquals(10, store.stored.get());
+         assertEquals(10, store.awaitReleased(10));
+         assertTrue("Released values that were not stored " + store.invalid, store.invalid.isEmpty());
+      }
+      finally
+      {
+         workflow.close();
+      }
+   }
+
+   /**
+    * Counts the number of times it has been closed.
+    */
+   public static final class CountingResource implements AutoCloseable
+   {
+      private final AtomicInteger closes = new AtomicInteger();
+
+      boolean isClosed()
+      {
+         return closes.get() > 0;
+      }
+
+      int awaitClosed() throws InterruptedException
+      {
+         long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(10);
+         while (closes.get() == 0 && System.nanoTime() < deadline)
+         {
+            Thread.sleep(10);
+         }
+
+         // allow a duplicate close to be observed
+         Thread.sleep(100);
+         return closes.get();
+      }
+
+      @Override
+      public void close()
+      {
+         closes.incrementAndGet();
+      }
+   }
+
+   /**
+    * Wraps values in handles and records the handles that are released.
+    */
+   private static final class RecordingValueStore implements ValueStore
+   {
+      final AtomicInteger stored = new AtomicInteger();
+      final List<Object> invalid = new CopyOnWriteArrayList<>();
+      private final Map<Object, Boolean> handles = Collections.synchronizedMap(new IdentityHashMap<>());
+      private final AtomicInteger released = new AtomicInteger();
+
+      int awaitReleased(int expected) throws InterruptedException
+      {
+         long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(10);
+         while (released.get() < expected && System.nanoTime() < deadline)
+         {
+            Thread.sleep(10);
+         }
+
+         return released.get();
+      }
+
+      @Override
+      public Object store(DataValueKey key, Object value)
+      {
+         Object[] handle = { value };
+         handles.put(handle, Boolean.FALSE);
+         stored.incrementAndGet();
+         return handle;
+      }
+
+      @Override
+      public Object load(DataValueKey key, Object stored)
+      {
+         return ((Object[])stored)[0];
+      }
+
+      @Override
+      public void release(DataValueKey key, Object stored)
+      {
+         // a handle may only be released once
+         if (handles.replace(stored, Boolean.FALSE, Boolean.TRUE))
+            released.incrementAndGet();
+         else
+            invalid.add(stored);
+      }
+   }
+}
@@ -0,0 +1,210 @@
+package edu.tamu.tcat.analytics.datatrax.tests;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.Test;
+
+import edu.tamu.tcat.analytics.datatrax.basic.WorkflowConfigBuilderImpl;
+import edu.tamu.tcat.analytics.datatrax.basic.WorkflowControllerImpl;
+import edu.tamu.tcat.analytics.datatrax.basic.WorkflowControllerSettings;
+import edu.tamu.tcat.analytics.datatrax.basic.WorkflowControllerSettings.AdmissionPolicy;
+import edu.tamu.tcat.analytics.datatrax.config.TransformerConfigEditor;
+import edu.tamu.tcat.analytics.datatrax.tests.MockTransformerRegistry.MockRegistration;
+
+/**
+ * Tests the limits on the number of inputs that a workflow processes at the same time and
+ * the number that it admits while waiting to start them.
+ */
+public class WorkflowAdmissionTests
+{
+   private final Semaphore started = new Semaphore(0);
+   private final Semaphore permits = new Semaphore(0);
+   private final AtomicInteger running = new AtomicInteger();
+   private final AtomicInteger maxRunning = new AtomicInteger();
+
+   private final MockTransformerRegistry registry = new MockTransformerRegistry();
+   private final MockRegistration gated = registry.register("gated", String.class, ctx -> awaitPermit((String)ctx.getValue("text")), "text");
+
+   /**
+    * Blocks until the test releases a permit for the input.
+    */
+   private String awaitPermit(String text)
+   {
+      maxRunning.accumulateAndGet(running.incrementAndGet(), Math::max);
+      started.release();
+      try
+      {
+         permits.tryAcquire(10, TimeUnit.SECONDS);
+      }
+      catch (InterruptedException ex)
+      {
+         Thread.currentThread().interrupt();
+      }
+      finally
+      {
+         running.decrementAndGet();
+      }
+
+      return text;
+   }
+
+   /**
+    * Creates a workflow that processes one input at a time and admits one more input while
+    * it waits to start.
+    */
+   private WorkflowControllerImpl createWorkflow(AdmissionPolicy policy) throws Exception
+   {
+      WorkflowConfigBuilderImpl builder = new WorkflowConfigBuilderImpl(registry);
+      builder.setTitle("Admission Test");
+      builder.setInputType(String.class);
+
+      TransformerConfigEditor editor = builder.createTransformer(gated);
+      editor.setDataSource(gated.getDeclaredInput("text"), builder.getInputKey());
+      builder.registerOutput(editor.getConfiguration().getId());
+
+      WorkflowControllerSettings settings = new WorkflowControllerSettings();
+      settings.taskParallelism = 2;
+      settings.maxInFlight = 1;
+      settings.maxPending = 1;
+      settings.admissionPolicy = policy;
+      return WorkflowControllerImpl.create(builder.build(), settings);
+   }
+
+   private static RecordingResultsCollector<String> submit(WorkflowControllerImpl workflow, List<RecordingResultsCollector<String>> collectors)
+   {
+      RecordingResultsCollector<String> collector = new RecordingResultsCollector<>();
+      workflow.process(() -> "input", collector);
+      collectors.add(collector);
+      return collector;
+   }
+
+   /**
+    * Starts the first input and admits the second, so that the workflow has reached its
+    * admission limit.
+    */
+   private void fill(WorkflowControllerImpl workflow, List<RecordingResultsCollector<String>> collectors) throws Exception
+   {
+      submit(workflow, collectors);
+      submit(workflow, collectors);
+      assertTrue("Input was not started", started.tryAcquire(10, TimeUnit.SECONDS));
+      assertFalse("Input was started while another was in process", started.tryAcquire(100, TimeUnit.MILLISECONDS));
+   }
+
+   private void awaitAll(List<RecordingResultsCollector<String>> collectors) throws Exception
+   {
+      for (RecordingResultsCollector<String> collector : collectors)
+      {
+         assertTrue("Processing did not finish", collector.await(10, TimeUnit.SECONDS));
+         assertTrue("Unexpected errors " + collector.errors, collector.errors.isEmpty());
+         assertEquals(1, collector.results.size());
+      }
+
+      assertEquals("Inputs were processed at the same time", 1, maxRunning.get());
+      assertEquals(collectors.size(), gated.getExecutions());
+   }
+
+   @Test
+   public void testQueuePolicyAcceptsInputs() throws Exception
+   {
+      WorkflowControllerImpl workflow = createWorkflow(AdmissionPolicy.QUEUE);
+      try
+      {
+         List<RecordingResultsCollector<String>> collectors = new ArrayList<>();
+         fill(workflow, collectors);
+
+         // inputs beyond the limit are queued, but clients can wait for capacity to free
+         CompletableFuture<Void> ready = workflow.whenReady();
+         for (int i = 0; i < 3; i++)
+         {
+            submit(workflow, collectors);
+         }
+
+         assertFalse(ready.isDone());
+         permits.release(collectors.size());
+         awaitAll(collectors);
+         ready.get(10, TimeUnit.SECONDS);
+      }
+      finally
+      {
+         permits.release(10);
+         workflow.close();
+      }
+   }
+
+   @Test
+   public void testRejectPolicyRejectsInputs() throws Exception
+   {
+      WorkflowControllerImpl workflow = createWorkflow(AdmissionPolicy.REJECT);
+      try
+      {
+         List<RecordingResultsCollector<String>> collectors = new ArrayList<>();
+         fill(workflow, collectors);
+
+         CompletableFuture<Void> ready = workflow.whenReady();
+         try
+         {
+            workflow.process(() -> "input", new RecordingResultsCollector<>());
+            fail("Expected an input beyond the admission limit to be rejected");
+         }
+         catch (RejectedExecutionException ex)
+         {
+            // expected
+         }
+
+         // completing the first input frees capacity for another
+         assertFalse(ready.isDone());
+         permits.release();
+         ready.get(10, TimeUnit.SECONDS);
+         assertTrue(collectors.get(0).await(10, TimeUnit.SECONDS));
+         submit(workflow, collectors);
+
+         permits.release(collectors.size());
+         awaitAll(collectors);
+      }
+      finally
+      {
+         permits.release(10);
+         workflow.close();
+      }
+   }
+
+   @Test
+   public void testBlockPolicyBlocksSubmitter() throws Exception
+   {
+      WorkflowControllerImpl workflow = createWorkflow(AdmissionPolicy.BLOCK);
+      try
+      {
+         List<RecordingResultsCollector<String>> collectors = new ArrayList<>();
+         fill(workflow, collectors);
+
+         RecordingResultsCollector<String> blocked = new RecordingResultsCollector<>();
+         CompletableFuture<Void> submitted = CompletableFuture.runAsync(() -> workflow.process(() -> "input", blocked));
+         Thread.sleep(200);
+         assertFalse("Input beyond the admission limit was not blocked", submitted.isDone());
+
+         // the submitter is released once the first input completes
+         permits.release();
+         submitted.get(10, TimeUnit.SECONDS);
+         collectors.add(blocked);
+
+         permits.release(collectors.size());
+         awaitAll(collectors);
+      }
+      finally
+      {
+         permits.release(10);
+         workflow.close();
+      }
+   }
+}
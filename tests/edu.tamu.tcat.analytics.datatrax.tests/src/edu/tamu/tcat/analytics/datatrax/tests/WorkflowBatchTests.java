@@ -0,0 +1,142 @@
+package edu.tamu.tcat.analytics.datatrax.tests;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Supplier;
+
+import org.junit.Test;
+
+import edu.tamu.tcat.analytics.datatrax.basic.WorkflowConfigBuilderImpl;
+import edu.tamu.tcat.analytics.datatrax.basic.WorkflowControllerImpl;
+import edu.tamu.tcat.analytics.datatrax.basic.WorkflowControllerSettings;
+import edu.tamu.tcat.analytics.datatrax.config.TransformerConfigEditor;
+import edu.tamu.tcat.analytics.datatrax.tests.MockTransformerRegistry.MockRegistration;
+
+/**
+ * Tests the processing of batches of inputs supplied to
+ * {@link WorkflowControllerImpl#processAll(Iterator, edu.tamu.tcat.analytics.datatrax.ResultsCollector)}.
+ */
+public class WorkflowBatchTests
+{
+   private static final int INPUTS = 20;
+
+   // the threads that have run transformers and that have pulled inputs from the batch
+   private final Set<Thread> transformerThreads = Collections.newSetFromMap(new ConcurrentHashMap<>());
+   private final List<Thread> pullThreads = new CopyOnWriteArrayList<>();
+
+   private final MockTransformerRegistry registry = new MockTransformerRegistry();
+   private final MockRegistration upper = registry.register("upper", String.class, ctx -> {
+      transformerThreads.add(Thread.currentThread());
+      return ((String)ctx.getValue("text")).toUpperCase();
+   }, "text");
+
+   private WorkflowControllerImpl createWorkflow() throws Exception
+   {
+      WorkflowConfigBuilderImpl builder = new WorkflowConfigBuilderImpl(registry);
+      builder.setTitle("Batch Test");
+      builder.setInputType(String.class);
+
+      TransformerConfigEditor editor = builder.createTransformer(upper);
+      editor.setDataSource(upper.getDeclaredInput("text"), builder.getInputKey());
+      builder.registerOutput(editor.getConfiguration().getId());
+
+      WorkflowControllerSettings settings = new WorkflowControllerSettings();
+      settings.taskParallelism = 2;
+      settings.maxInFlight = 2;
+      return WorkflowControllerImpl.create(builder.build(), settings);
+   }
+
+   /**
+    * @return An iterator over inputs that records the threads that pull them.
+    */
+   private Iterator<Supplier<String>> createBatch()
+   {
+      AtomicInteger pulled = new AtomicInteger();
+      return new Iterator<Supplier<String>>()
+      {
+         @Override
+         public boolean hasNext()
+         {
+            return pulled.get() < INPUTS;
+         }
+
+         @Override
+         public Supplier<String> next()
+         {
+            pullThreads.add(Thread.currentThread());
+            String input = "input " + pulled.incrementAndGet();
+            return () -> input;
+         }
+      };
+   }
+
+   @Test
+   public void testBatchProcessed() throws Exception
+   {
+      WorkflowControllerImpl workflow = createWorkflow();
+      try
+      {
+         List<String> processed = new CopyOnWriteArrayList<>();
+         RecordingResultsCollector<String> collector = new RecordingResultsCollector<String>()
+         {
+            @Override
+            public void handleResult(TranformationResult<String> result)
+            {
+               processed.add(result.getSource() + ":" + result.getValue());
+               super.handleResult(result);
+            }
+         };
+
+         workflow.processAll(createBatch(), collector).get(10, TimeUnit.SECONDS);
+         assertTrue("Processing did not finish", collector.await(10, TimeUnit.SECONDS));
+         assertTrue("Unexpected errors " + collector.errors, collector.errors.isEmpty());
+         assertEquals(1, collector.finished.get());
+         assertEquals(INPUTS, processed.size());
+         for (int i = 1; i <= INPUTS; i++)
+         {
+            assertTrue(processed.contains("input " + i + ":INPUT " + i));
+         }
+      }
+      finally
+      {
+         workflow.close();
+      }
+   }
+
+   /**
+    * Inputs are pulled by workflow threads, not by the threads that complete the previous
+    * inputs, so that a slow source does not hold up the execution of transformers.
+    */
+   @Test
+   public void testInputsNotPulledByTransformerThreads() throws Exception
+   {
+      WorkflowControllerImpl workflow = createWorkflow();
+      try
+      {
+         RecordingResultsCollector<String> collector = new RecordingResultsCollector<>();
+         workflow.processAll(createBatch(), collector).get(10, TimeUnit.SECONDS);
+         assertTrue("Processing did not finish", collector.await(10, TimeUnit.SECONDS));
+
+         assertEquals(INPUTS, pullThreads.size());
+         assertEquals(INPUTS, upper.getExecutions());
+         for (Thread thread : pullThreads)
+         {
+            assertFalse("Input was pulled by a transformer thread [" + thread.getName() + "]", transformerThreads.contains(thread));
+         }
+      }
+      finally
+      {
+         workflow.close();
+      }
+   }
+}
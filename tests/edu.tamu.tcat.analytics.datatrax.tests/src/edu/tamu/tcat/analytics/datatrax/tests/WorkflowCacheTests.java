@@ -0,0 +1,370 @@
+package edu.tamu.tcat.analytics.datatrax.tests;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
+import java.util.stream.Stream;
+
+import org.junit.Test;
+
+import edu.tamu.tcat.analytics.datatrax.ContentDigest;
+import edu.tamu.tcat.analytics.datatrax.DataValueKey;
+import edu.tamu.tcat.analytics.datatrax.basic.SimpleDataValueKey;
+import edu.tamu.tcat.analytics.datatrax.basic.TransformerCache;
+import edu.tamu.tcat.analytics.datatrax.basic.WorkflowConfigBuilderImpl;
+import edu.tamu.tcat.analytics.datatrax.basic.WorkflowControllerImpl;
+import edu.tamu.tcat.analytics.datatrax.basic.WorkflowControllerSettings;
+import edu.tamu.tcat.analytics.datatrax.config.TransformerConfigEditor;
+import edu.tamu.tcat.analytics.datatrax.config.TransformerConfiguration;
+import edu.tamu.tcat.analytics.datatrax.config.WorkflowConfiguration;
+import edu.tamu.tcat.analytics.datatrax.tests.MockTransformerRegistry.MockRegistration;
+
+/**
+ * Tests the reuse of workflow outputs cached by input content digest.
+ */
+public class WorkflowCacheTests
+{
+   private final MockTransformerRegistry registry = new MockTransformerRegistry();
+   private final MockRegistration upper = registry.register("upper", String.class, ctx -> ((String)ctx.getValue("text")).toUpperCase(), "text");
+   private final MockRegistration reverse = registry.register("reverse", String.class, ctx -> new StringBuilder((String)ctx.getValue("text")).reverse().toString(), "text");
+   private final MockRegistration length = registry.register("length", Integer.class, ctx -> Integer.valueOf(((String)ctx.getValue("text")).length()), "text");
+
+   private TransformerConfiguration createTransformer(WorkflowConfigBuilderImpl builder, MockRegistration reg, DataValueKey source) throws Exception
+   {
+      TransformerConfigEditor editor = builder.createTransformer(reg);
+      editor.setDataSource(reg.getDeclaredInput("text"), source);
+      return editor.getConfiguration();
+   }
+
+   /**
+    * Builds a workflow with several outputs of different types, so that a cached value
+    * supplied under the wrong key would be detected.
+    */
+   private WorkflowConfiguration buildConfiguration() throws Exception
+   {
+      WorkflowConfigBuilderImpl builder = new WorkflowConfigBuilderImpl(registry);
+      builder.setTitle("Cache Test");
+      builder.setInputType(String.class);
+
+      DataValueKey input = builder.getInputKey();
+      builder.registerOutput(createTransformer(builder, upper, input).getId());
+      builder.registerOutput(createTransformer(builder, reverse, input).getId());
+      builder.registerOutput(createTransformer(builder, length, input).getId());
+      return builder.build();
+   }
+
+   private static DataValueKey outputKey(WorkflowConfiguration config, String registrationId)
+   {
+      for (TransformerConfiguration cfg : config.getTransformers())
+      {
+         if (cfg.getRegistration().getId().equals(registrationId))
+            return new SimpleDataValueKey(cfg.getId(), cfg.getOutputType());
+      }
+
+      throw new IllegalArgumentException("No transformer for registration [" + registrationId + "]");
+   }
+
+   private static RecordingResultsCollector<String> process(WorkflowControllerImpl workflow, String text) throws Exception
+   {
+      RecordingResultsCollector<String> collector = new RecordingResultsCollector<>();
+      workflow.process(new DigestedInput(text), collector).get(10, TimeUnit.SECONDS);
+      assertTrue("Processing did not finish", collector.await(10, TimeUnit.SECONDS));
+      assertTrue("Unexpected errors " + collector.errors, collector.errors.isEmpty());
+      return collector;
+   }
+
+   private static void assertOutputs(WorkflowConfiguration config, RecordingResultsCollector<String> collector, String text)
+   {
+      assertEquals(3, collector.results.size());
+      assertEquals(text.toUpperCase(), collector.get(outputKey(config, "upper")));
+      assertEquals(new StringBuilder(text).reverse().toString(), collector.get(outputKey(config, "reverse")));
+      assertEquals(Integer.valueOf(text.length()), collector.get(outputKey(config, "length")));
+   }
+
+   private int totalExecutions()
+   {
+      return upper.getExecutions() + reverse.getExecutions() + length.getExecutions();
+   }
+
+   @Test
+   public void testMemoryCacheHit() throws Exception
+   {
+      WorkflowConfiguration config = buildConfiguration();
+      WorkflowControllerSettings settings = new WorkflowControllerSettings();
+      settings.resultCacheSize = 10;
+
+      WorkflowControllerImpl workflow = WorkflowControllerImpl.create(config, settings);
+      try
+      {
+         assertOutputs(config, process(workflow, "hello"), "hello");
+         assertEquals(3, totalExecutions());
+
+         assertOutputs(config, process(workflow, "hello"), "hello");
+         assertEquals("Cached outputs were not reused", 3, totalExecutions());
+
+         assertOutputs(config, process(workflow, "world"), "world");
+         assertEquals("Outputs of a different input were reused", 6, totalExecutions());
+      }
+      finally
+      {
+         workflow.close();
+      }
+   }
+
+   /**
+    * Entries written to disk by one controller must be supplied under the correct keys by
+    * another controller for the same configuration, which compiles its own plan.
+    */
+   @Test
+   public void testDiskCacheSharedBetweenControllers() throws Exception
+   {
+      WorkflowConfiguration config = buildConfiguration();
+      Path directory = Files.createTempDirectory("datatrax-cache");
+      try
+      {
+         WorkflowControllerSettings settings = new WorkflowControllerSettings();
+         settings.resultCacheSize = 10;
+         settings.resultCacheDirectory = directory;
+
+         WorkflowControllerImpl first = WorkflowControllerImpl.create(config, settings);
+         try
+         {
+            assertOutputs(config, process(first, "shared input"), "shared input");
+         }
+         finally
+         {
+            first.close();
+         }
+
+         assertEquals(3, totalExecutions());
+         try (Stream<Path> files = Files.list(directory))
+         {
+            assertEquals("Outputs were not written to disk", 1, files.count());
+         }
+
+         WorkflowControllerImpl second = WorkflowControllerImpl.create(config, settings);
+         try
+         {
+            assertOutputs(config, process(second, "shared input"), "shared input");
+            assertEquals("Outputs cached on disk were not reused", 3, totalExecutions());
+         }
+         finally
+         {
+            second.close();
+         }
+      }
+      finally
+      {
+         try (Stream<Path> files = Files.walk(directory))
+         {
+            files.sorted(Comparator.reverseOrder()).forEach(file -> file.toFile().delete());
+         }
+      }
+   }
+
+   /**
+    * Builds a workflow with a single configurable transformer of the supplied registration.
+    */
+   private WorkflowConfiguration buildConfiguration(MockRegistration reg, Map<String, Object> params) throws Exception
+   {
+      WorkflowConfigBuilderImpl builder = new WorkflowConfigBuilderImpl(registry);
+      builder.setTitle("Cache Test");
+      builder.setInputType(String.class);
+
+      TransformerConfigEditor editor = builder.createTransformer(reg);
+      editor.setDataSource(reg.getDeclaredInput("text"), builder.getInputKey());
+      params.forEach(editor::setParameter);
+      builder.registerOutput(editor.getConfiguration().getId());
+      return builder.build();
+   }
+
+   /**
+    * The configurations of these transformers had the same canonical form when strings were
+    * not escaped, so the output of one was supplied in place of the other.
+    */
+   @Test
+   public void testMemoKeysDistinguishConfigurations() throws Exception
+   {
+      MockRegistration tag = registry.register("tag", String.class, ctx -> ctx.getValue("text"), "text").setDeterministic(true);
+
+      Map<String, Object> quoted = new HashMap<>();
+      quoted.put("a", "b\",\"c\"=\"d");
+      Map<String, Object> separate = new HashMap<>();
+      separate.put("a", "b");
+      separate.put("c", "d");
+
+      WorkflowControllerSettings settings = new WorkflowControllerSettings();
+      settings.transformerCache = new TransformerCache(10);
+      WorkflowControllerImpl first = WorkflowControllerImpl.create(buildConfiguration(tag, quoted), settings);
+      WorkflowControllerImpl second = WorkflowControllerImpl.create(buildConfiguration(tag, separate), settings);
+      try
+      {
+         process(first, "input");
+         process(second, "input");
+         assertEquals("The output of a different configuration was reused", 2, tag.getExecutions());
+
+         process(second, "input");
+         assertEquals("Memoized output was not reused", 2, tag.getExecutions());
+      }
+      finally
+      {
+         first.close();
+         second.close();
+      }
+   }
+
+   /**
+    * Deterministic transformers with the same configuration reuse each other's outputs across
+    * workflows that share a cache, including transformers whose inputs were themselves reused.
+    * Transformers that are not deterministic are always executed.
+    */
+   @Test
+   public void testMemoSharedBetweenWorkflows() throws Exception
+   {
+      MockRegistration trim = registry.register("trim", String.class, ctx -> ((String)ctx.getValue("text")).trim(), "text").setDeterministic(true);
+      MockRegistration shout = registry.register("shout", String.class, ctx -> ctx.getValue("text") + "!", "text").setDeterministic(true);
+
+      WorkflowConfigBuilderImpl builder = new WorkflowConfigBuilderImpl(registry);
+      builder.setTitle("Memo Test");
+      builder.setInputType(String.class);
+      TransformerConfiguration trimmed = createTransformer(builder, trim, builder.getInputKey());
+      DataValueKey trimmedKey = new SimpleDataValueKey(trimmed.getId(), trimmed.getOutputType());
+      builder.registerOutput(createTransformer(builder, shout, trimmedKey).getId());
+      WorkflowConfiguration firstConfig = builder.build();
+
+      // a different workflow that applies the same transformers along with another one
+      builder = new WorkflowConfigBuilderImpl(registry);
+      builder.setTitle("Memo Test");
+      builder.setInputType(String.class);
+      trimmed = createTransformer(builder, trim, builder.getInputKey());
+      trimmedKey = new SimpleDataValueKey(trimmed.getId(), trimmed.getOutputType());
+      TransformerConfiguration shouted = createTransformer(builder, shout, trimmedKey);
+      builder.registerOutput(shouted.getId());
+      builder.registerOutput(createTransformer(builder, upper, trimmedKey).getId());
+      WorkflowConfiguration secondConfig = builder.build();
+
+      WorkflowControllerSettings settings = new WorkflowControllerSettings();
+      settings.transformerCache = new TransformerCache(10);
+      WorkflowControllerImpl first = WorkflowControllerImpl.create(firstConfig, settings);
+      WorkflowControllerImpl second = WorkflowControllerImpl.create(secondConfig, settings);
+      try
+      {
+         assertEquals("input!", process(first, " input ").get(outputKey(firstConfig, "shout")));
+         assertEquals(1, trim.getExecutions());
+         assertEquals(1, shout.getExecutions());
+
+         RecordingResultsCollector<String> collector = process(second, " input ");
+         assertEquals("input!", collector.get(outputKey(secondConfig, "shout")));
+         assertEquals("INPUT", collector.get(outputKey(secondConfig, "upper")));
+         assertEquals("Memoized output was not reused", 1, trim.getExecutions());
+         assertEquals("Memoized output of a reused input was not reused", 1, shout.getExecutions());
+
+         process(second, " input ");
+         assertEquals("Output of a non-deterministic transformer was reused", 2, upper.getExecutions());
+
+         process(second, " other ");
+         assertEquals("Output for a different input was reused", 2, trim.getExecutions());
+         assertEquals(2, shout.getExecutions());
+      }
+      finally
+      {
+         first.close();
+         second.close();
+      }
+   }
+
+   /**
+    * Inputs that do not supply a {@link ContentDigest} have no key, so the outputs derived
+    * from them are not memoized.
+    */
+   @Test
+   public void testInputsWithoutDigestNotMemoized() throws Exception
+   {
+      MockRegistration tag = registry.register("tag", String.class, ctx -> ctx.getValue("text"), "text").setDeterministic(true);
+      WorkflowConfiguration config = buildConfiguration(tag, new HashMap<>());
+
+      WorkflowControllerSettings settings = new WorkflowControllerSettings();
+      settings.transformerCache = new TransformerCache(10);
+      WorkflowControllerImpl workflow = WorkflowControllerImpl.create(config, settings);
+      try
+      {
+         for (int i = 0; i < 2; i++)
+         {
+            RecordingResultsCollector<String> collector = new RecordingResultsCollector<>();
+            workflow.process(() -> "input", collector).get(10, TimeUnit.SECONDS);
+            assertTrue("Processing did not finish", collector.await(10, TimeUnit.SECONDS));
+            assertEquals("input", collector.get(outputKey(config, "tag")));
+         }
+
+         assertEquals(2, tag.getExecutions());
+         assertEquals(0, settings.transformerCache.size());
+      }
+      finally
+      {
+         workflow.close();
+      }
+   }
+
+   /**
+    * Parameters without a canonical form cannot be hashed reliably, so results are neither
+    * cached nor memoized, but are still produced.
+    */
+   @Test
+   public void testUnhashableParametersDisableCaching() throws Exception
+   {
+      MockRegistration tag = registry.register("tag", String.class, ctx -> ctx.getValue("text"), "text").setDeterministic(true);
+      Map<String, Object> params = new HashMap<>();
+      params.put("buffer", new StringBuilder("contents"));
+      WorkflowConfiguration config = buildConfiguration(tag, params);
+
+      WorkflowControllerSettings settings = new WorkflowControllerSettings();
+      settings.resultCacheSize = 10;
+      settings.transformerCache = new TransformerCache(10);
+      WorkflowControllerImpl workflow = WorkflowControllerImpl.create(config, settings);
+      try
+      {
+         RecordingResultsCollector<String> collector = process(workflow, "input");
+         assertEquals("input", collector.get(outputKey(config, "tag")));
+
+         process(workflow, "input");
+         assertEquals("Outputs of an unhashable configuration were reused", 2, tag.getExecutions());
+         assertEquals(0, settings.transformerCache.size());
+      }
+      finally
+      {
+         workflow.close();
+      }
+   }
+
+   /**
+    * Supplies a string input along with its content digest.
+    */
+   private static final class DigestedInput implements Supplier<String>, ContentDigest
+   {
+      private final String text;
+
+      DigestedInput(String text)
+      {
+         this.text = text;
+      }
+
+      @Override
+      public String get()
+      {
+         return text;
+      }
+
+      @Override
+      public String getContentDigest()
+      {
+         return "text:" + text;
+      }
+   }
+}
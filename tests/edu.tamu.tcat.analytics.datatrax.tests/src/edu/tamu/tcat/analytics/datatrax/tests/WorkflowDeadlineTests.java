@@ -0,0 +1,227 @@
+package edu.tamu.tcat.analytics.datatrax.tests;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+import org.junit.Test;
+
+import edu.tamu.tcat.analytics.datatrax.DataValueKey;
+import edu.tamu.tcat.analytics.datatrax.basic.SimpleDataValueKey;
+import edu.tamu.tcat.analytics.datatrax.basic.WorkflowConfigBuilderImpl;
+import edu.tamu.tcat.analytics.datatrax.basic.WorkflowControllerImpl;
+import edu.tamu.tcat.analytics.datatrax.basic.WorkflowControllerSettings;
+import edu.tamu.tcat.analytics.datatrax.config.TransformerConfigEditor;
+import edu.tamu.tcat.analytics.datatrax.config.TransformerConfiguration;
+import edu.tamu.tcat.analytics.datatrax.config.WorkflowConfiguration;
+import edu.tamu.tcat.analytics.datatrax.tests.MockTransformerRegistry.MockRegistration;
+
+/**
+ * Tests the abandonment of inputs that are not processed by their deadline or that are
+ * cancelled by the client.
+ */
+public class WorkflowDeadlineTests
+{
+   private final CountDownLatch blocked = new CountDownLatch(1);
+   private final CountDownLatch interrupted = new CountDownLatch(1);
+
+   private final MockTransformerRegistry registry = new MockTransformerRegistry();
+   private final MockRegistration blocking = registry.register("blocking", String.class, ctx -> block((String)ctx.getValue("text")), "text");
+   private final MockRegistration after = registry.register("after", String.class, ctx -> ((String)ctx.getValue("text")).toUpperCase(), "text");
+   private final MockRegistration upper = registry.register("upper", String.class, ctx -> ((String)ctx.getValue("text")).toUpperCase(), "text");
+
+   /**
+    * Blocks until the thread is interrupted.
+    */
+   private String block(String text)
+   {
+      blocked.countDown();
+      try
+      {
+         Thread.sleep(TimeUnit.SECONDS.toMillis(10));
+      }
+      catch (InterruptedException ex)
+      {
+         interrupted.countDown();
+      }
+
+      return text;
+   }
+
+   private static TransformerConfiguration createTransformer(WorkflowConfigBuilderImpl builder, MockRegistration reg, DataValueKey source) throws Exception
+   {
+      TransformerConfigEditor editor = builder.createTransformer(reg);
+      editor.setDataSource(reg.getDeclaredInput("text"), source);
+      return editor.getConfiguration();
+   }
+
+   private WorkflowConfiguration buildConfiguration() throws Exception
+   {
+      WorkflowConfigBuilderImpl builder = new WorkflowConfigBuilderImpl(registry);
+      builder.setTitle("Deadline Test");
+      builder.setInputType(String.class);
+
+      TransformerConfiguration blockingCfg = createTransformer(builder, blocking, builder.getInputKey());
+      DataValueKey blocked = new SimpleDataValueKey(blockingCfg.getId(), blockingCfg.getOutputType());
+      builder.registerOutput(createTransformer(builder, after, blocked).getId());
+      return builder.build();
+   }
+
+   private void assertTimedOut(RecordingResultsCollector<String> collector, CompletableFuture<Void> result) throws Exception
+   {
+      try
+      {
+         result.get(10, TimeUnit.SECONDS);
+         fail("Expected processing to time out");
+      }
+      catch (ExecutionException ex)
+      {
+         assertTrue(ex.getCause() instanceof TimeoutException);
+      }
+
+      assertTrue("Processing did not finish", collector.await(10, TimeUnit.SECONDS));
+      assertEquals(1, collector.errors.size());
+      assertTrue(collector.errors.get(0) instanceof TimeoutException);
+      assertStopped(collector);
+   }
+
+   /**
+    * Asserts that the running transformer was interrupted and that its dependent was not
+    * executed.
+    */
+   private void assertStopped(RecordingResultsCollector<String> collector) throws Exception
+   {
+      assertTrue("Running transformer was not interrupted", interrupted.await(10, TimeUnit.SECONDS));
+      Thread.sleep(100);
+      assertEquals("Transformer executed after processing stopped", 0, after.getExecutions());
+      assertTrue(collector.results.isEmpty());
+      assertEquals(1, collector.finished.get());
+      assertEquals("Collector was notified on an interrupted thread", 0, collector.interruptedCallbacks.get());
+   }
+
+   @Test
+   public void testDeadlineInterruptsTransformer() throws Exception
+   {
+      WorkflowControllerImpl workflow = WorkflowControllerImpl.create(buildConfiguration());
+      try
+      {
+         RecordingResultsCollector<String> collector = new RecordingResultsCollector<>();
+         CompletableFuture<Void> result = workflow.process(() -> "input", collector, 100, TimeUnit.MILLISECONDS);
+         assertTimedOut(collector, result);
+      }
+      finally
+      {
+         workflow.close();
+      }
+   }
+
+   @Test
+   public void testDefaultInputDeadline() throws Exception
+   {
+      WorkflowControllerSettings settings = new WorkflowControllerSettings();
+      settings.inputTimeoutMillis = 100;
+      WorkflowControllerImpl workflow = WorkflowControllerImpl.create(buildConfiguration(), settings);
+      try
+      {
+         RecordingResultsCollector<String> collector = new RecordingResultsCollector<>();
+         CompletableFuture<Void> result = workflow.process(() -> "input", collector);
+         assertTimedOut(collector, result);
+      }
+      finally
+      {
+         workflow.close();
+      }
+   }
+
+   @Test
+   public void testCancellationInterruptsTransformer() throws Exception
+   {
+      WorkflowControllerImpl workflow = WorkflowControllerImpl.create(buildConfiguration());
+      try
+      {
+         RecordingResultsCollector<String> collector = new RecordingResultsCollector<>();
+         CompletableFuture<Void> result = workflow.process(() -> "input", collector);
+         assertTrue("Transformer did not start", blocked.await(10, TimeUnit.SECONDS));
+
+         result.cancel(true);
+         try
+         {
+            result.get(10, TimeUnit.SECONDS);
+            fail("Expected processing to be cancelled");
+         }
+         catch (CancellationException ex)
+         {
+            // expected
+         }
+
+         assertTrue("Processing did not finish", collector.await(10, TimeUnit.SECONDS));
+         assertStopped(collector);
+      }
+      finally
+      {
+         workflow.close();
+      }
+   }
+
+   /**
+    * Outputs are delivered as soon as they are produced, so an output with a deadline that
+    * expires is reported as an error while the outputs that are available are delivered.
+    */
+   @Test
+   public void testOutputDeadline() throws Exception
+   {
+      WorkflowConfigBuilderImpl builder = new WorkflowConfigBuilderImpl(registry);
+      builder.setTitle("Deadline Test");
+      builder.setInputType(String.class);
+
+      TransformerConfiguration upperCfg = createTransformer(builder, upper, builder.getInputKey());
+      TransformerConfiguration blockingCfg = createTransformer(builder, blocking, builder.getInputKey());
+      TransformerConfiguration afterCfg = createTransformer(builder, after, new SimpleDataValueKey(blockingCfg.getId(), blockingCfg.getOutputType()));
+      builder.registerOutput(upperCfg.getId());
+      builder.registerOutput(afterCfg.getId());
+
+      // the blocking transformer does not prevent the other output from being produced
+      WorkflowControllerSettings settings = new WorkflowControllerSettings();
+      settings.taskParallelism = 2;
+      settings.outputTimeouts.put(afterCfg.getId(), Long.valueOf(500));
+      WorkflowControllerImpl workflow = WorkflowControllerImpl.create(builder.build(), settings);
+      try
+      {
+         RecordingResultsCollector<String> collector = new RecordingResultsCollector<>();
+         CompletableFuture<Void> result = workflow.process(() -> "input", collector);
+         DataValueKey upperKey = new SimpleDataValueKey(upperCfg.getId(), upperCfg.getOutputType());
+
+         assertTrue("Transformer did not start", blocked.await(10, TimeUnit.SECONDS));
+         long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(10);
+         while (collector.get(upperKey) == null && System.nanoTime() < deadline)
+         {
+            Thread.sleep(10);
+         }
+
+         assertEquals("Available output was not delivered before the deadline", "INPUT", collector.get(upperKey));
+         assertEquals(0, collector.finished.get());
+
+         result.get(10, TimeUnit.SECONDS);
+         assertTrue("Processing did not finish", collector.await(10, TimeUnit.SECONDS));
+         assertEquals(1, collector.results.size());
+         assertEquals(1, collector.errors.size());
+         assertTrue(collector.errors.get(0) instanceof TimeoutException);
+
+         // the transformer is no longer required once the deadline of its output has expired
+         assertTrue("Running transformer was not interrupted", interrupted.await(10, TimeUnit.SECONDS));
+         Thread.sleep(100);
+         assertEquals(0, after.getExecutions());
+      }
+      finally
+      {
+         workflow.close();
+      }
+   }
+}
@@ -0,0 +1,350 @@
+package edu.tamu.tcat.analytics.datatrax.tests;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.util.UUID;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Test;
+
+import edu.tamu.tcat.analytics.datatrax.DataValueKey;
+import edu.tamu.tcat.analytics.datatrax.WorkflowEvaluation;
+import edu.tamu.tcat.analytics.datatrax.WorkflowException;
+import edu.tamu.tcat.analytics.datatrax.basic.SimpleDataValueKey;
+import edu.tamu.tcat.analytics.datatrax.basic.WorkflowConfigBuilderImpl;
+import edu.tamu.tcat.analytics.datatrax.basic.WorkflowControllerImpl;
+import edu.tamu.tcat.analytics.datatrax.basic.WorkflowControllerSettings;
+import edu.tamu.tcat.analytics.datatrax.config.TransformerConfigEditor;
+import edu.tamu.tcat.analytics.datatrax.config.TransformerConfiguration;
+import edu.tamu.tcat.analytics.datatrax.tests.MockTransformerRegistry.MockRegistration;
+import edu.tamu.tcat.analytics.datatrax.tests.ValueReleaseTests.CountingResource;
+
+/**
+ * Tests the lazy, pull-based evaluation of workflows.
+ */
+public class WorkflowEvaluationTests
+{
+   private final MockTransformerRegistry registry = new MockTransformerRegistry();
+   private final MockRegistration upper = registry.register("upper", String.class, ctx -> ((String)ctx.getValue("text")).toUpperCase(), "text");
+   private final MockRegistration reverse = registry.register("reverse", String.class, ctx -> new StringBuilder((String)ctx.getValue("text")).reverse().toString(), "text");
+   private final MockRegistration length = registry.register("length", Integer.class, ctx -> Integer.valueOf(((String)ctx.getValue("text")).length()), "text");
+   private final MockRegistration empty = registry.register("empty", String.class, ctx -> null, "text");
+   private final MockRegistration identity = registry.register("identity", String.class, ctx -> ctx.getValue("text"), "text");
+   private final MockRegistration broken = registry.register("broken", String.class, ctx -> { throw new AssertionError("Expected error"); }, "text");
+
+   // supplied by the shared registrations once their gate is opened
+   private volatile CountingResource shared;
+   private volatile CountDownLatch firstGate;
+   private volatile CountDownLatch secondGate;
+   private volatile CountDownLatch started;
+
+   private final MockRegistration first = registry.register("first", CountingResource.class, ctx -> awaitShared(firstGate), "text");
+   private final MockRegistration second = registry.register("second", CountingResource.class, ctx -> awaitShared(secondGate), "text");
+
+   // a resource opened for the input and read by a transformer that waits for the gate
+   private final CountDownLatch readerGate = new CountDownLatch(1);
+   private volatile boolean closedWhileRead = false;
+   private final MockRegistration open = registry.register("open", CountingResource.class, ctx -> new CountingResource(), "text");
+   private final MockRegistration reader = registry.register("reader", String.class, ctx -> read((CountingResource)ctx.getValue("text")), "text");
+
+   private CountingResource awaitShared(CountDownLatch gate)
+   {
+      started.countDown();
+      try
+      {
+         gate.await(10, TimeUnit.SECONDS);
+      }
+      catch (InterruptedException ex)
+      {
+         Thread.currentThread().interrupt();
+      }
+
+      return shared;
+   }
+
+   private String read(CountingResource resource)
+   {
+      started.countDown();
+      try
+      {
+         readerGate.await(10, TimeUnit.SECONDS);
+      }
+      catch (InterruptedException ex)
+      {
+         Thread.currentThread().interrupt();
+      }
+
+      closedWhileRead = resource.isClosed();
+      return "read";
+   }
+
+   private static TransformerConfiguration createTransformer(WorkflowConfigBuilderImpl builder, MockRegistration reg, DataValueKey source) throws Exception
+   {
+      TransformerConfigEditor editor = builder.createTransformer(reg);
+      editor.setDataSource(reg.getDeclaredInput("text"), source);
+      return editor.getConfiguration();
+   }
+
+   private static DataValueKey keyOf(TransformerConfiguration cfg)
+   {
+      return new SimpleDataValueKey(cfg.getId(), cfg.getOutputType());
+   }
+
+   private static WorkflowConfigBuilderImpl createBuilder(MockTransformerRegistry registry)
+   {
+      WorkflowConfigBuilderImpl builder = new WorkflowConfigBuilderImpl(registry);
+      builder.setTitle("Evaluation Test");
+      builder.setInputType(String.class);
+      return builder;
+   }
+
+   @Test
+   public void testRequestExecutesOnlyRequiredTransformers() throws Exception
+   {
+      WorkflowConfigBuilderImpl builder = createBuilder(registry);
+      TransformerConfiguration uppercased = createTransformer(builder, upper, builder.getInputKey());
+      TransformerConfiguration reversed = createTransformer(builder, reverse, keyOf(uppercased));
+      TransformerConfiguration counted = createTransformer(builder, length, builder.getInputKey());
+      builder.registerOutput(reversed.getId());
+      builder.registerOutput(counted.getId());
+
+      WorkflowControllerImpl workflow = WorkflowControllerImpl.create(builder.build());
+      try
+      {
+         WorkflowEvaluation<String> evaluation = workflow.evaluate(() -> "abc");
+         assertEquals("abc", evaluation.getSource());
+         assertEquals(0, upper.getExecutions() + reverse.getExecutions() + length.getExecutions());
+
+         assertEquals("CBA", evaluation.request(keyOf(reversed)).get(10, TimeUnit.SECONDS));
+         assertEquals(1, upper.getExecutions());
+         assertEquals(1, reverse.getExecutions());
+         assertEquals("Transformer not required by the request was executed", 0, length.getExecutions());
+
+         // values are memoized, including intermediate values
+         assertEquals("ABC", evaluation.request(keyOf(uppercased)).get(10, TimeUnit.SECONDS));
+         assertEquals("CBA", evaluation.request(keyOf(reversed)).get(10, TimeUnit.SECONDS));
+         assertEquals(1, upper.getExecutions());
+         assertEquals(1, reverse.getExecutions());
+
+         try
+         {
+            evaluation.request(new SimpleDataValueKey(UUID.randomUUID(), String.class));
+            fail("Expected a value that is not produced by the workflow to be rejected");
+         }
+         catch (IllegalArgumentException ex)
+         {
+            // expected
+         }
+
+         evaluation.close();
+         try
+         {
+            evaluation.request(keyOf(counted));
+            fail("Expected a closed evaluation to reject requests");
+         }
+         catch (IllegalStateException ex)
+         {
+            // expected
+         }
+
+         assertEquals(0, length.getExecutions());
+      }
+      finally
+      {
+         workflow.close();
+      }
+   }
+
+   /**
+    * A value supplied to several slots is closed once, regardless of the order in which the
+    * slots complete relative to the evaluation being closed.
+    */
+   @Test
+   public void testSharedValueClosedOnce() throws Exception
+   {
+      WorkflowConfigBuilderImpl builder = createBuilder(registry);
+      TransformerConfiguration firstCfg = createTransformer(builder, first, builder.getInputKey());
+      TransformerConfiguration secondCfg = createTransformer(builder, second, builder.getInputKey());
+      builder.registerOutput(firstCfg.getId());
+      builder.registerOutput(secondCfg.getId());
+
+      // both transformers block their threads until they are released
+      WorkflowControllerSettings settings = new WorkflowControllerSettings();
+      settings.taskParallelism = 2;
+      WorkflowControllerImpl workflow = WorkflowControllerImpl.create(builder.build(), settings);
+      try
+      {
+         assertEquals(1, closeWhilePending(workflow, keyOf(firstCfg), keyOf(secondCfg), true));
+         assertEquals(1, closeWhilePending(workflow, keyOf(firstCfg), keyOf(secondCfg), false));
+      }
+      finally
+      {
+         workflow.close();
+      }
+   }
+
+   /**
+    * Closes an evaluation once the value of one slot is available, then allows the other
+    * slot to complete with the same value.
+    *
+    * @return The number of times the shared value was closed.
+    */
+   private int closeWhilePending(WorkflowControllerImpl workflow, DataValueKey firstKey, DataValueKey secondKey, boolean firstCompletes) throws Exception
+   {
+      shared = new CountingResource();
+      firstGate = new CountDownLatch(1);
+      secondGate = new CountDownLatch(1);
+      started = new CountDownLatch(2);
+
+      WorkflowEvaluation<String> evaluation = workflow.evaluate(() -> "input");
+      evaluation.request(firstKey);
+      evaluation.request(secondKey);
+      assertTrue("Transformers did not start", started.await(10, TimeUnit.SECONDS));
+
+      (firstCompletes ? firstGate : secondGate).countDown();
+      assertSame(shared, evaluation.request(firstCompletes ? firstKey : secondKey).get(10, TimeUnit.SECONDS));
+      evaluation.close();
+
+      (firstCompletes ? secondGate : firstGate).countDown();
+      return shared.awaitClosed();
+   }
+
+   /**
+    * Transformers must supply a value. A {@code null} result is reported as an error both when
+    * a workflow is evaluated and when it is processed.
+    */
+   @Test
+   public void testNullResultIsAnError() throws Exception
+   {
+      WorkflowConfigBuilderImpl builder = createBuilder(registry);
+      TransformerConfiguration cfg = createTransformer(builder, empty, builder.getInputKey());
+      builder.registerOutput(cfg.getId());
+
+      WorkflowControllerImpl workflow = WorkflowControllerImpl.create(builder.build());
+      try
+      {
+         WorkflowEvaluation<String> evaluation = workflow.evaluate(() -> "input");
+         try
+         {
+            evaluation.request(keyOf(cfg)).get(10, TimeUnit.SECONDS);
+            fail("Expected a null result to be rejected");
+         }
+         catch (ExecutionException ex)
+         {
+            assertTrue(ex.getCause() instanceof WorkflowException);
+            assertTrue(ex.getCause().getCause() instanceof IllegalArgumentException);
+         }
+         finally
+         {
+            evaluation.close();
+         }
+
+         RecordingResultsCollector<String> collector = new RecordingResultsCollector<>();
+         workflow.process(() -> "input", collector);
+         assertTrue("Processing did not finish", collector.await(10, TimeUnit.SECONDS));
+         assertTrue(collector.results.isEmpty());
+         assertEquals(1, collector.errors.size());
+         assertTrue(collector.errors.get(0).getCause() instanceof IllegalArgumentException);
+      }
+      finally
+      {
+         workflow.close();
+      }
+   }
+
+   /**
+    * Values read by a transformer that is running when the evaluation is closed are not
+    * closed until the transformer has finished.
+    */
+   @Test
+   public void testValuesClosedAfterRunningTransformers() throws Exception
+   {
+      WorkflowConfigBuilderImpl builder = createBuilder(registry);
+      TransformerConfiguration opened = createTransformer(builder, open, builder.getInputKey());
+      TransformerConfiguration readCfg = createTransformer(builder, reader, keyOf(opened));
+      builder.registerOutput(readCfg.getId());
+
+      WorkflowControllerImpl workflow = WorkflowControllerImpl.create(builder.build());
+      try
+      {
+         started = new CountDownLatch(1);
+         WorkflowEvaluation<String> evaluation = workflow.evaluate(() -> "input");
+         evaluation.request(keyOf(readCfg));
+         assertTrue("Transformer did not start", started.await(10, TimeUnit.SECONDS));
+         CountingResource resource = (CountingResource)evaluation.request(keyOf(opened)).get(10, TimeUnit.SECONDS);
+
+         evaluation.close();
+         Thread.sleep(100);
+         assertFalse("Value was closed while a transformer was reading it", resource.isClosed());
+
+         readerGate.countDown();
+         assertEquals(1, resource.awaitClosed());
+         assertFalse("Value was closed while a transformer was reading it", closedWhileRead);
+      }
+      finally
+      {
+         readerGate.countDown();
+         workflow.close();
+      }
+   }
+
+   /**
+    * Values are resolved without recursion, so long chains of transformers do not exhaust
+    * the stack of the requesting thread.
+    */
+   @Test
+   public void testLongChainResolved() throws Exception
+   {
+      WorkflowConfigBuilderImpl builder = createBuilder(registry);
+      DataValueKey key = builder.getInputKey();
+      for (int i = 0; i < 10_000; i++)
+      {
+         key = keyOf(createTransformer(builder, identity, key));
+      }
+
+      builder.registerOutput(key.getSourceId());
+      WorkflowControllerImpl workflow = WorkflowControllerImpl.create(builder.build());
+      try (WorkflowEvaluation<String> evaluation = workflow.evaluate(() -> "input"))
+      {
+         assertEquals("input", evaluation.request(key).get(30, TimeUnit.SECONDS));
+         assertEquals(10_000, identity.getExecutions());
+      }
+      finally
+      {
+         workflow.close();
+      }
+   }
+
+   /**
+    * Errors thrown by a transformer, not only exceptions, complete the requested value.
+    */
+   @Test
+   public void testErrorCompletesRequest() throws Exception
+   {
+      WorkflowConfigBuilderImpl builder = createBuilder(registry);
+      TransformerConfiguration cfg = createTransformer(builder, broken, builder.getInputKey());
+      builder.registerOutput(cfg.getId());
+
+      WorkflowControllerImpl workflow = WorkflowControllerImpl.create(builder.build());
+      try (WorkflowEvaluation<String> evaluation = workflow.evaluate(() -> "input"))
+      {
+         evaluation.request(keyOf(cfg)).get(10, TimeUnit.SECONDS);
+         fail("Expected the error to be reported");
+      }
+      catch (ExecutionException ex)
+      {
+         assertTrue(ex.getCause() instanceof WorkflowException);
+         assertTrue(ex.getCause().getCause() instanceof AssertionError);
+      }
+      finally
+      {
+         workflow.close();
+      }
+   }
+}
@@ -0,0 +1,352 @@
+package edu.tamu.tcat.analytics.datatrax.tests;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+
+import org.junit.Test;
+
+import edu.tamu.tcat.analytics.datatrax.DataValueKey;
+import edu.tamu.tcat.analytics.datatrax.WorkflowObserver;
+import edu.tamu.tcat.analytics.datatrax.WorkflowObserver.ProcessingEvent;
+import edu.tamu.tcat.analytics.datatrax.basic.SimpleDataValueKey;
+import edu.tamu.tcat.analytics.datatrax.basic.WorkflowConfigBuilderImpl;
+import edu.tamu.tcat.analytics.datatrax.basic.WorkflowControllerImpl;
+import edu.tamu.tcat.analytics.datatrax.config.TransformerConfigEditor;
+import edu.tamu.tcat.analytics.datatrax.config.TransformerConfiguration;
+import edu.tamu.tcat.analytics.datatrax.tests.MockTransformerRegistry.MockRegistration;
+
+/**
+ * Tests the delivery of transformer lifecycle events to the observers registered with
+ * {@link WorkflowControllerImpl#addListener(WorkflowObserver)}.
+ */
+public class WorkflowEventTests
+{
+   /** The lifecycle of a transformer with a single input that completes normally. */
+   private static final List<String> LIFECYCLE = Arrays.asList(ProcessingEvent.DATA_AVAILABLE,
+         ProcessingEvent.ACTIVATE, ProcessingEvent.BEFORE_EXECUTION, ProcessingEvent.COMPLETION);
+
+   /** The number of events the dispatcher buffers for delivery. */
+   private static final int CAPACITY = 1 << 14;
+
+   private static final IllegalStateException FAILURE = new IllegalStateException("Transformer failed");
+
+   private final MockTransformerRegistry registry = new MockTransformerRegistry();
+   private final MockRegistration upper = registry.register("upper", String.class, ctx -> ((String)ctx.getValue("text")).toUpperCase(), "text");
+   private final MockRegistration reverse = registry.register("reverse", String.class, ctx -> new StringBuilder((String)ctx.getValue("text")).reverse().toString(), "text");
+   private final MockRegistration fail = registry.register("fail", String.class, ctx -> { throw FAILURE; }, "text");
+
+   private TransformerConfiguration first;
+   private TransformerConfiguration second;
+
+   /**
+    * Creates a workflow that applies the first transformer to the input and the second to
+    * the output of the first.
+    */
+   private WorkflowControllerImpl createWorkflow(MockRegistration firstReg, MockRegistration secondReg) throws Exception
+   {
+      WorkflowConfigBuilderImpl builder = new WorkflowConfigBuilderImpl(registry);
+      builder.setTitle("Event Test");
+      builder.setInputType(String.class);
+
+      first = createTransformer(builder, firstReg, builder.getInputKey());
+      second = createTransformer(builder, secondReg, new SimpleDataValueKey(first.getId(), first.getOutputType()));
+      builder.registerOutput(second.getId());
+
+      return WorkflowControllerImpl.create(builder.build());
+   }
+
+   private static TransformerConfiguration createTransformer(WorkflowConfigBuilderImpl builder, MockRegistration reg, DataValueKey source) throws Exception
+   {
+      TransformerConfigEditor editor = builder.createTransformer(reg);
+      editor.setDataSource(reg.getDeclaredInput("text"), source);
+      return editor.getConfiguration();
+   }
+
+   private static void process(WorkflowControllerImpl workflow, String input) throws Exception
+   {
+      RecordingResultsCollector<String> collector = new RecordingResultsCollector<>();
+      workflow.process(() -> input, collector);
+      assertTrue("Processing did not finish", collector.await(10, TimeUnit.SECONDS));
+   }
+
+   private static List<String> actions(List<ProcessingEvent> events)
+   {
+      return events.stream().map(ProcessingEvent::getAction).collect(Collectors.toList());
+   }
+
+   @Test
+   public void testLifecycleEvents() throws Exception
+   {
+      WorkflowControllerImpl workflow = createWorkflow(upper, reverse);
+      try (RecordingObserver observer = new RecordingObserver(workflow))
+      {
+         process(workflow, "abc");
+         process(workflow, "def");
+         observer.awaitEvents(4 * LIFECYCLE.size());
+
+         // events for an input share its data id, while each transformer has its own task id
+         Map<UUID, List<ProcessingEvent>> byInput = observer.events.stream()
+               .collect(Collectors.groupingBy(ProcessingEvent::getDataId, LinkedHashMap::new, Collectors.toList()));
+         assertEquals(2, byInput.size());
+
+         Set<UUID> taskIds = new HashSet<>();
+         for (List<ProcessingEvent> events : byInput.values())
+         {
+            List<ProcessingEvent> firstEvents = observer.eventsFor(first, events);
+            List<ProcessingEvent> secondEvents = observer.eventsFor(second, events);
+            assertEquals(LIFECYCLE, actions(firstEvents));
+            assertEquals(LIFECYCLE, actions(secondEvents));
+            events.forEach(evt -> assertNull(evt.getError()));
+
+            UUID firstTask = firstEvents.get(0).getTransformationTaskId();
+            UUID secondTask = secondEvents.get(0).getTransformationTaskId();
+            assertTrue("Task id was reused", taskIds.add(firstTask) && taskIds.add(secondTask));
+            firstEvents.forEach(evt -> assertEquals(firstTask, evt.getTransformationTaskId()));
+            secondEvents.forEach(evt -> assertEquals(secondTask, evt.getTransformationTaskId()));
+
+            // the second transformer is supplied with the result of the first
+            assertTrue(firstEvents.get(2).getTime() <= secondEvents.get(0).getTime());
+         }
+
+         assertTrue("Data id was used as a task id", taskIds.stream().noneMatch(byInput::containsKey));
+      }
+      finally
+      {
+         workflow.close();
+      }
+   }
+
+   @Test
+   public void testErrorEvent() throws Exception
+   {
+      WorkflowControllerImpl workflow = createWorkflow(fail, reverse);
+      try (RecordingObserver observer = new RecordingObserver(workflow))
+      {
+         process(workflow, "abc");
+         observer.awaitEvents(LIFECYCLE.size());
+
+         List<ProcessingEvent> events = observer.eventsFor(first, observer.events);
+         assertEquals(Arrays.asList(ProcessingEvent.DATA_AVAILABLE, ProcessingEvent.ACTIVATE,
+               ProcessingEvent.BEFORE_EXECUTION, ProcessingEvent.ERROR), actions(events));
+         assertSame(FAILURE, events.get(3).getError());
+         assertEquals(events.get(0).getDataId(), events.get(3).getDataId());
+         assertEquals(events.get(0).getTransformationTaskId(), events.get(3).getTransformationTaskId());
+
+         // the dependent transformer is never supplied with its input
+         Thread.sleep(100);
+         assertTrue("Events for a transformer that did not run " + observer.events, observer.eventsFor(second, observer.events).isEmpty());
+      }
+      finally
+      {
+         workflow.close();
+      }
+   }
+
+   @Test
+   public void testRemovedObserverNotNotified() throws Exception
+   {
+      WorkflowControllerImpl workflow = createWorkflow(upper, reverse);
+      try (RecordingObserver retained = new RecordingObserver(workflow))
+      {
+         RecordingObserver removed = new RecordingObserver(workflow);
+         process(workflow, "abc");
+         removed.awaitEvents(2 * LIFECYCLE.size());
+         retained.awaitEvents(2 * LIFECYCLE.size());
+         removed.close();
+
+         process(workflow, "def");
+         retained.awaitEvents(4 * LIFECYCLE.size());
+         assertEquals("Removed observer was notified", 2 * LIFECYCLE.size(), removed.events.size());
+
+         // once the last observer is removed, events are delivered to observers registered later
+         retained.close();
+         process(workflow, "ghi");
+
+         // completion is recorded after the result is delivered, so allow the last transformer to finish
+         Thread.sleep(100);
+         try (RecordingObserver later = new RecordingObserver(workflow))
+         {
+            process(workflow, "jkl");
+            later.awaitEvents(2 * LIFECYCLE.size());
+            Thread.sleep(100);
+            assertEquals(2 * LIFECYCLE.size(), later.events.size());
+            assertEquals(4 * LIFECYCLE.size(), retained.events.size());
+         }
+      }
+      finally
+      {
+         workflow.close();
+      }
+   }
+
+   @Test
+   public void testIdleDispatcherWaitsForEvents() throws Exception
+   {
+      WorkflowControllerImpl workflow = createWorkflow(upper, reverse);
+      try (RecordingObserver observer = new RecordingObserver(workflow))
+      {
+         process(workflow, "abc");
+         observer.awaitEvents(2 * LIFECYCLE.size());
+
+         // once the events are delivered, the dispatch thread waits without polling
+         Thread dispatcher = Thread.getAllStackTraces().keySet().stream()
+               .filter(thread -> thread.getName().equals("datatrax-events-Event Test"))
+               .findFirst()
+               .orElseThrow(() -> new AssertionError("No dispatch thread"));
+         long timeout = System.nanoTime() + TimeUnit.SECONDS.toNanos(10);
+         while (dispatcher.getState() != Thread.State.WAITING)
+         {
+            assertTrue("Dispatch thread did not wait [" + dispatcher.getState() + "]", System.nanoTime() < timeout);
+            Thread.sleep(10);
+         }
+
+         // and is woken when further events are recorded
+         process(workflow, "def");
+         observer.awaitEvents(4 * LIFECYCLE.size());
+      }
+      finally
+      {
+         workflow.close();
+      }
+   }
+
+   @Test
+   public void testEventsDeliveredAfterBufferFills() throws Exception
+   {
+      WorkflowControllerImpl workflow = createWorkflow(upper, reverse);
+      CountDownLatch blocked = new CountDownLatch(1);
+      CountDownLatch release = new CountDownLatch(1);
+      try (RecordingObserver observer = new RecordingObserver(workflow, () -> {
+            blocked.countDown();
+            awaitUninterruptibly(release);
+         }))
+      {
+         // fill the buffer while the observer is unable to accept events
+         int inputs = CAPACITY / LIFECYCLE.size();
+         RecordingResultsCollector<String> collector = new RecordingResultsCollector<>();
+         workflow.processAll(IntStream.range(0, inputs).mapToObj(i -> (Supplier<String>)() -> "input " + i), collector);
+         assertTrue("Observer was not notified", blocked.await(10, TimeUnit.SECONDS));
+         assertTrue("Processing did not finish", collector.await(30, TimeUnit.SECONDS));
+
+         release.countDown();
+         int delivered = observer.awaitIdle();
+         assertTrue("Too few events delivered [" + delivered + "]", delivered >= CAPACITY);
+         assertTrue("Events were not dropped [" + delivered + "]", delivered < 2 * inputs * LIFECYCLE.size());
+         for (ProcessingEvent evt : observer.events)
+         {
+            assertTrue("Unexpected event " + evt, LIFECYCLE.contains(evt.getAction()));
+         }
+
+         // once the buffer has drained, events are recorded and delivered in full
+         observer.events.clear();
+         process(workflow, "abc");
+         observer.awaitEvents(2 * LIFECYCLE.size());
+         assertEquals(LIFECYCLE, actions(observer.eventsFor(first, observer.events)));
+         assertEquals(LIFECYCLE, actions(observer.eventsFor(second, observer.events)));
+      }
+      finally
+      {
+         release.countDown();
+         workflow.close();
+      }
+   }
+
+   private static void awaitUninterruptibly(CountDownLatch latch)
+   {
+      try
+      {
+         latch.await(30, TimeUnit.SECONDS);
+      }
+      catch (InterruptedException ex)
+      {
+         Thread.currentThread().interrupt();
+      }
+   }
+
+   /**
+    * Records the events it receives until its registration is closed.
+    */
+   private static class RecordingObserver implements WorkflowObserver, AutoCloseable
+   {
+      final List<ProcessingEvent> events = new CopyOnWriteArrayList<>();
+
+      private final Runnable onEvent;
+      private final AutoCloseable registration;
+
+      RecordingObserver(WorkflowControllerImpl workflow)
+      {
+         this(workflow, () -> {});
+      }
+
+      RecordingObserver(WorkflowControllerImpl workflow, Runnable onEvent)
+      {
+         this.onEvent = onEvent;
+         this.registration = workflow.addListener(this);
+      }
+
+      @Override
+      public void handleEvent(ProcessingEvent evt)
+      {
+         onEvent.run();
+         events.add(evt);
+      }
+
+      /**
+       * Waits until at least the given number of events have been received.
+       */
+      void awaitEvents(int count) throws InterruptedException
+      {
+         long timeout = System.nanoTime() + TimeUnit.SECONDS.toNanos(10);
+         while (events.size() < count)
+         {
+            assertTrue("Expected [" + count + "] events but received " + events, System.nanoTime() < timeout);
+            Thread.sleep(10);
+         }
+      }
+
+      /**
+       * Waits until no further events are received.
+       *
+       * @return The number of events received.
+       */
+      int awaitIdle() throws InterruptedException
+      {
+         int count = -1;
+         while (count != events.size())
+         {
+            count = events.size();
+            Thread.sleep(200);
+         }
+
+         return count;
+      }
+
+      List<ProcessingEvent> eventsFor(TransformerConfiguration cfg, List<ProcessingEvent> received)
+      {
+         String id = cfg.getId().toString();
+         return received.stream().filter(evt -> id.equals(evt.getTransformerId())).collect(Collectors.toList());
+      }
+
+      @Override
+      public void close() throws Exception
+      {
+         registration.close();
+      }
+   }
+}
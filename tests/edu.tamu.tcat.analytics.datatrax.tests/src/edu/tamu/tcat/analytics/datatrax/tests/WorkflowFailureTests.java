@@ -0,0 +1,286 @@
+package edu.tamu.tcat.analytics.datatrax.tests;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import org.junit.Test;
+
+import edu.tamu.tcat.analytics.datatrax.DataValueKey;
+import edu.tamu.tcat.analytics.datatrax.WorkflowException;
+import edu.tamu.tcat.analytics.datatrax.basic.SimpleDataValueKey;
+import edu.tamu.tcat.analytics.datatrax.basic.WorkflowConfigBuilderImpl;
+import edu.tamu.tcat.analytics.datatrax.basic.WorkflowControllerImpl;
+import edu.tamu.tcat.analytics.datatrax.basic.WorkflowControllerSettings;
+import edu.tamu.tcat.analytics.datatrax.config.TransformerConfigEditor;
+import edu.tamu.tcat.analytics.datatrax.config.TransformerConfiguration;
+import edu.tamu.tcat.analytics.datatrax.tests.MockTransformerRegistry.MockRegistration;
+
+/**
+ * Tests that processing of an input stops as soon as a transformer fails.
+ */
+public class WorkflowFailureTests
+{
+   private final CountDownLatch release = new CountDownLatch(1);
+   private final CountDownLatch slowFinished = new CountDownLatch(1);
+
+   private final MockTransformerRegistry registry = new MockTransformerRegistry();
+   private final MockRegistration failing = registry.register("failing", String.class, ctx -> throwFailure(), "text");
+   private final MockRegistration slow = registry.register("slow", String.class, ctx -> awaitRelease((String)ctx.getValue("text")), "text");
+   private final MockRegistration after = registry.register("after", String.class, ctx -> ((String)ctx.getValue("text")).toUpperCase(), "text");
+   private final MockRegistration broken = registry.register("broken", String.class, ctx -> { throw new AssertionError("Expected error"); }, "text");
+   private final MockRegistration upper = registry.register("upper", String.class, ctx -> ((String)ctx.getValue("text")).toUpperCase(), "text");
+
+   // signalled once the collector has begun handling a result and released by the test
+   private final CountDownLatch delivering = new CountDownLatch(1);
+   private final CountDownLatch releaseDelivery = new CountDownLatch(1);
+   private final MockRegistration failAfterDelivery = registry.register("failAfterDelivery", String.class, ctx -> failAfter(delivering), "text");
+
+   private String throwFailure()
+   {
+      throw new IllegalStateException("Expected failure");
+   }
+
+   private String failAfter(CountDownLatch latch)
+   {
+      try
+      {
+         latch.await(10, TimeUnit.SECONDS);
+      }
+      catch (InterruptedException ex)
+      {
+         Thread.currentThread().interrupt();
+      }
+
+      return throwFailure();
+   }
+
+   /**
+    * Completes normally once released by the test, so that its dependent becomes ready only
+    * after processing has failed.
+    */
+   private String awaitRelease(String text)
+   {
+      try
+      {
+         release.await(10, TimeUnit.SECONDS);
+      }
+      catch (InterruptedException ex)
+      {
+         Thread.currentThread().interrupt();
+      }
+      finally
+      {
+         slowFinished.countDown();
+      }
+
+      return text;
+   }
+
+   /**
+    * Waits for the latch without returning early if the thread is interrupted, restoring the
+    * interrupted status once the latch has been released.
+    */
+   private static void awaitUninterruptibly(CountDownLatch latch)
+   {
+      boolean interrupted = false;
+      while (true)
+      {
+         try
+         {
+            latch.await(10, TimeUnit.SECONDS);
+            break;
+         }
+         catch (InterruptedException ex)
+         {
+            interrupted = true;
+         }
+      }
+
+      if (interrupted)
+         Thread.currentThread().interrupt();
+   }
+
+   private static TransformerConfiguration createTransformer(WorkflowConfigBuilderImpl builder, MockRegistration reg, DataValueKey source) throws Exception
+   {
+      TransformerConfigEditor editor = builder.createTransformer(reg);
+      editor.setDataSource(reg.getDeclaredInput("text"), source);
+      return editor.getConfiguration();
+   }
+
+   private static DataValueKey keyOf(TransformerConfiguration cfg)
+   {
+      return new SimpleDataValueKey(cfg.getId(), cfg.getOutputType());
+   }
+
+   @Test
+   public void testFailureStopsProcessing() throws Exception
+   {
+      WorkflowConfigBuilderImpl builder = new WorkflowConfigBuilderImpl(registry);
+      builder.setTitle("Failure Test");
+      builder.setInputType(String.class);
+
+      DataValueKey input = builder.getInputKey();
+      builder.registerOutput(createTransformer(builder, failing, input).getId());
+      TransformerConfiguration slowCfg = createTransformer(builder, slow, input);
+      builder.registerOutput(createTransformer(builder, after, keyOf(slowCfg)).getId());
+
+      // the failing and slow transformers run concurrently
+      WorkflowControllerSettings settings = new WorkflowControllerSettings();
+      settings.taskParallelism = 2;
+      WorkflowControllerImpl workflow = WorkflowControllerImpl.create(builder.build(), settings);
+      try
+      {
+         RecordingResultsCollector<String> collector = new RecordingResultsCollector<>();
+         CompletableFuture<Void> result = workflow.process(() -> "input", collector);
+         try
+         {
+            result.get(10, TimeUnit.SECONDS);
+            fail("Expected processing to fail");
+         }
+         catch (ExecutionException ex)
+         {
+            assertTrue(ex.getCause() instanceof WorkflowException);
+            assertTrue(ex.getCause().getCause() instanceof IllegalStateException);
+         }
+
+         // the failure is reported without waiting for the slow transformer
+         assertTrue("Processing did not finish", collector.await(10, TimeUnit.SECONDS));
+         assertEquals(1, collector.errors.size());
+         assertEquals(1, collector.finished.get());
+         assertTrue(collector.results.isEmpty());
+         assertEquals("Collector was notified on an interrupted thread", 0, collector.interruptedCallbacks.get());
+
+         // the dependent of the slow transformer is not executed once processing has failed
+         release.countDown();
+         assertTrue(slowFinished.await(10, TimeUnit.SECONDS));
+         Thread.sleep(100);
+         assertEquals("Transformer executed after processing failed", 0, after.getExecutions());
+         assertTrue(collector.results.isEmpty());
+         assertEquals(1, collector.finished.get());
+      }
+      finally
+      {
+         workflow.close();
+      }
+   }
+
+   /**
+    * An {@link Error} thrown by a transformer fails the input in the same way as an exception.
+    */
+   @Test
+   public void testErrorStopsProcessing() throws Exception
+   {
+      WorkflowConfigBuilderImpl builder = new WorkflowConfigBuilderImpl(registry);
+      builder.setTitle("Failure Test");
+      builder.setInputType(String.class);
+      builder.registerOutput(createTransformer(builder, broken, builder.getInputKey()).getId());
+
+      WorkflowControllerImpl workflow = WorkflowControllerImpl.create(builder.build());
+      try
+      {
+         RecordingResultsCollector<String> collector = new RecordingResultsCollector<>();
+         CompletableFuture<Void> result = workflow.process(() -> "input", collector);
+         try
+         {
+            result.get(10, TimeUnit.SECONDS);
+            fail("Expected processing to fail");
+         }
+         catch (ExecutionException ex)
+         {
+            assertTrue(ex.getCause() instanceof WorkflowException);
+            assertTrue(ex.getCause().getCause().getCause() instanceof AssertionError);
+         }
+
+         assertTrue("Processing did not finish", collector.await(10, TimeUnit.SECONDS));
+         assertEquals(1, collector.errors.size());
+         assertEquals(1, collector.finished.get());
+         assertEquals(0, collector.interruptedCallbacks.get());
+      }
+      finally
+      {
+         workflow.close();
+      }
+   }
+
+   /**
+    * The collector is notified that processing is finished only once a result that it is
+    * handling when processing fails has been handled.
+    */
+   @Test
+   public void testFailureWaitsForDelivery() throws Exception
+   {
+      WorkflowConfigBuilderImpl builder = new WorkflowConfigBuilderImpl(registry);
+      builder.setTitle("Failure Test");
+      builder.setInputType(String.class);
+
+      DataValueKey input = builder.getInputKey();
+      builder.registerOutput(createTransformer(builder, upper, input).getId());
+      builder.registerOutput(createTransformer(builder, failAfterDelivery, input).getId());
+
+      // the failing transformer runs while the other output is being delivered
+      WorkflowControllerSettings settings = new WorkflowControllerSettings();
+      settings.taskParallelism = 2;
+      WorkflowControllerImpl workflow = WorkflowControllerImpl.create(builder.build(), settings);
+      try
+      {
+         AtomicBoolean handling = new AtomicBoolean();
+         AtomicBoolean finishedWhileHandling = new AtomicBoolean();
+         RecordingResultsCollector<String> collector = new RecordingResultsCollector<String>()
+         {
+            @Override
+            public void handleResult(TranformationResult<String> result)
+            {
+               handling.set(true);
+               delivering.countDown();
+               awaitUninterruptibly(releaseDelivery);
+               super.handleResult(result);
+               handling.set(false);
+            }
+
+            @Override
+            public void finished()
+            {
+               finishedWhileHandling.compareAndSet(false, handling.get());
+               super.finished();
+            }
+         };
+
+         CompletableFuture<Void> result = workflow.process(() -> "input", collector);
+         assertTrue("Result was not delivered", delivering.await(10, TimeUnit.SECONDS));
+         Thread.sleep(200);
+         assertFalse("Processing finished while a result was being handled", result.isDone());
+         assertEquals(0, collector.finished.get());
+
+         releaseDelivery.countDown();
+         try
+         {
+            result.get(10, TimeUnit.SECONDS);
+            fail("Expected processing to fail");
+         }
+         catch (ExecutionException ex)
+         {
+            assertTrue(ex.getCause() instanceof WorkflowException);
+         }
+
+         assertTrue("Processing did not finish", collector.await(10, TimeUnit.SECONDS));
+         assertFalse(finishedWhileHandling.get());
+         assertEquals(1, collector.results.size());
+         assertEquals(1, collector.errors.size());
+         assertEquals(1, collector.finished.get());
+         assertEquals(0, collector.interruptedCallbacks.get());
+      }
+      finally
+      {
+         releaseDelivery.countDown();
+         workflow.close();
+      }
+   }
+}
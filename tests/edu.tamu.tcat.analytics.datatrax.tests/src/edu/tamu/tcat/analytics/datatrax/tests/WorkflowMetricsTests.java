@@ -0,0 +1,329 @@
+package edu.tamu.tcat.analytics.datatrax.tests;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.lang.management.ManagementFactory;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+import javax.management.JMX;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+
+import org.junit.Test;
+
+import edu.tamu.tcat.analytics.datatrax.DataValueKey;
+import edu.tamu.tcat.analytics.datatrax.Sized;
+import edu.tamu.tcat.analytics.datatrax.WorkflowMetrics;
+import edu.tamu.tcat.analytics.datatrax.WorkflowMetrics.Histogram;
+import edu.tamu.tcat.analytics.datatrax.WorkflowMetrics.TransformerMetrics;
+import edu.tamu.tcat.analytics.datatrax.basic.SimpleDataValueKey;
+import edu.tamu.tcat.analytics.datatrax.basic.TransformerMetricsMXBean;
+import edu.tamu.tcat.analytics.datatrax.basic.WorkflowConfigBuilderImpl;
+import edu.tamu.tcat.analytics.datatrax.basic.WorkflowControllerImpl;
+import edu.tamu.tcat.analytics.datatrax.basic.WorkflowControllerSettings;
+import edu.tamu.tcat.analytics.datatrax.basic.WorkflowMetricsMXBean;
+import edu.tamu.tcat.analytics.datatrax.config.TransformerConfigEditor;
+import edu.tamu.tcat.analytics.datatrax.config.TransformerConfiguration;
+import edu.tamu.tcat.analytics.datatrax.tests.MockTransformerRegistry.MockRegistration;
+
+/**
+ * Tests the {@link WorkflowMetrics} recorded by a workflow controller and their registration
+ * with the platform MBean server.
+ */
+public class WorkflowMetricsTests
+{
+   private static final String TITLE = "Metrics Test";
+
+   private final MockTransformerRegistry registry = new MockTransformerRegistry();
+   private final MockRegistration check = registry.register("check", String.class, ctx -> checkInput((String)ctx.getValue("text")), "text");
+   private final MockRegistration size = registry.register("size", SizedValue.class, ctx -> new SizedValue(Long.parseLong((String)ctx.getValue("text"))), "text");
+
+   private TransformerConfiguration checked;
+   private TransformerConfiguration sized;
+
+   private static String checkInput(String text)
+   {
+      if (text.startsWith("fail"))
+         throw new IllegalArgumentException("Invalid input [" + text + "]");
+
+      return text;
+   }
+
+   /**
+    * Creates a workflow that checks its input and then produces a value whose size is given
+    * by the input.
+    */
+   private WorkflowControllerImpl createWorkflow(WorkflowControllerSettings settings) throws Exception
+   {
+      WorkflowConfigBuilderImpl builder = new WorkflowConfigBuilderImpl(registry);
+      builder.setTitle(TITLE);
+      builder.setInputType(String.class);
+
+      checked = createTransformer(builder, check, builder.getInputKey());
+      sized = createTransformer(builder, size, new SimpleDataValueKey(checked.getId(), checked.getOutputType()));
+      builder.registerOutput(sized.getId());
+
+      return WorkflowControllerImpl.create(builder.build(), settings);
+   }
+
+   private static TransformerConfiguration createTransformer(WorkflowConfigBuilderImpl builder, MockRegistration reg, DataValueKey source) throws Exception
+   {
+      TransformerConfigEditor editor = builder.createTransformer(reg);
+      editor.setDataSource(reg.getDeclaredInput("text"), source);
+      return editor.getConfiguration();
+   }
+
+   private static RecordingResultsCollector<String> process(WorkflowControllerImpl workflow, String input) throws Exception
+   {
+      RecordingResultsCollector<String> collector = new RecordingResultsCollector<>();
+      workflow.process(() -> input, collector);
+      assertTrue("Processing did not finish", collector.await(10, TimeUnit.SECONDS));
+      return collector;
+   }
+
+   @Test
+   public void testOutputSizes() throws Exception
+   {
+      WorkflowControllerImpl workflow = createWorkflow(new WorkflowControllerSettings());
+      try
+      {
+         Histogram sizes = workflow.getMetrics().getTransformerMetrics(sized.getId()).getOutputSize();
+         assertEquals(0, sizes.getCount());
+         assertEquals(0, sizes.getValueAtPercentile(50));
+         assertEquals(0, sizes.getMean(), 0);
+
+         for (int i = 1; i <= 100; i++)
+         {
+            assertTrue(process(workflow, String.valueOf(i)).errors.isEmpty());
+         }
+
+         assertEquals(100, sizes.getCount());
+         assertEquals(50.5, sizes.getMean(), 0.001);
+         assertEquals(100, sizes.getMax());
+
+         // outputs that are not sized are not recorded
+         assertEquals(0, workflow.getMetrics().getTransformerMetrics(checked.getId()).getOutputSize().getCount());
+      }
+      finally
+      {
+         workflow.close();
+      }
+   }
+
+   /**
+    * Values below 16 are recorded exactly, while larger values are recorded in buckets that
+    * divide each power of two into eight. Percentiles report the upper bound of the bucket
+    * that contains the value, limited by the largest recorded value.
+    */
+   @Test
+   public void testPercentiles() throws Exception
+   {
+      WorkflowControllerImpl workflow = createWorkflow(new WorkflowControllerSettings());
+      try
+      {
+         for (int i = 1; i <= 100; i++)
+         {
+            process(workflow, String.valueOf(i));
+         }
+
+         Histogram sizes = workflow.getMetrics().getTransformerMetrics(sized.getId()).getOutputSize();
+         assertEquals(1, sizes.getValueAtPercentile(0));
+         assertEquals(1, sizes.getValueAtPercentile(1));
+         assertEquals(10, sizes.getValueAtPercentile(10));
+         assertEquals(15, sizes.getValueAtPercentile(15));
+         assertEquals(25, sizes.getValueAtPercentile(25));     // 24-25
+         assertEquals(51, sizes.getValueAtPercentile(50));     // 48-51
+         assertEquals(79, sizes.getValueAtPercentile(75));     // 72-79
+         assertEquals(100, sizes.getValueAtPercentile(99));    // 96-103, limited by the maximum
+         assertEquals(100, sizes.getValueAtPercentile(100));
+
+         for (double percentile : new double[] { -1, 100.5 })
+         {
+            try
+            {
+               sizes.getValueAtPercentile(percentile);
+               fail("Expected an invalid percentile [" + percentile + "] to be rejected");
+            }
+            catch (IllegalArgumentException ex)
+            {
+               // expected
+            }
+         }
+      }
+      finally
+      {
+         workflow.close();
+      }
+   }
+
+   @Test
+   public void testLargeValuePercentiles() throws Exception
+   {
+      WorkflowControllerImpl workflow = createWorkflow(new WorkflowControllerSettings());
+      try
+      {
+         long small = 1_000_000;
+         long large = 3L << 40;
+         process(workflow, String.valueOf(small));
+         process(workflow, String.valueOf(large));
+
+         // percentiles are within 12.5% of the recorded value
+         Histogram sizes = workflow.getMetrics().getTransformerMetrics(sized.getId()).getOutputSize();
+         long median = sizes.getValueAtPercentile(50);
+         assertEquals(1_048_575, median);                     // 983,040-1,048,575
+         assertTrue(median >= small && median <= small * 1.125);
+         assertEquals(large, sizes.getValueAtPercentile(100));
+         assertEquals(large, sizes.getMax());
+         assertEquals((small + large) / 2.0, sizes.getMean(), 1);
+      }
+      finally
+      {
+         workflow.close();
+      }
+   }
+
+   @Test
+   public void testErrorsAndLatency() throws Exception
+   {
+      WorkflowControllerImpl workflow = createWorkflow(new WorkflowControllerSettings());
+      try
+      {
+         for (int i = 0; i < 5; i++)
+         {
+            assertTrue(process(workflow, String.valueOf(i)).errors.isEmpty());
+         }
+
+         for (int i = 0; i < 3; i++)
+         {
+            assertEquals(1, process(workflow, "fail " + i).errors.size());
+         }
+
+         WorkflowMetrics metrics = workflow.getMetrics();
+         assertEquals(5, metrics.getInputsCompleted());
+         assertEquals(3, metrics.getInputsFailed());
+
+         // latency is recorded for successfully processed inputs only
+         assertEquals(5, metrics.getLatency().getCount());
+         assertTrue(metrics.getLatency().getMax() > 0);
+
+         TransformerMetrics checkMetrics = metrics.getTransformerMetrics(checked.getId());
+         assertEquals(8, checkMetrics.getExecutions());
+         assertEquals(3, checkMetrics.getErrors());
+         assertEquals(8, checkMetrics.getCallTime().getCount());
+
+         // the transformer that depends on the failed one is not executed for failed inputs
+         TransformerMetrics sizeMetrics = metrics.getTransformerMetrics(sized.getId());
+         assertEquals(5, sizeMetrics.getExecutions());
+         assertEquals(0, sizeMetrics.getErrors());
+      }
+      finally
+      {
+         workflow.close();
+      }
+   }
+
+   @Test
+   public void testMetricsNotCollected() throws Exception
+   {
+      WorkflowControllerSettings settings = new WorkflowControllerSettings();
+      settings.collectMetrics = false;
+      WorkflowControllerImpl workflow = createWorkflow(settings);
+      try
+      {
+         process(workflow, "1");
+         process(workflow, "fail");
+
+         WorkflowMetrics metrics = workflow.getMetrics();
+         assertEquals(0, metrics.getInputsCompleted() + metrics.getInputsFailed());
+         assertEquals(0, metrics.getLatency().getCount());
+         assertEquals(0, metrics.getTransformerMetrics(checked.getId()).getExecutions());
+      }
+      finally
+      {
+         workflow.close();
+      }
+   }
+
+   @Test
+   public void testMBeanRegistration() throws Exception
+   {
+      MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+      ObjectName query = new ObjectName("edu.tamu.tcat.analytics.datatrax:workflow=" + ObjectName.quote(TITLE) + ",*");
+      assertTrue(server.queryNames(query, null).isEmpty());
+
+      WorkflowControllerSettings settings = new WorkflowControllerSettings();
+      settings.registerMBeans = true;
+      WorkflowControllerImpl workflow = createWorkflow(settings);
+      try
+      {
+         process(workflow, "12");
+         process(workflow, "fail");
+
+         Set<ObjectName> names = server.queryNames(query, null);
+         assertEquals("Registered MBeans " + names, 3, names.size());
+
+         ObjectName workflowName = findName(names, "Workflow", null);
+         WorkflowMetricsMXBean workflowBean = JMX.newMXBeanProxy(server, workflowName, WorkflowMetricsMXBean.class);
+         assertEquals(TITLE, workflowBean.getWorkflowTitle());
+         assertEquals(1, workflowBean.getInputsCompleted());
+         assertEquals(1, workflowBean.getInputsFailed());
+         assertTrue(workflowBean.getLatencyMax() > 0);
+
+         ObjectName checkName = findName(names, "Transformer", checked);
+         TransformerMetricsMXBean checkBean = JMX.newMXBeanProxy(server, checkName, TransformerMetricsMXBean.class);
+         assertEquals(checked.getId().toString(), checkBean.getTransformerId());
+         assertEquals(2, checkBean.getExecutions());
+         assertEquals(1, checkBean.getErrors());
+
+         ObjectName sizeName = findName(names, "Transformer", sized);
+         TransformerMetricsMXBean sizeBean = JMX.newMXBeanProxy(server, sizeName, TransformerMetricsMXBean.class);
+         assertEquals(12, sizeBean.getOutputSizeMean(), 0);
+
+         // closing the controller unregisters its MBeans
+         workflow.close();
+         assertTrue("MBeans were not unregistered", server.queryNames(query, null).isEmpty());
+         for (ObjectName name : names)
+         {
+            assertFalse(server.isRegistered(name));
+         }
+      }
+      finally
+      {
+         workflow.close();
+      }
+   }
+
+   private static ObjectName findName(Set<ObjectName> names, String type, TransformerConfiguration cfg)
+   {
+      for (ObjectName name : names)
+      {
+         if (type.equals(name.getKeyProperty("type")) && (cfg == null || cfg.getId().toString().equals(name.getKeyProperty("id"))))
+            return name;
+      }
+
+      throw new AssertionError("No MBean of type [" + type + "] registered " + names);
+   }
+
+   /**
+    * A value that reports a fixed size.
+    */
+   public static class SizedValue implements Sized
+   {
+      private final long size;
+
+      public SizedValue(long size)
+      {
+         this.size = size;
+      }
+
+      @Override
+      public long getSize()
+      {
+         return size;
+      }
+   }
+}
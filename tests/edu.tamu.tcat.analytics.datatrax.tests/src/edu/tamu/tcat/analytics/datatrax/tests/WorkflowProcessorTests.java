@@ -0,0 +1,247 @@
+package edu.tamu.tcat.analytics.datatrax.tests;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+
+import org.junit.Test;
+
+import edu.tamu.tcat.analytics.datatrax.DataFlow;
+import edu.tamu.tcat.analytics.datatrax.ResultsCollector.TranformationResult;
+import edu.tamu.tcat.analytics.datatrax.basic.WorkflowConfigBuilderImpl;
+import edu.tamu.tcat.analytics.datatrax.basic.WorkflowControllerImpl;
+import edu.tamu.tcat.analytics.datatrax.basic.WorkflowProcessor;
+import edu.tamu.tcat.analytics.datatrax.config.TransformerConfigEditor;
+import edu.tamu.tcat.analytics.datatrax.config.WorkflowConfiguration;
+import edu.tamu.tcat.analytics.datatrax.tests.MockTransformerRegistry.MockRegistration;
+
+/**
+ * Tests the propagation of demand from the subscriber of a {@link WorkflowProcessor} to the
+ * publisher of its inputs.
+ */
+public class WorkflowProcessorTests
+{
+   private final MockTransformerRegistry registry = new MockTransformerRegistry();
+   private final MockRegistration upper = registry.register("upper", String.class, ctx -> ((String)ctx.getValue("text")).toUpperCase(), "text");
+   private final MockRegistration lower = registry.register("lower", String.class, ctx -> ((String)ctx.getValue("text")).toLowerCase(), "text");
+   private final MockRegistration resource = registry.register("resource", AutoCloseable.class, ctx -> (AutoCloseable)() -> {}, "text");
+
+   private WorkflowConfiguration buildConfiguration(MockRegistration... outputs) throws Exception
+   {
+      WorkflowConfigBuilderImpl builder = new WorkflowConfigBuilderImpl(registry);
+      builder.setTitle("Processor Test");
+      builder.setInputType(String.class);
+
+      for (MockRegistration reg : outputs)
+      {
+         TransformerConfigEditor editor = builder.createTransformer(reg);
+         editor.setDataSource(reg.getDeclaredInput("text"), builder.getInputKey());
+         builder.registerOutput(editor.getConfiguration().getId());
+      }
+
+      return builder.build();
+   }
+
+   /**
+    * Waits for the total number of inputs requested from upstream to reach the expected value.
+    */
+   private static void awaitRequested(RecordingSubscription upstream, long expected) throws InterruptedException
+   {
+      long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(10);
+      while (upstream.requested.get() < expected && System.nanoTime() < deadline)
+      {
+         Thread.sleep(10);
+      }
+
+      assertEquals(expected, upstream.requested.get());
+   }
+
+   @Test
+   public void testInputsRequestedOnDemand() throws Exception
+   {
+      WorkflowControllerImpl workflow = WorkflowControllerImpl.create(buildConfiguration(upper));
+      try
+      {
+         WorkflowProcessor<String> processor = new WorkflowProcessor<>(workflow, 4, null);
+         RecordingSubscriber subscriber = new RecordingSubscriber();
+         RecordingSubscription upstream = new RecordingSubscription();
+         processor.subscribe(subscriber);
+         processor.onSubscribe(upstream);
+         assertEquals("Inputs were requested before results were requested", 0, upstream.requested.get());
+
+         subscriber.subscription.request(2);
+         awaitRequested(upstream, 2);
+         processor.onNext("a");
+         processor.onNext("b");
+         assertEquals("A", subscriber.next());
+         assertEquals("B", subscriber.next());
+
+         // no results are outstanding, so no further inputs are required
+         Thread.sleep(100);
+         assertEquals(2, upstream.requested.get());
+
+         // demand beyond the in-flight limit is not passed upstream
+         subscriber.subscription.request(10);
+         awaitRequested(upstream, 6);
+         Thread.sleep(100);
+         assertEquals(6, upstream.requested.get());
+
+         for (String item : new String[] { "c", "d", "e", "f" })
+         {
+            processor.onNext(item);
+         }
+
+         for (int i = 0; i < 4; i++)
+         {
+            assertNotNull("Result was not delivered", subscriber.next());
+         }
+
+         awaitRequested(upstream, 10);
+         processor.onComplete();
+         assertTrue("Stream did not complete", subscriber.done.await(10, TimeUnit.SECONDS));
+         assertNull(subscriber.error.get());
+         assertEquals(6, upper.getExecutions());
+      }
+      finally
+      {
+         workflow.close();
+      }
+   }
+
+   @Test
+   public void testResultsBufferedUntilRequested() throws Exception
+   {
+      WorkflowControllerImpl workflow = WorkflowControllerImpl.create(buildConfiguration(upper, lower));
+      try
+      {
+         WorkflowProcessor<String> processor = new WorkflowProcessor<>(workflow, 4, null);
+         RecordingSubscriber subscriber = new RecordingSubscriber();
+         RecordingSubscription upstream = new RecordingSubscription();
+         processor.subscribe(subscriber);
+         processor.onSubscribe(upstream);
+
+         subscriber.subscription.request(1);
+         awaitRequested(upstream, 1);
+         processor.onNext("Text");
+         assertNotNull("Result was not delivered", subscriber.next());
+
+         // the second output is buffered rather than delivered
+         assertNull("Result delivered beyond demand", subscriber.items.poll(200, TimeUnit.MILLISECONDS));
+
+         // the buffered result satisfies the next request without requesting another input
+         subscriber.subscription.request(1);
+         assertNotNull("Buffered result was not delivered", subscriber.next());
+         Thread.sleep(100);
+         assertEquals(1, upstream.requested.get());
+
+         processor.onComplete();
+         assertTrue("Stream did not complete", subscriber.done.await(10, TimeUnit.SECONDS));
+         assertNull(subscriber.error.get());
+      }
+      finally
+      {
+         workflow.close();
+      }
+   }
+
+   /**
+    * Closeable values are closed before buffered results are delivered, so they terminate
+    * the stream rather than being delivered after they have been closed.
+    */
+   @Test
+   public void testCloseableOutputsRejected() throws Exception
+   {
+      WorkflowControllerImpl workflow = WorkflowControllerImpl.create(buildConfiguration(resource));
+      try
+      {
+         WorkflowProcessor<String> processor = new WorkflowProcessor<>(workflow, 4, null);
+         RecordingSubscriber subscriber = new RecordingSubscriber();
+         RecordingSubscription upstream = new RecordingSubscription();
+         processor.subscribe(subscriber);
+         processor.onSubscribe(upstream);
+
+         subscriber.subscription.request(1);
+         awaitRequested(upstream, 1);
+         processor.onNext("input");
+
+         assertTrue("Stream was not terminated", subscriber.done.await(10, TimeUnit.SECONDS));
+         assertTrue(subscriber.error.get() instanceof IllegalStateException);
+         assertTrue(subscriber.items.isEmpty());
+         assertTrue("Upstream subscription was not cancelled", upstream.cancelled);
+      }
+      finally
+      {
+         workflow.close();
+      }
+   }
+
+   /**
+    * Records the inputs requested by the processor from upstream.
+    */
+   private static final class RecordingSubscription implements DataFlow.Subscription
+   {
+      final AtomicLong requested = new AtomicLong();
+      volatile boolean cancelled = false;
+
+      @Override
+      public void request(long n)
+      {
+         requested.addAndGet(n);
+      }
+
+      @Override
+      public void cancel()
+      {
+         cancelled = true;
+      }
+   }
+
+   /**
+    * Records the values of the results published by the processor.
+    */
+   private static final class RecordingSubscriber implements DataFlow.Subscriber<TranformationResult<String>>
+   {
+      final BlockingQueue<Object> items = new LinkedBlockingQueue<>();
+      final AtomicReference<Throwable> error = new AtomicReference<>();
+      final CountDownLatch done = new CountDownLatch(1);
+      volatile DataFlow.Subscription subscription;
+
+      Object next() throws InterruptedException
+      {
+         return items.poll(10, TimeUnit.SECONDS);
+      }
+
+      @Override
+      public void onSubscribe(DataFlow.Subscription s)
+      {
+         subscription = s;
+      }
+
+      @Override
+      public void onNext(TranformationResult<String> item)
+      {
+         items.add(item.getValue());
+      }
+
+      @Override
+      public void onError(Throwable throwable)
+      {
+         error.set(throwable);
+         done.countDown();
+      }
+
+      @Override
+      public void onComplete()
+      {
+         done.countDown();
+      }
+   }
+}
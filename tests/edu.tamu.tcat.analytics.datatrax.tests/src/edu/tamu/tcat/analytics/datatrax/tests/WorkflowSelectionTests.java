@@ -0,0 +1,158 @@
+package edu.tamu.tcat.analytics.datatrax.tests;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Test;
+
+import edu.tamu.tcat.analytics.datatrax.DataValueKey;
+import edu.tamu.tcat.analytics.datatrax.basic.SimpleDataValueKey;
+import edu.tamu.tcat.analytics.datatrax.basic.WorkflowConfigBuilderImpl;
+import edu.tamu.tcat.analytics.datatrax.basic.WorkflowControllerImpl;
+import edu.tamu.tcat.analytics.datatrax.config.TransformerConfigEditor;
+import edu.tamu.tcat.analytics.datatrax.config.TransformerConfiguration;
+import edu.tamu.tcat.analytics.datatrax.tests.MockTransformerRegistry.MockRegistration;
+
+/**
+ * Tests that only the transformers required to produce the requested outputs of a workflow
+ * are executed.
+ */
+public class WorkflowSelectionTests
+{
+   private final MockTransformerRegistry registry = new MockTransformerRegistry();
+   private final MockRegistration upper = registry.register("upper", String.class, ctx -> ((String)ctx.getValue("text")).toUpperCase(), "text");
+   private final MockRegistration reverse = registry.register("reverse", String.class, ctx -> new StringBuilder((String)ctx.getValue("text")).reverse().toString(), "text");
+   private final MockRegistration length = registry.register("length", Integer.class, ctx -> Integer.valueOf(((String)ctx.getValue("text")).length()), "text");
+   private final MockRegistration unused = registry.register("unused", String.class, ctx -> ctx.getValue("text"), "text");
+
+   private WorkflowConfigBuilderImpl builder;
+   private TransformerConfiguration uppercased;
+   private TransformerConfiguration reversed;
+   private TransformerConfiguration counted;
+
+   private TransformerConfiguration createTransformer(MockRegistration reg, DataValueKey source) throws Exception
+   {
+      TransformerConfigEditor editor = builder.createTransformer(reg);
+      editor.setDataSource(reg.getDeclaredInput("text"), source);
+      return editor.getConfiguration();
+   }
+
+   private static DataValueKey keyOf(TransformerConfiguration cfg)
+   {
+      return new SimpleDataValueKey(cfg.getId(), cfg.getOutputType());
+   }
+
+   /**
+    * Builds a workflow that produces the reversed, upper case input and the length of the
+    * input, along with a transformer that does not contribute to any output.
+    */
+   private WorkflowControllerImpl createWorkflow() throws Exception
+   {
+      builder = new WorkflowConfigBuilderImpl(registry);
+      builder.setTitle("Selection Test");
+      builder.setInputType(String.class);
+
+      DataValueKey input = builder.getInputKey();
+      uppercased = createTransformer(upper, input);
+      reversed = createTransformer(reverse, keyOf(uppercased));
+      counted = createTransformer(length, input);
+      createTransformer(unused, input);
+      builder.registerOutput(reversed.getId());
+      builder.registerOutput(counted.getId());
+
+      return WorkflowControllerImpl.create(builder.build());
+   }
+
+   private static RecordingResultsCollector<String> await(RecordingResultsCollector<String> collector) throws Exception
+   {
+      assertTrue("Processing did not finish", collector.await(10, TimeUnit.SECONDS));
+      assertTrue("Unexpected errors " + collector.errors, collector.errors.isEmpty());
+      return collector;
+   }
+
+   @Test
+   public void testUnreachableTransformersPruned() throws Exception
+   {
+      WorkflowControllerImpl workflow = createWorkflow();
+      try
+      {
+         RecordingResultsCollector<String> collector = new RecordingResultsCollector<>();
+         workflow.process(() -> "abc", collector).get(10, TimeUnit.SECONDS);
+         await(collector);
+
+         assertEquals(2, collector.results.size());
+         assertEquals("CBA", collector.get(keyOf(reversed)));
+         assertEquals(Integer.valueOf(3), collector.get(keyOf(counted)));
+         assertEquals("Transformer that reaches no output was executed", 0, unused.getExecutions());
+      }
+      finally
+      {
+         workflow.close();
+      }
+   }
+
+   @Test
+   public void testSubsetOfOutputs() throws Exception
+   {
+      WorkflowControllerImpl workflow = createWorkflow();
+      try
+      {
+         RecordingResultsCollector<String> collector = new RecordingResultsCollector<>();
+         workflow.process(() -> "abc", collector, Collections.singleton(keyOf(counted))).get(10, TimeUnit.SECONDS);
+         await(collector);
+
+         assertEquals(1, collector.results.size());
+         assertEquals(Integer.valueOf(3), collector.get(keyOf(counted)));
+         assertEquals(1, collector.finished.get());
+         assertEquals("Transformer not required by the requested outputs was executed", 0, upper.getExecutions() + reverse.getExecutions());
+
+         // the remaining transformers are executed when all outputs are requested
+         collector = new RecordingResultsCollector<>();
+         workflow.process(() -> "abc", collector, Arrays.asList(keyOf(reversed), keyOf(counted))).get(10, TimeUnit.SECONDS);
+         await(collector);
+
+         assertEquals(2, collector.results.size());
+         assertEquals(1, upper.getExecutions());
+         assertEquals(1, reverse.getExecutions());
+         assertEquals(2, length.getExecutions());
+      }
+      finally
+      {
+         workflow.close();
+      }
+   }
+
+   @Test
+   public void testUndeclaredOutputRejected() throws Exception
+   {
+      WorkflowControllerImpl workflow = createWorkflow();
+      try
+      {
+         for (DataValueKey key : Arrays.asList(keyOf(uppercased), new SimpleDataValueKey(UUID.randomUUID(), String.class)))
+         {
+            RecordingResultsCollector<String> collector = new RecordingResultsCollector<>();
+            try
+            {
+               workflow.process(() -> "abc", collector, Collections.singleton(key));
+               fail("Expected a value that is not a declared output [" + key + "] to be rejected");
+            }
+            catch (IllegalArgumentException ex)
+            {
+               // expected
+            }
+         }
+
+         assertEquals(0, upper.getExecutions() + reverse.getExecutions() + length.getExecutions());
+      }
+      finally
+      {
+         workflow.close();
+      }
+   }
+}
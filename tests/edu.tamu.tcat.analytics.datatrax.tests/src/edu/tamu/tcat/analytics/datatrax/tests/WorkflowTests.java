@@ -15,9 +15,13 @@ import java.util.List;
 import java.util.Map;
 import java.util.Set;
 import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.CopyOnWriteArrayList;
 import java.util.concurrent.CountDownLatch;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Supplier;
+import java.util.stream.IntStream;
 
 import javax.imageio.ImageIO;
 
@@ -50,6 +54,7 @@ public class WorkflowTests
 
    private static final String DEFAULT_DESC = "A builder for use in testing builder creation";
    private static final String DEFAULT_TITLE = "Config Test";
+   private static final String HELLO_WORLD_ID = "edu.tamu.tcat.analytics.datatrax.tests.helloworld";
    // TODO create a Mock registry that we can use to return decorated filter 
    //      implementations to support testing and performance analysis 
    private static ExtPointTranformerFactoryRegistry registry;
@@ -216,6 +221,47 @@ public class WorkflowTests
       }
    }
 
+   @Test
+   public void testBatchExecution() throws Exception
+   {
+      WorkflowConfigurationBuilder builder = new WorkflowConfigBuilderImpl(registry);
+      builder.setTitle(DEFAULT_TITLE);
+      builder.setDescription(DEFAULT_DESC);
+      
+      WorkflowControllerImpl workflow = createHelloWorldWorkflow(builder);
+      
+      int numInputs = 100;
+      CountDownLatch latch = new CountDownLatch(1);
+      StringResultsCollector collector = new StringResultsCollector(latch);
+      workflow.processAll(IntStream.range(0, numInputs).mapToObj(i -> (Supplier<String>)() -> "Name " + i), collector);
+      
+      assertTrue("Failed to complete batch.", latch.await(30, TimeUnit.SECONDS));
+      assertEquals("Unexpected number of results", numInputs, collector.outputs.size());
+      assertEquals("Hello Name 7", collector.outputs.get("Name 7"));
+      assertEquals("Batch reported completion more than once", 1, collector.finished.get());
+      assertTrue("Unexpected errors", collector.errors.isEmpty());
+      
+      workflow.close();
+   }
+
+   /**
+    * Constructs a workflow that accepts a name and generates a greeting using the 
+    * {@link MockTransformer}.
+    */
+   private WorkflowControllerImpl createHelloWorldWorkflow(WorkflowConfigurationBuilder builder) 
+         throws FactoryUnavailableException, WorkflowConfigurationException, TransformerConfigurationException
+   {
+      builder.setInputType(String.class);
+      
+      ExtTransformerFactoryDefinition helloReg = registry.getRegistration(HELLO_WORLD_ID);
+      TransformerConfigEditor editor = builder.createTransformer(helloReg);
+      editor.setDataSource(helloReg.getDeclaredInput("name"), builder.getInputKey());
+      TransformerConfiguration hello = editor.getConfiguration();
+      
+      builder.registerOutput(hello.getId());
+      return WorkflowControllerImpl.create(builder.build());
+   }
+
    /**
     * Constructs a simple workflow that accepts  a buffered image and generates a set 
     * of connected components along with colorized image that displays those CCs.
@@ -300,6 +346,38 @@ public class WorkflowTests
       
    }
 
+   private static final class StringResultsCollector implements ResultsCollector<String>
+   {
+      private final Map<String, Object> outputs = new ConcurrentHashMap<>();
+      private final List<Exception> errors = new CopyOnWriteArrayList<>();
+      private final AtomicInteger finished = new AtomicInteger();
+      private final CountDownLatch latch;
+
+      public StringResultsCollector(CountDownLatch latch)
+      {
+         this.latch = latch;
+      }
+      
+      @Override
+      public void handleResult(TranformationResult<String> result)
+      {
+         outputs.put(result.getSource(), result.getValue());
+      }
+      
+      @Override
+      public void handleError(TransformationError error)
+      {
+         errors.add(error.getException());
+      }
+      
+      @Override
+      public void finished()
+      {
+         finished.incrementAndGet();
+         latch.countDown();
+      }
+   }
+
    private static final class ResultsCollectorImpl implements ResultsCollector<BufferedImage>
    {
       private final Map<DataValueKey, Object> outputs;